@@ -0,0 +1,60 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class provides a default implementation of the methods of the OutputHandle interface that can be expressed in
+ * terms of the other methods, and is used as a base class by specific implementations of the OutputHandle interface.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public abstract class AbstractOutputHandle implements OutputHandle {
+    /**
+     * The output name.
+     */
+    private final String name;
+
+    /**
+     * create an abstract output handle.
+     *
+     * @param name the output name.
+     */
+    protected AbstractOutputHandle(final String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public InputStream openStream() throws IOException {
+        return openStream(0, -1);
+    }
+
+    @Override
+    public List<String> readLines(final int maxLineCount) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        try (final BufferedReader reader = new BufferedReader(new InputStreamReader(openStream(),
+                                                                                    StandardCharsets.UTF_8))) {
+            String line = lines.size() < maxLineCount ? reader.readLine() : null;
+            while (line != null) {
+                lines.add(line);
+                line = lines.size() < maxLineCount ? reader.readLine() : null;
+            }
+        }
+        return lines;
+    }
+}
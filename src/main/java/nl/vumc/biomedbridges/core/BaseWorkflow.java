@@ -5,11 +5,21 @@
 
 package nl.vumc.biomedbridges.core;
 
+import com.google.common.hash.Hashing;
+
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * This class provides a default implementation of the Workflow interface and is used as a base class by specific
@@ -19,9 +29,15 @@ import java.util.Set;
  */
 public class BaseWorkflow implements Workflow {
     /**
-     * The mapping of the output names to the actual output objects.
+     * The logger for this class.
      */
-    protected final Map<String, Object> outputFiles = new HashMap<>();
+    private static final Logger logger = LoggerFactory.getLogger(BaseWorkflow.class);
+
+    /**
+     * The mapping of the output names to the actual output objects (synchronized, since workflow engines can add
+     * outputs from several threads while the workflow is running).
+     */
+    protected final Map<String, Object> outputFiles = Collections.synchronizedMap(new HashMap<String, Object>());
 
     /**
      * Whether the workflow ran successfully or not.
@@ -33,6 +49,11 @@ public class BaseWorkflow implements Workflow {
      */
     private final String name;
 
+    /**
+     * The listeners that are notified when an output is added.
+     */
+    private final List<OutputListener> outputListeners = new CopyOnWriteArrayList<>();
+
     /**
      * The mapping of the input names to the actual input objects.
      */
@@ -120,6 +141,25 @@ public class BaseWorkflow implements Workflow {
     @Override
     public void addOutput(final String outputName, final Object outputValue) {
         outputFiles.put(outputName, outputValue);
+        for (final OutputListener outputListener : outputListeners) {
+            // CHECKSTYLE_OFF: IllegalCatchCheck
+            try {
+                outputListener.outputAvailable(this, outputName, outputValue);
+            } catch (final RuntimeException e) {
+                logger.error("Output listener failed for output {} of workflow {}.", outputName, name, e);
+            }
+            // CHECKSTYLE_ON: IllegalCatchCheck
+        }
+    }
+
+    @Override
+    public void addOutputListener(final OutputListener outputListener) {
+        outputListeners.add(outputListener);
+    }
+
+    @Override
+    public void removeOutputListener(final OutputListener outputListener) {
+        outputListeners.remove(outputListener);
     }
 
     @Override
@@ -127,9 +167,19 @@ public class BaseWorkflow implements Workflow {
         return outputFiles.get(outputName);
     }
 
+    @Override
+    public OutputHandle getOutputHandle(final String outputName) {
+        final Object output = getOutput(outputName);
+        if (output instanceof OutputHandle)
+            return (OutputHandle) output;
+        return output instanceof File ? new FileOutputHandle(outputName, (File) output) : null;
+    }
+
     @Override
     public Map<String, Object> getOutputMap() {
-        return new HashMap<>(outputFiles);
+        synchronized (outputFiles) {
+            return new HashMap<>(outputFiles);
+        }
     }
 
     @Override
@@ -161,4 +211,22 @@ public class BaseWorkflow implements Workflow {
     public void setResult(final boolean result) {
         this.result = result;
     }
+
+    /**
+     * Get a hash of the workflow definition. By default a workflow is identified by its name; subclasses that have a
+     * definition file should hash its content.
+     *
+     * @return the hash of the workflow definition.
+     */
+    @Override
+    public String getDefinitionHash() {
+        return Hashing.sha256().hashString(getClass().getName() + ":" + name, StandardCharsets.UTF_8).toString();
+    }
+
+    /**
+     * Close the workflow. By default a workflow holds no resources on a workflow server, so there is nothing to release.
+     */
+    @Override
+    public void close() {
+    }
 }
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.core;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The aggregated results of a batch of workflow runs: which workflows ran successfully, which workflows finished
+ * without success and which workflow runs failed with an exception. Results are recorded in the order in which the runs
+ * finished.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class BatchResult {
+    /**
+     * The workflows that ran successfully.
+     */
+    private final List<Workflow> successfulWorkflows = new ArrayList<>();
+
+    /**
+     * The workflows that finished without success (including the workflows that failed with an exception).
+     */
+    private final List<Workflow> failedWorkflows = new ArrayList<>();
+
+    /**
+     * The exceptions of the workflow runs that failed with an exception.
+     */
+    private final Map<Workflow, Throwable> errors = new LinkedHashMap<>();
+
+    /**
+     * Record the result of a workflow run.
+     *
+     * @param workflow the workflow.
+     * @param result   whether the workflow ran successfully.
+     */
+    public synchronized void addResult(final Workflow workflow, final boolean result) {
+        (result ? successfulWorkflows : failedWorkflows).add(workflow);
+    }
+
+    /**
+     * Record a workflow run that failed with an exception.
+     *
+     * @param workflow the workflow.
+     * @param error    the exception.
+     */
+    public synchronized void addError(final Workflow workflow, final Throwable error) {
+        failedWorkflows.add(workflow);
+        errors.put(workflow, error);
+    }
+
+    /**
+     * Get the workflows that ran successfully.
+     *
+     * @return the successful workflows.
+     */
+    public synchronized List<Workflow> getSuccessfulWorkflows() {
+        return ImmutableList.copyOf(successfulWorkflows);
+    }
+
+    /**
+     * Get the workflows that finished without success, including the workflows that failed with an exception.
+     *
+     * @return the failed workflows.
+     */
+    public synchronized List<Workflow> getFailedWorkflows() {
+        return ImmutableList.copyOf(failedWorkflows);
+    }
+
+    /**
+     * Get the exceptions of the workflow runs that failed with an exception.
+     *
+     * @return the exceptions by workflow.
+     */
+    public synchronized Map<Workflow, Throwable> getErrors() {
+        return ImmutableMap.copyOf(errors);
+    }
+
+    /**
+     * Get the number of workflow runs that have finished.
+     *
+     * @return the number of finished workflow runs.
+     */
+    public synchronized int getRunCount() {
+        return successfulWorkflows.size() + failedWorkflows.size();
+    }
+
+    /**
+     * Whether all workflows ran successfully.
+     *
+     * @return whether all workflows ran successfully.
+     */
+    public synchronized boolean isSuccessful() {
+        return failedWorkflows.isEmpty();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d of %d workflow run(s) successful (%d with errors)", successfulWorkflows.size(),
+                             getRunCount(), errors.size());
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.core;
+
+import com.google.common.base.Functions;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+
+import nl.vumc.biomedbridges.core.concurrent.SharedExecutors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runner for batches of workflows: many workflows (or one workflow with many input sets) are run on a workflow engine
+ * with a bounded number of runs in flight, so a large batch does not flood the server that runs the workflows. Each
+ * run is started with WorkflowEngine.runWorkflowAsync, so no thread is occupied while waiting for the server, and the
+ * results of all runs are aggregated in a batch result.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class BatchWorkflowRunner {
+    /**
+     * The default maximum number of workflow runs in flight.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_RUNS = 4;
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(BatchWorkflowRunner.class);
+
+    /**
+     * The workflow engine that runs the workflows.
+     */
+    private final WorkflowEngine workflowEngine;
+
+    /**
+     * The maximum number of workflow runs in flight.
+     */
+    private final int maxConcurrentRuns;
+
+    /**
+     * Create a batch workflow runner.
+     *
+     * @param workflowEngine    the workflow engine that runs the workflows.
+     * @param maxConcurrentRuns the maximum number of workflow runs in flight.
+     */
+    public BatchWorkflowRunner(final WorkflowEngine workflowEngine, final int maxConcurrentRuns) {
+        Preconditions.checkArgument(maxConcurrentRuns > 0, "At least one concurrent workflow run should be allowed.");
+        this.workflowEngine = workflowEngine;
+        this.maxConcurrentRuns = maxConcurrentRuns;
+    }
+
+    /**
+     * Create a workflow for each input set, to run one workflow with many input sets.
+     *
+     * @param workflowName the workflow name.
+     * @param inputSets    the input sets: mappings from input name to input value.
+     * @return the workflows (one for each input set).
+     */
+    public List<Workflow> createWorkflows(final String workflowName, final List<Map<String, Object>> inputSets) {
+        final List<Workflow> workflows = new ArrayList<>();
+        for (final Map<String, Object> inputSet : inputSets) {
+            final Workflow workflow = workflowEngine.getWorkflow(workflowName);
+            for (final Map.Entry<String, Object> input : inputSet.entrySet())
+                workflow.addInput(input.getKey(), input.getValue());
+            workflows.add(workflow);
+        }
+        return workflows;
+    }
+
+    /**
+     * Start running a batch of workflows. Each of at most maxConcurrentRuns lanes takes the next pending workflow when
+     * its previous run has finished, until all workflows have run.
+     *
+     * @param workflows the workflows to run.
+     * @return the future that is completed with the aggregated results when all workflow runs have finished.
+     */
+    public ListenableFuture<BatchResult> runWorkflows(final Collection<? extends Workflow> workflows) {
+        logger.info("Running a batch of {} workflow(s) (at most {} at the same time).", workflows.size(),
+                    maxConcurrentRuns);
+        final Queue<Workflow> pendingWorkflows = new ConcurrentLinkedQueue<>(workflows);
+        final BatchResult batchResult = new BatchResult();
+        final List<ListenableFuture<Void>> laneFutures = new ArrayList<>();
+        for (int laneIndex = 0; laneIndex < Math.min(maxConcurrentRuns, workflows.size()); laneIndex++)
+            laneFutures.add(runPendingWorkflows(pendingWorkflows, batchResult));
+        return Futures.transform(Futures.allAsList(laneFutures), Functions.constant(batchResult),
+                                 MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Run the next pending workflow and continue with the workflow after that, until there are no pending workflows
+     * left. The next workflow is started on the shared executor, so workflow runs that finish immediately do not
+     * build up a deep call stack.
+     *
+     * @param pendingWorkflows the queue of workflows that still have to run.
+     * @param batchResult      the batch result to record the results in.
+     * @return the future that is completed when this lane has no more workflows to run.
+     */
+    private ListenableFuture<Void> runPendingWorkflows(final Queue<Workflow> pendingWorkflows,
+                                                       final BatchResult batchResult) {
+        final Workflow workflow = pendingWorkflows.poll();
+        if (workflow == null)
+            return Futures.immediateFuture(null);
+        return Futures.transformAsync(runAndRecord(workflow, batchResult), new AsyncFunction<Void, Void>() {
+            @Override
+            public ListenableFuture<Void> apply(final Void ignored) {
+                return runPendingWorkflows(pendingWorkflows, batchResult);
+            }
+        }, SharedExecutors.getBlockingExecutor());
+    }
+
+    /**
+     * Run a workflow and record its result.
+     *
+     * @param workflow    the workflow to run.
+     * @param batchResult the batch result to record the result in.
+     * @return the future that is completed (never failed) when the result has been recorded.
+     */
+    private ListenableFuture<Void> runAndRecord(final Workflow workflow, final BatchResult batchResult) {
+        final SettableFuture<Void> recordedFuture = SettableFuture.create();
+        final ListenableFuture<Workflow> runFuture = startRun(workflow);
+        runFuture.addListener(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    batchResult.addResult(workflow, Futures.getDone(runFuture).getResult());
+                } catch (final ExecutionException e) {
+                    logger.error("Workflow {} failed.", workflow.getName(), e.getCause());
+                    batchResult.addError(workflow, e.getCause());
+                }
+                recordedFuture.set(null);
+            }
+        }, MoreExecutors.directExecutor());
+        return recordedFuture;
+    }
+
+    /**
+     * Start running a workflow, turning an exception while starting into a failed future.
+     *
+     * @param workflow the workflow to run.
+     * @return the future of the workflow run.
+     */
+    private ListenableFuture<Workflow> startRun(final Workflow workflow) {
+        // CHECKSTYLE_OFF: IllegalCatchCheck
+        try {
+            return workflowEngine.runWorkflowAsync(workflow);
+        } catch (final RuntimeException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+        // CHECKSTYLE_ON: IllegalCatchCheck
+    }
+}
@@ -6,12 +6,14 @@
 package nl.vumc.biomedbridges.core;
 
 import com.github.jmchilton.blend4j.galaxy.GalaxyInstance;
-import com.github.jmchilton.blend4j.galaxy.beans.History;
 
 import nl.vumc.biomedbridges.demonstration.DemonstrationWorkflowEngine;
 import nl.vumc.biomedbridges.galaxy.GalaxyWorkflowEngine;
+import nl.vumc.biomedbridges.galaxy.HistoryPool;
 import nl.vumc.biomedbridges.galaxy.HistoryUtils;
 import nl.vumc.biomedbridges.galaxy.configuration.GalaxyConfiguration;
+import nl.vumc.biomedbridges.galaxy.metadata.GalaxyWorkflowEngineMetadata;
+import nl.vumc.biomedbridges.local.LocalWorkflowEngine;
 import nl.vumc.biomedbridges.molgenis.MolgenisWorkflowEngine;
 
 import org.slf4j.Logger;
@@ -73,15 +75,23 @@ public class DefaultWorkflowEngineFactory implements WorkflowEngineFactory {
                 if (configurationData instanceof GalaxyConfiguration) {
                     final GalaxyConfiguration galaxyConfiguration = (GalaxyConfiguration) configurationData;
                     final GalaxyInstance galaxyInstance = galaxyConfiguration.determineGalaxyInstance(null);
-                    final History history = new History(galaxyConfiguration.getGalaxyHistoryName());
-                    final String historyId = galaxyInstance.getHistoriesClient().create(history).getId();
-                    workflowEngine = new GalaxyWorkflowEngine(galaxyInstance, historyId, historyUtils);
+                    final String historyId = HistoryPool.forInstance(galaxyInstance)
+                            .leaseHistory(galaxyConfiguration.getGalaxyHistoryName());
+                    final GalaxyWorkflowEngine galaxyWorkflowEngine = new GalaxyWorkflowEngine(galaxyInstance,
+                                                                                               historyId, historyUtils);
+                    galaxyWorkflowEngine.setHistoryName(galaxyConfiguration.getGalaxyHistoryName());
+                    workflowEngine = galaxyWorkflowEngine;
                 } else
                     workflowEngine = null;
                 break;
             case MOLGENIS:
                 workflowEngine = new MolgenisWorkflowEngine();
                 break;
+            case LOCAL:
+                workflowEngine = configurationData instanceof GalaxyWorkflowEngineMetadata
+                                 ? new LocalWorkflowEngine((GalaxyWorkflowEngineMetadata) configurationData)
+                                 : new LocalWorkflowEngine();
+                break;
             default:
                 logger.error(UNEXPECTED_TYPE_MESSAGE, workflowType);
                 workflowEngine = null;
@@ -6,13 +6,15 @@
 package nl.vumc.biomedbridges.core;
 
 import com.github.jmchilton.blend4j.galaxy.GalaxyInstance;
-import com.github.jmchilton.blend4j.galaxy.beans.History;
 
 import nl.vumc.biomedbridges.demonstration.DemonstrationWorkflowEngine;
 import nl.vumc.biomedbridges.galaxy.GalaxyWorkflow;
 import nl.vumc.biomedbridges.galaxy.GalaxyWorkflowEngine;
+import nl.vumc.biomedbridges.galaxy.HistoryPool;
 import nl.vumc.biomedbridges.galaxy.HistoryUtils;
 import nl.vumc.biomedbridges.galaxy.configuration.GalaxyConfiguration;
+import nl.vumc.biomedbridges.galaxy.metadata.GalaxyWorkflowEngineMetadata;
+import nl.vumc.biomedbridges.local.LocalWorkflowEngine;
 import nl.vumc.biomedbridges.molgenis.MolgenisWorkflowEngine;
 
 import org.slf4j.Logger;
@@ -54,11 +56,13 @@ public class DefaultWorkflowFactory implements WorkflowFactory {
                 if (configurationData instanceof GalaxyConfiguration) {
                     final GalaxyConfiguration galaxyConfiguration = (GalaxyConfiguration) configurationData;
                     final GalaxyInstance galaxyInstance = galaxyConfiguration.determineGalaxyInstance(null);
-                    final History history = new History(galaxyConfiguration.getGalaxyHistoryName());
-                    final String historyId = galaxyInstance.getHistoriesClient().create(history).getId();
+                    final String historyId = HistoryPool.forInstance(galaxyInstance)
+                            .leaseHistory(galaxyConfiguration.getGalaxyHistoryName());
                     final GalaxyWorkflowEngine workflowEngine = new GalaxyWorkflowEngine(galaxyInstance, historyId,
                                                                                          new HistoryUtils());
-                    workflow = workflowEngine.getWorkflow(workflowName);
+                    workflowEngine.setHistoryName(galaxyConfiguration.getGalaxyHistoryName());
+                    // The engine is used by this workflow only, so closing the workflow releases the leased history.
+                    workflow = workflowEngine.getOwningWorkflow(workflowName);
                 } else if (configurationData instanceof String)
                     workflow = new GalaxyWorkflow((String) configurationData, workflowName);
                 else
@@ -67,6 +71,9 @@ public class DefaultWorkflowFactory implements WorkflowFactory {
             case MOLGENIS:
                 workflow = new MolgenisWorkflowEngine().getWorkflow(workflowName);
                 break;
+            case LOCAL:
+                workflow = createLocalWorkflowEngine(configurationData).getWorkflow(workflowName);
+                break;
             default:
                 logger.error(UNEXPECTED_TYPE_MESSAGE, workflowType);
                 workflow = null;
@@ -74,4 +81,16 @@ public class DefaultWorkflowFactory implements WorkflowFactory {
         }
         return workflow;
     }
+
+    /**
+     * Create a local workflow engine.
+     *
+     * @param configurationData the Galaxy workflow engine metadata or null to use the default metadata.
+     * @return the local workflow engine.
+     */
+    private LocalWorkflowEngine createLocalWorkflowEngine(final Object configurationData) {
+        return configurationData instanceof GalaxyWorkflowEngineMetadata
+               ? new LocalWorkflowEngine((GalaxyWorkflowEngineMetadata) configurationData)
+               : new LocalWorkflowEngine();
+    }
 }
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.core;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Output handle for an output that is available as a local file (for example because it was downloaded already).
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class FileOutputHandle extends AbstractOutputHandle {
+    /**
+     * The output file.
+     */
+    private final File file;
+
+    /**
+     * Create an output handle for a local file.
+     *
+     * @param name the output name.
+     * @param file the output file.
+     */
+    public FileOutputHandle(final String name, final File file) {
+        super(name);
+        this.file = file;
+    }
+
+    /**
+     * Get the output file.
+     *
+     * @return the output file.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public long getSize() {
+        return file.exists() ? file.length() : -1;
+    }
+
+    @Override
+    public String getDataType() {
+        final String extension = Files.getFileExtension(file.getName());
+        return !"".equals(extension) ? extension : null;
+    }
+
+    @Override
+    public InputStream openStream(final long offset, final long length) throws IOException {
+        final InputStream inputStream = new FileInputStream(file);
+        try {
+            ByteStreams.skipFully(inputStream, offset);
+        } catch (final IOException e) {
+            inputStream.close();
+            throw e;
+        }
+        return length >= 0 ? ByteStreams.limit(inputStream, length) : inputStream;
+    }
+}
@@ -5,24 +5,44 @@
 
 package nl.vumc.biomedbridges.core;
 
+import com.google.common.hash.Hashing;
+import com.google.common.io.LineProcessor;
+import com.google.common.io.MoreFiles;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Simple utility method for creating temporary files.
+ * Simple utility methods for creating, copying and reading files. Lines are written through a large buffer, files are
+ * copied with FileChannel.transferTo/transferFrom (so the operating system can copy the data without passing it
+ * through the Java heap), files are read as memory-mapped regions, and files that can be seen by others are written
+ * to a temporary file first and then moved in place, so a partially written file is never visible.
  *
  * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
  */
@@ -52,6 +72,26 @@ public class FileUtils {
      */
     private static final String CREATE_FILE_ERROR_MESSAGE = "Exception while creating a file.";
 
+    /**
+     * The size (in characters) of the buffer for writing lines.
+     */
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The maximum number of bytes that is transferred from a stream to a file at once.
+     */
+    private static final long TRANSFER_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * The maximum size (in bytes) of a memory-mapped region when reading lines.
+     */
+    private static final int MAPPED_REGION_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * The file name suffix of the temporary file that is moved in place when it is complete.
+     */
+    private static final String PARTIAL_FILE_SUFFIX = ".part";
+
     /**
      * Hidden constructor. Only the static methods of this class are meant to be used.
      */
@@ -68,7 +108,7 @@ public class FileUtils {
     public static File createFile(final String filePath, final String... lines) {
         try {
             final File newFile = new File(filePath);
-            writeLinesToFile(newFile, lines);
+            writeLines(newFile, Arrays.asList(lines));
             return newFile;
         } catch (final IOException e) {
             logger.error(CREATE_FILE_ERROR_MESSAGE, e);
@@ -77,14 +117,229 @@ public class FileUtils {
     }
 
     /**
-     * Write lines to a file.
+     * Determine the SHA-256 hash of the content of a file. The file is read as a stream, so large files are not loaded
+     * into memory.
+     *
+     * @param file the file to hash.
+     * @return the content hash as a hexadecimal string.
+     * @throws IOException if reading the file fails.
+     */
+    public static String hashFile(final File file) throws IOException {
+        return MoreFiles.asByteSource(file.toPath()).hash(Hashing.sha256()).toString();
+    }
+
+    /**
+     * Write lines to a file atomically: the lines are written to a temporary file next to the file, which replaces the
+     * file when it is complete. The lines can be generated while they are written (for example by an iterator over
+     * millions of lines), since they are not collected in memory.
      *
      * @param file  the file to write to.
      * @param lines the lines to write to the file.
      * @throws IOException if writing to the file fails.
      */
-    private static void writeLinesToFile(final File file, final String... lines) throws IOException {
-        try (final Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+    public static void writeLines(final File file, final Iterable<String> lines) throws IOException {
+        final Path partialPath = createPartialFile(file);
+        try {
+            writeLinesToFile(partialPath.toFile(), lines);
+            moveAtomically(partialPath, file.toPath());
+        } finally {
+            Files.deleteIfExists(partialPath);
+        }
+    }
+
+    /**
+     * Copy a file atomically, using FileChannel.transferTo.
+     *
+     * @param sourceFile the file to copy.
+     * @param targetFile the copy, which is replaced if it exists.
+     * @throws IOException if copying fails.
+     */
+    public static void copyFile(final File sourceFile, final File targetFile) throws IOException {
+        concatenateFiles(Collections.singletonList(sourceFile), targetFile);
+    }
+
+    /**
+     * Concatenate files atomically, using FileChannel.transferTo.
+     *
+     * @param sourceFiles the files to concatenate.
+     * @param targetFile  the file with the concatenated contents, which is replaced if it exists.
+     * @throws IOException if reading or writing fails.
+     */
+    public static void concatenateFiles(final List<File> sourceFiles, final File targetFile) throws IOException {
+        final Path partialPath = createPartialFile(targetFile);
+        try {
+            try (final FileChannel targetChannel = FileChannel.open(partialPath, StandardOpenOption.WRITE)) {
+                for (final File sourceFile : sourceFiles)
+                    transferFile(sourceFile, targetChannel);
+            }
+            moveAtomically(partialPath, targetFile.toPath());
+        } finally {
+            Files.deleteIfExists(partialPath);
+        }
+    }
+
+    /**
+     * Write the contents of a stream to a file atomically, using FileChannel.transferFrom. The stream is closed.
+     *
+     * @param inputStream the stream.
+     * @param targetFile  the file, which is replaced if it exists.
+     * @throws IOException if reading or writing fails.
+     */
+    public static void copyStream(final InputStream inputStream, final File targetFile) throws IOException {
+        final Path partialPath = createPartialFile(targetFile);
+        try {
+            try (final ReadableByteChannel sourceChannel = Channels.newChannel(inputStream);
+                 final FileChannel targetChannel = FileChannel.open(partialPath, StandardOpenOption.WRITE)) {
+                long position = 0;
+                long transferredCount = targetChannel.transferFrom(sourceChannel, position, TRANSFER_SIZE);
+                while (transferredCount > 0) {
+                    position += transferredCount;
+                    transferredCount = targetChannel.transferFrom(sourceChannel, position, TRANSFER_SIZE);
+                }
+            }
+            moveAtomically(partialPath, targetFile.toPath());
+        } finally {
+            Files.deleteIfExists(partialPath);
+        }
+    }
+
+    /**
+     * Read the lines of a (UTF-8) file through memory-mapped regions, so large files are read without copying them
+     * into the Java heap first. Lines end with a line feed or a carriage return and a line feed.
+     *
+     * @param file      the file to read.
+     * @param processor the processor that gets the lines (and can stop reading by returning false).
+     * @param <T>       the type of the result of the processor.
+     * @return the result of the processor.
+     * @throws IOException if reading the file fails.
+     */
+    public static <T> T readLines(final File file, final LineProcessor<T> processor) throws IOException {
+        return readLines(file, processor, MAPPED_REGION_SIZE);
+    }
+
+    /**
+     * Read the lines of a (UTF-8) file through memory-mapped regions of a specific size.
+     *
+     * @param file       the file to read.
+     * @param processor  the processor that gets the lines (and can stop reading by returning false).
+     * @param regionSize the maximum size of a memory-mapped region.
+     * @param <T>        the type of the result of the processor.
+     * @return the result of the processor.
+     * @throws IOException if reading the file fails.
+     */
+    static <T> T readLines(final File file, final LineProcessor<T> processor, final int regionSize)
+            throws IOException {
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+            boolean readMore = true;
+            for (long position = 0; position < size && readMore; position += regionSize) {
+                final MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                                                            Math.min(regionSize, size - position));
+                readMore = processRegion(region, partialLine, processor);
+            }
+            if (readMore && partialLine.size() > 0)
+                processor.processLine(decodeLine(ByteBuffer.wrap(partialLine.toByteArray())));
+            return processor.getResult();
+        }
+    }
+
+    /**
+     * Process the lines in a memory-mapped region. The bytes after the last line feed are kept as a partial line, which
+     * is continued in the next region.
+     *
+     * @param region      the memory-mapped region.
+     * @param partialLine the bytes of a line that started in an earlier region.
+     * @param processor   the line processor.
+     * @return whether the processor wants more lines.
+     * @throws IOException if the processor throws an IOException.
+     */
+    private static boolean processRegion(final ByteBuffer region, final ByteArrayOutputStream partialLine,
+                                         final LineProcessor<?> processor) throws IOException {
+        boolean readMore = true;
+        int lineStart = 0;
+        while (readMore && region.hasRemaining()) {
+            if (region.get() == NEW_LINE) {
+                final ByteBuffer lineBytes = slice(region, lineStart, region.position() - 1);
+                if (partialLine.size() > 0) {
+                    appendBytes(partialLine, lineBytes);
+                    readMore = processor.processLine(decodeLine(ByteBuffer.wrap(partialLine.toByteArray())));
+                    partialLine.reset();
+                } else
+                    readMore = processor.processLine(decodeLine(lineBytes));
+                lineStart = region.position();
+            }
+        }
+        if (readMore)
+            appendBytes(partialLine, slice(region, lineStart, region.limit()));
+        return readMore;
+    }
+
+    /**
+     * Get a part of a buffer.
+     *
+     * @param buffer the buffer.
+     * @param start  the start index (inclusive).
+     * @param end    the end index (exclusive).
+     * @return the part of the buffer.
+     */
+    private static ByteBuffer slice(final ByteBuffer buffer, final int start, final int end) {
+        final ByteBuffer part = buffer.duplicate();
+        part.limit(end);
+        part.position(start);
+        return part;
+    }
+
+    /**
+     * Append the bytes of a buffer to a stream.
+     *
+     * @param stream the stream.
+     * @param bytes  the buffer.
+     */
+    private static void appendBytes(final ByteArrayOutputStream stream, final ByteBuffer bytes) {
+        final byte[] array = new byte[bytes.remaining()];
+        bytes.get(array);
+        stream.write(array, 0, array.length);
+    }
+
+    /**
+     * Decode the bytes of a line, without a carriage return at the end.
+     *
+     * @param lineBytes the bytes of the line.
+     * @return the line.
+     */
+    private static String decodeLine(final ByteBuffer lineBytes) {
+        final String line = StandardCharsets.UTF_8.decode(lineBytes).toString();
+        return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+    }
+
+    /**
+     * Transfer the contents of a file to a channel.
+     *
+     * @param sourceFile    the file.
+     * @param targetChannel the channel.
+     * @throws IOException if reading or writing fails.
+     */
+    private static void transferFile(final File sourceFile, final FileChannel targetChannel) throws IOException {
+        try (final FileChannel sourceChannel = FileChannel.open(sourceFile.toPath(), StandardOpenOption.READ)) {
+            final long size = sourceChannel.size();
+            long position = 0;
+            while (position < size)
+                position += sourceChannel.transferTo(position, size - position, targetChannel);
+        }
+    }
+
+    /**
+     * Write lines to a file through a large buffer.
+     *
+     * @param file  the file to write to.
+     * @param lines the lines to write to the file.
+     * @throws IOException if writing to the file fails.
+     */
+    private static void writeLinesToFile(final File file, final Iterable<String> lines) throws IOException {
+        try (final Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file.toPath()),
+                                                                             StandardCharsets.UTF_8),
+                                                      WRITE_BUFFER_SIZE)) {
             for (final String line : lines) {
                 writer.write(line);
                 writer.write(NEW_LINE);
@@ -92,6 +347,39 @@ public class FileUtils {
         }
     }
 
+    /**
+     * Create a temporary file next to a file, which is moved in place when it is complete. The temporary file is
+     * created with the default permissions for new files (Files.createTempFile would only give access to the owner).
+     *
+     * @param file the file.
+     * @return the path of the temporary file.
+     * @throws IOException if the temporary file cannot be created.
+     */
+    private static Path createPartialFile(final File file) throws IOException {
+        final File absoluteFile = file.getAbsoluteFile();
+        return Files.createFile(absoluteFile.getParentFile().toPath().resolve(
+                String.format(".%s.%s%s", absoluteFile.getName(), UUID.randomUUID(), PARTIAL_FILE_SUFFIX)));
+    }
+
+    /**
+     * Move a file in place atomically (or replace the target in a normal move if the file system does not support
+     * atomic moves). When the target exists, its permissions are kept.
+     *
+     * @param sourcePath the file to move.
+     * @param targetPath the target, which is replaced if it exists.
+     * @throws IOException if moving fails.
+     */
+    private static void moveAtomically(final Path sourcePath, final Path targetPath) throws IOException {
+        if (Files.exists(targetPath)
+            && Files.getFileStore(targetPath).supportsFileAttributeView(PosixFileAttributeView.class))
+            Files.setPosixFilePermissions(sourcePath, Files.getPosixFilePermissions(targetPath));
+        try {
+            Files.move(sourcePath, targetPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(sourcePath, targetPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
     /**
      * Create a file with some lines.
      *
@@ -125,8 +413,8 @@ public class FileUtils {
      * @param lines the lines to write to the test file.
      * @return the test file.
      */
-    public static File createTemporaryFile(final List<String> lines) {
-        return createTemporaryFileWithPrefix(FILE_NAME_PREFIX, lines.toArray(new String[lines.size()]));
+    public static File createTemporaryFile(final Iterable<String> lines) {
+        return createTemporaryFileWithPrefix(FILE_NAME_PREFIX, lines);
     }
 
     /**
@@ -139,7 +427,7 @@ public class FileUtils {
         final File tempFile;
         try {
             tempFile = File.createTempFile(FILE_NAME_PREFIX, FILE_NAME_SUFFIX);
-            Files.copy(url.openStream(), tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            copyStream(url.openStream(), tempFile);
         } catch (final IOException e) {
             logger.error(CREATE_FILE_ERROR_MESSAGE, e);
             throw new RuntimeException(e);
@@ -155,6 +443,17 @@ public class FileUtils {
      * @return the test file.
      */
     public static File createTemporaryFileWithPrefix(final String filenamePrefix, final String... lines) {
+        return createTemporaryFileWithPrefix(filenamePrefix, Arrays.asList(lines));
+    }
+
+    /**
+     * Create a temporary file with some lines.
+     *
+     * @param filenamePrefix the file name prefix to use.
+     * @param lines          the lines to write to the test file.
+     * @return the test file.
+     */
+    public static File createTemporaryFileWithPrefix(final String filenamePrefix, final Iterable<String> lines) {
         final File tempFile;
         try {
             tempFile = File.createTempFile(filenamePrefix, FILE_NAME_SUFFIX);
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Handle to a workflow output that is read on demand. Instead of downloading a complete output file first, callers can
+ * stream the output, read a range of bytes or peek at the first lines, which is useful for checking large outputs
+ * without storing them locally.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public interface OutputHandle {
+    /**
+     * Get the output name.
+     *
+     * @return the output name.
+     */
+    String getName();
+
+    /**
+     * Get the size of the output in bytes.
+     *
+     * @return the size of the output in bytes or -1 if the size is not known.
+     * @throws IOException if retrieving the size fails.
+     */
+    long getSize() throws IOException;
+
+    /**
+     * Get the data type of the output (for example "txt" or "tabular").
+     *
+     * @return the data type of the output or null if the data type is not known.
+     * @throws IOException if retrieving the data type fails.
+     */
+    String getDataType() throws IOException;
+
+    /**
+     * Open a stream with the complete output. The caller is responsible for closing the stream.
+     *
+     * @return the input stream.
+     * @throws IOException if opening the stream fails.
+     */
+    InputStream openStream() throws IOException;
+
+    /**
+     * Open a stream with a range of the output. The caller is responsible for closing the stream.
+     *
+     * @param offset the offset of the first byte to read.
+     * @param length the maximum number of bytes to read or -1 to read until the end of the output.
+     * @return the input stream.
+     * @throws IOException if opening the stream fails.
+     */
+    InputStream openStream(final long offset, final long length) throws IOException;
+
+    /**
+     * Read the first lines of the output (as UTF-8 text), without reading the rest of the output.
+     *
+     * @param maxLineCount the maximum number of lines to read.
+     * @return the lines that were read.
+     * @throws IOException if reading the output fails.
+     */
+    List<String> readLines(final int maxLineCount) throws IOException;
+}
@@ -0,0 +1,27 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.core;
+
+/**
+ * Listener that is notified each time an output of a workflow becomes available. Workflow engines that support it add
+ * outputs as soon as they are ready (for example while later steps of the workflow are still running), so a listener
+ * can start processing early outputs before the whole workflow has finished.
+ *
+ * Listeners are called on the thread that adds the output, which may be a thread of a shared executor; listeners that
+ * do a lot of work should hand it off to another executor.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public interface OutputListener {
+    /**
+     * Handle an output that has become available.
+     *
+     * @param workflow     the workflow that produced the output.
+     * @param outputName   the output name.
+     * @param outputObject the output object (usually a local file).
+     */
+    void outputAvailable(final Workflow workflow, final String outputName, final Object outputObject);
+}
@@ -5,17 +5,19 @@
 
 package nl.vumc.biomedbridges.core;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 
 /**
- * This interface describes the methods each workflow should implement.
+ * This interface describes the methods each workflow should implement. A workflow should be closed when its outputs
+ * are no longer needed, so the resources it holds on the workflow server (like a Galaxy history) can be released.
  *
  * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
  */
-public interface Workflow {
+public interface Workflow extends Closeable {
     /**
      * Get the workflow name.
      *
@@ -98,6 +100,21 @@ public interface Workflow {
      */
     void addOutput(final String outputName, final Object outputObject);
 
+    /**
+     * Add a listener that is notified each time an output is added, so outputs can be processed as soon as they are
+     * available instead of after the whole workflow has finished.
+     *
+     * @param outputListener the output listener.
+     */
+    void addOutputListener(final OutputListener outputListener);
+
+    /**
+     * Remove an output listener.
+     *
+     * @param outputListener the output listener.
+     */
+    void removeOutputListener(final OutputListener outputListener);
+
     /**
      * Retrieve an output object.
      *
@@ -106,6 +123,15 @@ public interface Workflow {
      */
     Object getOutput(final String outputName);
 
+    /**
+     * Retrieve a handle to an output, which can be used to read (part of) the output on demand. Workflow engines that
+     * support it return a handle that does not need a local copy of the output.
+     *
+     * @param outputName the output name.
+     * @return the output handle or null if there is no output file with this name.
+     */
+    OutputHandle getOutputHandle(final String outputName);
+
     /**
      * Get all the output files in a map.
      *
@@ -154,4 +180,18 @@ public interface Workflow {
      * @param result whether the workflow ran successfully or not.
      */
     void setResult(final boolean result);
+
+    /**
+     * Get a hash of the workflow definition, which changes when the definition of the workflow changes.
+     *
+     * @return the hash of the workflow definition.
+     */
+    String getDefinitionHash();
+
+    /**
+     * Release the resources this workflow holds on the workflow server. The outputs that are on the server only (and
+     * have not been downloaded) are no longer available after the workflow has been closed.
+     */
+    @Override
+    void close();
 }
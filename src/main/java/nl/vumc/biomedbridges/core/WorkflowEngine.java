@@ -5,14 +5,18 @@
 
 package nl.vumc.biomedbridges.core;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.io.Closeable;
 import java.io.IOException;
 
 /**
- * This interface describes the methods each workflow engine should implement.
+ * This interface describes the methods each workflow engine should implement. A workflow engine should be closed when
+ * it is no longer used, so it can release the resources it holds on the workflow server (like Galaxy histories).
  *
  * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
  */
-public interface WorkflowEngine {
+public interface WorkflowEngine extends Closeable {
 //    /**
 //     * Configure the workflow engine with the default settings.
 //     *
@@ -46,4 +50,21 @@ public interface WorkflowEngine {
      *                              engine.
      */
     boolean runWorkflow(final Workflow workflow) throws InterruptedException, IOException;
+
+    /**
+     * Start running the workflow on this workflow engine without blocking the calling thread. When the returned future
+     * is done, the result of the workflow is set (see Workflow.getResult) and the outputs are available in the
+     * workflow. Exceptions that runWorkflow would throw are reported through the future.
+     *
+     * @param workflow the workflow to run.
+     * @return the future that is completed with the workflow when it has finished.
+     */
+    ListenableFuture<Workflow> runWorkflowAsync(final Workflow workflow);
+
+    /**
+     * Release the resources this workflow engine holds on the workflow server. Workflows that are still running keep
+     * their resources until they have finished.
+     */
+    @Override
+    void close();
 }
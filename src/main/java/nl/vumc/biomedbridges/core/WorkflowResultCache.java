@@ -0,0 +1,373 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.core;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of workflow results, so an identical workflow run does not have to be executed again. A run is identified by
+ * a key that is calculated from the workflow definition hash, the inputs (the content hash for input files) and the
+ * parameters. The output files of successful runs are stored in a local content-addressed store: each file is stored
+ * once under the SHA-256 hash of its content, and a small properties file per key maps the output names to these
+ * hashes. The total size of the stored output files is bounded; the least recently used files are evicted first (and
+ * results that refer to an evicted file are no longer found).
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class WorkflowResultCache {
+    /**
+     * The default maximum total size of the stored output files: one gigabyte.
+     */
+    public static final long DEFAULT_MAX_SIZE_BYTES = 1024L * 1024 * 1024;
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(WorkflowResultCache.class);
+
+    /**
+     * The suffix of the result files.
+     */
+    private static final String RESULT_SUFFIX = ".properties";
+
+    /**
+     * The suffix of temporary files, which are moved to their final name when they are complete.
+     */
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    /**
+     * The separator between the content hash and the file name suffix in a result file.
+     */
+    private static final String VALUE_SEPARATOR = " ";
+
+    /**
+     * The directory with the stored output files, which are named after the hash of their content.
+     */
+    private final Path objectsDirectory;
+
+    /**
+     * The directory with the result files, which are named after the key of a workflow run.
+     */
+    private final Path resultsDirectory;
+
+    /**
+     * The maximum total size of the stored output files.
+     */
+    private final long maxSizeBytes;
+
+    /**
+     * The sizes of the stored output files by content hash, from least to most recently used.
+     */
+    private final LinkedHashMap<String, Long> objectSizes = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The total size of the stored output files.
+     */
+    private long totalSizeBytes;
+
+    /**
+     * Create a workflow result cache that is stored in a directory. Output files that were stored before are kept,
+     * using their modification time to determine the least recently used files.
+     *
+     * @param directory    the directory in which the cache is stored.
+     * @param maxSizeBytes the maximum total size of the stored output files.
+     * @throws IOException if the cache directory cannot be created or read.
+     */
+    public WorkflowResultCache(final File directory, final long maxSizeBytes) throws IOException {
+        Preconditions.checkArgument(maxSizeBytes > 0, "The maximum cache size should be positive.");
+        this.objectsDirectory = Files.createDirectories(directory.toPath().resolve("objects"));
+        this.resultsDirectory = Files.createDirectories(directory.toPath().resolve("results"));
+        this.maxSizeBytes = maxSizeBytes;
+        readObjects();
+    }
+
+    /**
+     * Create the key for a workflow run from the workflow definition hash, the inputs and the parameters.
+     *
+     * @param workflow the workflow.
+     * @return the key or null if an input file could not be read.
+     */
+    public String createKey(final Workflow workflow) {
+        final Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putString(workflow.getName(), StandardCharsets.UTF_8);
+        hasher.putString(workflow.getDefinitionHash(), StandardCharsets.UTF_8);
+        try {
+            for (final Map.Entry<String, Object> input : new TreeMap<>(workflow.getInputMap()).entrySet()) {
+                hasher.putString(input.getKey(), StandardCharsets.UTF_8);
+                hasher.putString(describeInput(input.getValue()), StandardCharsets.UTF_8);
+            }
+        } catch (final IOException e) {
+            logger.warn("Hashing the inputs of workflow {} failed; the result cache is not used.", workflow.getName(), e);
+            return null;
+        }
+        hasher.putString(describeParameters(workflow.getParameters()), StandardCharsets.UTF_8);
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Add the stored output files of an earlier identical run to a workflow. Each output file is copied from the store
+     * to a new file (in the download directory of the workflow, if that is set). The outputs are only added when all
+     * of them have been copied, so a failed restore does not leave a partially filled workflow.
+     *
+     * @param workflow the workflow.
+     * @param key      the key of the workflow run.
+     * @return whether the outputs were found and added to the workflow.
+     */
+    public synchronized boolean restoreOutputs(final Workflow workflow, final String key) {
+        final Path resultPath = resultsDirectory.resolve(key + RESULT_SUFFIX);
+        final Map<String, File> outputFiles = new LinkedHashMap<>();
+        boolean restored = false;
+        try {
+            final Properties result = readResult(resultPath);
+            if (result != null) {
+                for (final String outputName : result.stringPropertyNames()) {
+                    final String[] hashAndSuffix = result.getProperty(outputName).split(VALUE_SEPARATOR, 2);
+                    outputFiles.put(outputName, copyObject(workflow, outputName, hashAndSuffix[0], hashAndSuffix[1]));
+                }
+                for (final Map.Entry<String, File> outputFile : outputFiles.entrySet())
+                    workflow.addOutput(outputFile.getKey(), outputFile.getValue());
+                restored = true;
+                logger.info("Restored {} output(s) of workflow {} from the result cache.", result.size(),
+                            workflow.getName());
+            }
+        } catch (final IOException e) {
+            logger.warn("Restoring the outputs of workflow {} from the result cache failed.", workflow.getName(), e);
+            for (final File outputFile : outputFiles.values())
+                if (!outputFile.delete())
+                    logger.warn("Could not delete the partially restored output file {}.", outputFile);
+        }
+        return restored;
+    }
+
+    /**
+     * Store the output files of a successful workflow run. Only workflows of which all outputs are files are stored.
+     *
+     * @param workflow the workflow.
+     * @param key      the key of the workflow run.
+     * @return whether the outputs were stored.
+     */
+    public synchronized boolean storeOutputs(final Workflow workflow, final String key) {
+        final Map<String, Object> outputMap = workflow.getOutputMap();
+        boolean stored = !outputMap.isEmpty();
+        for (final Object output : outputMap.values())
+            stored &= output instanceof File && ((File) output).isFile();
+        if (stored) {
+            try {
+                final Properties result = new Properties();
+                for (final Map.Entry<String, Object> output : outputMap.entrySet())
+                    result.setProperty(output.getKey(), storeObject((File) output.getValue()));
+                writeResult(resultsDirectory.resolve(key + RESULT_SUFFIX), result);
+                evictObjects();
+            } catch (final IOException e) {
+                logger.warn("Storing the outputs of workflow {} in the result cache failed.", workflow.getName(), e);
+                stored = false;
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * Get the total size of the stored output files.
+     *
+     * @return the total size in bytes.
+     */
+    public synchronized long getTotalSizeBytes() {
+        return totalSizeBytes;
+    }
+
+    /**
+     * Describe an input value for the key of a workflow run: input files are described by their content hash.
+     *
+     * @param inputValue the input value.
+     * @return the description of the input value.
+     * @throws IOException if an input file could not be read.
+     */
+    private String describeInput(final Object inputValue) throws IOException {
+        return inputValue instanceof File ? "file:" + FileUtils.hashFile((File) inputValue) : "value:" + inputValue;
+    }
+
+    /**
+     * Describe the workflow parameters for the key of a workflow run, in a well defined order.
+     *
+     * @param parameters the workflow parameters.
+     * @return the description of the parameters.
+     */
+    private String describeParameters(final Map<Object, Map<String, Object>> parameters) {
+        final SortedMap<String, SortedMap<String, String>> sortedParameters = new TreeMap<>();
+        for (final Map.Entry<Object, Map<String, Object>> stepEntry : parameters.entrySet()) {
+            final SortedMap<String, String> stepParameters = new TreeMap<>();
+            for (final Map.Entry<String, Object> parameterEntry : stepEntry.getValue().entrySet())
+                stepParameters.put(parameterEntry.getKey(), String.valueOf(parameterEntry.getValue()));
+            sortedParameters.put(String.valueOf(stepEntry.getKey()), stepParameters);
+        }
+        return sortedParameters.toString();
+    }
+
+    /**
+     * Read a result file, if it exists and all output files it refers to are still stored. A result that refers to an
+     * evicted output file is removed.
+     *
+     * @param resultPath the path of the result file.
+     * @return the result or null if it is not available.
+     * @throws IOException if reading the result file fails.
+     */
+    private Properties readResult(final Path resultPath) throws IOException {
+        if (!Files.exists(resultPath))
+            return null;
+        final Properties result = new Properties();
+        try (final InputStream inputStream = Files.newInputStream(resultPath)) {
+            result.load(inputStream);
+        }
+        for (final String outputName : result.stringPropertyNames())
+            if (!objectSizes.containsKey(result.getProperty(outputName).split(VALUE_SEPARATOR, 2)[0])) {
+                Files.deleteIfExists(resultPath);
+                return null;
+            }
+        return result;
+    }
+
+    /**
+     * Write a result file (first to a temporary file, which then replaces the result file).
+     *
+     * @param resultPath the path of the result file.
+     * @param result     the result.
+     * @throws IOException if writing the result file fails.
+     */
+    private void writeResult(final Path resultPath, final Properties result) throws IOException {
+        final Path temporaryPath = Files.createTempFile(resultsDirectory, "result", TEMPORARY_SUFFIX);
+        try (final OutputStream outputStream = Files.newOutputStream(temporaryPath)) {
+            result.store(outputStream, null);
+        }
+        Files.move(temporaryPath, resultPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Copy a stored output file to a new file for a workflow and mark it as recently used.
+     *
+     * @param workflow    the workflow.
+     * @param outputName  the output name.
+     * @param contentHash the content hash of the stored output file.
+     * @param suffix      the file name suffix of the output file.
+     * @return the new output file.
+     * @throws IOException if copying the output file fails.
+     */
+    private File copyObject(final Workflow workflow, final String outputName, final String contentHash,
+                            final String suffix) throws IOException {
+        final String baseName = FileUtils.cleanFileName(String.format("workflow-runner-%s-%s-", workflow.getName(),
+                                                                      outputName));
+        final File outputFile = workflow.getDownloadDirectory() != null
+                                ? new File(FileUtils.createUniqueFilePath(workflow.getDownloadDirectory(), baseName, suffix))
+                                : File.createTempFile(baseName, suffix);
+        final Path objectPath = objectsDirectory.resolve(contentHash);
+        Files.copy(objectPath, outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        touchObject(contentHash);
+        return outputFile;
+    }
+
+    /**
+     * Mark a stored output file as most recently used. Looking up the entry moves it to the end of the access ordered
+     * objectSizes map (which determines the eviction order); the modification time of the file keeps this order for
+     * the next cache that uses the same directory.
+     *
+     * @param contentHash the content hash of the stored output file.
+     */
+    private void touchObject(final String contentHash) {
+        objectSizes.get(contentHash);
+        if (!objectsDirectory.resolve(contentHash).toFile().setLastModified(System.currentTimeMillis()))
+            logger.debug("Could not update the modification time of output file {} in the result cache.", contentHash);
+    }
+
+    /**
+     * Store an output file under the hash of its content (unless the same content is already stored).
+     *
+     * @param outputFile the output file.
+     * @return the content hash and the file name suffix, separated by a space.
+     * @throws IOException if storing the output file fails.
+     */
+    private String storeObject(final File outputFile) throws IOException {
+        final String contentHash = FileUtils.hashFile(outputFile);
+        if (!objectSizes.containsKey(contentHash)) {
+            final Path temporaryPath = Files.createTempFile(objectsDirectory, contentHash, TEMPORARY_SUFFIX);
+            Files.copy(outputFile.toPath(), temporaryPath, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temporaryPath, objectsDirectory.resolve(contentHash), StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            objectSizes.put(contentHash, outputFile.length());
+            totalSizeBytes += outputFile.length();
+        } else
+            touchObject(contentHash);
+        final String fileName = outputFile.getName();
+        final int periodIndex = fileName.lastIndexOf('.');
+        return contentHash + VALUE_SEPARATOR + (periodIndex > 0 ? fileName.substring(periodIndex) : "");
+    }
+
+    /**
+     * Evict the least recently used output files until the total size is within the maximum size.
+     *
+     * @throws IOException if deleting an output file fails.
+     */
+    private void evictObjects() throws IOException {
+        final Iterator<Map.Entry<String, Long>> iterator = objectSizes.entrySet().iterator();
+        while (totalSizeBytes > maxSizeBytes && iterator.hasNext()) {
+            final Map.Entry<String, Long> eldest = iterator.next();
+            logger.debug("Evicting output file {} ({} bytes) from the result cache.", eldest.getKey(), eldest.getValue());
+            Files.deleteIfExists(objectsDirectory.resolve(eldest.getKey()));
+            totalSizeBytes -= eldest.getValue();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Read the output files that were stored before, from least to most recently used. Left over temporary files are
+     * deleted.
+     *
+     * @throws IOException if reading the objects directory fails.
+     */
+    private void readObjects() throws IOException {
+        final List<File> objectFiles = new ArrayList<>();
+        try (final DirectoryStream<Path> objectPaths = Files.newDirectoryStream(objectsDirectory)) {
+            for (final Path objectPath : objectPaths)
+                if (objectPath.getFileName().toString().endsWith(TEMPORARY_SUFFIX))
+                    Files.delete(objectPath);
+                else
+                    objectFiles.add(objectPath.toFile());
+        }
+        Collections.sort(objectFiles, new Comparator<File>() {
+            @Override
+            public int compare(final File file1, final File file2) {
+                return Long.compare(file1.lastModified(), file2.lastModified());
+            }
+        });
+        for (final File objectFile : objectFiles) {
+            objectSizes.put(objectFile.getName(), objectFile.length());
+            totalSizeBytes += objectFile.length();
+        }
+    }
+}
@@ -26,6 +26,11 @@ public enum WorkflowType {
      */
     MOLGENIS,
 
+    /**
+     * Local workflow (engine) type: Galaxy workflows that are run with local processes.
+     */
+    LOCAL,
+
     /**
      * Unknown workflow (engine) type.
      */
@@ -0,0 +1,141 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.core.concurrent;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Completion waiter that probes a check on a scheduler, following an adaptive backoff policy. No thread is blocked
+ * between probes and the returned future is completed directly after the probe that detects completion.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class BackoffCompletionWaiter implements CompletionWaiter {
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(BackoffCompletionWaiter.class);
+
+    /**
+     * The scheduler that runs the probes.
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Create a completion waiter that uses the shared scheduler.
+     */
+    public BackoffCompletionWaiter() {
+        this(SharedExecutors.getScheduler());
+    }
+
+    /**
+     * Create a completion waiter that uses a specific scheduler.
+     *
+     * @param scheduler the scheduler that runs the probes.
+     */
+    public BackoffCompletionWaiter(final ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public ListenableFuture<Boolean> waitForCompletion(final CompletionCheck completionCheck,
+                                                       final BackoffPolicy backoffPolicy) {
+        final SettableFuture<Boolean> completionFuture = SettableFuture.create();
+        final long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffPolicy.getTimeoutMillis());
+        scheduleProbe(new Probe(completionCheck, backoffPolicy, completionFuture, deadlineNanos),
+                      backoffPolicy.getInitialDelayMillis());
+        return completionFuture;
+    }
+
+    /**
+     * Schedule the next probe. The delay is shortened if the deadline would be passed otherwise.
+     *
+     * @param probe       the probe to run.
+     * @param delayMillis the delay (without jitter) before the probe is run in milliseconds.
+     */
+    private void scheduleProbe(final Probe probe, final long delayMillis) {
+        probe.delayMillis = delayMillis;
+        final long jitteredDelayMillis = probe.backoffPolicy.applyJitter(delayMillis, ThreadLocalRandom.current());
+        final long remainingMillis = TimeUnit.NANOSECONDS.toMillis(probe.deadlineNanos - System.nanoTime());
+        final long actualDelayMillis = Math.max(0, Math.min(jitteredDelayMillis, remainingMillis));
+        logger.trace("Next completion probe in {} ms.", actualDelayMillis);
+        scheduler.schedule(probe, actualDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * A single probe of a completion check, which reschedules itself until completion or the deadline.
+     */
+    private final class Probe implements Runnable {
+        /**
+         * The check to probe.
+         */
+        private final CompletionCheck completionCheck;
+
+        /**
+         * The policy that determines the probe intervals and the deadline.
+         */
+        private final BackoffPolicy backoffPolicy;
+
+        /**
+         * The future to complete.
+         */
+        private final SettableFuture<Boolean> completionFuture;
+
+        /**
+         * The deadline (in terms of System.nanoTime).
+         */
+        private final long deadlineNanos;
+
+        /**
+         * The delay (without jitter) before this probe was run in milliseconds.
+         */
+        private long delayMillis;
+
+        /**
+         * Create a probe.
+         *
+         * @param completionCheck  the check to probe.
+         * @param backoffPolicy    the policy that determines the probe intervals and the deadline.
+         * @param completionFuture the future to complete.
+         * @param deadlineNanos    the deadline (in terms of System.nanoTime).
+         */
+        private Probe(final CompletionCheck completionCheck, final BackoffPolicy backoffPolicy,
+                      final SettableFuture<Boolean> completionFuture, final long deadlineNanos) {
+            this.completionCheck = completionCheck;
+            this.backoffPolicy = backoffPolicy;
+            this.completionFuture = completionFuture;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        @Override
+        public void run() {
+            // The future is done already if the caller has cancelled the waiting.
+            if (!completionFuture.isDone()) {
+                // CHECKSTYLE_OFF: IllegalCatchCheck
+                try {
+                    if (completionCheck.isComplete())
+                        completionFuture.set(true);
+                    else if (System.nanoTime() - deadlineNanos >= 0)
+                        completionFuture.set(false);
+                    else
+                        scheduleProbe(this, backoffPolicy.getNextDelayMillis(delayMillis));
+                } catch (final RuntimeException e) {
+                    logger.error("Exception while checking for completion.", e);
+                    completionFuture.setException(e);
+                }
+                // CHECKSTYLE_ON: IllegalCatchCheck
+            }
+        }
+    }
+}
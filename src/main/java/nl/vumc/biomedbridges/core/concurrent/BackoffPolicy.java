@@ -0,0 +1,153 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.core.concurrent;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Random;
+
+import nl.vumc.biomedbridges.core.Constants;
+
+/**
+ * Adaptive backoff policy for probing a process until it completes: the first probes follow each other quickly, the
+ * intervals grow geometrically up to a maximum, a random jitter spreads probes of concurrent waiters, and a deadline
+ * (instead of a number of probes) limits the total waiting time.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class BackoffPolicy {
+    /**
+     * The default delay before the first probe in milliseconds.
+     */
+    public static final long DEFAULT_INITIAL_DELAY_MILLIS = 250;
+
+    /**
+     * The default factor with which the delay grows after each probe.
+     */
+    public static final double DEFAULT_MULTIPLIER = 2.0;
+
+    /**
+     * The default jitter: the fraction of a delay that is randomly added or subtracted.
+     */
+    public static final double DEFAULT_JITTER = 0.1;
+
+    /**
+     * The delay before the first probe in milliseconds.
+     */
+    private final long initialDelayMillis;
+
+    /**
+     * The maximum delay between two probes in milliseconds.
+     */
+    private final long maximumDelayMillis;
+
+    /**
+     * The factor with which the delay grows after each probe.
+     */
+    private final double multiplier;
+
+    /**
+     * The fraction of a delay that is randomly added or subtracted.
+     */
+    private final double jitter;
+
+    /**
+     * The maximum total waiting time in milliseconds.
+     */
+    private final long timeoutMillis;
+
+    /**
+     * Create a backoff policy.
+     *
+     * @param initialDelayMillis the delay before the first probe in milliseconds.
+     * @param maximumDelayMillis the maximum delay between two probes in milliseconds.
+     * @param multiplier         the factor with which the delay grows after each probe (at least 1).
+     * @param jitter             the fraction of a delay that is randomly added or subtracted (between 0 and 1).
+     * @param timeoutMillis      the maximum total waiting time in milliseconds.
+     */
+    public BackoffPolicy(final long initialDelayMillis, final long maximumDelayMillis, final double multiplier,
+                         final double jitter, final long timeoutMillis) {
+        Preconditions.checkArgument(initialDelayMillis >= 0 && maximumDelayMillis >= 0 && timeoutMillis >= 0,
+                                    "Delays and timeout should not be negative.");
+        Preconditions.checkArgument(multiplier >= 1, "The multiplier should be at least 1.");
+        Preconditions.checkArgument(jitter >= 0 && jitter < 1, "The jitter should be in the range [0, 1).");
+        this.initialDelayMillis = Math.min(initialDelayMillis, maximumDelayMillis);
+        this.maximumDelayMillis = maximumDelayMillis;
+        this.multiplier = multiplier;
+        this.jitter = jitter;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Create a backoff policy with the default initial delay, multiplier, and jitter, from the classic "wait a number
+     * of times for a number of seconds" settings. The wait period becomes the maximum delay and the total of all wait
+     * periods becomes the deadline.
+     *
+     * @param maxWaitCount the maximum number of times to wait.
+     * @param waitSeconds  the number of seconds to wait for each wait cycle.
+     * @return the backoff policy.
+     */
+    public static BackoffPolicy fromWaitSettings(final int maxWaitCount, final int waitSeconds) {
+        final long waitMillis = (long) waitSeconds * Constants.MILLISECONDS_PER_SECOND;
+        return new BackoffPolicy(DEFAULT_INITIAL_DELAY_MILLIS, waitMillis, DEFAULT_MULTIPLIER, DEFAULT_JITTER,
+                                 maxWaitCount * waitMillis);
+    }
+
+    /**
+     * Get the delay before the first probe in milliseconds.
+     *
+     * @return the delay before the first probe in milliseconds.
+     */
+    public long getInitialDelayMillis() {
+        return initialDelayMillis;
+    }
+
+    /**
+     * Get the maximum delay between two probes in milliseconds.
+     *
+     * @return the maximum delay between two probes in milliseconds.
+     */
+    public long getMaximumDelayMillis() {
+        return maximumDelayMillis;
+    }
+
+    /**
+     * Get the maximum total waiting time in milliseconds.
+     *
+     * @return the maximum total waiting time in milliseconds.
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Determine the delay that follows a previous delay (without jitter).
+     *
+     * @param previousDelayMillis the previous delay in milliseconds.
+     * @return the next delay in milliseconds.
+     */
+    public long getNextDelayMillis(final long previousDelayMillis) {
+        return Math.min(maximumDelayMillis, Math.max(1, (long) Math.ceil(previousDelayMillis * multiplier)));
+    }
+
+    /**
+     * Apply the random jitter to a delay.
+     *
+     * @param delayMillis     the delay in milliseconds.
+     * @param randomGenerator the random generator to use.
+     * @return the delay with jitter applied in milliseconds.
+     */
+    public long applyJitter(final long delayMillis, final Random randomGenerator) {
+        final double factor = 1 + jitter * (2 * randomGenerator.nextDouble() - 1);
+        return Math.max(0, Math.round(delayMillis * factor));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BackoffPolicy[initial: %d ms, maximum: %d ms, multiplier: %s, jitter: %s, timeout: %d ms]",
+                             initialDelayMillis, maximumDelayMillis, multiplier, jitter, timeoutMillis);
+    }
+}
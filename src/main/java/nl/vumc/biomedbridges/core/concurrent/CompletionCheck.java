@@ -0,0 +1,21 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.core.concurrent;
+
+/**
+ * A check that is probed repeatedly by a completion waiter until the watched process (like uploading data to a Galaxy
+ * history or running a workflow) has reached a terminal state.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public interface CompletionCheck {
+    /**
+     * Check whether the watched process has reached a terminal state.
+     *
+     * @return whether the watched process has reached a terminal state.
+     */
+    boolean isComplete();
+}
@@ -0,0 +1,27 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.core.concurrent;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * This interface describes a component that waits for a process to complete without blocking the calling thread.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public interface CompletionWaiter {
+    /**
+     * Start waiting for a check to report completion. The returned future is set to true as soon as the check reports
+     * completion and to false if the deadline of the backoff policy passes first. If the check throws a runtime
+     * exception, the future fails with that exception.
+     *
+     * @param completionCheck the check to probe.
+     * @param backoffPolicy   the policy that determines the probe intervals and the deadline.
+     * @return the future that is completed when the check reports completion or the deadline has passed.
+     */
+    ListenableFuture<Boolean> waitForCompletion(final CompletionCheck completionCheck,
+                                                final BackoffPolicy backoffPolicy);
+}
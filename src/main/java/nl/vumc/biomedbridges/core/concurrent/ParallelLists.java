@@ -0,0 +1,114 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.core.concurrent;
+
+import com.google.common.base.Function;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parallel counterparts of list utility methods, which use the shared fork-join pool.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class ParallelLists {
+    /**
+     * Hidden constructor. Only the static methods of this class are meant to be used.
+     */
+    private ParallelLists() {
+    }
+
+    /**
+     * Apply a function to all elements of a list in parallel. The work is split recursively over the shared fork-join
+     * pool, so the function can be applied to thousands of elements (like files to parse) without creating a task for
+     * the executor per element up front. Exceptions thrown by the function are rethrown by this method.
+     *
+     * @param fromList the list with the elements to transform.
+     * @param function the function to apply to each element.
+     * @param <F>      the type of the elements of the list.
+     * @param <T>      the type of the results of the function.
+     * @return a new list with the results, in the order of the elements.
+     */
+    public static <F, T> List<T> transform(final List<F> fromList, final Function<? super F, ? extends T> function) {
+        final List<F> elements = new ArrayList<>(fromList);
+        final Object[] results = new Object[elements.size()];
+        final TransformAction<F> transformAction = new TransformAction<>(elements, function, results, 0,
+                                                                         elements.size());
+        if (ForkJoinTask.inForkJoinPool())
+            transformAction.invoke();
+        else
+            SharedExecutors.getForkJoinPool().invoke(transformAction);
+        @SuppressWarnings("unchecked")
+        final List<T> resultList = (List<T>) Arrays.asList(results);
+        return new ArrayList<>(resultList);
+    }
+
+    /**
+     * The fork-join action that transforms a range of elements, splitting the range in halves until a single element
+     * is left.
+     *
+     * @param <F> the type of the elements of the list.
+     */
+    private static final class TransformAction<F> extends RecursiveAction {
+        /**
+         * The elements to transform.
+         */
+        private final List<F> elements;
+
+        /**
+         * The function to apply to each element.
+         */
+        private final Function<? super F, ?> function;
+
+        /**
+         * The array to store the results in.
+         */
+        private final Object[] results;
+
+        /**
+         * The index of the first element of the range.
+         */
+        private final int fromIndex;
+
+        /**
+         * The index after the last element of the range.
+         */
+        private final int toIndex;
+
+        /**
+         * Create a transform action for a range of elements.
+         *
+         * @param elements  the elements to transform.
+         * @param function  the function to apply to each element.
+         * @param results   the array to store the results in.
+         * @param fromIndex the index of the first element of the range.
+         * @param toIndex   the index after the last element of the range.
+         */
+        private TransformAction(final List<F> elements, final Function<? super F, ?> function, final Object[] results,
+                                final int fromIndex, final int toIndex) {
+            this.elements = elements;
+            this.function = function;
+            this.results = results;
+            this.fromIndex = fromIndex;
+            this.toIndex = toIndex;
+        }
+
+        @Override
+        protected void compute() {
+            if (toIndex - fromIndex == 1)
+                results[fromIndex] = function.apply(elements.get(fromIndex));
+            else if (toIndex - fromIndex > 1) {
+                final int middleIndex = (fromIndex + toIndex) >>> 1;
+                invokeAll(new TransformAction<>(elements, function, results, fromIndex, middleIndex),
+                          new TransformAction<>(elements, function, results, middleIndex, toIndex));
+            }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.core.concurrent;
+
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.ListeningScheduledExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Executors that are shared by all workflow engines in a JVM. The threads are daemon threads, so they do not keep an
+ * application alive when the work is done.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class SharedExecutors {
+    /**
+     * The minimum number of threads of the shared scheduler.
+     */
+    private static final int MINIMUM_SCHEDULER_THREAD_COUNT = 2;
+
+    /**
+     * The minimum number of threads of the shared executor for blocking tasks.
+     */
+    private static final int MINIMUM_BLOCKING_THREAD_COUNT = 8;
+
+    /**
+     * The number of threads per processor of the shared executor for blocking tasks.
+     */
+    private static final int BLOCKING_THREADS_PER_PROCESSOR = 4;
+
+    /**
+     * The number of threads of the shared executor for blocking tasks.
+     */
+    private static final int BLOCKING_THREAD_COUNT
+            = Math.max(MINIMUM_BLOCKING_THREAD_COUNT,
+                       BLOCKING_THREADS_PER_PROCESSOR * Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Hidden constructor. Only the static methods of this class are meant to be used.
+     */
+    private SharedExecutors() {
+    }
+
+    /**
+     * Get the scheduler that is used for probing workflow engines and for other short tasks.
+     *
+     * @return the shared scheduler.
+     */
+    public static ListeningScheduledExecutorService getScheduler() {
+        return SchedulerHolder.SCHEDULER;
+    }
+
+    /**
+     * Get the bounded executor that is used for blocking tasks, like calls to a workflow engine server and local
+     * workflow steps. Waiting for a workflow engine should be done with the scheduler instead.
+     *
+     * @return the shared executor for blocking tasks.
+     */
+    public static ListeningExecutorService getBlockingExecutor() {
+        return BlockingExecutorHolder.BLOCKING_EXECUTOR;
+    }
+
+    /**
+     * Get the number of threads of the shared executor for blocking tasks, which is the number of blocking tasks that
+     * can run at the same time.
+     *
+     * @return the number of threads of the shared executor for blocking tasks.
+     */
+    public static int getBlockingThreadCount() {
+        return BLOCKING_THREAD_COUNT;
+    }
+
+    /**
+     * Get the unbounded executor for the threads that copy data between the processes of streamed local tools. These
+     * threads cannot use the bounded executor for blocking tasks: the workflow runs that wait for them may hold all of
+     * its threads. Idle threads are stopped after a while.
+     *
+     * @return the shared executor for pump threads.
+     */
+    public static ListeningExecutorService getPumpExecutor() {
+        return PumpExecutorHolder.PUMP_EXECUTOR;
+    }
+
+    /**
+     * Get the fork-join pool that is used for splitting CPU-bound work (like parsing many definition files) over the
+     * available processors. The worker threads of a fork-join pool are daemon threads.
+     *
+     * @return the shared fork-join pool.
+     */
+    public static ForkJoinPool getForkJoinPool() {
+        return ForkJoinPoolHolder.FORK_JOIN_POOL;
+    }
+
+    /**
+     * Get the work-stealing pool that executes the steps of local workflows. The parallelism is equal to the number of
+     * processors, so independent steps use the available cores; this pool is separate from the shared fork-join pool,
+     * because steps wait for tool processes.
+     *
+     * @return the shared pool for workflow steps.
+     */
+    public static ForkJoinPool getStepPool() {
+        return StepPoolHolder.STEP_POOL;
+    }
+
+    /**
+     * Holder class that creates the shared scheduler when it is first used.
+     */
+    private static final class SchedulerHolder {
+        /**
+         * The shared scheduler.
+         */
+        private static final ListeningScheduledExecutorService SCHEDULER = MoreExecutors.listeningDecorator(
+                Executors.newScheduledThreadPool(
+                        Math.max(MINIMUM_SCHEDULER_THREAD_COUNT, Runtime.getRuntime().availableProcessors()),
+                        new ThreadFactoryBuilder().setNameFormat("workflow-runner-scheduler-%d").setDaemon(true).build()
+                )
+        );
+
+        /**
+         * Hidden constructor. Only the static field of this class is meant to be used.
+         */
+        private SchedulerHolder() {
+        }
+    }
+
+    /**
+     * Holder class that creates the shared executor for blocking tasks when it is first used.
+     */
+    private static final class BlockingExecutorHolder {
+        /**
+         * The shared executor for blocking tasks.
+         */
+        private static final ListeningExecutorService BLOCKING_EXECUTOR = MoreExecutors.listeningDecorator(
+                Executors.newFixedThreadPool(
+                        BLOCKING_THREAD_COUNT,
+                        new ThreadFactoryBuilder().setNameFormat("workflow-runner-blocking-%d").setDaemon(true).build()
+                )
+        );
+
+        /**
+         * Hidden constructor. Only the static field of this class is meant to be used.
+         */
+        private BlockingExecutorHolder() {
+        }
+    }
+
+    /**
+     * Holder class that creates the shared executor for pump threads when it is first used.
+     */
+    private static final class PumpExecutorHolder {
+        /**
+         * The shared executor for pump threads.
+         */
+        private static final ListeningExecutorService PUMP_EXECUTOR = MoreExecutors.listeningDecorator(
+                Executors.newCachedThreadPool(
+                        new ThreadFactoryBuilder().setNameFormat("workflow-runner-pump-%d").setDaemon(true).build()
+                )
+        );
+
+        /**
+         * Hidden constructor. Only the static field of this class is meant to be used.
+         */
+        private PumpExecutorHolder() {
+        }
+    }
+
+    /**
+     * Holder class that creates the shared fork-join pool when it is first used.
+     */
+    private static final class ForkJoinPoolHolder {
+        /**
+         * The shared fork-join pool (with a parallelism equal to the number of processors).
+         */
+        private static final ForkJoinPool FORK_JOIN_POOL = new ForkJoinPool();
+
+        /**
+         * Hidden constructor. Only the static field of this class is meant to be used.
+         */
+        private ForkJoinPoolHolder() {
+        }
+    }
+
+    /**
+     * Holder class that creates the shared pool for workflow steps when it is first used.
+     */
+    private static final class StepPoolHolder {
+        /**
+         * The shared pool for workflow steps (in asynchronous mode, since steps are submitted as events and never
+         * joined).
+         */
+        private static final ForkJoinPool STEP_POOL = new ForkJoinPool(
+                Runtime.getRuntime().availableProcessors(), ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true
+        );
+
+        /**
+         * Hidden constructor. Only the static field of this class is meant to be used.
+         */
+        private StepPoolHolder() {
+        }
+    }
+}
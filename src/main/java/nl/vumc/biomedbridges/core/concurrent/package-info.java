@@ -0,0 +1,9 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+/**
+ * Concurrency support for the Workflow Runner tool: shared executors and waiting for workflow engines to finish.
+ */
+package nl.vumc.biomedbridges.core.concurrent;
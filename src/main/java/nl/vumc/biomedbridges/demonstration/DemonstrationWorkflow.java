@@ -5,13 +5,9 @@
 
 package nl.vumc.biomedbridges.demonstration;
 
-import com.google.common.base.Charsets;
-import com.google.common.base.Joiner;
-import com.google.common.io.Files;
-
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 
@@ -25,7 +21,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * This is a very simple implementation of the Workflow interface.
+ * This is a very simple implementation of the Workflow interface. The workflows stream their input files instead of
+ * loading them into memory: the concatenate workflow copies the input files with FileUtils.concatenateFiles and the
+ * random lines workflow selects lines in a single pass with a ReservoirSampler.
  *
  * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
  */
@@ -35,6 +33,16 @@ public class DemonstrationWorkflow extends BaseWorkflow implements Workflow {
      */
     private static final Logger logger = LoggerFactory.getLogger(DemonstrationWorkflow.class);
 
+    /**
+     * The default seed of the random generator of the random lines workflow.
+     */
+    private static final long DEFAULT_RANDOM_SEED = 123456;
+
+    /**
+     * The seed of the random generator of the random lines workflow.
+     */
+    private long randomSeed = DEFAULT_RANDOM_SEED;
+
     /**
      * Create a demonstration workflow.
      *
@@ -44,6 +52,16 @@ public class DemonstrationWorkflow extends BaseWorkflow implements Workflow {
         super(name);
     }
 
+    /**
+     * Set the seed of the random generator of the random lines workflow. Runs with the same seed and input select the
+     * same lines.
+     *
+     * @param randomSeed the seed of the random generator.
+     */
+    public void setRandomSeed(final long randomSeed) {
+        this.randomSeed = randomSeed;
+    }
+
     @Override
     public boolean run() throws IOException, InterruptedException {
         boolean result = false;
@@ -65,12 +83,10 @@ public class DemonstrationWorkflow extends BaseWorkflow implements Workflow {
         final Object input2 = getInput("WorkflowInput2");
         final boolean result = input1 instanceof File && input2 instanceof File;
         if (result) {
-            final String inputString1 = Joiner.on("").join(Files.readLines((File) input1, Charsets.UTF_8));
-            final String inputString2 = Joiner.on("").join(Files.readLines((File) input2, Charsets.UTF_8));
-            logger.info("input 1: {}", inputString1);
-            logger.info("input 2: {}", inputString2);
-            addOutput("output", FileUtils.createOutputFile(this, inputString1, inputString2));
-            logger.info("output: {} {}", inputString1, inputString2);
+            final File outputFile = FileUtils.createOutputFile(this);
+            FileUtils.concatenateFiles(Arrays.asList((File) input1, (File) input2), outputFile);
+            addOutput("output", outputFile);
+            logger.info("output: {} ({} bytes)", outputFile, outputFile.length());
         } else
             logger.error("Input parameters are not of the expected type (two input files where expected).");
         return result;
@@ -92,10 +108,11 @@ public class DemonstrationWorkflow extends BaseWorkflow implements Workflow {
             final String numberOfLinesParameter = "num_lines";
             final int initialLineCount = (int) getParameters().get(stepId2).get(numberOfLinesParameter);
             final int definitiveLineCount = (int) getParameters().get(stepId3).get(numberOfLinesParameter);
-            final Random randomGenerator = new Random(123456);
-            final List<String> lines = Files.readLines((File) input, Charsets.UTF_8);
-            final List<String> selectedLines1 = selectRandomLines(lines, initialLineCount, randomGenerator);
-            final List<String> selectedLines2 = selectRandomLines(selectedLines1, definitiveLineCount, randomGenerator);
+            final Random randomGenerator = new Random(randomSeed);
+            final List<String> selectedLines1 = FileUtils.readLines((File) input,
+                                                                   new ReservoirSampler(initialLineCount, randomGenerator));
+            final List<String> selectedLines2 = ReservoirSampler.sample(selectedLines1, definitiveLineCount,
+                                                                        randomGenerator);
             final String[] selectedLines2Array = selectedLines2.toArray(new String[selectedLines2.size()]);
             final File outputFile = FileUtils.createOutputFile(this, selectedLines2Array);
             addOutput(RandomLinesExample.OUTPUT_NAME, outputFile);
@@ -104,29 +121,4 @@ public class DemonstrationWorkflow extends BaseWorkflow implements Workflow {
             logger.error("Expected input file was not found.");
         return result;
     }
-
-    /**
-     * Select a number of random lines from the list of lines. If the number of lines to be selected is greater than or
-     * equal to the total number of lines in the list, the entire list is returned.
-     *
-     * @param lines the list of lines.
-     * @param lineCount the number of lines to select.
-     * @param randomGenerator the random generator to use.
-     * @return the randomly selected lines.
-     */
-    private List<String> selectRandomLines(final List<String> lines, final int lineCount, final Random randomGenerator) {
-        final List<String> selectedLines = new ArrayList<>();
-        final List<Integer> selectedIndices = new ArrayList<>();
-        if (lineCount >= lines.size())
-            selectedLines.addAll(lines);
-        else
-            while (selectedIndices.size() < lineCount) {
-                final int selectedIndex = randomGenerator.nextInt(lines.size());
-                if (!selectedIndices.contains(selectedIndex)) {
-                    selectedIndices.add(selectedIndex);
-                    selectedLines.add(lines.get(selectedIndex));
-                }
-            }
-        return selectedLines;
-    }
 }
@@ -5,10 +5,14 @@
 
 package nl.vumc.biomedbridges.demonstration;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 import java.io.IOException;
+import java.util.concurrent.Callable;
 
 import nl.vumc.biomedbridges.core.Workflow;
 import nl.vumc.biomedbridges.core.WorkflowEngine;
+import nl.vumc.biomedbridges.core.concurrent.SharedExecutors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,4 +63,22 @@ public class DemonstrationWorkflowEngine implements WorkflowEngine {
         }
         return result;
     }
+
+    @Override
+    public ListenableFuture<Workflow> runWorkflowAsync(final Workflow workflow) {
+        return SharedExecutors.getBlockingExecutor().submit(new Callable<Workflow>() {
+            @Override
+            public Workflow call() {
+                workflow.setResult(runWorkflow(workflow));
+                return workflow;
+            }
+        });
+    }
+
+    /**
+     * Close the workflow engine. Demonstration workflows run in this process, so there is nothing to release.
+     */
+    @Override
+    public void close() {
+    }
 }
@@ -0,0 +1,120 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.demonstration;
+
+import com.google.common.io.LineProcessor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Line processor that selects a number of random lines in a single pass (reservoir sampling), so only the selected
+ * lines are kept in memory, however large the input is. Each line has the same chance to be selected. The selected
+ * lines are returned in the order of the input, like the Galaxy random lines tool does.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class ReservoirSampler implements LineProcessor<List<String>> {
+    /**
+     * The number of lines to select.
+     */
+    private final int sampleSize;
+
+    /**
+     * The random generator.
+     */
+    private final Random randomGenerator;
+
+    /**
+     * The selected lines.
+     */
+    private final List<String> selectedLines = new ArrayList<>();
+
+    /**
+     * The line numbers of the selected lines.
+     */
+    private final List<Long> selectedLineNumbers = new ArrayList<>();
+
+    /**
+     * The number of lines that have been processed.
+     */
+    private long lineCount;
+
+    /**
+     * Create a reservoir sampler.
+     *
+     * @param sampleSize      the number of lines to select.
+     * @param randomGenerator the random generator (use a generator with a fixed seed for reproducible results).
+     */
+    public ReservoirSampler(final int sampleSize, final Random randomGenerator) {
+        this.sampleSize = sampleSize;
+        this.randomGenerator = randomGenerator;
+    }
+
+    /**
+     * Select a number of random lines.
+     *
+     * @param lines           the lines.
+     * @param sampleSize      the number of lines to select.
+     * @param randomGenerator the random generator.
+     * @return the selected lines in the order of the input (all lines if there are not more than sampleSize).
+     */
+    public static List<String> sample(final Iterable<String> lines, final int sampleSize,
+                                      final Random randomGenerator) {
+        final ReservoirSampler sampler = new ReservoirSampler(sampleSize, randomGenerator);
+        for (final String line : lines)
+            sampler.processLine(line);
+        return sampler.getResult();
+    }
+
+    @Override
+    public boolean processLine(final String line) {
+        if (selectedLines.size() < sampleSize) {
+            selectedLines.add(line);
+            selectedLineNumbers.add(lineCount);
+        } else {
+            final long replacedIndex = nextIndex(lineCount + 1);
+            if (replacedIndex < sampleSize) {
+                selectedLines.set((int) replacedIndex, line);
+                selectedLineNumbers.set((int) replacedIndex, lineCount);
+            }
+        }
+        lineCount++;
+        return true;
+    }
+
+    @Override
+    public List<String> getResult() {
+        final List<Integer> indices = new ArrayList<>();
+        for (int index = 0; index < selectedLines.size(); index++)
+            indices.add(index);
+        Collections.sort(indices, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer index1, final Integer index2) {
+                return selectedLineNumbers.get(index1).compareTo(selectedLineNumbers.get(index2));
+            }
+        });
+        final List<String> result = new ArrayList<>();
+        for (final Integer index : indices)
+            result.add(selectedLines.get(index));
+        return result;
+    }
+
+    /**
+     * Get a random index from zero (inclusive) to a bound (exclusive).
+     *
+     * @param bound the bound.
+     * @return the random index.
+     */
+    private long nextIndex(final long bound) {
+        return bound <= Integer.MAX_VALUE
+               ? randomGenerator.nextInt((int) bound)
+               : (long) (randomGenerator.nextDouble() * bound);
+    }
+}
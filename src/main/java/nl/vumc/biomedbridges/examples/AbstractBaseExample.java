@@ -5,16 +5,16 @@
 
 package nl.vumc.biomedbridges.examples;
 
-import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
-import com.google.common.io.Files;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
 
 import nl.vumc.biomedbridges.core.Constants;
+import nl.vumc.biomedbridges.core.FileOutputHandle;
+import nl.vumc.biomedbridges.core.OutputHandle;
 import nl.vumc.biomedbridges.core.Workflow;
 import nl.vumc.biomedbridges.core.WorkflowEngineFactory;
 import nl.vumc.biomedbridges.core.WorkflowFactory;
@@ -167,7 +167,8 @@ public abstract class AbstractBaseExample {
     }
 
     /**
-     * Check the single output after running the workflow.
+     * Check the single output after running the workflow. Only the expected number of lines (plus one, to detect extra
+     * lines) is read from the output, so a large output does not need to be downloaded completely.
      *
      * @param workflow      the workflow that has been executed.
      * @param runResult     the result from running the workflow.
@@ -182,10 +183,9 @@ public abstract class AbstractBaseExample {
         boolean result = false;
         if (!runResult)
             logger.error("Error while running workflow {}.", workflow.getName());
-        final Object output = workflow.getOutput(outputName);
-        if (output instanceof File) {
-            final File outputFile = (File) output;
-            final List<String> actualLines = Files.readLines(outputFile, Charsets.UTF_8);
+        final OutputHandle outputHandle = workflow.getOutputHandle(outputName);
+        if (outputHandle != null) {
+            final List<String> actualLines = outputHandle.readLines(expectedLines.size() + 1);
             final String lineSeparator = " | ";
             final String partialMessage = "the line" + (expectedLines.size() > 1 ? "s" : "") + " we expected!";
             if (expectedLines.equals(actualLines)) {
@@ -197,15 +197,29 @@ public abstract class AbstractBaseExample {
                 logger.error("  expected: " + Joiner.on(lineSeparator).join(expectedLines));
                 logger.error("  actual:   " + Joiner.on(lineSeparator).join(actualLines));
             }
-            final boolean deleteResult = outputFile.delete();
-            result &= deleteResult;
-            if (!deleteResult)
-                logger.error("Deleting output file {} failed (after checking contents).", outputFile.getAbsolutePath());
+            result &= deleteLocalOutput(outputHandle);
         } else
             logger.error("There is no output file named {}.", outputName);
         return runResult && result;
     }
 
+    /**
+     * Delete the local copy of an output after checking its contents (outputs that are read from a server on demand
+     * have no local copy).
+     *
+     * @param outputHandle the output handle.
+     * @return whether the local copy was deleted (or there was no local copy).
+     */
+    private static boolean deleteLocalOutput(final OutputHandle outputHandle) {
+        if (!(outputHandle instanceof FileOutputHandle))
+            return true;
+        final File outputFile = ((FileOutputHandle) outputHandle).getFile();
+        final boolean deleteResult = outputFile.delete();
+        if (!deleteResult)
+            logger.error("Deleting output file {} failed (after checking contents).", outputFile.getAbsolutePath());
+        return deleteResult;
+    }
+
     /**
      * Finish running an example by logging the duration.
      *
@@ -218,13 +232,15 @@ public abstract class AbstractBaseExample {
     }
 
     /**
-     * Finish running an example by logging the duration. This method returns the workflow result as well.
+     * Finish running an example by logging the duration and closing the workflow (which releases its Galaxy history).
+     * This method returns the workflow result as well.
      *
      * @param workflow the workflow that ran.
      * @return the result from running the workflow.
      */
     public boolean finishExample(final Workflow workflow) {
         finishExample(logger);
+        workflow.close();
         return workflow.getResult();
     }
 
@@ -99,6 +99,7 @@ public class HistogramExample extends AbstractBaseExample {
         } catch (final InterruptedException | IOException e) {
             logger.error("Exception while running workflow {}.", workflow.getName(), e);
         }
+        workflow.close();
         finishExample(logger);
         return result;
     }
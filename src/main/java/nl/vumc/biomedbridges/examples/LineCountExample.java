@@ -5,6 +5,8 @@
 
 package nl.vumc.biomedbridges.examples;
 
+import com.google.common.io.LineProcessor;
+
 import java.io.File;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
@@ -12,8 +14,6 @@ import java.lang.management.ThreadInfo;
 import java.lang.management.ThreadMXBean;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.List;
 
@@ -163,12 +163,33 @@ public class LineCountExample extends AbstractBaseExample {
      * @throws IOException when reading from the file fails.
      */
     protected static List<String> internalCounts(final File inputFile) throws IOException {
-        final List<String> lines = Files.readAllLines(inputFile.toPath(), Charset.forName("UTF-8"));
-        long wordCount = 0;
+        return FileUtils.readLines(inputFile, new WordCounter());
+    }
 
-        for (final String line : lines)
+    /**
+     * Line processor that counts the lines and words of a file, like wc does.
+     */
+    private static class WordCounter implements LineProcessor<List<String>> {
+        /**
+         * The number of lines.
+         */
+        private long lineCount;
+
+        /**
+         * The number of words.
+         */
+        private long wordCount;
+
+        @Override
+        public boolean processLine(final String line) {
+            lineCount++;
             wordCount += line.split("\\s+").length;
+            return true;
+        }
 
-        return Arrays.asList(HEADER_LINE, String.format("%d\t%d", lines.size(), wordCount));
+        @Override
+        public List<String> getResult() {
+            return Arrays.asList(HEADER_LINE, String.format("%d\t%d", lineCount, wordCount));
+        }
     }
 }
@@ -156,6 +156,7 @@ public class RandomLinesExample extends AbstractBaseExample {
         } catch (final InterruptedException | IOException e) {
             logger.error("Exception while running workflow {}.", workflow.getName(), e);
         }
+        workflow.close();
         finishExample(logger);
 
         return result;
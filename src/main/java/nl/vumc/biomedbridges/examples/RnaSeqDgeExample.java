@@ -131,6 +131,7 @@ public class RnaSeqDgeExample extends AbstractBaseExample {
         System.out.println("Thread dump:");
         System.out.println(getThreadDump());
 
+        workflow.close();
         finishExample(logger);
         return result;
     }
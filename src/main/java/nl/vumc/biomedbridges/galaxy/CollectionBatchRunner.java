@@ -0,0 +1,534 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.galaxy;
+
+import com.github.jmchilton.blend4j.galaxy.GalaxyInstance;
+import com.github.jmchilton.blend4j.galaxy.HistoriesClient;
+import com.github.jmchilton.blend4j.galaxy.beans.Dataset;
+import com.github.jmchilton.blend4j.galaxy.beans.HistoryContents;
+import com.github.jmchilton.blend4j.galaxy.beans.WorkflowDetails;
+import com.github.jmchilton.blend4j.galaxy.beans.WorkflowInputs;
+import com.github.jmchilton.blend4j.galaxy.beans.collection.CollectionSource;
+import com.github.jmchilton.blend4j.galaxy.beans.collection.request.CollectionDescription;
+import com.github.jmchilton.blend4j.galaxy.beans.collection.request.HistoryDatasetElement;
+import com.github.jmchilton.blend4j.galaxy.beans.collection.response.CollectionElementResponse;
+import com.github.jmchilton.blend4j.galaxy.beans.collection.response.CollectionResponse;
+import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.AsyncCallable;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import nl.vumc.biomedbridges.core.BatchResult;
+import nl.vumc.biomedbridges.core.Workflow;
+import nl.vumc.biomedbridges.core.concurrent.SharedExecutors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runner that runs a batch of Galaxy workflows with a single workflow invocation. The input files of all workflows
+ * (one workflow for each sample) are uploaded and combined into a list dataset collection for each workflow input,
+ * with an element for each sample. The workflow is invoked once with these collections, so Galaxy maps the workflow
+ * over the elements and schedules the jobs of all samples in parallel. The output collections that Galaxy creates use
+ * the same element identifiers, so each output element is mapped back to the workflow of its sample.
+ *
+ * Compared to running the workflows one by one, this saves an upload wait, a workflow invocation and a poll loop for
+ * each sample. All workflows in a batch should have the same name, input names and parameters; all inputs should be
+ * files.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class CollectionBatchRunner {
+    /**
+     * The Galaxy collection type of the input collections.
+     */
+    public static final String COLLECTION_TYPE_LIST = "list";
+
+    /**
+     * The prefix of the element identifiers in the input collections (followed by the one-based sample number).
+     */
+    public static final String ELEMENT_IDENTIFIER_PREFIX = "sample-";
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(CollectionBatchRunner.class);
+
+    /**
+     * The Galaxy workflow engine with the settings for uploading, waiting and downloading.
+     */
+    private final GalaxyWorkflowEngine workflowEngine;
+
+    /**
+     * The Galaxy server instance that runs the workflows.
+     */
+    private final GalaxyInstance galaxyInstance;
+
+    /**
+     * The histories client for accessing Galaxy histories.
+     */
+    private final HistoriesClient historiesClient;
+
+    /**
+     * Create a collection batch runner.
+     *
+     * @param workflowEngine the Galaxy workflow engine with the settings for uploading, waiting and downloading.
+     */
+    public CollectionBatchRunner(final GalaxyWorkflowEngine workflowEngine) {
+        this.workflowEngine = workflowEngine;
+        this.galaxyInstance = workflowEngine.getGalaxyInstance();
+        this.historiesClient = galaxyInstance.getHistoriesClient();
+    }
+
+    /**
+     * Get the identifier of the collection element for a sample.
+     *
+     * @param sampleIndex the zero-based index of the sample in the batch.
+     * @return the element identifier.
+     */
+    public static String getElementIdentifier(final int sampleIndex) {
+        return ELEMENT_IDENTIFIER_PREFIX + (sampleIndex + 1);
+    }
+
+    /**
+     * Start running a batch of workflows with a single workflow invocation.
+     *
+     * @param workflows the workflows to run (one for each sample).
+     * @return the future that is completed with the aggregated results when the batch has finished.
+     */
+    public ListenableFuture<BatchResult> runWorkflows(final List<? extends Workflow> workflows) {
+        checkWorkflows(workflows);
+        logger.info("Running workflow {} for a batch of {} sample(s) as dataset collections.",
+                    workflows.get(0).getName(), workflows.size());
+        final ListenableFuture<GalaxyWorkflowRun> runFuture = SharedExecutors.getBlockingExecutor().submit(
+                new Callable<GalaxyWorkflowRun>() {
+                    @Override
+                    public GalaxyWorkflowRun call() {
+                        return createBatchRun(workflows.get(0));
+                    }
+                });
+        return Futures.transformAsync(runFuture, new AsyncFunction<GalaxyWorkflowRun, BatchResult>() {
+            @Override
+            public ListenableFuture<BatchResult> apply(final GalaxyWorkflowRun batchRun) {
+                return executeBatch(batchRun, workflows);
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Check that the workflows can be run as one batch: the same name, input names and parameters and only files as
+     * inputs.
+     *
+     * @param workflows the workflows to check.
+     */
+    private void checkWorkflows(final List<? extends Workflow> workflows) {
+        Preconditions.checkArgument(!workflows.isEmpty(), "A batch should contain at least one workflow.");
+        final Workflow template = workflows.get(0);
+        for (final Workflow workflow : workflows) {
+            Preconditions.checkArgument(workflow instanceof GalaxyWorkflow,
+                                        "Only Galaxy workflows can be run as a batch.");
+            Preconditions.checkArgument(Objects.equal(template.getName(), workflow.getName())
+                                        && template.getInputMap().keySet().equals(workflow.getInputMap().keySet())
+                                        && Objects.equal(template.getParameters(), workflow.getParameters()),
+                                        "All workflows in a batch should have the same name, inputs and parameters.");
+            for (final Object inputValue : workflow.getAllInputValues())
+                Preconditions.checkArgument(inputValue instanceof File,
+                                            "All workflow inputs in a batch should be files.");
+        }
+    }
+
+    /**
+     * Create the state of the batch run, with a leased history for the collections and outputs.
+     *
+     * @param template the first workflow of the batch.
+     * @return the state of the batch run.
+     */
+    private GalaxyWorkflowRun createBatchRun(final Workflow template) {
+        final String batchHistoryId = HistoryPool.forInstance(galaxyInstance)
+                .leaseHistory(workflowEngine.getLeasedHistoryName(template.getName() + " Batch History"));
+        return new GalaxyWorkflowRun(template, galaxyInstance, workflowEngine.getHistoryUtils(), batchHistoryId,
+                                     true);
+    }
+
+    /**
+     * Prepare the batch run: use the upload cache history (if there is an upload cache) and make sure the workflow is
+     * available on the server.
+     *
+     * @param batchRun the state of the batch run.
+     */
+    private void prepareBatchRun(final GalaxyWorkflowRun batchRun) {
+        final UploadCache uploadCache = workflowEngine.getUploadCache();
+        if (uploadCache != null)
+            batchRun.setUploadContentsIndex(new HistoryContentsIndex(galaxyInstance, workflowEngine.getHistoryUtils(),
+                                                                     uploadCache.getCacheHistoryId(galaxyInstance)));
+        ((GalaxyWorkflow) batchRun.getWorkflow()).ensureWorkflowIsOnServer(workflowEngine.getWorkflowRegistry());
+    }
+
+    /**
+     * Prepare the batch run and chain its stages. The preparation and the chaining are done in a task of the future,
+     * so every failure (also before the stages are chained) completes the future. When the batch has ended, the
+     * batch history is released to the history pool.
+     *
+     * @param batchRun  the state of the batch run.
+     * @param workflows the workflows in the batch.
+     * @return the future that is completed with the aggregated results.
+     */
+    private ListenableFuture<BatchResult> executeBatch(final GalaxyWorkflowRun batchRun,
+                                                       final List<? extends Workflow> workflows) {
+        final ListenableFuture<BatchResult> resultFuture = Futures.submitAsync(new AsyncCallable<BatchResult>() {
+            @Override
+            public ListenableFuture<BatchResult> call() {
+                prepareBatchRun(batchRun);
+                return chainBatchStages(batchRun, workflows);
+            }
+        }, SharedExecutors.getBlockingExecutor());
+        resultFuture.addListener(new Runnable() {
+            @Override
+            public void run() {
+                HistoryPool.forInstance(galaxyInstance).releaseHistory(batchRun.getHistoryId());
+            }
+        }, MoreExecutors.directExecutor());
+        return resultFuture;
+    }
+
+    /**
+     * Chain the stages of the batch run: upload, create the collections and invoke the workflow, wait and download.
+     * An input file that is used by several samples is uploaded once.
+     *
+     * @param batchRun  the state of the batch run.
+     * @param workflows the workflows in the batch.
+     * @return the future that is completed with the aggregated results.
+     */
+    private ListenableFuture<BatchResult> chainBatchStages(final GalaxyWorkflowRun batchRun,
+                                                           final List<? extends Workflow> workflows) {
+        final Set<File> inputFiles = new LinkedHashSet<>();
+        for (final Workflow workflow : workflows)
+            for (final Object inputValue : workflow.getAllInputValues())
+                inputFiles.add((File) inputValue);
+        final ListenableFuture<List<UploadedInput>> uploadsFuture = workflowEngine.createInputUploader().uploadFiles(
+                batchRun.getUploadContentsIndex().getHistoryId(), inputFiles,
+                workflowEngine.getUploadFileType(batchRun.getWorkflow()));
+        final AsyncFunction<List<UploadedInput>, Boolean> waitForUploads
+                = new AsyncFunction<List<UploadedInput>, Boolean>() {
+                    @Override
+                    public ListenableFuture<Boolean> apply(final List<UploadedInput> uploadedInputs) {
+                        return whenUploadsReady(batchRun, uploadedInputs);
+                    }
+                };
+        final ListenableFuture<Boolean> uploadFuture = Futures.transformAsync(uploadsFuture, waitForUploads,
+                                                                              MoreExecutors.directExecutor());
+        final Set<String> inputCollectionIds = new HashSet<>();
+        final AsyncFunction<Boolean, Boolean> invokeWorkflow = new AsyncFunction<Boolean, Boolean>() {
+            @Override
+            public ListenableFuture<Boolean> apply(final Boolean uploadsReady) throws IOException {
+                if (!uploadsReady)
+                    throw new IOException("The input files of the batch were not uploaded successfully.");
+                inputCollectionIds.addAll(invokeBatch(batchRun, workflows));
+                return workflowEngine.whenOutputsReady(batchRun, workflowEngine.createWorkflowBackoffPolicy(), null);
+            }
+        };
+        final ListenableFuture<Boolean> finishedFuture = Futures.transformAsync(uploadFuture, invokeWorkflow,
+                                                                                SharedExecutors.getBlockingExecutor());
+        return Futures.transformAsync(finishedFuture, new AsyncFunction<Boolean, BatchResult>() {
+            @Override
+            public ListenableFuture<BatchResult> apply(final Boolean workflowFinished) throws IOException {
+                return downloadOutputs(batchRun, workflows, inputCollectionIds, workflowFinished);
+            }
+        }, SharedExecutors.getBlockingExecutor());
+    }
+
+    /**
+     * Start waiting for the uploaded input files to be ready. The state of each uploaded dataset is tracked when
+     * Galaxy reported the dataset IDs of all (distinct) input files; otherwise the upload history as a whole is
+     * watched.
+     *
+     * @param batchRun       the state of the batch run.
+     * @param uploadedInputs the uploaded inputs.
+     * @return the future that is set to whether all input datasets are ready.
+     */
+    private ListenableFuture<Boolean> whenUploadsReady(final GalaxyWorkflowRun batchRun,
+                                                       final List<UploadedInput> uploadedInputs) {
+        final Map<File, String> inputDatasetIds = batchRun.getInputDatasetIds();
+        for (final UploadedInput uploadedInput : uploadedInputs)
+            if (uploadedInput.getDatasetId() != null)
+                inputDatasetIds.put(uploadedInput.getInputFile(), uploadedInput.getDatasetId());
+        final HistoryContentsIndex uploadContentsIndex = batchRun.getUploadContentsIndex();
+        if (inputDatasetIds.size() != uploadedInputs.size())
+            return workflowEngine.whenHistoryReady(uploadContentsIndex.getHistoryId(),
+                                                   workflowEngine.createUploadBackoffPolicy());
+        final DatasetsReadyCheck datasetsReadyCheck = new DatasetsReadyCheck(uploadContentsIndex,
+                                                                             inputDatasetIds.values());
+        final ListenableFuture<Boolean> readyFuture = workflowEngine.getCompletionWaiter().waitForCompletion(
+                datasetsReadyCheck, workflowEngine.createUploadBackoffPolicy());
+        return Futures.transform(readyFuture, new Function<Boolean, Boolean>() {
+            @Override
+            public Boolean apply(final Boolean ready) {
+                if (!datasetsReadyCheck.getFailedDatasetIds().isEmpty())
+                    logger.error("Uploaded datasets not in 'ok' state: {}.", datasetsReadyCheck.getFailedDatasetIds());
+                return ready && datasetsReadyCheck.getFailedDatasetIds().isEmpty();
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Create an input collection for each workflow input and invoke the workflow once with these collections.
+     *
+     * @param batchRun  the state of the batch run.
+     * @param workflows the workflows in the batch.
+     * @return the IDs of the input collections.
+     */
+    private Set<String> invokeBatch(final GalaxyWorkflowRun batchRun, final List<? extends Workflow> workflows) {
+        final Workflow template = batchRun.getWorkflow();
+        final WorkflowRegistry workflowRegistry = workflowEngine.getWorkflowRegistry();
+        final String galaxyWorkflowId = workflowRegistry.getWorkflowId(template.getName());
+        final WorkflowDetails workflowDetails = workflowRegistry.getWorkflowDetails(galaxyWorkflowId);
+        final WorkflowInputs inputs = new WorkflowInputs();
+        inputs.setDestination(new WorkflowInputs.ExistingHistory(batchRun.getHistoryId()));
+        inputs.setWorkflowId(galaxyWorkflowId);
+        final Set<String> inputCollectionIds = new HashSet<>();
+        for (final String inputName : template.getInputMap().keySet()) {
+            final String collectionId = createInputCollection(batchRun, inputName, workflows);
+            inputCollectionIds.add(collectionId);
+            WorkflowUtils.setInputByLabel(inputName, workflowDetails, inputs,
+                                          new WorkflowInputs.WorkflowInput(collectionId,
+                                                                           WorkflowInputs.InputSourceType.HDCA));
+        }
+        if (template.getParameters() != null && template.getParameters().size() > 0)
+            GalaxyWorkflowEngine.addParametersToInputsObject(template, inputs, workflowDetails.getSteps());
+        batchRun.setWorkflowOutputs(galaxyInstance.getWorkflowsClient().runWorkflow(inputs));
+        logger.info("Running the workflow for {} sample(s) (history ID: {}).", workflows.size(),
+                    batchRun.getHistoryId());
+        return inputCollectionIds;
+    }
+
+    /**
+     * Create the list collection for a workflow input, with the input file of each sample as an element.
+     *
+     * @param batchRun  the state of the batch run.
+     * @param inputName the name of the workflow input.
+     * @param workflows the workflows in the batch.
+     * @return the ID of the collection.
+     */
+    private String createInputCollection(final GalaxyWorkflowRun batchRun, final String inputName,
+                                         final List<? extends Workflow> workflows) {
+        final CollectionDescription collectionDescription = new CollectionDescription();
+        collectionDescription.setCollectionType(COLLECTION_TYPE_LIST);
+        collectionDescription.setName(String.format("%s (%d samples)", inputName, workflows.size()));
+        for (int sampleIndex = 0; sampleIndex < workflows.size(); sampleIndex++) {
+            final HistoryDatasetElement element = new HistoryDatasetElement();
+            element.setSource(CollectionSource.HDA);
+            element.setId(getInputDatasetId(batchRun, (File) workflows.get(sampleIndex).getInput(inputName)));
+            element.setName(getElementIdentifier(sampleIndex));
+            collectionDescription.addDatasetElement(element);
+        }
+        return historiesClient.createDatasetCollection(batchRun.getHistoryId(), collectionDescription).getId();
+    }
+
+    /**
+     * Get the ID of the dataset with the content of an input file.
+     *
+     * @param batchRun  the state of the batch run.
+     * @param inputFile the input file.
+     * @return the dataset ID.
+     */
+    private String getInputDatasetId(final GalaxyWorkflowRun batchRun, final File inputFile) {
+        final String datasetId = batchRun.getInputDatasetIds().get(inputFile);
+        return datasetId != null
+               ? datasetId
+               : batchRun.getUploadContentsIndex().refresh().getDatasetId(inputFile.getName());
+    }
+
+    /**
+     * Download the elements of the output collections and add them to the outputs of the workflows of their samples.
+     *
+     * @param batchRun           the state of the batch run.
+     * @param workflows          the workflows in the batch.
+     * @param inputCollectionIds the IDs of the input collections (which are not outputs).
+     * @param workflowFinished   whether the workflow finished before the deadline.
+     * @return the future that is completed with the aggregated results when the outputs have been downloaded.
+     * @throws IOException if a local file could not be created.
+     */
+    private ListenableFuture<BatchResult> downloadOutputs(final GalaxyWorkflowRun batchRun,
+                                                          final List<? extends Workflow> workflows,
+                                                          final Set<String> inputCollectionIds,
+                                                          final boolean workflowFinished) throws IOException {
+        if (!workflowFinished)
+            logger.warn("Stopped waiting for the batch of {} sample(s) to finish.", workflows.size());
+        final Map<String, SampleOutput> sampleOutputs = new LinkedHashMap<>();
+        for (final HistoryContents historyContents : historiesClient.showHistoryContents(batchRun.getHistoryId()))
+            if (HistoryUtils.COLLECTION_CONTENT_TYPE.equals(historyContents.getHistoryContentType())
+                && !historyContents.isDeleted() && !inputCollectionIds.contains(historyContents.getId()))
+                addSampleOutputs(batchRun.getHistoryId(), workflows, historyContents, sampleOutputs);
+        final Map<String, File> outputFiles = new LinkedHashMap<>();
+        for (final Map.Entry<String, SampleOutput> sampleOutput : sampleOutputs.entrySet())
+            outputFiles.put(sampleOutput.getKey(), sampleOutput.getValue().getOutputFile());
+        final Function<Map<String, TransferStatistics>, BatchResult> createResult
+                = new Function<Map<String, TransferStatistics>, BatchResult>() {
+                    @Override
+                    public BatchResult apply(final Map<String, TransferStatistics> statistics) {
+                        return createBatchResult(workflows, sampleOutputs, statistics, workflowFinished);
+                    }
+                };
+        final OutputDownloader outputDownloader = workflowEngine.createOutputDownloader();
+        return Futures.transform(outputDownloader.downloadDatasets(batchRun.getHistoryId(), outputFiles), createResult,
+                                 MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Add the elements of an output collection as outputs of the samples that they belong to.
+     *
+     * @param batchHistoryId  the ID of the batch history.
+     * @param workflows       the workflows in the batch.
+     * @param outputContents  the history contents of the output collection.
+     * @param sampleOutputs   the sample outputs by dataset ID to add to.
+     * @throws IOException if a local file could not be created.
+     */
+    private void addSampleOutputs(final String batchHistoryId, final List<? extends Workflow> workflows,
+                                  final HistoryContents outputContents, final Map<String, SampleOutput> sampleOutputs)
+            throws IOException {
+        final CollectionResponse collection = historiesClient.showDatasetCollection(batchHistoryId,
+                                                                                    outputContents.getId());
+        for (final CollectionElementResponse element : collection.getElements()) {
+            final int sampleIndex = getSampleIndex(element.getElementIdentifier(), workflows.size());
+            if (sampleIndex >= 0 && element.getResponseElement() instanceof Dataset) {
+                final String datasetId = ((Dataset) element.getResponseElement()).getId();
+                final Dataset dataset = historiesClient.showDataset(batchHistoryId, datasetId);
+                final String outputName = dataset.getName() != null ? dataset.getName() : outputContents.getName();
+                final Workflow workflow = workflows.get(sampleIndex);
+                final File outputFile = workflowEngine.createOutputFile(workflow, batchHistoryId, dataset, outputName);
+                sampleOutputs.put(datasetId, new SampleOutput(workflow, outputName, outputFile));
+            } else
+                logger.warn("Skipping element {} of output collection {}.", element.getElementIdentifier(),
+                            outputContents.getName());
+        }
+    }
+
+    /**
+     * Determine the index of the sample that a collection element belongs to.
+     *
+     * @param elementIdentifier the element identifier.
+     * @param sampleCount       the number of samples in the batch.
+     * @return the zero-based sample index (or -1 if the element does not belong to a sample).
+     */
+    private static int getSampleIndex(final String elementIdentifier, final int sampleCount) {
+        int sampleIndex = -1;
+        if (elementIdentifier != null && elementIdentifier.startsWith(ELEMENT_IDENTIFIER_PREFIX)) {
+            try {
+                sampleIndex = Integer.parseInt(elementIdentifier.substring(ELEMENT_IDENTIFIER_PREFIX.length())) - 1;
+            } catch (final NumberFormatException e) {
+                logger.trace("Element identifier {} has no sample number.", elementIdentifier, e);
+            }
+        }
+        return sampleIndex < sampleCount ? sampleIndex : -1;
+    }
+
+    /**
+     * Add the downloaded outputs to the workflows and aggregate the results. A sample is successful if the workflow
+     * finished and all its outputs (at least one) were downloaded.
+     *
+     * @param workflows        the workflows in the batch.
+     * @param sampleOutputs    the sample outputs by dataset ID.
+     * @param statistics       the transfer statistics of the downloaded datasets.
+     * @param workflowFinished whether the workflow finished before the deadline.
+     * @return the aggregated results.
+     */
+    private static BatchResult createBatchResult(final List<? extends Workflow> workflows,
+                                                 final Map<String, SampleOutput> sampleOutputs,
+                                                 final Map<String, TransferStatistics> statistics,
+                                                 final boolean workflowFinished) {
+        final Set<Workflow> incompleteWorkflows = new HashSet<>();
+        for (final Map.Entry<String, SampleOutput> outputEntry : sampleOutputs.entrySet()) {
+            final SampleOutput sampleOutput = outputEntry.getValue();
+            if (statistics.containsKey(outputEntry.getKey()))
+                sampleOutput.getWorkflow().addOutput(sampleOutput.getOutputName(), sampleOutput.getOutputFile());
+            else
+                incompleteWorkflows.add(sampleOutput.getWorkflow());
+        }
+        final BatchResult batchResult = new BatchResult();
+        for (final Workflow workflow : workflows) {
+            final boolean result = workflowFinished && !workflow.getOutputMap().isEmpty()
+                                   && !incompleteWorkflows.contains(workflow);
+            workflow.setResult(result);
+            batchResult.addResult(workflow, result);
+        }
+        logger.info("Finished the batch: {}.", batchResult);
+        return batchResult;
+    }
+
+    /**
+     * An output dataset of one sample in the batch.
+     */
+    private static class SampleOutput {
+        /**
+         * The workflow of the sample.
+         */
+        private final Workflow workflow;
+
+        /**
+         * The output name.
+         */
+        private final String outputName;
+
+        /**
+         * The local file for the output.
+         */
+        private final File outputFile;
+
+        /**
+         * Create a sample output.
+         *
+         * @param workflow   the workflow of the sample.
+         * @param outputName the output name.
+         * @param outputFile the local file for the output.
+         */
+        SampleOutput(final Workflow workflow, final String outputName, final File outputFile) {
+            this.workflow = workflow;
+            this.outputName = outputName;
+            this.outputFile = outputFile;
+        }
+
+        /**
+         * Get the workflow of the sample.
+         *
+         * @return the workflow.
+         */
+        Workflow getWorkflow() {
+            return workflow;
+        }
+
+        /**
+         * Get the output name.
+         *
+         * @return the output name.
+         */
+        String getOutputName() {
+            return outputName;
+        }
+
+        /**
+         * Get the local file for the output.
+         *
+         * @return the output file.
+         */
+        File getOutputFile() {
+            return outputFile;
+        }
+    }
+}
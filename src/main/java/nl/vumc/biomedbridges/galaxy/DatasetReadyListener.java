@@ -0,0 +1,21 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.galaxy;
+
+/**
+ * Listener that is notified by a datasets ready check when a tracked dataset has reached the ok state. It is called
+ * from the completion check probe, so it should not block.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public interface DatasetReadyListener {
+    /**
+     * Handle a dataset that has reached the ok state.
+     *
+     * @param datasetId the dataset ID.
+     */
+    void datasetReady(final String datasetId);
+}
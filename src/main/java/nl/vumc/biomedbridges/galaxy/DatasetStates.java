@@ -0,0 +1,64 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.galaxy;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/**
+ * The states of Galaxy datasets (and histories).
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class DatasetStates {
+    /**
+     * Dataset state ok: the dataset is ready for use.
+     */
+    public static final String OK = "ok";
+
+    /**
+     * Dataset state error: creating the dataset failed.
+     */
+    public static final String ERROR = "error";
+
+    /**
+     * Dataset state deleted: the dataset was deleted or purged (also used for datasets that are missing from a history).
+     */
+    public static final String DELETED = "deleted";
+
+    /**
+     * The dataset states that indicate that Galaxy is still working on a dataset.
+     */
+    public static final List<String> NON_TERMINAL_STATES = ImmutableList.of("new", "upload", "queued", "running",
+                                                                            "setting_metadata");
+
+    /**
+     * Hidden constructor. Only the static fields and methods of this class are meant to be used.
+     */
+    private DatasetStates() {
+    }
+
+    /**
+     * Check whether a dataset state is terminal: Galaxy is no longer working on the dataset.
+     *
+     * @param state the dataset state (null if unknown).
+     * @return whether the dataset state is terminal.
+     */
+    public static boolean isTerminal(final String state) {
+        return state != null && !NON_TERMINAL_STATES.contains(state);
+    }
+
+    /**
+     * Check whether a dataset state indicates failure: Galaxy is no longer working on the dataset, but it is not ok.
+     *
+     * @param state the dataset state (null if unknown).
+     * @return whether the dataset state indicates failure.
+     */
+    public static boolean isFailed(final String state) {
+        return isTerminal(state) && !OK.equals(state);
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.galaxy;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import nl.vumc.biomedbridges.core.concurrent.CompletionCheck;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Completion check that tracks the state of specific datasets in a Galaxy history. The check is complete when all
+ * tracked datasets have reached a terminal state. Each probe retrieves only the tracked datasets that are still
+ * pending, with a single history contents request, instead of the contents of the whole history; a dataset is no
+ * longer retrieved once it has reached a terminal state. A dataset that was deleted or purged (or disappeared from the
+ * history) has failed. An optional listener is notified as soon as each tracked dataset is ok, so it can be used
+ * before the other datasets are ready.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class DatasetsReadyCheck implements CompletionCheck {
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(DatasetsReadyCheck.class);
+
+    /**
+     * The index of the history that contains the datasets.
+     */
+    private final HistoryContentsIndex historyContentsIndex;
+
+    /**
+     * The IDs of the tracked datasets.
+     */
+    private final Set<String> datasetIds;
+
+    /**
+     * The IDs of the tracked datasets that have not reached a terminal state yet.
+     */
+    private final Set<String> pendingDatasetIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * The last known state of each tracked dataset.
+     */
+    private final Map<String, String> datasetStates = new ConcurrentHashMap<>();
+
+    /**
+     * The listener that is notified when a tracked dataset is ok (or null).
+     */
+    private final DatasetReadyListener readyListener;
+
+    /**
+     * Create a check that tracks the state of specific datasets in a history.
+     *
+     * @param historyContentsIndex the index of the history that contains the datasets.
+     * @param datasetIds           the IDs of the datasets to track.
+     */
+    public DatasetsReadyCheck(final HistoryContentsIndex historyContentsIndex, final Iterable<String> datasetIds) {
+        this(historyContentsIndex, datasetIds, null);
+    }
+
+    /**
+     * Create a check that tracks the state of specific datasets in a history and notifies a listener when each of the
+     * datasets is ok.
+     *
+     * @param historyContentsIndex the index of the history that contains the datasets.
+     * @param datasetIds           the IDs of the datasets to track.
+     * @param readyListener        the listener that is notified when a tracked dataset is ok (or null).
+     */
+    public DatasetsReadyCheck(final HistoryContentsIndex historyContentsIndex, final Iterable<String> datasetIds,
+                              final DatasetReadyListener readyListener) {
+        this.historyContentsIndex = historyContentsIndex;
+        this.datasetIds = ImmutableSet.copyOf(datasetIds);
+        this.readyListener = readyListener;
+        this.pendingDatasetIds.addAll(this.datasetIds);
+    }
+
+    @Override
+    public boolean isComplete() {
+        final List<String> probedDatasetIds = new ArrayList<>();
+        for (final String datasetId : datasetIds)
+            if (pendingDatasetIds.contains(datasetId))
+                probedDatasetIds.add(datasetId);
+        historyContentsIndex.refreshDatasets(probedDatasetIds);
+        for (final String datasetId : probedDatasetIds) {
+            final String state = historyContentsIndex.isRemoved(datasetId) ? DatasetStates.DELETED
+                                                                           : historyContentsIndex.getState(datasetId);
+            if (state != null) {
+                updateState(datasetId, historyContentsIndex.getName(datasetId), state);
+                if (DatasetStates.isTerminal(state))
+                    pendingDatasetIds.remove(datasetId);
+            }
+        }
+        return pendingDatasetIds.isEmpty();
+    }
+
+    /**
+     * Update the last known state of a dataset and log state changes.
+     *
+     * @param datasetId   the dataset ID.
+     * @param datasetName the dataset name.
+     * @param state       the current dataset state.
+     */
+    private void updateState(final String datasetId, final String datasetName, final String state) {
+        final String previousState = datasetStates.put(datasetId, state);
+        if (DatasetStates.isFailed(state) && !state.equals(previousState))
+            logger.error("Dataset {} ({}) failed with state {}.", datasetName, datasetId, state);
+        else if (!state.equals(previousState))
+            logger.debug("Dataset {} ({}) is in state {}.", datasetName, datasetId, state);
+        if (readyListener != null && DatasetStates.OK.equals(state) && !state.equals(previousState))
+            readyListener.datasetReady(datasetId);
+    }
+
+    /**
+     * Get the IDs of the tracked datasets that ended in another state than ok.
+     *
+     * @return the IDs of the tracked datasets that failed.
+     */
+    public List<String> getFailedDatasetIds() {
+        final List<String> failedDatasetIds = new ArrayList<>();
+        for (final String datasetId : datasetIds) {
+            if (DatasetStates.isFailed(datasetStates.get(datasetId)))
+                failedDatasetIds.add(datasetId);
+        }
+        return failedDatasetIds;
+    }
+}
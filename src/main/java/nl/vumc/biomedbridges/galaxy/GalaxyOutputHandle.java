@@ -0,0 +1,110 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.galaxy;
+
+import com.github.jmchilton.blend4j.galaxy.GalaxyInstance;
+import com.github.jmchilton.blend4j.galaxy.beans.Dataset;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import nl.vumc.biomedbridges.core.AbstractOutputHandle;
+
+/**
+ * Output handle for a dataset on a Galaxy server. The contents are read from the display endpoint of the dataset when
+ * a stream is opened, so nothing is stored locally; the size and data type are retrieved once, when they are needed.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class GalaxyOutputHandle extends AbstractOutputHandle {
+    /**
+     * The Galaxy server that has the dataset.
+     */
+    private final GalaxyInstance galaxyInstance;
+
+    /**
+     * The ID of the history that contains the dataset.
+     */
+    private final String historyId;
+
+    /**
+     * The ID of the dataset.
+     */
+    private final String datasetId;
+
+    /**
+     * The history utilities object.
+     */
+    private final HistoryUtils historyUtils;
+
+    /**
+     * The dataset details (retrieved when they are needed for the first time).
+     */
+    private volatile Dataset dataset;
+
+    /**
+     * Create an output handle for a Galaxy dataset.
+     *
+     * @param name           the output name.
+     * @param galaxyInstance the Galaxy server that has the dataset.
+     * @param historyId      the ID of the history that contains the dataset.
+     * @param datasetId      the ID of the dataset.
+     * @param historyUtils   the history utilities object.
+     */
+    public GalaxyOutputHandle(final String name, final GalaxyInstance galaxyInstance, final String historyId,
+                              final String datasetId, final HistoryUtils historyUtils) {
+        super(name);
+        this.galaxyInstance = galaxyInstance;
+        this.historyId = historyId;
+        this.datasetId = datasetId;
+        this.historyUtils = historyUtils;
+    }
+
+    /**
+     * Get the ID of the history that contains the dataset.
+     *
+     * @return the history ID.
+     */
+    public String getHistoryId() {
+        return historyId;
+    }
+
+    /**
+     * Get the ID of the dataset.
+     *
+     * @return the dataset ID.
+     */
+    public String getDatasetId() {
+        return datasetId;
+    }
+
+    @Override
+    public long getSize() {
+        final Integer fileSize = getDataset().getFileSize();
+        return fileSize != null ? fileSize : -1;
+    }
+
+    @Override
+    public String getDataType() {
+        return getDataset().getDataTypeExt();
+    }
+
+    @Override
+    public InputStream openStream(final long offset, final long length) throws IOException {
+        return historyUtils.openDatasetStream(galaxyInstance, historyId, datasetId, offset, length);
+    }
+
+    /**
+     * Get the dataset details, retrieving them from the Galaxy server the first time.
+     *
+     * @return the dataset details.
+     */
+    private Dataset getDataset() {
+        if (dataset == null)
+            dataset = galaxyInstance.getHistoriesClient().showDataset(historyId, datasetId);
+        return dataset;
+    }
+}
@@ -7,27 +7,19 @@ package nl.vumc.biomedbridges.galaxy;
 
 import com.github.jmchilton.blend4j.galaxy.GalaxyInstance;
 import com.github.jmchilton.blend4j.galaxy.WorkflowsClient;
-import com.github.jmchilton.blend4j.galaxy.beans.History;
-import com.google.common.base.Charsets;
-import com.google.common.io.Resources;
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.ListenableFuture;
 
 import java.io.IOException;
-import java.net.URL;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.SortedMap;
-import java.util.TreeMap;
 
 import nl.vumc.biomedbridges.core.BaseWorkflow;
+import nl.vumc.biomedbridges.core.OutputHandle;
 import nl.vumc.biomedbridges.core.Workflow;
 import nl.vumc.biomedbridges.galaxy.configuration.GalaxyConfiguration;
 
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,19 +43,19 @@ public class GalaxyWorkflow extends BaseWorkflow implements Workflow {
     private final GalaxyWorkflowEngine workflowEngine;
 
     /**
-     * The JSON parser (for parsing the workflow definition).
+     * Whether the workflow engine was created for this workflow only, so closing this workflow closes the engine.
      */
-    private final JSONParser jsonParser;
+    private final boolean ownsWorkflowEngine;
 
     /**
-     * The inputs metadata from the Galaxy workflow JSON file.
+     * The JSON parser (for parsing the workflow definition).
      */
-    private List<Map<String, String>> inputsMetadata;
+    private final JSONParser jsonParser;
 
     /**
-     * The outputs metadata from the Galaxy workflow JSON file.
+     * The parsed definition of this workflow (shared with the other workflow objects with the same name).
      */
-    private List<Map<String, String>> outputsMetadata;
+    private volatile GalaxyWorkflowDefinition definition;
 
     /**
      * Construct a Galaxy workflow.
@@ -73,10 +65,24 @@ public class GalaxyWorkflow extends BaseWorkflow implements Workflow {
      * @param jsonParser     the JSON parser to use.
      */
     protected GalaxyWorkflow(final String name, final GalaxyWorkflowEngine workflowEngine, final JSONParser jsonParser) {
+        this(name, workflowEngine, false, jsonParser);
+    }
+
+    /**
+     * Construct a Galaxy workflow.
+     *
+     * @param name               the name of the workflow.
+     * @param workflowEngine     the workflow engine (for downloading output files).
+     * @param ownsWorkflowEngine whether the workflow engine was created for this workflow only (and is closed with it).
+     * @param jsonParser         the JSON parser to use.
+     */
+    protected GalaxyWorkflow(final String name, final GalaxyWorkflowEngine workflowEngine,
+                             final boolean ownsWorkflowEngine, final JSONParser jsonParser) {
         super(name);
         this.workflowEngine = workflowEngine;
+        this.ownsWorkflowEngine = ownsWorkflowEngine;
         this.jsonParser = jsonParser;
-        parseJson();
+        this.definition = GalaxyWorkflowDefinition.forName(name);
     }
 
     /**
@@ -90,11 +96,34 @@ public class GalaxyWorkflow extends BaseWorkflow implements Workflow {
         final GalaxyConfiguration galaxyConfiguration = new GalaxyConfiguration().setDebug(true);
         galaxyConfiguration.buildConfiguration(galaxyInstanceUrl, null, name);
         final GalaxyInstance galaxyInstance = galaxyConfiguration.determineGalaxyInstance(null);
-        final History history = new History(name + " History");
-        final String historyId = galaxyInstance.getHistoriesClient().create(history).getId();
+        final String historyName = name + " History";
+        final String historyId = HistoryPool.forInstance(galaxyInstance).leaseHistory(historyName);
         this.workflowEngine = new GalaxyWorkflowEngine(galaxyInstance, historyId, new HistoryUtils());
+        this.workflowEngine.setHistoryName(historyName);
+        this.ownsWorkflowEngine = true;
         this.jsonParser = new JSONParser();
-        parseJson();
+        this.definition = GalaxyWorkflowDefinition.forName(name);
+    }
+
+    /**
+     * Release the Galaxy history of this workflow, so it can be cleaned and reused for another workflow run. The
+     * outputs of this workflow cannot be downloaded after the history has been released.
+     *
+     * @return the future that is completed with whether the history was returned to the history pool.
+     */
+    public ListenableFuture<Boolean> releaseHistory() {
+        return workflowEngine.releaseHistory();
+    }
+
+    /**
+     * Close this workflow. If the workflow engine was created for this workflow only, the engine is closed as well,
+     * which releases its Galaxy histories (see releaseHistory); otherwise the engine is shared with other workflows and
+     * is left open.
+     */
+    @Override
+    public void close() {
+        if (ownsWorkflowEngine)
+            workflowEngine.close();
     }
 
     /**
@@ -104,10 +133,20 @@ public class GalaxyWorkflow extends BaseWorkflow implements Workflow {
      * @return whether the workflow was already present or successfully created on the Galaxy server.
      */
     public boolean ensureWorkflowIsOnServer(final WorkflowsClient workflowsClient) {
-        boolean isOnServer = isWorkflowOnServer(workflowsClient);
+        return ensureWorkflowIsOnServer(new WorkflowRegistry(workflowsClient, 0, Ticker.systemTicker()));
+    }
+
+    /**
+     * Ensure the workflow is present on the Galaxy server. If it is not found, it will be created.
+     *
+     * @param workflowRegistry the registry of the workflows on the Galaxy server.
+     * @return whether the workflow was already present or successfully created on the Galaxy server.
+     */
+    public boolean ensureWorkflowIsOnServer(final WorkflowRegistry workflowRegistry) {
+        boolean isOnServer = isWorkflowOnServer(workflowRegistry);
         if (!isOnServer) {
-            workflowsClient.importWorkflow(getJsonContent());
-            isOnServer = isWorkflowOnServer(workflowsClient);
+            workflowRegistry.importWorkflow(definition.getJsonContent());
+            isOnServer = isWorkflowOnServer(workflowRegistry);
         }
         return isOnServer;
     }
@@ -115,19 +154,14 @@ public class GalaxyWorkflow extends BaseWorkflow implements Workflow {
     /**
      * Check whether the workflow is present on the Galaxy server.
      *
-     * @param workflowsClient the workflows client used to interact with the Galaxy workflows on the server.
+     * @param workflowRegistry the registry of the workflows on the Galaxy server.
      * @return whether the workflow is present on the Galaxy server.
      */
-    private boolean isWorkflowOnServer(final WorkflowsClient workflowsClient) {
+    private boolean isWorkflowOnServer(final WorkflowRegistry workflowRegistry) {
         boolean found = false;
         // CHECKSTYLE_OFF: IllegalCatchCheck
         try {
-            for (final com.github.jmchilton.blend4j.galaxy.beans.Workflow blend4jWorkflow : workflowsClient.getWorkflows())
-                if (blend4jWorkflow.getName().equals(getName())
-                    || blend4jWorkflow.getName().equals(getName() + " (imported from API)")) {
-                    found = true;
-                    break;
-                }
+            found = workflowRegistry.containsWorkflow(getName());
         } catch (final RuntimeException e) {
             // todo: could blend4j catch the com.sun.jersey.api.client.ClientHandlerException and throw a known one?
             logger.error("Error retrieving the available workflows from the Galaxy server.", e);
@@ -140,124 +174,40 @@ public class GalaxyWorkflow extends BaseWorkflow implements Workflow {
     }
 
     /**
-     * Give the filename of the Galaxy workflow description.
-     *
-     * @return the GA file's filename
-     */
-    private String getJsonFilename() {
-        return getName() + ".ga";
-    }
-
-    /**
-     * Get the content of the GA-file.
+     * Get a hash of the workflow definition: the SHA-256 hash of the GA-file.
      *
-     * todo: use an absolute file path instead of the classpath.
-     *
-     * @return the json design of the workflow.
+     * @return the hash of the workflow definition.
      */
-    private String getJsonContent() {
-        try {
-            final URL resourceUrl = GalaxyWorkflow.class.getResource(getJsonFilename());
-            return resourceUrl != null ? Resources.asCharSource(resourceUrl, Charsets.UTF_8).read() : null;
-        } catch (final IOException e) {
-            logger.error("Exception while retrieving json design in workflow file {}.", getJsonFilename(), e);
-            throw new RuntimeException(e);
-        }
+    @Override
+    public String getDefinitionHash() {
+        final String definitionHash = definition.getDefinitionHash();
+        return definitionHash != null ? definitionHash : super.getDefinitionHash();
     }
 
     /**
-     * Parses the JSON / GA-file of a Galaxy workflow.
-     *
-     * todo: use the GalaxyWorkflowMetadata class instead.
+     * Read and parse the JSON / GA-file of a Galaxy workflow again with the JSON parser of this workflow, instead of
+     * using the shared definition (the shared definition is not changed).
      */
     public void parseJson() {
-        try {
-            inputsMetadata = new ArrayList<>();
-            outputsMetadata = new ArrayList<>();
-            final String jsonContent = getJsonContent();
-            if (jsonContent != null) {
-                final JSONObject workflowJson = (JSONObject) jsonParser.parse(jsonContent);
-                final JSONObject stepsMapJson = (JSONObject) workflowJson.get("steps");
-                logger.info("This workflow contains " + stepsMapJson.size() + " step"
-                            + (stepsMapJson.size() != 1 ? "s" : "") + ":");
-
-                // Sort the steps to have a well defined order.
-                final SortedMap<Integer, JSONObject> sortedStepsMap = new TreeMap<>();
-                for (final Object stepObject : stepsMapJson.entrySet())
-                    if (stepObject instanceof Map.Entry) {
-                        final Map.Entry stepEntry = (Map.Entry) stepObject;
-                        final int stepId = Integer.parseInt((String) stepEntry.getKey());
-                        sortedStepsMap.put(stepId, (JSONObject) stepEntry.getValue());
-                    }
-
-                for (final JSONObject stepJson : sortedStepsMap.values()) {
-                    addJsonInputs((JSONArray) stepJson.get("inputs"));
-                    addJsonOutputs((JSONArray) stepJson.get("outputs"));
-                }
-            }
-        } catch (final ParseException e) {
-            logger.error("Exception while parsing json design in workflow file {}.", getJsonFilename(), e);
-        }
+        definition = GalaxyWorkflowDefinition.readDefinition(getName(), jsonParser);
     }
 
     /**
      * Get the inputs metadata from the Galaxy workflow JSON file.
      *
-     * @return the inputs metadata.
+     * @return the (unmodifiable) inputs metadata.
      */
     public List<Map<String, String>> getInputsMetadata() {
-        return inputsMetadata;
-    }
-
-    /**
-     * Parse an "inputs" section of the JSON file.
-     *
-     * @param jsonInputs the json array with the inputs.
-     */
-    public void addJsonInputs(final JSONArray jsonInputs) {
-        inputsMetadata.addAll(createListOfMaps(jsonInputs));
-        logger.trace("inputsMetadata: " + inputsMetadata);
+        return definition.getInputsMetadata();
     }
 
     /**
      * Get the outputs metadata from the Galaxy workflow JSON file.
      *
-     * @return the outputs metadata.
+     * @return the (unmodifiable) outputs metadata.
      */
     public List<Map<String, String>> getOutputsMetadata() {
-        return outputsMetadata;
-    }
-
-    /**
-     * Parse an "outputs" section of the JSON file.
-     *
-     * @param jsonOutputs the json array with the outputs.
-     */
-    public void addJsonOutputs(final JSONArray jsonOutputs) {
-        outputsMetadata.addAll(createListOfMaps(jsonOutputs));
-        logger.trace("outputsMetadata: " + outputsMetadata);
-    }
-
-    /**
-     * Create a list of maps from a json array.
-     *
-     * @param jsonArray the json array.
-     * @return the list of maps.
-     */
-    private List<Map<String, String>> createListOfMaps(final JSONArray jsonArray) {
-        final List<Map<String, String>> listOfMaps = new ArrayList<>();
-        for (final Object object : jsonArray) {
-            final JSONObject jsonObject = (JSONObject) object;
-            //logger.trace("jsonObject: " + jsonObject);
-            final Map<String, String> propertyMap = new HashMap<>();
-            for (final Object entry : jsonObject.entrySet())
-                if (entry instanceof Map.Entry) {
-                    final Map.Entry mapEntry = (Map.Entry) entry;
-                    propertyMap.put((String) mapEntry.getKey(), (String) mapEntry.getValue());
-                }
-            listOfMaps.add(propertyMap);
-        }
-        return listOfMaps;
+        return definition.getOutputsMetadata();
     }
 
     /**
@@ -282,7 +232,7 @@ public class GalaxyWorkflow extends BaseWorkflow implements Workflow {
         // Check whether an output file has been downloaded; if not: do it now and add to map.
         if (!getAutomaticDownload() && !outputFiles.containsKey(outputName)) {
             try {
-                if (!workflowEngine.downloadOutputFile(this, workflowEngine.getOutputIdForOutputName(outputName)))
+                if (!workflowEngine.downloadOutputFile(this, workflowEngine.getOutputIdForOutputName(this, outputName)))
                     logger.error("Error downloading a workflow output file (workflow: {}; output name: {}).", getName(),
                                  outputName);
             } catch (final IOException e) {
@@ -292,4 +242,12 @@ public class GalaxyWorkflow extends BaseWorkflow implements Workflow {
         }
         return outputFiles.get(outputName);
     }
+
+    @Override
+    public OutputHandle getOutputHandle(final String outputName) {
+        // Output files that have not been downloaded are read from the Galaxy server when they are needed.
+        return !getAutomaticDownload() && !outputFiles.containsKey(outputName)
+               ? workflowEngine.getOutputHandle(this, outputName)
+               : super.getOutputHandle(outputName);
+    }
 }
@@ -0,0 +1,265 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.galaxy;
+
+import com.google.common.base.Charsets;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Resources;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import nl.vumc.biomedbridges.galaxy.metadata.GalaxyStepInput;
+import nl.vumc.biomedbridges.galaxy.metadata.GalaxyStepOutput;
+import nl.vumc.biomedbridges.galaxy.metadata.GalaxyWorkflowMetadata;
+import nl.vumc.biomedbridges.galaxy.metadata.GalaxyWorkflowStep;
+import nl.vumc.biomedbridges.galaxy.metadata.parsers.GalaxyWorkflowMetadataParser;
+
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The parsed definition of a Galaxy workflow: the content of the GA-file, its checksum and the inputs and outputs
+ * metadata. The GA-file is parsed by the GalaxyWorkflowMetadataParser, which also parses the workflows for the
+ * workflow engine metadata. Definitions are immutable, so one definition is shared by all workflow objects with the
+ * same name: the GA-file is read and parsed once per process instead of once for each workflow object, which matters
+ * when a batch creates a workflow object for each sample.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class GalaxyWorkflowDefinition {
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(GalaxyWorkflowDefinition.class);
+
+    /**
+     * The key of the name property in the inputs and outputs metadata.
+     */
+    private static final String NAME_KEY = "name";
+
+    /**
+     * The definitions that have been read, by workflow name.
+     */
+    private static final LoadingCache<String, GalaxyWorkflowDefinition> DEFINITIONS = CacheBuilder.newBuilder()
+            .build(new CacheLoader<String, GalaxyWorkflowDefinition>() {
+                @Override
+                public GalaxyWorkflowDefinition load(final String workflowName) {
+                    return readDefinition(workflowName, new JSONParser());
+                }
+            });
+
+    /**
+     * The name of the workflow.
+     */
+    private final String name;
+
+    /**
+     * The content of the GA-file (or null if there is no GA-file for this workflow).
+     */
+    private final String jsonContent;
+
+    /**
+     * The SHA-256 hash of the content of the GA-file (or null if there is no GA-file for this workflow).
+     */
+    private final String definitionHash;
+
+    /**
+     * The inputs metadata from the Galaxy workflow JSON file.
+     */
+    private final List<Map<String, String>> inputsMetadata;
+
+    /**
+     * The outputs metadata from the Galaxy workflow JSON file.
+     */
+    private final List<Map<String, String>> outputsMetadata;
+
+    /**
+     * Create a workflow definition.
+     *
+     * @param name            the name of the workflow.
+     * @param jsonContent     the content of the GA-file (or null if there is no GA-file).
+     * @param inputsMetadata  the inputs metadata.
+     * @param outputsMetadata the outputs metadata.
+     */
+    GalaxyWorkflowDefinition(final String name, final String jsonContent, final List<Map<String, String>> inputsMetadata,
+                             final List<Map<String, String>> outputsMetadata) {
+        this.name = name;
+        this.jsonContent = jsonContent;
+        this.definitionHash = jsonContent != null
+                              ? Hashing.sha256().hashString(jsonContent, Charsets.UTF_8).toString()
+                              : null;
+        this.inputsMetadata = Collections.unmodifiableList(new ArrayList<>(inputsMetadata));
+        this.outputsMetadata = Collections.unmodifiableList(new ArrayList<>(outputsMetadata));
+    }
+
+    /**
+     * Get the shared definition of a workflow, reading and parsing its GA-file the first time it is needed.
+     *
+     * @param workflowName the name of the workflow.
+     * @return the workflow definition.
+     */
+    public static GalaxyWorkflowDefinition forName(final String workflowName) {
+        return DEFINITIONS.getUnchecked(workflowName);
+    }
+
+    /**
+     * Remove a definition from the cache, so the GA-file is read again the next time the definition is needed (for
+     * example after the workflow has been changed).
+     *
+     * @param workflowName the name of the workflow.
+     */
+    public static void invalidate(final String workflowName) {
+        DEFINITIONS.invalidate(workflowName);
+    }
+
+    /**
+     * Read and parse the GA-file of a workflow, without using the cache. If the GA-file cannot be parsed, a definition
+     * without inputs and outputs is returned.
+     *
+     * @param workflowName the name of the workflow.
+     * @param jsonParser   the JSON parser to use.
+     * @return the workflow definition.
+     */
+    public static GalaxyWorkflowDefinition readDefinition(final String workflowName, final JSONParser jsonParser) {
+        final String jsonContent = readJsonContent(workflowName);
+        final List<Map<String, String>> inputsMetadata = new ArrayList<>();
+        final List<Map<String, String>> outputsMetadata = new ArrayList<>();
+        if (jsonContent != null) {
+            try {
+                addStepsMetadata(new GalaxyWorkflowMetadataParser().parseWorkflowJson(jsonContent, jsonParser),
+                                 inputsMetadata, outputsMetadata);
+            } catch (final ParseException e) {
+                logger.error("Exception while parsing json design in workflow file {}.", getJsonFilename(workflowName),
+                             e);
+            }
+        }
+        return new GalaxyWorkflowDefinition(workflowName, jsonContent, inputsMetadata, outputsMetadata);
+    }
+
+    /**
+     * Give the filename of the Galaxy workflow description.
+     *
+     * @param workflowName the name of the workflow.
+     * @return the GA file's filename
+     */
+    private static String getJsonFilename(final String workflowName) {
+        return workflowName + ".ga";
+    }
+
+    /**
+     * Read the content of the GA-file from the classpath.
+     *
+     * todo: use an absolute file path instead of the classpath.
+     *
+     * @param workflowName the name of the workflow.
+     * @return the json design of the workflow or null if there is no GA-file for this workflow.
+     */
+    private static String readJsonContent(final String workflowName) {
+        try {
+            final URL resourceUrl = GalaxyWorkflow.class.getResource(getJsonFilename(workflowName));
+            return resourceUrl != null ? Resources.asCharSource(resourceUrl, Charsets.UTF_8).read() : null;
+        } catch (final IOException e) {
+            logger.error("Exception while retrieving json design in workflow file {}.", getJsonFilename(workflowName),
+                         e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Collect the inputs and outputs metadata of the steps of a workflow.
+     *
+     * @param workflowMetadata the workflow metadata.
+     * @param inputsMetadata   the list to add the inputs metadata to.
+     * @param outputsMetadata  the list to add the outputs metadata to.
+     */
+    private static void addStepsMetadata(final GalaxyWorkflowMetadata workflowMetadata,
+                                         final List<Map<String, String>> inputsMetadata,
+                                         final List<Map<String, String>> outputsMetadata) {
+        final int stepCount = workflowMetadata.getSteps().size();
+        logger.info("This workflow contains " + stepCount + " step" + (stepCount != 1 ? "s" : "") + ":");
+        for (final GalaxyWorkflowStep step : workflowMetadata.getSteps()) {
+            for (final GalaxyStepInput input : step.getInputs())
+                inputsMetadata.add(createPropertyMap("description", input.getDescription(), NAME_KEY, input.getName()));
+            for (final GalaxyStepOutput output : step.getOutputs())
+                outputsMetadata.add(createPropertyMap(NAME_KEY, output.getName(), "type", output.getType()));
+        }
+        logger.trace("inputsMetadata: " + inputsMetadata);
+        logger.trace("outputsMetadata: " + outputsMetadata);
+    }
+
+    /**
+     * Create an unmodifiable map with two properties.
+     *
+     * @param key1   the first key.
+     * @param value1 the first value.
+     * @param key2   the second key.
+     * @param value2 the second value.
+     * @return the property map.
+     */
+    private static Map<String, String> createPropertyMap(final String key1, final String value1, final String key2,
+                                                         final String value2) {
+        final Map<String, String> propertyMap = new HashMap<>();
+        propertyMap.put(key1, value1);
+        propertyMap.put(key2, value2);
+        return Collections.unmodifiableMap(propertyMap);
+    }
+
+    /**
+     * Get the name of the workflow.
+     *
+     * @return the name of the workflow.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the content of the GA-file.
+     *
+     * @return the json design of the workflow or null if there is no GA-file for this workflow.
+     */
+    public String getJsonContent() {
+        return jsonContent;
+    }
+
+    /**
+     * Get the SHA-256 hash of the content of the GA-file.
+     *
+     * @return the hash of the workflow definition or null if there is no GA-file for this workflow.
+     */
+    public String getDefinitionHash() {
+        return definitionHash;
+    }
+
+    /**
+     * Get the inputs metadata from the Galaxy workflow JSON file.
+     *
+     * @return the (unmodifiable) inputs metadata.
+     */
+    public List<Map<String, String>> getInputsMetadata() {
+        return inputsMetadata;
+    }
+
+    /**
+     * Get the outputs metadata from the Galaxy workflow JSON file.
+     *
+     * @return the (unmodifiable) outputs metadata.
+     */
+    public List<Map<String, String>> getOutputsMetadata() {
+        return outputsMetadata;
+    }
+}
@@ -7,32 +7,51 @@ package nl.vumc.biomedbridges.galaxy;
 
 import com.github.jmchilton.blend4j.galaxy.GalaxyInstance;
 import com.github.jmchilton.blend4j.galaxy.HistoriesClient;
-import com.github.jmchilton.blend4j.galaxy.ToolsClient;
 import com.github.jmchilton.blend4j.galaxy.WorkflowsClient;
 import com.github.jmchilton.blend4j.galaxy.beans.Dataset;
-import com.github.jmchilton.blend4j.galaxy.beans.HistoryContents;
 import com.github.jmchilton.blend4j.galaxy.beans.HistoryDetails;
 import com.github.jmchilton.blend4j.galaxy.beans.WorkflowDetails;
 import com.github.jmchilton.blend4j.galaxy.beans.WorkflowInputs;
 import com.github.jmchilton.blend4j.galaxy.beans.WorkflowOutputs;
 import com.github.jmchilton.blend4j.galaxy.beans.WorkflowStepDefinition;
-import com.sun.jersey.api.client.ClientResponse;
+import com.google.common.base.Function;
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.AsyncCallable;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Callables;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import nl.vumc.biomedbridges.core.BatchResult;
 import nl.vumc.biomedbridges.core.Constants;
 import nl.vumc.biomedbridges.core.FileUtils;
 import nl.vumc.biomedbridges.core.Workflow;
 import nl.vumc.biomedbridges.core.WorkflowEngine;
+import nl.vumc.biomedbridges.core.WorkflowResultCache;
+import nl.vumc.biomedbridges.core.concurrent.BackoffCompletionWaiter;
+import nl.vumc.biomedbridges.core.concurrent.BackoffPolicy;
+import nl.vumc.biomedbridges.core.concurrent.CompletionCheck;
+import nl.vumc.biomedbridges.core.concurrent.CompletionWaiter;
+import nl.vumc.biomedbridges.core.concurrent.SharedExecutors;
 
-import org.apache.http.HttpStatus;
 import org.json.simple.parser.JSONParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -67,14 +86,14 @@ public class GalaxyWorkflowEngine implements WorkflowEngine {
     public static final String FILE_TYPE_TEXT = "txt";
 
     /**
-     * Workflow output file path.
+     * The logger for this class.
      */
-    protected static final String OUTPUT_FILE_PATH = Paths.get("tmp", "WorkflowRunner-runWorkflow.txt").toString();
+    private static final Logger logger = LoggerFactory.getLogger(GalaxyWorkflowEngine.class);
 
     /**
-     * The logger for this class.
+     * The message that is logged when the Galaxy instance is not available.
      */
-    private static final Logger logger = LoggerFactory.getLogger(GalaxyWorkflowEngine.class);
+    private static final String GALAXY_INSTANCE_NOT_INITIALIZED = "Galaxy instance is not initialized properly.";
 
     /**
      * The number of milliseconds in a second.
@@ -82,35 +101,33 @@ public class GalaxyWorkflowEngine implements WorkflowEngine {
     private static final int MILLISECONDS_PER_SECOND = 1000;
 
     /**
-     * The default maximum number of times to wait for the upload to finish.
+     * The default maximum number of times to wait for the upload to finish. The upload deadline is this count
+     * multiplied by the upload wait seconds.
      */
     private static final int UPLOAD_MAX_WAIT_COUNT = 28;
 
     /**
-     * The default number of seconds to wait for the upload to finish (for each wait cycle).
+     * The default maximum number of seconds to wait for the upload to finish (for each wait cycle).
      */
     private static final int UPLOAD_WAIT_SECONDS = 6;
 
     /**
-     * The default number of milliseconds to wait after the upload has finished.
+     * The default number of seconds to wait after the upload has finished (only when the uploaded datasets cannot be
+     * tracked individually).
      */
     private static final int WAIT_AFTER_UPLOAD_SECONDS = 2;
 
     /**
-     * The default maximum number of times to wait for the workflow to finish.
+     * The default maximum number of times to wait for the workflow to finish. The workflow deadline is this count
+     * multiplied by the workflow wait seconds.
      */
     private static final int RUN_WORKFLOW_MAX_WAIT_COUNT = 20;
 
     /**
-     * The default number of seconds to wait for the workflow to finish (for each wait cycle).
+     * The default maximum number of seconds to wait for the workflow to finish (for each wait cycle).
      */
     private static final int WORKFLOW_WAIT_SECONDS = 3;
 
-    /**
-     * History state ok.
-     */
-    private static final String STATE_OK = "ok";
-
     /**
      * The history utils object.
      */
@@ -126,25 +143,64 @@ public class GalaxyWorkflowEngine implements WorkflowEngine {
      */
     private WorkflowsClient workflowsClient;
 
+    /**
+     * The registry of the workflows on the Galaxy server.
+     */
+    private WorkflowRegistry workflowRegistry;
+
     /**
      * The histories client for accessing Galaxy histories.
      */
     private HistoriesClient historiesClient;
 
     /**
-     * The ID of the history that is used for the input and output files.
+     * The ID of the history of this engine, which is used for the input and output files of a workflow run. Runs that
+     * start while this history is in use by another run lease their own history from the history pool.
      */
     private String historyId;
 
     /**
-     * The outputs of the executed workflow.
+     * Whether the history of this engine is used by a run that has not finished yet.
+     */
+    private final AtomicBoolean historyInUse = new AtomicBoolean();
+
+    /**
+     * The IDs of the histories that were leased for concurrent runs and have not been released yet.
+     */
+    private final Set<String> leasedHistoryIds = Sets.newConcurrentHashSet();
+
+    /**
+     * The IDs of the leased histories that are used by runs that have not finished yet.
+     */
+    private final Set<String> activeHistoryIds = Sets.newConcurrentHashSet();
+
+    /**
+     * The name for the histories that are leased for concurrent runs and batches (or null to use the workflow name).
+     */
+    private String historyName;
+
+    /**
+     * Whether the histories of this engine should be released (guarded by this engine). Histories that are in use are
+     * released when the run that uses them has finished.
+     */
+    private boolean releaseRequested;
+
+    /**
+     * The future that is completed when the history of this engine has been released to the history pool.
      */
-    private WorkflowOutputs workflowOutputs;
+    private final SettableFuture<Boolean> historyReleaseFuture = SettableFuture.create();
 
     /**
-     * Mappings from output name to output ID (used when output files are not downloaded automatically).
+     * The state of the workflow runs by workflow (with weak keys, so workflows that are no longer used can be garbage
+     * collected).
      */
-    private Map<String, String> outputNameToIdsMap;
+    private final Map<Workflow, GalaxyWorkflowRun> workflowRuns
+            = Collections.synchronizedMap(new WeakHashMap<Workflow, GalaxyWorkflowRun>());
+
+    /**
+     * The state of the workflow run that was started last.
+     */
+    private volatile GalaxyWorkflowRun lastWorkflowRun;
 
     /**
      * The maximum number of times to wait for the upload to finish.
@@ -157,7 +213,8 @@ public class GalaxyWorkflowEngine implements WorkflowEngine {
     private int uploadWaitSeconds;
 
     /**
-     * The number of milliseconds to wait after the upload has finished.
+     * The number of seconds to wait after the upload has finished (only when the uploaded datasets cannot be tracked
+     * individually).
      */
     private int waitAfterUploadSeconds;
 
@@ -171,6 +228,31 @@ public class GalaxyWorkflowEngine implements WorkflowEngine {
      */
     private int workflowWaitSeconds;
 
+    /**
+     * The completion waiter that is used to wait for uploads and workflow runs to finish.
+     */
+    private CompletionWaiter completionWaiter;
+
+    /**
+     * The maximum number of input files that are uploaded at the same time.
+     */
+    private int maxConcurrentUploads;
+
+    /**
+     * The maximum number of output files that are downloaded at the same time.
+     */
+    private int maxConcurrentDownloads;
+
+    /**
+     * The upload cache that is used to reuse datasets with the same content as input files (or null to always upload).
+     */
+    private UploadCache uploadCache;
+
+    /**
+     * The cache with the results of earlier workflow runs (or null to always run workflows).
+     */
+    private WorkflowResultCache resultCache;
+
     ///**
     // * The metadata for the workflow engine.
     // */
@@ -188,6 +270,7 @@ public class GalaxyWorkflowEngine implements WorkflowEngine {
         this.galaxyInstance = galaxyInstance;
         this.workflowsClient = galaxyInstance != null ? galaxyInstance.getWorkflowsClient() : null;
         this.historiesClient = galaxyInstance != null ? galaxyInstance.getHistoriesClient() : null;
+        this.workflowRegistry = galaxyInstance != null ? WorkflowRegistry.forInstance(galaxyInstance) : null;
         this.historyId = historyId;
         this.historyUtils = historyUtils;
         this.uploadMaxWaitCount = UPLOAD_MAX_WAIT_COUNT;
@@ -195,6 +278,9 @@ public class GalaxyWorkflowEngine implements WorkflowEngine {
         this.waitAfterUploadSeconds = WAIT_AFTER_UPLOAD_SECONDS;
         this.runWorkflowMaxWaitCount = RUN_WORKFLOW_MAX_WAIT_COUNT;
         this.workflowWaitSeconds = WORKFLOW_WAIT_SECONDS;
+        this.completionWaiter = new BackoffCompletionWaiter();
+        this.maxConcurrentUploads = InputUploader.DEFAULT_MAX_CONCURRENT_UPLOADS;
+        this.maxConcurrentDownloads = OutputDownloader.DEFAULT_MAX_CONCURRENT_DOWNLOADS;
     }
 
     @Override
@@ -202,6 +288,17 @@ public class GalaxyWorkflowEngine implements WorkflowEngine {
         return new GalaxyWorkflow(workflowName, this, new JSONParser());
     }
 
+    /**
+     * Create a named workflow that owns this engine: closing the workflow closes this engine as well, which releases
+     * its histories. This is meant for an engine that is created for a single workflow.
+     *
+     * @param workflowName the workflow name.
+     * @return the new workflow.
+     */
+    public Workflow getOwningWorkflow(final String workflowName) {
+        return new GalaxyWorkflow(workflowName, this, true, new JSONParser());
+    }
+
     /**
      * Set the maximum wait counts for uploading data and running the workflow.
      *
@@ -218,9 +315,12 @@ public class GalaxyWorkflowEngine implements WorkflowEngine {
     /**
      * Change the wait timers from their default value to something else; useful for testing.
      *
-     * @param uploadWaitSeconds      the number of seconds to wait for the upload to finish (for each wait cycle).
-     * @param waitAfterUploadSeconds the number of milliseconds to wait after the upload has finished.
-     * @param workflowWaitSeconds    the number of seconds to wait for the workflow to finish (for each wait cycle).
+     * @param uploadWaitSeconds      the maximum number of seconds to wait for the upload to finish (for each wait
+     *                               cycle).
+     * @param waitAfterUploadSeconds the number of seconds to wait after the upload has finished (only when the
+     *                               uploaded datasets cannot be tracked individually).
+     * @param workflowWaitSeconds    the maximum number of seconds to wait for the workflow to finish (for each wait
+     *                               cycle).
      */
     protected void setWaitTimers(final int uploadWaitSeconds, final int waitAfterUploadSeconds,
                                  final int workflowWaitSeconds) {
@@ -229,134 +329,668 @@ public class GalaxyWorkflowEngine implements WorkflowEngine {
         this.workflowWaitSeconds = workflowWaitSeconds;
     }
 
+    /**
+     * Replace the completion waiter that is used to wait for uploads and workflow runs to finish.
+     *
+     * @param completionWaiter the completion waiter to use.
+     */
+    public void setCompletionWaiter(final CompletionWaiter completionWaiter) {
+        this.completionWaiter = completionWaiter;
+    }
+
+    /**
+     * Set the maximum number of input files that are uploaded at the same time.
+     *
+     * @param maxConcurrentUploads the maximum number of concurrent uploads (should be at least one).
+     */
+    public void setMaxConcurrentUploads(final int maxConcurrentUploads) {
+        this.maxConcurrentUploads = maxConcurrentUploads;
+    }
+
+    /**
+     * Set the maximum number of output files that are downloaded at the same time.
+     *
+     * @param maxConcurrentDownloads the maximum number of concurrent downloads (should be at least one).
+     */
+    public void setMaxConcurrentDownloads(final int maxConcurrentDownloads) {
+        this.maxConcurrentDownloads = maxConcurrentDownloads;
+    }
+
+    /**
+     * Set the name for the histories that are leased from the history pool for concurrent runs and batches (for
+     * example the history name from the Galaxy configuration).
+     *
+     * @param historyName the history name (or null to use the workflow name).
+     */
+    public void setHistoryName(final String historyName) {
+        this.historyName = historyName;
+    }
+
+    /**
+     * Get the name for a history that is leased from the history pool.
+     *
+     * @param defaultName the name to use if no history name was set.
+     * @return the history name.
+     */
+    String getLeasedHistoryName(final String defaultName) {
+        return historyName != null ? historyName : defaultName;
+    }
+
+    /**
+     * Set the upload cache that is used to reuse datasets with the same content as input files. Input files that are
+     * not in the cache yet are uploaded to the upload cache history instead of the history of this engine.
+     *
+     * @param uploadCache the upload cache to use (or null to always upload the input files to the engine's history).
+     */
+    public void setUploadCache(final UploadCache uploadCache) {
+        this.uploadCache = uploadCache;
+    }
+
+    /**
+     * Set the cache with the results of earlier workflow runs. When a workflow is run with the same definition, inputs
+     * and parameters as an earlier successful run, the stored outputs are used instead of running it on Galaxy.
+     *
+     * @param resultCache the result cache to use (or null to always run workflows).
+     */
+    public void setResultCache(final WorkflowResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    /**
+     * Run a batch of workflows with a single workflow invocation on Galaxy: the input files of all workflows are
+     * uploaded, combined into one dataset collection for each input and the workflow is invoked once with these
+     * collections. Galaxy maps the workflow over the collection elements and schedules the jobs in parallel; the
+     * elements of the output collections are downloaded and added to the outputs of the corresponding workflows.
+     *
+     * The workflows should have the same name, input names and parameters and only files as inputs (see
+     * CollectionBatchRunner). The outputs are always downloaded, since the batch history is released afterwards.
+     *
+     * @param workflows the workflows to run (one for each sample).
+     * @return the future that is completed with the aggregated results when the batch has finished.
+     */
+    public ListenableFuture<BatchResult> runWorkflowsAsCollection(final List<? extends Workflow> workflows) {
+        if (galaxyInstance == null) {
+            logger.error(GALAXY_INSTANCE_NOT_INITIALIZED);
+            return Futures.immediateFailedFuture(new IllegalStateException(GALAXY_INSTANCE_NOT_INITIALIZED));
+        }
+        return new CollectionBatchRunner(this).runWorkflows(workflows);
+    }
+
     @Override
-    @SuppressWarnings("SpellCheckingInspection")
     public boolean runWorkflow(final Workflow workflow) throws InterruptedException, IOException {
-        boolean result = false;
-        if (galaxyInstance != null) {
-            logStartRunWorkflow();
-
-            // todo: check whether the server is available and/or give a better error message when it isn't available.
-            /*
-            <html>
-                <head><title>504 Gateway Time-out</title></head>
-                <body bgcolor="white">
-                    <center><h1>504 Gateway Time-out</h1></center>
-                    <hr>
-                    <center>nginx/1.2.0</center>
-                </body>
-            </html>
-             */
-
-            logger.info("Ensure the workflow is available.");
-            ((GalaxyWorkflow) workflow).ensureWorkflowIsOnServer(workflowsClient);
-
-            logger.info("Prepare the input files.");
-            uploadInputFiles(workflow);
-            final WorkflowInputs inputs = createInputsObject(workflow);
-
-            final boolean workflowFinished = executeWorkflow(inputs);
-            final boolean downloadsSuccessful = downloadOutputFiles(workflow);
-            logger.trace("Download output files downloadsSuccessful: {}.", downloadsSuccessful);
-
-            final boolean checkResults;
-            if (workflowFinished)
-                checkResults = checkWorkflowResults(workflow);
-            else {
-                logger.info("Timeout while waiting for workflow output file(s).");
-                // Freek: test the output anyway to generate some logging for debugging/analysis.
-                checkResults = checkWorkflowResults(workflow);
+        final ListenableFuture<Boolean> resultFuture = startWorkflowRun(workflow);
+        try {
+            return resultFuture.get();
+        } catch (final InterruptedException e) {
+            resultFuture.cancel(true);
+            throw e;
+        } catch (final ExecutionException e) {
+            Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Start running the workflow without blocking the calling thread. The calls to the Galaxy server are done on the
+     * shared executor for blocking tasks and waiting for Galaxy is done by the completion waiter, so no thread is
+     * occupied while Galaxy is busy.
+     *
+     * The state of each run is kept separately, so several workflows can run at the same time. The first run uses the
+     * history of this engine; runs that start while that history is in use get their own history from the history
+     * pool (see BatchWorkflowRunner for running many workflows with a bounded number of concurrent runs).
+     *
+     * @param workflow the workflow to run.
+     * @return the future that is completed with the workflow when it has finished.
+     */
+    @Override
+    public ListenableFuture<Workflow> runWorkflowAsync(final Workflow workflow) {
+        return Futures.transform(startWorkflowRun(workflow), new Function<Boolean, Workflow>() {
+            @Override
+            public Workflow apply(final Boolean result) {
+                workflow.setResult(result);
+                return workflow;
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Release the history of this engine (and the histories that are still leased for concurrent runs) to the history
+     * pool of the Galaxy instance, where they are cleaned and kept for reuse (or deleted if the pool is full). A
+     * history that is used by a run that has not finished yet is released when that run has finished. The engine
+     * should not be used after its history has been released.
+     *
+     * @return the future that is completed with whether the history of this engine was returned to the history pool.
+     */
+    public ListenableFuture<Boolean> releaseHistory() {
+        if (galaxyInstance == null)
+            return Futures.immediateFuture(false);
+        synchronized (this) {
+            if (!releaseRequested) {
+                releaseRequested = true;
+                for (final String leasedHistoryId : leasedHistoryIds)
+                    if (!activeHistoryIds.contains(leasedHistoryId))
+                        releaseLeasedHistory(leasedHistoryId);
+                if (historyInUse.compareAndSet(false, true))
+                    historyReleaseFuture.setFuture(HistoryPool.forInstance(galaxyInstance).releaseHistory(historyId));
+                else
+                    logger.debug("History {} is in use; it will be released when the run has finished.", historyId);
             }
-            logger.trace("workflowFinished: " + workflowFinished);
-            logger.trace("downloadsSuccessful: " + downloadsSuccessful);
-            logger.trace("checkResults: " + checkResults);
-            result = workflowFinished && downloadsSuccessful && checkResults;
-        } else
-            logger.error("Galaxy instance is not initialized properly.");
-        return result;
+        }
+        return historyReleaseFuture;
+    }
+
+    /**
+     * Close this engine: its histories are released to the history pool (see releaseHistory).
+     */
+    @Override
+    public void close() {
+        releaseHistory();
+    }
+
+    /**
+     * Get the Galaxy server instance that runs the workflows.
+     *
+     * @return the Galaxy instance.
+     */
+    GalaxyInstance getGalaxyInstance() {
+        return galaxyInstance;
+    }
+
+    /**
+     * Get the history utils object that is used to access datasets in the histories.
+     *
+     * @return the history utils object.
+     */
+    HistoryUtils getHistoryUtils() {
+        return historyUtils;
+    }
+
+    /**
+     * Get the registry of the workflows on the Galaxy server.
+     *
+     * @return the workflow registry.
+     */
+    WorkflowRegistry getWorkflowRegistry() {
+        return workflowRegistry;
+    }
+
+    /**
+     * Get the upload cache that is used to reuse datasets with the same content as input files.
+     *
+     * @return the upload cache (or null if input files are always uploaded).
+     */
+    UploadCache getUploadCache() {
+        return uploadCache;
+    }
+
+    /**
+     * Get the completion waiter that is used to wait for uploads and workflow runs to finish.
+     *
+     * @return the completion waiter.
+     */
+    CompletionWaiter getCompletionWaiter() {
+        return completionWaiter;
+    }
+
+    /**
+     * Create the backoff policy for waiting on uploads, based on the upload wait settings.
+     *
+     * @return the upload backoff policy.
+     */
+    BackoffPolicy createUploadBackoffPolicy() {
+        return BackoffPolicy.fromWaitSettings(uploadMaxWaitCount, uploadWaitSeconds);
+    }
+
+    /**
+     * Create the backoff policy for waiting on workflow runs, based on the workflow wait settings.
+     *
+     * @return the workflow backoff policy.
+     */
+    BackoffPolicy createWorkflowBackoffPolicy() {
+        return BackoffPolicy.fromWaitSettings(runWorkflowMaxWaitCount, workflowWaitSeconds);
+    }
+
+    /**
+     * Create an input uploader with the upload settings of this engine.
+     *
+     * @return the input uploader.
+     */
+    InputUploader createInputUploader() {
+        return new InputUploader(galaxyInstance, maxConcurrentUploads, uploadCache);
+    }
+
+    /**
+     * Create an output downloader with the download settings of this engine.
+     *
+     * @return the output downloader.
+     */
+    OutputDownloader createOutputDownloader() {
+        return new OutputDownloader(galaxyInstance, historyUtils, maxConcurrentDownloads);
+    }
+
+    /**
+     * Start running the workflow: check the result cache (if it is used) and otherwise execute the workflow on Galaxy,
+     * without blocking the calling thread.
+     *
+     * @param workflow the workflow to run.
+     * @return the future that is completed with the workflow result.
+     */
+    private ListenableFuture<Boolean> startWorkflowRun(final Workflow workflow) {
+        if (galaxyInstance == null) {
+            logger.error(GALAXY_INSTANCE_NOT_INITIALIZED);
+            return Futures.immediateFuture(false);
+        }
+        if (resultCache == null)
+            return executeWorkflowRun(workflow);
+        final ListenableFuture<String> resultKeyFuture = SharedExecutors.getBlockingExecutor().submit(
+                new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return resultCache.createKey(workflow);
+                    }
+                });
+        return Futures.transformAsync(resultKeyFuture, new AsyncFunction<String, Boolean>() {
+            @Override
+            public ListenableFuture<Boolean> apply(final String resultKey) {
+                return runWithResultCache(workflow, resultKey);
+            }
+        }, SharedExecutors.getBlockingExecutor());
+    }
+
+    /**
+     * Use the outputs of an earlier identical workflow run if the result cache has them; otherwise execute the
+     * workflow and store the outputs of a successful run in the result cache.
+     *
+     * @param workflow  the workflow to run.
+     * @param resultKey the key of the workflow run in the result cache (or null if it could not be determined).
+     * @return the future that is completed with the workflow result.
+     */
+    private ListenableFuture<Boolean> runWithResultCache(final Workflow workflow, final String resultKey) {
+        if (resultKey != null && resultCache.restoreOutputs(workflow, resultKey))
+            return Futures.immediateFuture(true);
+        final Function<Boolean, Boolean> storeOutputs = new Function<Boolean, Boolean>() {
+            @Override
+            public Boolean apply(final Boolean successful) {
+                if (successful && resultKey != null)
+                    resultCache.storeOutputs(workflow, resultKey);
+                return successful;
+            }
+        };
+        return Futures.transform(executeWorkflowRun(workflow), storeOutputs, SharedExecutors.getBlockingExecutor());
+    }
+
+    /**
+     * Execute the workflow on Galaxy: chain the stages of a workflow run without blocking the calling thread.
+     *
+     * @param workflow the workflow to run.
+     * @return the future that is completed with the workflow result.
+     */
+    private ListenableFuture<Boolean> executeWorkflowRun(final Workflow workflow) {
+        final ListenableFuture<GalaxyWorkflowRun> runFuture = SharedExecutors.getBlockingExecutor().submit(
+                new Callable<GalaxyWorkflowRun>() {
+                    @Override
+                    public GalaxyWorkflowRun call() {
+                        return createWorkflowRun(workflow);
+                    }
+                });
+        return Futures.transformAsync(runFuture, new AsyncFunction<GalaxyWorkflowRun, Boolean>() {
+            @Override
+            public ListenableFuture<Boolean> apply(final GalaxyWorkflowRun workflowRun) {
+                return executeWorkflowStages(workflowRun);
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Prepare a workflow run and chain its stages: upload, execute, wait and download. The preparation and the
+     * chaining are done in a task of the future, so every failure (also before the stages are chained) completes the
+     * future. When the run has ended, its history is made available for other runs.
+     *
+     * @param workflowRun the workflow run.
+     * @return the future that is completed with the workflow result.
+     */
+    private ListenableFuture<Boolean> executeWorkflowStages(final GalaxyWorkflowRun workflowRun) {
+        final ListenableFuture<Boolean> resultFuture = Futures.submitAsync(new AsyncCallable<Boolean>() {
+            @Override
+            public ListenableFuture<Boolean> call() {
+                prepareWorkflowRun(workflowRun);
+                return chainWorkflowStages(workflowRun);
+            }
+        }, SharedExecutors.getBlockingExecutor());
+        Futures.addCallback(resultFuture, new FutureCallback<Boolean>() {
+            @Override
+            public void onSuccess(final Boolean successful) {
+                endWorkflowRun(workflowRun, false);
+            }
+
+            @Override
+            public void onFailure(final Throwable throwable) {
+                endWorkflowRun(workflowRun, true);
+            }
+        }, MoreExecutors.directExecutor());
+        return resultFuture;
+    }
+
+    /**
+     * Chain the stages of a workflow run: upload, execute, wait and download.
+     *
+     * @param workflowRun the workflow run.
+     * @return the future that is completed with the workflow result.
+     */
+    private ListenableFuture<Boolean> chainWorkflowStages(final GalaxyWorkflowRun workflowRun) {
+        final ListenableFuture<List<UploadedInput>> uploadsFuture = uploadInputFiles(workflowRun);
+        final AsyncFunction<List<UploadedInput>, Void> waitForUploads = new AsyncFunction<List<UploadedInput>, Void>() {
+            @Override
+            public ListenableFuture<Void> apply(final List<UploadedInput> uploadedInputs) {
+                return whenUploadFinished(workflowRun, uploadedInputs);
+            }
+        };
+        final ListenableFuture<Void> uploadFuture = Futures.transformAsync(uploadsFuture, waitForUploads,
+                                                                           MoreExecutors.directExecutor());
+        final AsyncFunction<Void, Boolean> executeWorkflow = new AsyncFunction<Void, Boolean>() {
+            @Override
+            public ListenableFuture<Boolean> apply(final Void ignored) {
+                startWorkflowExecution(workflowRun, createInputsObject(workflowRun));
+                return whenWorkflowFinished(workflowRun);
+            }
+        };
+        final ListenableFuture<Boolean> finishedFuture = Futures.transformAsync(uploadFuture, executeWorkflow,
+                                                                                SharedExecutors.getBlockingExecutor());
+        return Futures.transformAsync(finishedFuture, new AsyncFunction<Boolean, Boolean>() {
+            @Override
+            public ListenableFuture<Boolean> apply(final Boolean workflowFinished) {
+                return finishWorkflowRun(workflowRun, workflowFinished);
+            }
+        }, SharedExecutors.getBlockingExecutor());
+    }
+
+    /**
+     * Create the state for a workflow run. The run uses the history of this engine if it is available; otherwise a
+     * history is leased from the history pool.
+     *
+     * @param workflow the workflow to run.
+     * @return the workflow run.
+     */
+    private GalaxyWorkflowRun createWorkflowRun(final Workflow workflow) {
+        final boolean useEngineHistory = historyInUse.compareAndSet(false, true);
+        final String runHistoryId;
+        if (useEngineHistory)
+            runHistoryId = historyId;
+        else {
+            runHistoryId = HistoryPool.forInstance(galaxyInstance)
+                    .leaseHistory(getLeasedHistoryName(workflow.getName() + " History"));
+            synchronized (this) {
+                activeHistoryIds.add(runHistoryId);
+                leasedHistoryIds.add(runHistoryId);
+            }
+        }
+        final GalaxyWorkflowRun workflowRun = new GalaxyWorkflowRun(workflow, galaxyInstance, historyUtils,
+                                                                    runHistoryId, !useEngineHistory);
+        workflowRun.setOutputDownloader(createOutputDownloader());
+        workflowRuns.put(workflow, workflowRun);
+        lastWorkflowRun = workflowRun;
+        return workflowRun;
+    }
+
+    /**
+     * End a workflow run: make the history of this engine available again, or release a leased history when the
+     * output files have been downloaded already or the run failed (otherwise it is kept for downloading outputs later
+     * on). If the histories of this engine were released while the run was using one of them, that history is
+     * released now.
+     *
+     * @param workflowRun the workflow run.
+     * @param failed      whether the run failed with an exception.
+     */
+    private synchronized void endWorkflowRun(final GalaxyWorkflowRun workflowRun, final boolean failed) {
+        final String runHistoryId = workflowRun.getHistoryId();
+        if (!workflowRun.isLeasedHistory() && releaseRequested)
+            historyReleaseFuture.setFuture(HistoryPool.forInstance(galaxyInstance).releaseHistory(runHistoryId));
+        else if (!workflowRun.isLeasedHistory())
+            historyInUse.set(false);
+        else {
+            activeHistoryIds.remove(runHistoryId);
+            if (releaseRequested || failed || workflowRun.getWorkflow().getAutomaticDownload())
+                releaseLeasedHistory(runHistoryId);
+        }
+    }
+
+    /**
+     * Release a leased history to the history pool, unless it has been released already.
+     *
+     * @param leasedHistoryId the ID of the leased history.
+     */
+    private void releaseLeasedHistory(final String leasedHistoryId) {
+        if (leasedHistoryIds.remove(leasedHistoryId))
+            HistoryPool.forInstance(galaxyInstance).releaseHistory(leasedHistoryId);
+    }
+
+    /**
+     * Prepare a workflow run: make sure the workflow is available on the server.
+     *
+     * @param workflowRun the workflow run.
+     */
+    @SuppressWarnings("SpellCheckingInspection")
+    private void prepareWorkflowRun(final GalaxyWorkflowRun workflowRun) {
+        logStartRunWorkflow(workflowRun);
+
+        // todo: check whether the server is available and/or give a better error message when it isn't available.
+        /*
+        <html>
+            <head><title>504 Gateway Time-out</title></head>
+            <body bgcolor="white">
+                <center><h1>504 Gateway Time-out</h1></center>
+                <hr>
+                <center>nginx/1.2.0</center>
+            </body>
+        </html>
+         */
+
+        logger.info("Ensure the workflow is available.");
+        ((GalaxyWorkflow) workflowRun.getWorkflow()).ensureWorkflowIsOnServer(workflowRegistry);
+    }
+
+    /**
+     * Finish a workflow run: download the output files and check the results.
+     *
+     * @param workflowRun      the workflow run.
+     * @param workflowFinished whether the workflow finished before the deadline.
+     * @return the future that is set to whether the workflow ran successfully.
+     */
+    private ListenableFuture<Boolean> finishWorkflowRun(final GalaxyWorkflowRun workflowRun,
+                                                        final boolean workflowFinished) {
+        final Map<String, List<String>> stateIds = historiesClient.showHistory(workflowRun.getHistoryId())
+                .getStateIds();
+        logger.debug("History state IDs after execute: {}.", stateIds);
+        logger.debug("There are {} output file(s) ready for download.", stateIds.get(DatasetStates.OK).size());
+        return Futures.transformAsync(downloadOutputFiles(workflowRun), new AsyncFunction<Boolean, Boolean>() {
+            @Override
+            public ListenableFuture<Boolean> apply(final Boolean downloadsSuccessful) throws IOException {
+                return Futures.immediateFuture(checkWorkflowRun(workflowRun, workflowFinished, downloadsSuccessful));
+            }
+        }, SharedExecutors.getBlockingExecutor());
+    }
+
+    /**
+     * Check the results of a workflow run after the output files have been downloaded.
+     *
+     * @param workflowRun         the workflow run.
+     * @param workflowFinished    whether the workflow finished before the deadline.
+     * @param downloadsSuccessful whether all output files were downloaded successfully.
+     * @return whether the workflow ran successfully.
+     * @throws IOException if reading the workflow results fails.
+     */
+    private boolean checkWorkflowRun(final GalaxyWorkflowRun workflowRun, final boolean workflowFinished,
+                                     final boolean downloadsSuccessful) throws IOException {
+        logger.trace("Download output files downloadsSuccessful: {}.", downloadsSuccessful);
+
+        if (!workflowFinished)
+            logger.info("Workflow output file(s) not ready (timeout or failed outputs).");
+        // Freek: test the output anyway to generate some logging for debugging/analysis.
+        final boolean checkResults = checkWorkflowResults(workflowRun);
+        logger.trace("workflowFinished: " + workflowFinished);
+        logger.trace("downloadsSuccessful: " + downloadsSuccessful);
+        logger.trace("checkResults: " + checkResults);
+        return workflowFinished && downloadsSuccessful && checkResults;
     }
 
     /**
      * Log Galaxy server details when starting a workflow.
+     *
+     * @param workflowRun the workflow run.
      */
-    private void logStartRunWorkflow() {
+    private void logStartRunWorkflow(final GalaxyWorkflowRun workflowRun) {
         logger.info("nl.vumc.biomedbridges.galaxy.GalaxyWorkflowEngine.runWorkflow");
         logger.info("");
         logger.info("Galaxy instance URL: {}.", galaxyInstance.getGalaxyUrl());
         logger.info("Galaxy API key: {}.", galaxyInstance.getApiKey());
-        logger.info("Galaxy history ID: {}.", historyId);
+        logger.info("Galaxy history ID: {}.", workflowRun.getHistoryId());
         logger.info("");
     }
 
     /**
-     * Upload the input files and wait for it to finish.
+     * Start uploading the input files in parallel (waiting for Galaxy to process them is done by whenUploadFinished).
+     * When an upload cache is used, input files with known content are not uploaded again.
      *
-     * @param workflow the workflow.
-     * @throws InterruptedException if any thread has interrupted the current thread while waiting for Galaxy.
-     */
-    private void uploadInputFiles(final Workflow workflow) throws InterruptedException {
-        logger.info("- Upload the input files.");
-//        workflow.getAllInputValues().stream().filter(inputObject -> inputObject instanceof File).forEach(inputObject -> {
-//                final File inputFile = (File) inputObject;
-//                final int uploadStatus = uploadInputFile(workflow, historyId, inputFile).getStatus();
-//                if (uploadStatus != HttpStatus.SC_OK)
-//                    logger.error("Uploading file {} failed with status {}.", inputFile.getAbsolutePath(), uploadStatus);
-//            });
-        for (Object inputObject : workflow.getAllInputValues())
-            if (inputObject instanceof File) {
-                final File inputFile = (File) inputObject;
-                final int uploadStatus = uploadInputFile(workflow, historyId, inputFile).getStatus();
-                if (uploadStatus != HttpStatus.SC_OK)
-                    logger.error("Uploading file {} failed with status {}.", inputFile.getAbsolutePath(), uploadStatus);
-            }
-        logger.info("- Waiting for upload to history to finish.");
-        waitForHistoryUpload(historyId);
+     * @param workflowRun the workflow run.
+     * @return the future that is completed with the uploaded inputs when all upload requests have been handled.
+     */
+    private ListenableFuture<List<UploadedInput>> uploadInputFiles(final GalaxyWorkflowRun workflowRun) {
+        final Workflow workflow = workflowRun.getWorkflow();
+        logger.info("Prepare the input files.");
+        logger.info("- Upload the input files (at most {} at the same time).", maxConcurrentUploads);
+        final List<File> inputFiles = new ArrayList<>();
+        for (final Object inputObject : workflow.getAllInputValues())
+            if (inputObject instanceof File)
+                inputFiles.add((File) inputObject);
+        if (uploadCache != null)
+            workflowRun.setUploadContentsIndex(new HistoryContentsIndex(galaxyInstance, historyUtils,
+                                                                        uploadCache.getCacheHistoryId(galaxyInstance)));
+        return createInputUploader().uploadFiles(workflowRun.getUploadContentsIndex().getHistoryId(), inputFiles,
+                                         getUploadFileType(workflow));
     }
 
     /**
-     * Upload an input file to a Galaxy server.
+     * Determine the Galaxy file type that is used for uploading the input files of a workflow.
      *
-     * @param workflow  the workflow.
-     * @param historyId the ID of the history to use for workflow input and output.
-     * @param inputFile the input file to upload.
-     * @return the client response from the Jersey library.
+     * @param workflow the workflow.
+     * @return the Galaxy file type.
      */
-    private ClientResponse uploadInputFile(final Workflow workflow, final String historyId, final File inputFile) {
-        final ToolsClient.FileUploadRequest fileUploadRequest = new ToolsClient.FileUploadRequest(historyId, inputFile);
+    String getUploadFileType(final Workflow workflow) {
         // todo: do this based on what the Galaxy workflow needs.
-        if (workflow.getName().equals(Constants.WORKFLOW_REMOVE_TOP_AND_LEFT))
-            fileUploadRequest.setFileType(FILE_TYPE_TEXT);
-        else
-            fileUploadRequest.setFileType(FILE_TYPE_TABULAR);
-        return galaxyInstance.getToolsClient().uploadRequest(fileUploadRequest);
+        return workflow.getName().equals(Constants.WORKFLOW_REMOVE_TOP_AND_LEFT) ? FILE_TYPE_TEXT : FILE_TYPE_TABULAR;
     }
 
     /**
-     * Wait for the input files upload to finish.
+     * Start waiting for the input files upload to finish. When Galaxy reported the dataset IDs for all uploads, the
+     * state of each uploaded dataset is tracked and the next phase can start as soon as they are ready; otherwise the
+     * history as a whole is watched and the wait after upload period is scheduled to be on the safe side.
      *
-     * @param historyId the ID of the history with the input files.
-     * @throws InterruptedException if any thread has interrupted the current thread while waiting for Galaxy.
-     */
-    private void waitForHistoryUpload(final String historyId) throws InterruptedException {
-        boolean finished = false;
-        int waitCount = 0;
-        while (!finished && waitCount < uploadMaxWaitCount) {
-            logger.info("  + Now waiting for {} seconds...", uploadWaitSeconds);
-            Thread.sleep(uploadWaitSeconds * MILLISECONDS_PER_SECOND);
-            finished = isHistoryReady(historyId);
-            waitCount++;
-        }
-        final HistoryDetails historyDetails = historiesClient.showHistory(historyId);
+     * @param workflowRun    the workflow run.
+     * @param uploadedInputs the uploaded inputs.
+     * @return the future that is completed when the next phase of the workflow run can start.
+     */
+    private ListenableFuture<Void> whenUploadFinished(final GalaxyWorkflowRun workflowRun,
+                                                      final List<UploadedInput> uploadedInputs) {
+        logger.info("- Waiting for upload to history to finish.");
+        final BackoffPolicy backoffPolicy = createUploadBackoffPolicy();
+        logger.info("  + Now waiting at most {} seconds...",
+                    backoffPolicy.getTimeoutMillis() / MILLISECONDS_PER_SECOND);
+        final Map<File, String> inputDatasetIds = workflowRun.getInputDatasetIds();
+        for (final UploadedInput uploadedInput : uploadedInputs)
+            if (uploadedInput.getDatasetId() != null)
+                inputDatasetIds.put(uploadedInput.getInputFile(), uploadedInput.getDatasetId());
+        final HistoryContentsIndex uploadContentsIndex = workflowRun.getUploadContentsIndex();
+        final DatasetsReadyCheck datasetsReadyCheck
+                = inputDatasetIds.size() == uploadedInputs.size()
+                  ? new DatasetsReadyCheck(uploadContentsIndex, inputDatasetIds.values())
+                  : null;
+        final ListenableFuture<Boolean> readyFuture
+                = datasetsReadyCheck != null
+                  ? completionWaiter.waitForCompletion(datasetsReadyCheck, backoffPolicy)
+                  : whenHistoryReady(uploadContentsIndex.getHistoryId(), backoffPolicy);
+        return Futures.transformAsync(readyFuture, new AsyncFunction<Boolean, Void>() {
+            @Override
+            public ListenableFuture<Void> apply(final Boolean uploadsReady) {
+                if (datasetsReadyCheck != null && !datasetsReadyCheck.getFailedDatasetIds().isEmpty())
+                    logger.error("Uploaded datasets not in 'ok' state: {}.", datasetsReadyCheck.getFailedDatasetIds());
+                logUploadState(uploadContentsIndex.getHistoryId());
+                if (datasetsReadyCheck != null)
+                    return Futures.immediateFuture(null);
+                return SharedExecutors.getScheduler().schedule(Callables.<Void>returning(null),
+                                                               waitAfterUploadSeconds * MILLISECONDS_PER_SECOND,
+                                                               TimeUnit.MILLISECONDS);
+            }
+        }, SharedExecutors.getBlockingExecutor());
+    }
+
+    /**
+     * Log the state of the history after the input files upload.
+     *
+     * @param uploadHistoryId the ID of the history that the input files were uploaded to.
+     */
+    private void logUploadState(final String uploadHistoryId) {
+        final HistoryDetails historyDetails = historiesClient.showHistory(uploadHistoryId);
         final String state = historyDetails.getState();
         final Map<String, List<String>> stateIds = historyDetails.getStateIds();
         final String stateIdsMessage = "historyDetails.getStateIds(): " + stateIds;
-        if (STATE_OK.equals(state))
+        if (DatasetStates.OK.equals(state))
             logger.debug(stateIdsMessage);
         else {
             logger.error("History upload no longer running, but not in 'ok' state. State is: '{}'.", state);
             logger.error(stateIdsMessage);
         }
-        Thread.sleep(waitAfterUploadSeconds * MILLISECONDS_PER_SECOND);
+    }
+
+    /**
+     * Start waiting for uploading/processing of all files in a history to be ready. The returned future is set to true
+     * as soon as the history no longer contains datasets in a non-terminal state and to false if the deadline of the
+     * backoff policy passes first.
+     *
+     * @param historyId     the ID of the history to watch.
+     * @param backoffPolicy the policy that determines the probe intervals and the deadline.
+     * @return the future that is completed when the history is ready or the deadline has passed.
+     */
+    public ListenableFuture<Boolean> whenHistoryReady(final String historyId, final BackoffPolicy backoffPolicy) {
+        return completionWaiter.waitForCompletion(new CompletionCheck() {
+            @Override
+            public boolean isComplete() {
+                return isHistoryReady(historyId);
+            }
+        }, backoffPolicy);
+    }
+
+    /**
+     * Start waiting for the outputs of a workflow run to be ready. Only the output datasets that Galaxy reported when
+     * the workflow was invoked are tracked, so other runs and uploads in the same history do not affect the wait. Each
+     * probe retrieves the outputs that are still pending with a single history contents request (with the ids
+     * parameter). The history as a whole is watched if no output IDs are known. The returned future is set to true
+     * when all outputs reached the ok state and to false if an output failed (including outputs that were deleted or
+     * purged) or the deadline of the backoff policy passed first.
+     *
+     * @param workflowRun   the workflow run.
+     * @param backoffPolicy the policy that determines the probe intervals and the deadline.
+     * @param readyListener the listener that is notified as soon as each output is ok (or null).
+     * @return the future that is completed when the outputs are ready, an output failed or the deadline has passed.
+     */
+    ListenableFuture<Boolean> whenOutputsReady(final GalaxyWorkflowRun workflowRun, final BackoffPolicy backoffPolicy,
+                                               final DatasetReadyListener readyListener) {
+        final List<String> outputIds = workflowRun.getOutputIds();
+        if (outputIds.isEmpty())
+            return whenHistoryReady(workflowRun.getHistoryId(), backoffPolicy);
+        final DatasetsReadyCheck outputsReadyCheck = new DatasetsReadyCheck(workflowRun.getHistoryContentsIndex(),
+                                                                            outputIds, readyListener);
+        final Function<Boolean, Boolean> checkOutputs = new Function<Boolean, Boolean>() {
+            @Override
+            public Boolean apply(final Boolean outputsReady) {
+                final List<String> failedOutputIds = outputsReadyCheck.getFailedDatasetIds();
+                if (!failedOutputIds.isEmpty())
+                    logger.error("Workflow outputs not in 'ok' state: {}.", failedOutputIds);
+                return outputsReady && failedOutputIds.isEmpty();
+            }
+        };
+        return Futures.transform(completionWaiter.waitForCompletion(outputsReadyCheck, backoffPolicy), checkOutputs,
+                                 MoreExecutors.directExecutor());
     }
 
     /**
@@ -368,31 +1002,39 @@ public class GalaxyWorkflowEngine implements WorkflowEngine {
     private boolean isHistoryReady(final String historyId) {
         final HistoryDetails historyDetails = historiesClient.showHistory(historyId);
         // If the input/output file count is known, it could be checked too:
-        //                       historyDetails.getStateIds().get(STATE_OK).size() == [n]
-        final boolean finished = historyDetails.getStateIds().get("running").size() == 0
-                                 && historyDetails.getStateIds().get("queued").size() == 0;
+        //                       historyDetails.getStateIds().get(DatasetStates.OK).size() == [n]
+        final Map<String, List<String>> stateIds = historyDetails.getStateIds();
+        boolean finished = true;
+        for (final String nonTerminalState : DatasetStates.NON_TERMINAL_STATES)
+            if (stateIds.get(nonTerminalState) != null && !stateIds.get(nonTerminalState).isEmpty())
+                finished = false;
         logger.debug("finished: " + finished);
-        logger.debug("History state IDs: {}.", historyDetails.getStateIds());
+        logger.debug("History state IDs: {}.", stateIds);
         return finished;
     }
 
     /**
      * Create the workflow inputs object with the input files and parameters.
      *
-     * @param workflow the workflow.
+     * @param workflowRun the workflow run.
      * @return the workflow inputs object.
      */
-    private WorkflowInputs createInputsObject(final Workflow workflow) {
+    private WorkflowInputs createInputsObject(final GalaxyWorkflowRun workflowRun) {
         logger.info("- Create the workflow inputs object.");
+        final Workflow workflow = workflowRun.getWorkflow();
         final WorkflowInputs inputs = new WorkflowInputs();
-        inputs.setDestination(new WorkflowInputs.ExistingHistory(historyId));
-        final String galaxyWorkflowId = getGalaxyWorkflowId(workflow.getName());
+        inputs.setDestination(new WorkflowInputs.ExistingHistory(workflowRun.getHistoryId()));
+        final String galaxyWorkflowId = workflowRegistry.getWorkflowId(workflow.getName());
         logger.trace("galaxyWorkflowId: {}.", galaxyWorkflowId);
         inputs.setWorkflowId(galaxyWorkflowId);
-        final WorkflowDetails workflowDetails = workflowsClient.showWorkflow(galaxyWorkflowId);
+        final WorkflowDetails workflowDetails = workflowRegistry.getWorkflowDetails(galaxyWorkflowId);
+        final HistoryContentsIndex historyContentsIndex = workflowRun.getHistoryContentsIndex().refresh();
+        final Map<File, String> inputDatasetIds = workflowRun.getInputDatasetIds();
         for (final Map.Entry<String, Object> inputEntry : workflow.getAllInputEntries()) {
-            final String fileName = ((File) inputEntry.getValue()).getName();
-            final String inputId = historyUtils.getDatasetIdByName(fileName, historiesClient, historyId);
+            final File inputFile = (File) inputEntry.getValue();
+            final String fileName = inputFile.getName();
+            final String inputId = inputDatasetIds.containsKey(inputFile) ? inputDatasetIds.get(inputFile)
+                                                                          : historyContentsIndex.getDatasetId(fileName);
             final WorkflowInput workflowInput = new WorkflowInput(inputId, WorkflowInputs.InputSourceType.HDA);
             logger.trace("Add input file {} for input label {}.", fileName, inputEntry.getKey());
             WorkflowUtils.setInputByLabel(inputEntry.getKey(), workflowDetails, inputs, workflowInput);
@@ -409,8 +1051,8 @@ public class GalaxyWorkflowEngine implements WorkflowEngine {
      * @param inputs        the inputs object.
      * @param workflowSteps the workflow steps.
      */
-    private void addParametersToInputsObject(final Workflow workflow, final WorkflowInputs inputs,
-                                             final Map<String, WorkflowStepDefinition> workflowSteps) {
+    static void addParametersToInputsObject(final Workflow workflow, final WorkflowInputs inputs,
+                                            final Map<String, WorkflowStepDefinition> workflowSteps) {
         final List<String> stepIds = new ArrayList<>(workflowSteps.keySet());
         Collections.sort(stepIds);
         for (final Object stepNumber : workflow.getParameters().keySet()) {
@@ -429,81 +1071,196 @@ public class GalaxyWorkflowEngine implements WorkflowEngine {
     }
 
     /**
-     * Get the ID of the Galaxy workflow.
+     * Start executing the workflow that was prepared with the workflows client.
      *
-     * @param workflowName the name of the workflow.
-     * @return the ID of the Galaxy workflow or null otherwise.
+     * @param workflowRun    the workflow run.
+     * @param workflowInputs the blend4j workflow inputs.
      */
-    private String getGalaxyWorkflowId(final String workflowName) {
-        com.github.jmchilton.blend4j.galaxy.beans.Workflow matchingWorkflow = null;
-        for (final com.github.jmchilton.blend4j.galaxy.beans.Workflow workflow : workflowsClient.getWorkflows())
-            if (workflow.getName().startsWith(workflowName))
-                matchingWorkflow = workflow;
-        return (matchingWorkflow != null) ? matchingWorkflow.getId() : null;
+    private void startWorkflowExecution(final GalaxyWorkflowRun workflowRun, final WorkflowInputs workflowInputs) {
+        final WorkflowOutputs workflowOutputs = workflowsClient.runWorkflow(workflowInputs);
+        workflowRun.setWorkflowOutputs(workflowOutputs);
+        logger.info("Running the workflow (history ID: {}).", workflowOutputs.getHistoryId());
     }
 
     /**
-     * Execute the workflow that was prepared with the workflows client.
+     * Start waiting for the workflow to finish, by tracking the output datasets of this run (see whenOutputsReady).
+     * When the outputs are downloaded automatically, the download of each output starts as soon as it is ready, so
+     * transfers overlap with the remaining steps of the workflow.
      *
-     * @param workflowInputs the blend4j workflow inputs.
-     * @return whether the workflow finished successfully.
-     * @throws InterruptedException if any thread has interrupted the current thread while waiting for Galaxy.
+     * @param workflowRun the workflow run.
+     * @return the future that is set to whether the workflow finished before the deadline.
      */
-    private boolean executeWorkflow(final WorkflowInputs workflowInputs) throws InterruptedException {
-        workflowOutputs = workflowsClient.runWorkflow(workflowInputs);
-        logger.info("Running the workflow (history ID: {}).", workflowOutputs.getHistoryId());
-        boolean finished = false;
-        int waitCount = 0;
-        while (!finished && waitCount < runWorkflowMaxWaitCount) {
-            logger.info("- Now waiting for {} seconds...", workflowWaitSeconds);
-            Thread.sleep(workflowWaitSeconds * MILLISECONDS_PER_SECOND);
-            finished = isHistoryReady(historyId);
-            waitCount++;
+    private ListenableFuture<Boolean> whenWorkflowFinished(final GalaxyWorkflowRun workflowRun) {
+        final BackoffPolicy backoffPolicy = createWorkflowBackoffPolicy();
+        logger.info("- Now waiting at most {} seconds...", backoffPolicy.getTimeoutMillis() / MILLISECONDS_PER_SECOND);
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        final DatasetReadyListener readyListener = workflowRun.getWorkflow().getAutomaticDownload()
+                                                   ? createDownloadListener(workflowRun)
+                                                   : null;
+        final Function<Boolean, Boolean> logFinished = new Function<Boolean, Boolean>() {
+            @Override
+            public Boolean apply(final Boolean finished) {
+                if (finished)
+                    logger.info("Workflow seems to be finished after {} milliseconds.",
+                                stopwatch.elapsed(TimeUnit.MILLISECONDS));
+                else
+                    logger.warn("Stopped waiting for the workflow to finish after {} seconds.",
+                                stopwatch.elapsed(TimeUnit.SECONDS));
+                return finished;
+            }
+        };
+        return Futures.transform(whenOutputsReady(workflowRun, backoffPolicy, readyListener), logFinished,
+                                 MoreExecutors.directExecutor());
+    }
+
+    /**
+     * If the workflow has automatically downloading selected: download all output files (the downloads of outputs that
+     * were ready earlier have been started already) and add them as results to the workflow object. Else: fill a map
+     * with output name to output ID entries to allow later download.
+     *
+     * @param workflowRun the workflow run.
+     * @return the future that is set to whether all output files were downloaded successfully.
+     */
+    private ListenableFuture<Boolean> downloadOutputFiles(final GalaxyWorkflowRun workflowRun) {
+        if (!workflowRun.getWorkflow().getAutomaticDownload()) {
+            workflowRun.setOutputNameToIdsMap(workflowRun.getHistoryContentsIndex().refresh().getNameToIdMap());
+            return Futures.immediateFuture(true);
         }
-        if (finished)
-            logger.info("Workflow seems to be finished after roughly {} seconds.", waitCount * workflowWaitSeconds);
-        else
-            logger.warn("Stopped waiting for the workflow to finish after {} seconds.",
-                        runWorkflowMaxWaitCount * workflowWaitSeconds);
-        final Map<String, List<String>> stateIds = historiesClient.showHistory(historyId).getStateIds();
-        logger.debug("History state IDs after execute: {}.", stateIds);
-        logger.debug("There are {} output file(s) ready for download.", stateIds.get(STATE_OK).size());
-        return finished;
+        final List<ListenableFuture<Boolean>> downloadFutures = new ArrayList<>();
+        for (final String outputId : workflowRun.getOutputIds())
+            downloadFutures.add(startOutputDownload(workflowRun, outputId));
+        final Function<List<Boolean>, Boolean> allSuccessful = new Function<List<Boolean>, Boolean>() {
+            @Override
+            public Boolean apply(final List<Boolean> downloadResults) {
+                return !downloadResults.contains(false);
+            }
+        };
+        final ListenableFuture<Boolean> successFuture = Futures.transform(Futures.allAsList(downloadFutures),
+                                                                          allSuccessful,
+                                                                          MoreExecutors.directExecutor());
+        return Futures.catching(successFuture, IOException.class, new Function<IOException, Boolean>() {
+            @Override
+            public Boolean apply(final IOException e) {
+                logger.error("Error downloading a workflow output file.", e);
+                return false;
+            }
+        }, MoreExecutors.directExecutor());
     }
 
     /**
-     * If the workflow has automatically downloading selected: download all output files and add them as results to the
-     * workflow object. Else: fill a map with output name to output ID entries to allow later download.
+     * Create a listener that starts downloading each output of a workflow run as soon as it is ready.
      *
-     * @param workflow the workflow.
-     * @return whether all output files were downloaded successfully.
+     * @param workflowRun the workflow run.
+     * @return the dataset ready listener.
      */
-    private boolean downloadOutputFiles(final Workflow workflow) {
-        boolean success = true;
-        try {
-            if (workflow.getAutomaticDownload())
-                for (final String outputId : workflowOutputs.getOutputIds())
-                    success &= downloadOutputFile(workflow, outputId);
-            else {
-                outputNameToIdsMap = new HashMap<>();
-                for (final HistoryContents historyContents : historiesClient.showHistoryContents(historyId))
-                    outputNameToIdsMap.put(historyContents.getName(), historyContents.getId());
+    private DatasetReadyListener createDownloadListener(final GalaxyWorkflowRun workflowRun) {
+        return new DatasetReadyListener() {
+            @Override
+            public void datasetReady(final String outputId) {
+                startOutputDownload(workflowRun, outputId);
             }
-        } catch (final IOException e) {
-            logger.error("Error downloading a workflow output file.", e);
-            success = false;
-        }
-        return success;
+        };
     }
 
     /**
-     * Retrieve the output ID for a workflow output file using the output name.
+     * Start downloading an output of a workflow run, unless its download has been started already. When the download
+     * has finished, the output file is added to the workflow (which notifies the output listeners of the workflow).
+     *
+     * @param workflowRun the workflow run.
+     * @param outputId    the ID of the output dataset.
+     * @return the future that is set to whether the output file was downloaded successfully.
+     */
+    private ListenableFuture<Boolean> startOutputDownload(final GalaxyWorkflowRun workflowRun, final String outputId) {
+        final SettableFuture<Boolean> downloadFuture = SettableFuture.create();
+        final ListenableFuture<Boolean> startedDownload = workflowRun.getOutputDownloads().putIfAbsent(outputId,
+                                                                                                       downloadFuture);
+        if (startedDownload != null)
+            return startedDownload;
+        downloadFuture.setFuture(Futures.submitAsync(new AsyncCallable<Boolean>() {
+            @Override
+            public ListenableFuture<Boolean> call() throws IOException {
+                return downloadOutput(workflowRun, outputId);
+            }
+        }, SharedExecutors.getBlockingExecutor()));
+        return downloadFuture;
+    }
+
+    /**
+     * Download an output of a workflow run with the output downloader of the run and add it to the workflow.
+     *
+     * @param workflowRun the workflow run.
+     * @param outputId    the ID of the output dataset.
+     * @return the future that is set to whether the output file was downloaded successfully.
+     * @throws IOException if a local file could not be created.
+     */
+    private ListenableFuture<Boolean> downloadOutput(final GalaxyWorkflowRun workflowRun, final String outputId)
+            throws IOException {
+        final Workflow workflow = workflowRun.getWorkflow();
+        final String runHistoryId = workflowRun.getHistoryId();
+        final Dataset dataset = historiesClient.showDataset(runHistoryId, outputId);
+        final String outputName = dataset.getName() != null ? dataset.getName() : outputId;
+        final File outputFile = createOutputFile(workflow, runHistoryId, dataset, outputName);
+        final ListenableFuture<TransferStatistics> statisticsFuture
+                = workflowRun.getOutputDownloader().startDownload(runHistoryId, outputId, outputFile);
+        return Futures.transform(statisticsFuture, new Function<TransferStatistics, Boolean>() {
+            @Override
+            public Boolean apply(final TransferStatistics statistics) {
+                if (statistics != null) {
+                    workflowRun.getOutputFiles().put(outputId, outputFile);
+                    workflow.addOutput(outputName, outputFile);
+                }
+                return statistics != null;
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Retrieve the output ID for a workflow output file of the workflow run that was started last using the output
+     * name.
      *
      * @param outputName the output name.
      * @return the output ID.
      */
     public String getOutputIdForOutputName(final String outputName) {
-        return outputNameToIdsMap != null ? outputNameToIdsMap.get(outputName) : null;
+        final GalaxyWorkflowRun workflowRun = lastWorkflowRun;
+        return workflowRun != null ? workflowRun.getOutputIdForOutputName(outputName) : null;
+    }
+
+    /**
+     * Retrieve the output ID for a workflow output file using the output name.
+     *
+     * @param workflow   the workflow.
+     * @param outputName the output name.
+     * @return the output ID.
+     */
+    public String getOutputIdForOutputName(final Workflow workflow, final String outputName) {
+        final GalaxyWorkflowRun workflowRun = workflowRuns.get(workflow);
+        return workflowRun != null ? workflowRun.getOutputIdForOutputName(outputName) : null;
+    }
+
+    /**
+     * Get a handle to a workflow output that reads the output from the Galaxy server on demand, without downloading it.
+     *
+     * @param workflow   the workflow.
+     * @param outputName the output name.
+     * @return the output handle or null if the workflow has no output with this name.
+     */
+    public GalaxyOutputHandle getOutputHandle(final Workflow workflow, final String outputName) {
+        final String outputId = getOutputIdForOutputName(workflow, outputName);
+        return outputId != null
+               ? new GalaxyOutputHandle(outputName, galaxyInstance, getRunHistoryId(workflow), outputId, historyUtils)
+               : null;
+    }
+
+    /**
+     * Get the ID of the history that was used by the last run of a workflow.
+     *
+     * @param workflow the workflow.
+     * @return the history ID (the history of this engine if the workflow has not been run by this engine).
+     */
+    private String getRunHistoryId(final Workflow workflow) {
+        final GalaxyWorkflowRun workflowRun = workflowRuns.get(workflow);
+        return workflowRun != null ? workflowRun.getHistoryId() : historyId;
     }
 
     /**
@@ -515,9 +1272,32 @@ public class GalaxyWorkflowEngine implements WorkflowEngine {
      * @throws IOException if a local file could not be created.
      */
     protected boolean downloadOutputFile(final Workflow workflow, final String outputId) throws IOException {
-        final Dataset dataset = historiesClient.showDataset(historyId, outputId);
+        final String runHistoryId = getRunHistoryId(workflow);
+        final Dataset dataset = historiesClient.showDataset(runHistoryId, outputId);
         final String outputName = dataset.getName() != null ? dataset.getName() : outputId;
-        final String baseName = FileUtils.cleanFileName(String.format("workflow-runner-%s-%s-", historyId, outputName));
+        final File outputFile = createOutputFile(workflow, runHistoryId, dataset, outputName);
+        final TransferStatistics statistics = historyUtils.streamDataset(galaxyInstance, runHistoryId, outputId,
+                                                                         outputFile);
+        if (statistics != null)
+            logger.info("Downloaded {}.", statistics);
+        workflow.addOutput(outputName, outputFile);
+        return statistics != null;
+    }
+
+    /**
+     * Create the local file for a workflow output.
+     *
+     * @param workflow     the workflow.
+     * @param runHistoryId the ID of the history with the output dataset.
+     * @param dataset      the output dataset.
+     * @param outputName   the output name.
+     * @return the local file for the output.
+     * @throws IOException if a local file could not be created.
+     */
+    File createOutputFile(final Workflow workflow, final String runHistoryId, final Dataset dataset,
+                          final String outputName) throws IOException {
+        final String baseName = FileUtils.cleanFileName(String.format("workflow-runner-%s-%s-", runHistoryId,
+                                                                      outputName));
         final String suffix;
         final String period = ".";
         suffix = period + dataset.getDataTypeExt();
@@ -527,52 +1307,47 @@ public class GalaxyWorkflowEngine implements WorkflowEngine {
         else
             outputFile = File.createTempFile(baseName, suffix);
         logger.info("Downloading output {} to local file {}.", outputName, outputFile.getAbsolutePath());
-        final boolean success = historyUtils.downloadDataset(galaxyInstance, historiesClient, historyId, outputId,
-                                                             outputFile.getAbsolutePath());
-        workflow.addOutput(outputName, outputFile);
-        return success;
+        return outputFile;
     }
 
     /**
      * Check the results of the workflow.
      *
-     * todo: is this still necessary? only if automatic download is on? last output file is downloaded twice?
-     *
-     * @param workflow the workflow.
+     * @param workflowRun the workflow run.
      * @return whether the workflow results appear to be valid.
      * @throws IOException if reading the workflow results fails.
      */
-    private boolean checkWorkflowResults(final Workflow workflow) throws IOException {
+    private boolean checkWorkflowResults(final GalaxyWorkflowRun workflowRun) throws IOException {
         boolean valid = true;
         logger.info("Check outputs.");
-        for (final String outputId : workflowOutputs.getOutputIds())
+        final List<String> outputIds = workflowRun.getOutputIds();
+        for (final String outputId : outputIds)
             logger.info("- Workflow output ID: {}.", outputId);
-        final int outputCount = workflowOutputs.getOutputIds().size();
+        final int outputCount = outputIds.size();
         if (outputCount != 1)
             logger.warn((outputCount == 0) ? "No workflow output found."
                                            : "More than one workflow outputs found ({}).", outputCount);
-        if (outputCount > 0 && workflow.getAutomaticDownload())
-            valid = checkDownloadingWorks();
+        if (outputCount > 0 && workflowRun.getWorkflow().getAutomaticDownload())
+            valid = checkDownloadingWorks(workflowRun, outputIds);
         return valid;
     }
 
     /**
-     * Check whether downloading an output file works.
+     * Check whether downloading an output file works, using the output file that was downloaded during the run.
      *
+     * @param workflowRun the workflow run.
+     * @param outputIds   the IDs of the workflow outputs.
      * @return whether downloading an output file works.
      */
-    private boolean checkDownloadingWorks() {
-        boolean valid;
+    private boolean checkDownloadingWorks(final GalaxyWorkflowRun workflowRun, final List<String> outputIds) {
         // The last workflow output file is most likely to be the end result.
-        final String outputDatasetId = workflowOutputs.getOutputIds().get(workflowOutputs.getOutputIds().size() - 1);
-        historyUtils.downloadDataset(galaxyInstance, historiesClient, historyId, outputDatasetId, OUTPUT_FILE_PATH);
-        final File outputFile = new File(OUTPUT_FILE_PATH);
-        valid = outputFile.exists();
+        final File outputFile = workflowRun.getOutputFiles().get(outputIds.get(outputIds.size() - 1));
+        final boolean valid = outputFile != null && outputFile.exists();
         if (valid)
             logger.info("- Output file exists.");
         else
             logger.error("- Output file does not exist!");
-        if (outputFile.length() == 0)
+        if (valid && outputFile.length() == 0)
             logger.warn("- Output file is empty.");
         return valid;
     }
@@ -0,0 +1,246 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.galaxy;
+
+import com.github.jmchilton.blend4j.galaxy.GalaxyInstance;
+import com.github.jmchilton.blend4j.galaxy.beans.WorkflowOutputs;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import nl.vumc.biomedbridges.core.Workflow;
+
+/**
+ * The state of one run of a workflow by the Galaxy workflow engine. Each run has its own history, history index, input
+ * datasets and outputs, so an engine can run several workflows at the same time without the runs affecting each
+ * other.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class GalaxyWorkflowRun {
+    /**
+     * The workflow that is run.
+     */
+    private final Workflow workflow;
+
+    /**
+     * The ID of the history that is used for the output files (and the input files when no upload cache is used).
+     */
+    private final String historyId;
+
+    /**
+     * Whether the history was leased for this run only (and not the history of the engine).
+     */
+    private final boolean leasedHistory;
+
+    /**
+     * The index of the history of this run.
+     */
+    private final HistoryContentsIndex historyContentsIndex;
+
+    /**
+     * Mappings from input file to the ID of the dataset that holds its content.
+     */
+    private final Map<File, String> inputDatasetIds = new ConcurrentHashMap<>();
+
+    /**
+     * The downloads of the output datasets that have been started, by output ID.
+     */
+    private final Map<String, ListenableFuture<Boolean>> outputDownloads = new ConcurrentHashMap<>();
+
+    /**
+     * The local files of the output datasets that have been downloaded successfully, by output ID.
+     */
+    private final Map<String, File> outputFiles = new ConcurrentHashMap<>();
+
+    /**
+     * The output downloader that downloads the outputs of this run as soon as each of them is ready.
+     */
+    private volatile OutputDownloader outputDownloader;
+
+    /**
+     * The index of the history that the input files are uploaded to: the history of this run or the upload cache
+     * history.
+     */
+    private volatile HistoryContentsIndex uploadContentsIndex;
+
+    /**
+     * The outputs of the executed workflow.
+     */
+    private volatile WorkflowOutputs workflowOutputs;
+
+    /**
+     * Mappings from output name to output ID (used when output files are not downloaded automatically).
+     */
+    private volatile Map<String, String> outputNameToIdsMap;
+
+    /**
+     * Create the state for a workflow run.
+     *
+     * @param workflow       the workflow that is run.
+     * @param galaxyInstance the Galaxy server that runs the workflow.
+     * @param historyUtils   the history utils object for retrieving the datasets of the run.
+     * @param historyId      the ID of the history that is used for the run.
+     * @param leasedHistory  whether the history was leased for this run only.
+     */
+    public GalaxyWorkflowRun(final Workflow workflow, final GalaxyInstance galaxyInstance,
+                             final HistoryUtils historyUtils, final String historyId, final boolean leasedHistory) {
+        this.workflow = workflow;
+        this.historyId = historyId;
+        this.leasedHistory = leasedHistory;
+        this.historyContentsIndex = new HistoryContentsIndex(galaxyInstance, historyUtils, historyId);
+        this.uploadContentsIndex = historyContentsIndex;
+    }
+
+    /**
+     * Get the workflow that is run.
+     *
+     * @return the workflow.
+     */
+    public Workflow getWorkflow() {
+        return workflow;
+    }
+
+    /**
+     * Get the ID of the history that is used for the run.
+     *
+     * @return the history ID.
+     */
+    public String getHistoryId() {
+        return historyId;
+    }
+
+    /**
+     * Whether the history was leased for this run only (and not the history of the engine).
+     *
+     * @return whether the history was leased for this run.
+     */
+    public boolean isLeasedHistory() {
+        return leasedHistory;
+    }
+
+    /**
+     * Get the index of the history of this run.
+     *
+     * @return the history index.
+     */
+    public HistoryContentsIndex getHistoryContentsIndex() {
+        return historyContentsIndex;
+    }
+
+    /**
+     * Get the index of the history that the input files are uploaded to.
+     *
+     * @return the upload history index.
+     */
+    public HistoryContentsIndex getUploadContentsIndex() {
+        return uploadContentsIndex;
+    }
+
+    /**
+     * Set the index of the history that the input files are uploaded to.
+     *
+     * @param uploadContentsIndex the upload history index.
+     */
+    public void setUploadContentsIndex(final HistoryContentsIndex uploadContentsIndex) {
+        this.uploadContentsIndex = uploadContentsIndex;
+    }
+
+    /**
+     * Get the mappings from input file to the ID of the dataset that holds its content.
+     *
+     * @return the (modifiable) input dataset IDs.
+     */
+    public Map<File, String> getInputDatasetIds() {
+        return inputDatasetIds;
+    }
+
+    /**
+     * Get the downloads of the output datasets that have been started.
+     *
+     * @return the (modifiable) output downloads by output ID; each future is set to whether the download succeeded.
+     */
+    public Map<String, ListenableFuture<Boolean>> getOutputDownloads() {
+        return outputDownloads;
+    }
+
+    /**
+     * Get the local files of the output datasets that have been downloaded successfully.
+     *
+     * @return the (modifiable) output files by output ID.
+     */
+    public Map<String, File> getOutputFiles() {
+        return outputFiles;
+    }
+
+    /**
+     * Get the output downloader that downloads the outputs of this run.
+     *
+     * @return the output downloader.
+     */
+    public OutputDownloader getOutputDownloader() {
+        return outputDownloader;
+    }
+
+    /**
+     * Set the output downloader that downloads the outputs of this run.
+     *
+     * @param outputDownloader the output downloader.
+     */
+    public void setOutputDownloader(final OutputDownloader outputDownloader) {
+        this.outputDownloader = outputDownloader;
+    }
+
+    /**
+     * Get the outputs of the executed workflow.
+     *
+     * @return the workflow outputs (or null if the workflow has not been executed yet).
+     */
+    public WorkflowOutputs getWorkflowOutputs() {
+        return workflowOutputs;
+    }
+
+    /**
+     * Set the outputs of the executed workflow.
+     *
+     * @param workflowOutputs the workflow outputs.
+     */
+    public void setWorkflowOutputs(final WorkflowOutputs workflowOutputs) {
+        this.workflowOutputs = workflowOutputs;
+    }
+
+    /**
+     * Get the IDs of the workflow outputs.
+     *
+     * @return the output IDs (empty if the workflow has not been executed yet).
+     */
+    public List<String> getOutputIds() {
+        return workflowOutputs != null ? workflowOutputs.getOutputIds() : Collections.<String>emptyList();
+    }
+
+    /**
+     * Set the mappings from output name to output ID.
+     *
+     * @param outputNameToIdsMap the mappings from output name to output ID.
+     */
+    public void setOutputNameToIdsMap(final Map<String, String> outputNameToIdsMap) {
+        this.outputNameToIdsMap = outputNameToIdsMap;
+    }
+
+    /**
+     * Retrieve the output ID for a workflow output file using the output name.
+     *
+     * @param outputName the output name.
+     * @return the output ID (or null if it is not known).
+     */
+    public String getOutputIdForOutputName(final String outputName) {
+        return outputNameToIdsMap != null ? outputNameToIdsMap.get(outputName) : null;
+    }
+}
@@ -0,0 +1,313 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.galaxy;
+
+import com.github.jmchilton.blend4j.galaxy.GalaxyInstance;
+import com.github.jmchilton.blend4j.galaxy.HistoriesClient;
+import com.github.jmchilton.blend4j.galaxy.beans.HistoryContents;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.MultimapBuilder;
+import com.google.common.collect.Multimaps;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of the datasets in a Galaxy history, with lookups from dataset name to dataset IDs and from dataset ID to
+ * dataset state. The history contents are retrieved with a single request per refresh; the index is updated
+ * incrementally, so only new, renamed and removed datasets change the name index. Deleted and purged datasets are
+ * treated as removed; the index remembers which datasets were removed. When only a few datasets are of interest,
+ * refreshDatasets retrieves just those datasets with a single (batched) history contents request.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class HistoryContentsIndex {
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(HistoryContentsIndex.class);
+
+    /**
+     * The histories client for accessing Galaxy histories.
+     */
+    private final HistoriesClient historiesClient;
+
+    /**
+     * The Galaxy server that has the history (or null if only the histories client is available).
+     */
+    private final GalaxyInstance galaxyInstance;
+
+    /**
+     * The history utils object for retrieving specific datasets (or null if only the histories client is available).
+     */
+    private final HistoryUtils historyUtils;
+
+    /**
+     * The ID of the indexed history.
+     */
+    private final String historyId;
+
+    /**
+     * The history contents by dataset ID (in the order of the history).
+     */
+    private final Map<String, HistoryContents> contentsById = new LinkedHashMap<>();
+
+    /**
+     * The dataset IDs by dataset name (in the order of the history).
+     */
+    private final ListMultimap<String, String> idsByName = MultimapBuilder.linkedHashKeys().arrayListValues().build();
+
+    /**
+     * The IDs of the datasets that were deleted, purged or removed from the history.
+     */
+    private final Set<String> removedIds = new HashSet<>();
+
+    /**
+     * Create an (empty) index for a history; call refresh to fill it.
+     *
+     * @param historiesClient the histories client for accessing Galaxy histories.
+     * @param historyId       the ID of the history to index.
+     */
+    public HistoryContentsIndex(final HistoriesClient historiesClient, final String historyId) {
+        this(historiesClient, null, null, historyId);
+    }
+
+    /**
+     * Create an (empty) index for a history on a Galaxy server; call refresh or refreshDatasets to fill it.
+     *
+     * @param galaxyInstance the Galaxy server that has the history.
+     * @param historyUtils   the history utils object for retrieving specific datasets.
+     * @param historyId      the ID of the history to index.
+     */
+    public HistoryContentsIndex(final GalaxyInstance galaxyInstance, final HistoryUtils historyUtils,
+                                final String historyId) {
+        this(galaxyInstance.getHistoriesClient(), galaxyInstance, historyUtils, historyId);
+    }
+
+    /**
+     * Create an (empty) index for a history.
+     *
+     * @param historiesClient the histories client for accessing Galaxy histories.
+     * @param galaxyInstance  the Galaxy server that has the history (or null).
+     * @param historyUtils    the history utils object for retrieving specific datasets (or null).
+     * @param historyId       the ID of the history to index.
+     */
+    private HistoryContentsIndex(final HistoriesClient historiesClient, final GalaxyInstance galaxyInstance,
+                                 final HistoryUtils historyUtils, final String historyId) {
+        this.historiesClient = historiesClient;
+        this.galaxyInstance = galaxyInstance;
+        this.historyUtils = historyUtils;
+        this.historyId = historyId;
+    }
+
+    /**
+     * Get the ID of the indexed history.
+     *
+     * @return the ID of the indexed history.
+     */
+    public String getHistoryId() {
+        return historyId;
+    }
+
+    /**
+     * Retrieve the history contents from the Galaxy server and update the index.
+     *
+     * @return this index.
+     */
+    public synchronized HistoryContentsIndex refresh() {
+        final Set<String> currentIds = new HashSet<>();
+        int changeCount = updateAll(historiesClient.showHistoryContents(historyId), currentIds);
+        changeCount += removeMissingDatasets(currentIds);
+        logger.trace("Refreshed the index of history {}: {} dataset(s), {} change(s).", historyId, contentsById.size(),
+                     changeCount);
+        return this;
+    }
+
+    /**
+     * Retrieve specific datasets from the Galaxy server with a single history contents request and update the index
+     * for these datasets only. This avoids retrieving the contents of the whole history when only a few datasets are
+     * tracked. Datasets that are deleted, purged or missing are removed from the index. Without a Galaxy instance, the
+     * whole history is refreshed instead.
+     *
+     * @param datasetIds the IDs of the datasets to retrieve.
+     * @return this index.
+     */
+    public synchronized HistoryContentsIndex refreshDatasets(final Collection<String> datasetIds) {
+        if (galaxyInstance == null)
+            return refresh();
+        final Set<String> currentIds = new HashSet<>();
+        int changeCount = updateAll(historyUtils.showDatasets(galaxyInstance, historyId, datasetIds), currentIds);
+        for (final String datasetId : datasetIds)
+            if (!currentIds.contains(datasetId)) {
+                removedIds.add(datasetId);
+                if (remove(datasetId))
+                    changeCount++;
+            }
+        logger.trace("Refreshed {} dataset(s) in the index of history {}: {} change(s).", datasetIds.size(), historyId,
+                     changeCount);
+        return this;
+    }
+
+    /**
+     * Update the index with history contents: active datasets are added or updated and deleted or purged datasets are
+     * marked as removed.
+     *
+     * @param historyContentsList the history contents (or null).
+     * @param currentIds          the set to which the IDs of the active datasets are added.
+     * @return the number of changed datasets.
+     */
+    private int updateAll(final List<HistoryContents> historyContentsList, final Set<String> currentIds) {
+        int changeCount = 0;
+        if (historyContentsList != null)
+            for (final HistoryContents historyContents : historyContentsList)
+                if (isActive(historyContents)) {
+                    currentIds.add(historyContents.getId());
+                    removedIds.remove(historyContents.getId());
+                    if (update(historyContents))
+                        changeCount++;
+                } else if (historyContents.getId() != null)
+                    removedIds.add(historyContents.getId());
+        return changeCount;
+    }
+
+    /**
+     * Check whether history contents represent an active (not deleted or purged) dataset that can be indexed.
+     *
+     * @param historyContents the history contents.
+     * @return whether the history contents should be indexed.
+     */
+    private boolean isActive(final HistoryContents historyContents) {
+        return historyContents.getId() != null && !historyContents.isDeleted() && !historyContents.isPurged();
+    }
+
+    /**
+     * Remove the datasets that are no longer in the history from the index.
+     *
+     * @param currentIds the IDs of the datasets that are currently in the history.
+     * @return the number of removed datasets.
+     */
+    private int removeMissingDatasets(final Set<String> currentIds) {
+        int removedCount = 0;
+        final Iterator<Map.Entry<String, HistoryContents>> entryIterator = contentsById.entrySet().iterator();
+        while (entryIterator.hasNext()) {
+            final Map.Entry<String, HistoryContents> entry = entryIterator.next();
+            if (!currentIds.contains(entry.getKey())) {
+                removedIds.add(entry.getKey());
+                idsByName.remove(entry.getValue().getName(), entry.getKey());
+                entryIterator.remove();
+                removedCount++;
+            }
+        }
+        return removedCount;
+    }
+
+    /**
+     * Remove a single dataset from the index.
+     *
+     * @param datasetId the dataset ID.
+     * @return whether the dataset was in the index.
+     */
+    private boolean remove(final String datasetId) {
+        final HistoryContents previousContents = contentsById.remove(datasetId);
+        if (previousContents != null)
+            idsByName.remove(previousContents.getName(), datasetId);
+        return previousContents != null;
+    }
+
+    /**
+     * Update the index for a single dataset.
+     *
+     * @param historyContents the current history contents of the dataset.
+     * @return whether the name or state of the dataset changed.
+     */
+    private boolean update(final HistoryContents historyContents) {
+        final String datasetId = historyContents.getId();
+        final HistoryContents previousContents = contentsById.put(datasetId, historyContents);
+        final String previousName = previousContents != null ? previousContents.getName() : null;
+        final boolean nameChanged = previousContents == null || !Objects.equal(previousName, historyContents.getName());
+        if (nameChanged) {
+            if (previousContents != null)
+                idsByName.remove(previousName, datasetId);
+            idsByName.put(historyContents.getName(), datasetId);
+        }
+        return nameChanged || !Objects.equal(previousContents.getState(), historyContents.getState());
+    }
+
+    /**
+     * Get the ID of the first dataset with a specific name.
+     *
+     * @param datasetName the dataset name.
+     * @return the dataset ID or null if there is no dataset with this name.
+     */
+    public synchronized String getDatasetId(final String datasetName) {
+        return Iterables.getFirst(idsByName.get(datasetName), null);
+    }
+
+    /**
+     * Get the IDs of all datasets with a specific name.
+     *
+     * @param datasetName the dataset name.
+     * @return the dataset IDs (in the order of the history).
+     */
+    public synchronized List<String> getDatasetIds(final String datasetName) {
+        return ImmutableList.copyOf(idsByName.get(datasetName));
+    }
+
+    /**
+     * Get the state of a dataset.
+     *
+     * @param datasetId the dataset ID.
+     * @return the dataset state or null if the dataset is not known (yet).
+     */
+    public synchronized String getState(final String datasetId) {
+        final HistoryContents historyContents = contentsById.get(datasetId);
+        return historyContents != null ? historyContents.getState() : null;
+    }
+
+    /**
+     * Check whether a dataset was deleted, purged or removed from the history when the index was last refreshed.
+     *
+     * @param datasetId the dataset ID.
+     * @return whether the dataset was removed.
+     */
+    public synchronized boolean isRemoved(final String datasetId) {
+        return removedIds.contains(datasetId);
+    }
+
+    /**
+     * Get the name of a dataset.
+     *
+     * @param datasetId the dataset ID.
+     * @return the dataset name or null if the dataset is not known (yet).
+     */
+    public synchronized String getName(final String datasetId) {
+        final HistoryContents historyContents = contentsById.get(datasetId);
+        return historyContents != null ? historyContents.getName() : null;
+    }
+
+    /**
+     * Create a map from dataset name to dataset ID. If several datasets have the same name, the last one is used.
+     *
+     * @return the map from dataset name to dataset ID.
+     */
+    public synchronized Map<String, String> getNameToIdMap() {
+        final Map<String, String> nameToIdMap = new LinkedHashMap<>();
+        for (final Map.Entry<String, List<String>> entry : Multimaps.asMap(idsByName).entrySet())
+            nameToIdMap.put(entry.getKey(), Iterables.getLast(entry.getValue()));
+        return nameToIdMap;
+    }
+}
@@ -0,0 +1,269 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.galaxy;
+
+import com.github.jmchilton.blend4j.galaxy.GalaxyInstance;
+import com.github.jmchilton.blend4j.galaxy.HistoriesClient;
+import com.github.jmchilton.blend4j.galaxy.beans.History;
+import com.github.jmchilton.blend4j.galaxy.beans.HistoryContents;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+
+import nl.vumc.biomedbridges.core.concurrent.SharedExecutors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of Galaxy histories that can be reused for workflow runs. Histories can be created in advance, are leased for
+ * a workflow run and are cleaned (all datasets are purged) when they are released. Clean histories are kept for the
+ * next lease as long as the pool is below its capacity; other released histories are deleted, so the server does not
+ * collect abandoned histories.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class HistoryPool {
+    /**
+     * The default maximum number of idle histories in a pool.
+     */
+    public static final int DEFAULT_CAPACITY = 4;
+
+    /**
+     * The name of the histories that are created by a pool.
+     */
+    public static final String POOLED_HISTORY_NAME = "Workflow Runner History";
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(HistoryPool.class);
+
+    /**
+     * The history pools for the Galaxy instances (with weak keys, like the workflow registries).
+     */
+    private static final LoadingCache<GalaxyInstance, HistoryPool> POOLS = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build(new CacheLoader<GalaxyInstance, HistoryPool>() {
+                @Override
+                public HistoryPool load(final GalaxyInstance galaxyInstance) {
+                    return new HistoryPool(galaxyInstance, new HistoryUtils(), DEFAULT_CAPACITY,
+                                           SharedExecutors.getBlockingExecutor());
+                }
+            });
+
+    /**
+     * The Galaxy server that has the histories.
+     */
+    private final GalaxyInstance galaxyInstance;
+
+    /**
+     * The histories client for creating, inspecting and deleting histories.
+     */
+    private final HistoriesClient historiesClient;
+
+    /**
+     * The history utils object that purges datasets.
+     */
+    private final HistoryUtils historyUtils;
+
+    /**
+     * The executor that creates and cleans histories in the background.
+     */
+    private final ListeningExecutorService executor;
+
+    /**
+     * The IDs of the clean histories that can be leased (a queue that is bounded by the capacity).
+     */
+    private volatile BlockingQueue<String> idleHistoryIds;
+
+    /**
+     * The maximum number of idle histories.
+     */
+    private volatile int capacity;
+
+    /**
+     * Create a history pool.
+     *
+     * @param galaxyInstance the Galaxy server that has the histories.
+     * @param historyUtils   the history utils object that purges datasets.
+     * @param capacity       the maximum number of idle histories.
+     * @param executor       the executor that creates and cleans histories in the background.
+     */
+    public HistoryPool(final GalaxyInstance galaxyInstance, final HistoryUtils historyUtils, final int capacity,
+                       final ListeningExecutorService executor) {
+        this.galaxyInstance = galaxyInstance;
+        this.historiesClient = galaxyInstance.getHistoriesClient();
+        this.historyUtils = historyUtils;
+        this.executor = executor;
+        setCapacity(capacity);
+    }
+
+    /**
+     * Get the shared history pool for a Galaxy instance.
+     *
+     * @param galaxyInstance the Galaxy instance.
+     * @return the history pool for this Galaxy instance.
+     */
+    public static HistoryPool forInstance(final GalaxyInstance galaxyInstance) {
+        return POOLS.getUnchecked(galaxyInstance);
+    }
+
+    /**
+     * Set the maximum number of idle histories. Histories that are released while the pool is full are deleted, as
+     * are the idle histories that do not fit in the pool anymore.
+     *
+     * @param capacity the maximum number of idle histories.
+     */
+    public synchronized void setCapacity(final int capacity) {
+        Preconditions.checkArgument(capacity >= 0, "The capacity of a history pool cannot be negative.");
+        final BlockingQueue<String> previousHistoryIds = idleHistoryIds;
+        this.capacity = capacity;
+        this.idleHistoryIds = capacity > 0 ? new LinkedBlockingQueue<String>(capacity) : new SynchronousQueue<String>();
+        if (previousHistoryIds != null)
+            for (String historyId = previousHistoryIds.poll(); historyId != null; historyId = previousHistoryIds.poll())
+                if (!returnToPool(historyId))
+                    deleteHistoryAsync(historyId);
+    }
+
+    /**
+     * Get the number of idle histories.
+     *
+     * @return the number of idle histories.
+     */
+    public int getIdleCount() {
+        return idleHistoryIds.size();
+    }
+
+    /**
+     * Start creating histories in the background until the pool has the requested number of idle histories (limited
+     * by the capacity).
+     *
+     * @param idleCount the requested number of idle histories.
+     * @return the future that is completed with the number of created histories.
+     */
+    public ListenableFuture<Integer> prefill(final int idleCount) {
+        return executor.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                int createdCount = 0;
+                while (idleHistoryIds.size() < Math.min(idleCount, capacity)) {
+                    final String historyId = createHistory(POOLED_HISTORY_NAME);
+                    createdCount++;
+                    if (!returnToPool(historyId)) {
+                        historiesClient.deleteHistory(historyId);
+                        break;
+                    }
+                }
+                logger.debug("Created {} histories for the pool; {} idle histories are available.", createdCount,
+                             idleHistoryIds.size());
+                return createdCount;
+            }
+        });
+    }
+
+    /**
+     * Lease a history: an idle history from the pool is used if one is available, otherwise a new history is
+     * created.
+     *
+     * @param historyName the name for a new history.
+     * @return the ID of the leased history.
+     */
+    public String leaseHistory(final String historyName) {
+        final String idleHistoryId = idleHistoryIds.poll();
+        if (idleHistoryId != null)
+            logger.debug("Leasing history {} from the pool.", idleHistoryId);
+        return idleHistoryId != null ? idleHistoryId : createHistory(historyName);
+    }
+
+    /**
+     * Release a history in the background: all datasets are purged and the history is returned to the pool if the
+     * pool is below its capacity; otherwise (or if cleaning fails) the history is deleted.
+     *
+     * @param historyId the ID of the history to release.
+     * @return the future that is completed with whether the history was returned to the pool.
+     */
+    public ListenableFuture<Boolean> releaseHistory(final String historyId) {
+        return executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                final boolean recycled = idleHistoryIds.remainingCapacity() > 0 && purgeContents(historyId)
+                                         && returnToPool(historyId);
+                if (!recycled)
+                    historiesClient.deleteHistory(historyId);
+                logger.debug("History {} was {}.", historyId, recycled ? "returned to the pool" : "deleted");
+                return recycled;
+            }
+        });
+    }
+
+    /**
+     * Add a clean history to the idle histories, unless the pool is full. The check and the addition are one atomic
+     * offer to the bounded queue, so concurrent releases cannot exceed the capacity.
+     *
+     * @param historyId the ID of the clean history.
+     * @return whether the history was added to the pool.
+     */
+    private boolean returnToPool(final String historyId) {
+        BlockingQueue<String> queue = idleHistoryIds;
+        boolean returned = queue.offer(historyId);
+        // When the capacity was changed in the meantime, the history is moved to the new queue.
+        while (returned && queue != idleHistoryIds && queue.remove(historyId)) {
+            queue = idleHistoryIds;
+            returned = queue.offer(historyId);
+        }
+        return returned;
+    }
+
+    /**
+     * Purge all datasets in a history and delete its dataset collections.
+     *
+     * @param historyId the ID of the history to clean.
+     * @return whether all history contents were removed successfully.
+     */
+    private boolean purgeContents(final String historyId) {
+        boolean successful = true;
+        for (final HistoryContents historyContents : historiesClient.showHistoryContents(historyId))
+            if (HistoryUtils.COLLECTION_CONTENT_TYPE.equals(historyContents.getHistoryContentType()))
+                successful &= historyContents.isDeleted()
+                              || historyUtils.deleteDatasetCollection(galaxyInstance, historyId, historyContents.getId());
+            else if (!historyContents.isPurged())
+                successful &= historyUtils.purgeDataset(galaxyInstance, historyId, historyContents.getId());
+        return successful;
+    }
+
+    /**
+     * Delete a history in the background.
+     *
+     * @param historyId the ID of the history to delete.
+     */
+    private void deleteHistoryAsync(final String historyId) {
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                historiesClient.deleteHistory(historyId);
+            }
+        });
+    }
+
+    /**
+     * Create a new history.
+     *
+     * @param historyName the name of the history.
+     * @return the ID of the new history.
+     */
+    private String createHistory(final String historyName) {
+        return historiesClient.create(new History(historyName)).getId();
+    }
+}
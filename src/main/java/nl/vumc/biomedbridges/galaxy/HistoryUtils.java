@@ -9,9 +9,32 @@ import com.github.jmchilton.blend4j.galaxy.GalaxyInstance;
 import com.github.jmchilton.blend4j.galaxy.HistoriesClient;
 import com.github.jmchilton.blend4j.galaxy.beans.Dataset;
 import com.github.jmchilton.blend4j.galaxy.beans.HistoryContents;
+import com.google.common.base.Joiner;
+import com.google.common.base.Stopwatch;
+import com.google.common.io.ByteStreams;
+import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.WebResource;
 
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.json.simple.JSONArray;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,11 +45,21 @@ import org.slf4j.LoggerFactory;
  * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
  */
 public class HistoryUtils {
+    /**
+     * The history content type of dataset collections.
+     */
+    public static final String COLLECTION_CONTENT_TYPE = "dataset_collection";
+
     /**
      * The logger for this class.
      */
     private static final Logger logger = LoggerFactory.getLogger(HistoryUtils.class);
 
+    /**
+     * The joiner for the dataset IDs in a history contents request.
+     */
+    private static final Joiner ID_JOINER = Joiner.on(',');
+
     /**
      * Download a dataset from Galaxy.
      *
@@ -36,7 +69,9 @@ public class HistoryUtils {
      * @param datasetId       the ID of the dataset.
      * @param filePath        the (base) file path to write the dataset to.
      * @return whether the download was successful.
+     * @deprecated the dataset is downloaded to a temporary file first and then renamed; use streamDataset instead.
      */
+    @Deprecated
     public boolean downloadDataset(final GalaxyInstance galaxyInstance, final HistoriesClient historiesClient,
                                    final String historyId, final String datasetId, final String filePath) {
         final Dataset dataset = historiesClient.showDataset(historyId, datasetId);
@@ -53,9 +88,7 @@ public class HistoryUtils {
             }
         }
         if (successful) {
-            final WebResource historyResource = galaxyInstance.getWebResource().path("histories");
-            final WebResource contentsResource = historyResource.path(historyId).path("contents");
-            final File downloadedFile = contentsResource.path(datasetId).path("display").get(File.class);
+            final File downloadedFile = getDisplayResource(galaxyInstance, historyId, datasetId).get(File.class);
             if (downloadedFile.renameTo(destinationFile))
                 logger.trace("destinationFile.getAbsolutePath(): {}", destinationFile.getAbsolutePath());
             else
@@ -70,7 +103,312 @@ public class HistoryUtils {
     }
 
     /**
-     * Retrieve the ID of a dataset by its name.
+     * Download a dataset from Galaxy by streaming it directly to the destination file, without an intermediate
+     * temporary file. If the destination file already contains part of the dataset (for example from an interrupted
+     * earlier attempt), only the remaining bytes are requested and appended, provided the server supports range
+     * requests; otherwise the destination file is overwritten with the complete dataset. When the server reports that
+     * there are no remaining bytes, the download is only complete if the destination file has the size of the dataset;
+     * otherwise the destination file is removed (so the next attempt downloads the complete dataset) and the download
+     * fails.
+     *
+     * @param galaxyInstance  the Galaxy server to retrieve the dataset from.
+     * @param historyId       the ID of the history that contains the dataset.
+     * @param datasetId       the ID of the dataset.
+     * @param destinationFile the file to write the dataset to.
+     * @return the statistics of this transfer (the byte count only includes the bytes received now).
+     * @throws IOException if the server refuses the request or the transfer is interrupted.
+     */
+    public TransferStatistics streamDataset(final GalaxyInstance galaxyInstance, final String historyId,
+                                            final String datasetId, final File destinationFile) throws IOException {
+        final WebResource datasetResource = getDisplayResource(galaxyInstance, historyId, datasetId);
+        final long existingLength = destinationFile.exists() ? destinationFile.length() : 0;
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        final ClientResponse response = requestDataset(datasetResource, existingLength, -1);
+        try {
+            final int status = response.getStatus();
+            long byteCount = 0;
+            if (status == HttpStatus.SC_OK || status == HttpStatus.SC_PARTIAL_CONTENT) {
+                if (status == HttpStatus.SC_PARTIAL_CONTENT)
+                    logger.debug("Resuming download of dataset {} to local file {} after {} bytes.", datasetId,
+                                 destinationFile.getAbsolutePath(), existingLength);
+                byteCount = writeResponse(response, destinationFile, status == HttpStatus.SC_PARTIAL_CONTENT);
+            } else if (status != HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE
+                       || !isDownloadComplete(galaxyInstance, historyId, datasetId, destinationFile))
+                throw new IOException(String.format("Downloading dataset %s from history %s failed with status %d.",
+                                                    datasetId, historyId, status));
+            return new TransferStatistics(destinationFile.getName(), byteCount, stopwatch.elapsed(TimeUnit.NANOSECONDS));
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Check whether a download that the server considers complete has the size of the dataset. If not, the destination
+     * file is removed.
+     *
+     * @param galaxyInstance  the Galaxy server that has the dataset.
+     * @param historyId       the ID of the history that contains the dataset.
+     * @param datasetId       the ID of the dataset.
+     * @param destinationFile the file with the downloaded dataset.
+     * @return whether the destination file has the size of the dataset.
+     */
+    private boolean isDownloadComplete(final GalaxyInstance galaxyInstance, final String historyId,
+                                       final String datasetId, final File destinationFile) {
+        final Integer fileSize = galaxyInstance.getHistoriesClient().showDataset(historyId, datasetId).getFileSize();
+        final boolean complete = fileSize != null && fileSize == destinationFile.length();
+        if (!complete) {
+            logger.warn("The local file {} has {} bytes instead of the {} bytes of dataset {}.",
+                        destinationFile.getAbsolutePath(), destinationFile.length(), fileSize, datasetId);
+            if (!destinationFile.delete())
+                logger.error("The local file {} could not be removed.", destinationFile.getAbsolutePath());
+        }
+        return complete;
+    }
+
+    /**
+     * Open a stream with (a range of) the contents of a dataset, without storing the dataset locally. A range request is
+     * used when only part of the dataset is needed; if the server ignores the range, the unwanted bytes are skipped
+     * locally. If the dataset ends before the offset, an empty stream is returned. Closing the stream releases the
+     * connection to the server.
+     *
+     * @param galaxyInstance the Galaxy server to retrieve the dataset from.
+     * @param historyId      the ID of the history that contains the dataset.
+     * @param datasetId      the ID of the dataset.
+     * @param offset         the offset of the first byte to read.
+     * @param length         the maximum number of bytes to read or -1 to read until the end of the dataset.
+     * @return the input stream with the requested bytes.
+     * @throws IOException if the server refuses the request or skipping to the offset fails.
+     */
+    public InputStream openDatasetStream(final GalaxyInstance galaxyInstance, final String historyId,
+                                         final String datasetId, final long offset, final long length)
+            throws IOException {
+        if (length == 0)
+            return new ByteArrayInputStream(new byte[0]);
+        final ClientResponse response = requestDataset(getDisplayResource(galaxyInstance, historyId, datasetId), offset,
+                                                       length);
+        final int status = response.getStatus();
+        if (status == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE) {
+            response.close();
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        checkReadStatus(response, historyId, datasetId);
+        final InputStream responseStream = new FilterInputStream(response.getEntityInputStream()) {
+            @Override
+            public void close() {
+                response.close();
+            }
+        };
+        if (status == HttpStatus.SC_OK && offset > 0 && !skipToOffset(responseStream, offset))
+            return new ByteArrayInputStream(new byte[0]);
+        return length >= 0 ? ByteStreams.limit(responseStream, length) : responseStream;
+    }
+
+    /**
+     * Skip the bytes before the offset in a response stream of a server that ignored the range. When the dataset ends
+     * before the offset or skipping fails, the stream is closed, which releases the connection to the server.
+     *
+     * @param responseStream the response stream with the complete dataset.
+     * @param offset         the offset of the first byte to read.
+     * @return whether the offset was reached; false if the dataset ends before the offset.
+     * @throws IOException if reading the response stream fails.
+     */
+    private boolean skipToOffset(final InputStream responseStream, final long offset) throws IOException {
+        try {
+            ByteStreams.skipFully(responseStream, offset);
+            return true;
+        } catch (final EOFException e) {
+            responseStream.close();
+            return false;
+        } catch (final IOException e) {
+            responseStream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Retrieve specific datasets of a history with a single history contents request. Datasets that were deleted or
+     * purged are included, with their deleted and purged flags set; datasets that are no longer in the history are
+     * missing from the result.
+     *
+     * @param galaxyInstance the Galaxy server that has the history.
+     * @param historyId      the ID of the history.
+     * @param datasetIds     the IDs of the datasets.
+     * @return the history contents of the datasets.
+     */
+    public List<HistoryContents> showDatasets(final GalaxyInstance galaxyInstance, final String historyId,
+                                              final Collection<String> datasetIds) {
+        if (datasetIds.isEmpty())
+            return Collections.emptyList();
+        final String contentsJson = getContentsResource(galaxyInstance, historyId)
+                .queryParam("ids", ID_JOINER.join(datasetIds)).queryParam("details", "all").get(String.class);
+        final List<HistoryContents> datasets = new ArrayList<>();
+        try {
+            for (final Object contentsObject : (JSONArray) new JSONParser().parse(contentsJson)) {
+                final Map<?, ?> contentsMap = (Map<?, ?>) contentsObject;
+                if (!COLLECTION_CONTENT_TYPE.equals(contentsMap.get("history_content_type")))
+                    datasets.add(createHistoryContents(contentsMap));
+            }
+        } catch (final ParseException | ClassCastException e) {
+            throw new IllegalStateException("Parsing the contents of history " + historyId + " failed.", e);
+        }
+        return datasets;
+    }
+
+    /**
+     * Create history contents from the JSON object of a dataset.
+     *
+     * @param contentsMap the JSON object of the dataset.
+     * @return the history contents.
+     */
+    private HistoryContents createHistoryContents(final Map<?, ?> contentsMap) {
+        final HistoryContents historyContents = new HistoryContents();
+        historyContents.setId((String) contentsMap.get("id"));
+        historyContents.setName((String) contentsMap.get("name"));
+        historyContents.setState((String) contentsMap.get("state"));
+        historyContents.setDeleted(Boolean.TRUE.equals(contentsMap.get("deleted")));
+        historyContents.setPurged(Boolean.TRUE.equals(contentsMap.get("purged")));
+        return historyContents;
+    }
+
+    /**
+     * Purge a dataset from a history: the dataset is deleted and its file is removed from the Galaxy server.
+     *
+     * @param galaxyInstance the Galaxy server that has the dataset.
+     * @param historyId      the ID of the history that contains the dataset.
+     * @param datasetId      the ID of the dataset.
+     * @return whether the dataset was purged successfully.
+     */
+    public boolean purgeDataset(final GalaxyInstance galaxyInstance, final String historyId, final String datasetId) {
+        return deleteContents(getContentsResource(galaxyInstance, historyId).path(datasetId).queryParam("purge", "true"),
+                              "Purging dataset", datasetId, historyId);
+    }
+
+    /**
+     * Delete a dataset collection from a history. The datasets of the collection are separate history contents, so
+     * they are not affected.
+     *
+     * @param galaxyInstance the Galaxy server that has the dataset collection.
+     * @param historyId      the ID of the history that contains the dataset collection.
+     * @param collectionId   the ID of the dataset collection.
+     * @return whether the dataset collection was deleted successfully.
+     */
+    public boolean deleteDatasetCollection(final GalaxyInstance galaxyInstance, final String historyId,
+                                           final String collectionId) {
+        return deleteContents(getContentsResource(galaxyInstance, historyId).path("dataset_collections")
+                                      .path(collectionId),
+                              "Deleting dataset collection", collectionId, historyId);
+    }
+
+    /**
+     * Send a delete request for history contents.
+     *
+     * @param contentsResource the web resource for the history contents.
+     * @param action           the description of the action for logging.
+     * @param contentsId       the ID of the history contents.
+     * @param historyId        the ID of the history that contains the history contents.
+     * @return whether the request was successful.
+     */
+    private boolean deleteContents(final WebResource contentsResource, final String action, final String contentsId,
+                                   final String historyId) {
+        final ClientResponse response = contentsResource.delete(ClientResponse.class);
+        try {
+            final boolean successful = response.getStatus() == HttpStatus.SC_OK;
+            if (!successful)
+                logger.error("{} {} from history {} failed with status {}.", action, contentsId, historyId,
+                             response.getStatus());
+            return successful;
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Request (a range of) the contents of a dataset.
+     *
+     * @param datasetResource the web resource for the dataset contents.
+     * @param offset          the offset of the first byte to request (the number of bytes that can be skipped).
+     * @param length          the number of bytes to request or -1 for all bytes until the end of the dataset.
+     * @return the response.
+     */
+    private ClientResponse requestDataset(final WebResource datasetResource, final long offset, final long length) {
+        return offset > 0 || length >= 0
+               ? datasetResource.header(HttpHeaders.RANGE, getRange(offset, length)).get(ClientResponse.class)
+               : datasetResource.get(ClientResponse.class);
+    }
+
+    /**
+     * Check whether the server returned (part of) the dataset contents. If not, the response is closed.
+     *
+     * @param response  the response.
+     * @param historyId the ID of the history that contains the dataset.
+     * @param datasetId the ID of the dataset.
+     * @throws IOException if the server refused the request.
+     */
+    private void checkReadStatus(final ClientResponse response, final String historyId, final String datasetId)
+            throws IOException {
+        final int status = response.getStatus();
+        if (status != HttpStatus.SC_OK && status != HttpStatus.SC_PARTIAL_CONTENT) {
+            response.close();
+            throw new IOException(String.format("Reading dataset %s from history %s failed with status %d.",
+                                                datasetId, historyId, status));
+        }
+    }
+
+    /**
+     * Get the value of the range header for a range of bytes.
+     *
+     * @param offset the offset of the first byte.
+     * @param length the number of bytes or -1 for all bytes until the end.
+     * @return the range header value.
+     */
+    private String getRange(final long offset, final long length) {
+        return "bytes=" + offset + "-" + (length >= 0 ? Long.toString(offset + length - 1) : "");
+    }
+
+    /**
+     * Write the entity of a response to a file.
+     *
+     * @param response        the response.
+     * @param destinationFile the file to write to.
+     * @param append          whether to append to the file instead of overwriting it.
+     * @return the number of bytes written.
+     * @throws IOException if reading the response or writing the file fails.
+     */
+    private long writeResponse(final ClientResponse response, final File destinationFile, final boolean append)
+            throws IOException {
+        try (final InputStream inputStream = response.getEntityInputStream();
+             final OutputStream outputStream = new FileOutputStream(destinationFile, append)) {
+            return ByteStreams.copy(inputStream, outputStream);
+        }
+    }
+
+    /**
+     * Get the web resource for displaying (downloading) a dataset.
+     *
+     * @param galaxyInstance the Galaxy server that has the dataset.
+     * @param historyId      the ID of the history that contains the dataset.
+     * @param datasetId      the ID of the dataset.
+     * @return the web resource for the dataset contents.
+     */
+    private WebResource getDisplayResource(final GalaxyInstance galaxyInstance, final String historyId,
+                                           final String datasetId) {
+        return getContentsResource(galaxyInstance, historyId).path(datasetId).path("display");
+    }
+
+    /**
+     * Get the web resource for the contents of a history.
+     *
+     * @param galaxyInstance the Galaxy server that has the history.
+     * @param historyId      the ID of the history.
+     * @return the web resource for the history contents.
+     */
+    private WebResource getContentsResource(final GalaxyInstance galaxyInstance, final String historyId) {
+        return galaxyInstance.getWebResource().path("histories").path(historyId).path("contents");
+    }
+
+    /**
+     * Retrieve the ID of a dataset by its name. When several datasets are looked up, it is more efficient to use a
+     * HistoryContentsIndex directly.
      *
      * @param datasetName     the dataset name.
      * @param historiesClient the client for accessing Galaxy histories.
@@ -79,12 +417,6 @@ public class HistoryUtils {
      */
     public String getDatasetIdByName(final String datasetName, final HistoriesClient historiesClient,
                                      final String historyId) {
-        String datasetId = null;
-        for (final HistoryContents historyDataset : historiesClient.showHistoryContents(historyId))
-            if (historyDataset.getName().equals(datasetName)) {
-                datasetId = historyDataset.getId();
-                break;
-            }
-        return datasetId;
+        return new HistoryContentsIndex(historiesClient, historyId).refresh().getDatasetId(datasetName);
     }
 }
@@ -0,0 +1,268 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.galaxy;
+
+import com.github.jmchilton.blend4j.galaxy.GalaxyInstance;
+import com.github.jmchilton.blend4j.galaxy.ToolsClient;
+import com.github.jmchilton.blend4j.galaxy.beans.OutputDataset;
+import com.github.jmchilton.blend4j.galaxy.beans.ToolExecution;
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.sun.jersey.api.client.ClientResponse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import nl.vumc.biomedbridges.core.concurrent.SharedExecutors;
+
+import org.apache.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Upload stage that uploads input files to a Galaxy history in parallel, with a bounded number of concurrent uploads.
+ * When an upload cache is used, input files with content that was uploaded before are not uploaded again.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class InputUploader {
+    /**
+     * The default maximum number of concurrent uploads.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_UPLOADS = 4;
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(InputUploader.class);
+
+    /**
+     * The tools client that is used for uploading.
+     */
+    private final ToolsClient toolsClient;
+
+    /**
+     * The maximum number of concurrent uploads.
+     */
+    private final int maxConcurrentUploads;
+
+    /**
+     * The executor that runs the uploads.
+     */
+    private final ListeningExecutorService executor;
+
+    /**
+     * The Galaxy server that the upload cache entries refer to (or null if no upload cache is used).
+     */
+    private final GalaxyInstance galaxyInstance;
+
+    /**
+     * The upload cache (or null if no upload cache is used).
+     */
+    private final UploadCache uploadCache;
+
+    /**
+     * Create an input uploader that uses the shared executor for blocking tasks.
+     *
+     * @param toolsClient          the tools client that is used for uploading.
+     * @param maxConcurrentUploads the maximum number of concurrent uploads.
+     */
+    public InputUploader(final ToolsClient toolsClient, final int maxConcurrentUploads) {
+        this(toolsClient, maxConcurrentUploads, SharedExecutors.getBlockingExecutor());
+    }
+
+    /**
+     * Create an input uploader that uses an upload cache and the shared executor for blocking tasks. Files that are
+     * uploaded should be uploaded to the upload cache history of the Galaxy server.
+     *
+     * @param galaxyInstance       the Galaxy server to upload to.
+     * @param maxConcurrentUploads the maximum number of concurrent uploads.
+     * @param uploadCache          the upload cache (or null to upload all files).
+     */
+    public InputUploader(final GalaxyInstance galaxyInstance, final int maxConcurrentUploads,
+                         final UploadCache uploadCache) {
+        this(galaxyInstance.getToolsClient(), maxConcurrentUploads, SharedExecutors.getBlockingExecutor(),
+             galaxyInstance, uploadCache);
+    }
+
+    /**
+     * Create an input uploader.
+     *
+     * @param toolsClient          the tools client that is used for uploading.
+     * @param maxConcurrentUploads the maximum number of concurrent uploads.
+     * @param executor             the executor that runs the uploads.
+     */
+    public InputUploader(final ToolsClient toolsClient, final int maxConcurrentUploads,
+                         final ListeningExecutorService executor) {
+        this(toolsClient, maxConcurrentUploads, executor, null, null);
+    }
+
+    /**
+     * Create an input uploader.
+     *
+     * @param toolsClient          the tools client that is used for uploading.
+     * @param maxConcurrentUploads the maximum number of concurrent uploads.
+     * @param executor             the executor that runs the uploads.
+     * @param galaxyInstance       the Galaxy server that the upload cache entries refer to.
+     * @param uploadCache          the upload cache (or null to upload all files).
+     */
+    public InputUploader(final ToolsClient toolsClient, final int maxConcurrentUploads,
+                         final ListeningExecutorService executor, final GalaxyInstance galaxyInstance,
+                         final UploadCache uploadCache) {
+        Preconditions.checkArgument(maxConcurrentUploads > 0, "At least one concurrent upload should be allowed.");
+        this.toolsClient = toolsClient;
+        this.maxConcurrentUploads = maxConcurrentUploads;
+        this.executor = executor;
+        this.galaxyInstance = galaxyInstance;
+        this.uploadCache = uploadCache;
+    }
+
+    /**
+     * Start uploading input files to a history. Each upload worker takes the next pending file until all files are
+     * uploaded, so at most maxConcurrentUploads uploads are running at the same time.
+     *
+     * @param historyId  the ID of the history to upload to.
+     * @param inputFiles the input files to upload.
+     * @param fileType   the Galaxy file type of the input files.
+     * @return the future that is completed with the uploaded inputs when all upload requests have been handled.
+     */
+    public ListenableFuture<List<UploadedInput>> uploadFiles(final String historyId, final Collection<File> inputFiles,
+                                                             final String fileType) {
+        final Queue<File> pendingFiles = new ConcurrentLinkedQueue<>(inputFiles);
+        final List<ListenableFuture<List<UploadedInput>>> workerFutures = new ArrayList<>();
+        for (int workerIndex = 0; workerIndex < Math.min(maxConcurrentUploads, inputFiles.size()); workerIndex++)
+            workerFutures.add(executor.submit(new Callable<List<UploadedInput>>() {
+                @Override
+                public List<UploadedInput> call() {
+                    return uploadPendingFiles(historyId, pendingFiles, fileType);
+                }
+            }));
+        return Futures.transform(Futures.allAsList(workerFutures), new Function<List<List<UploadedInput>>, List<UploadedInput>>() {
+            @Override
+            public List<UploadedInput> apply(final List<List<UploadedInput>> workerResults) {
+                final List<UploadedInput> uploadedInputs = new ArrayList<>();
+                for (final List<UploadedInput> workerResult : workerResults)
+                    uploadedInputs.addAll(workerResult);
+                return uploadedInputs;
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Upload pending files until there are no pending files left.
+     *
+     * @param historyId    the ID of the history to upload to.
+     * @param pendingFiles the queue of files that still have to be uploaded.
+     * @param fileType     the Galaxy file type of the input files.
+     * @return the uploaded inputs.
+     */
+    private List<UploadedInput> uploadPendingFiles(final String historyId, final Queue<File> pendingFiles,
+                                                   final String fileType) {
+        final List<UploadedInput> uploadedInputs = new ArrayList<>();
+        File inputFile = pendingFiles.poll();
+        while (inputFile != null) {
+            uploadedInputs.add(uploadFile(historyId, inputFile, fileType));
+            inputFile = pendingFiles.poll();
+        }
+        return uploadedInputs;
+    }
+
+    /**
+     * Upload an input file to a history, unless the upload cache knows a dataset with the same content.
+     *
+     * @param historyId the ID of the history to upload to.
+     * @param inputFile the input file to upload.
+     * @param fileType  the Galaxy file type of the input file.
+     * @return the uploaded (or reused) input.
+     */
+    private UploadedInput uploadFile(final String historyId, final File inputFile, final String fileType) {
+        final String contentHash = uploadCache != null ? hashFile(inputFile) : null;
+        final String cachedDatasetId = contentHash != null
+                                       ? uploadCache.findDatasetId(galaxyInstance, contentHash, fileType)
+                                       : null;
+        if (cachedDatasetId != null) {
+            logger.info("Reusing dataset {} with the same content as input file {}.", cachedDatasetId,
+                        inputFile.getAbsolutePath());
+            return new UploadedInput(inputFile, cachedDatasetId, true, true,
+                                     new TransferStatistics(inputFile.getName(), 0, 0));
+        }
+        final UploadedInput uploadedInput = sendUploadRequest(historyId, inputFile, fileType);
+        if (contentHash != null && uploadedInput.getDatasetId() != null)
+            uploadCache.recordUpload(galaxyInstance, contentHash, fileType, uploadedInput.getDatasetId());
+        return uploadedInput;
+    }
+
+    /**
+     * Determine the content hash of an input file for the upload cache.
+     *
+     * @param inputFile the input file.
+     * @return the content hash or null if the file could not be read (it will be uploaded without caching).
+     */
+    private String hashFile(final File inputFile) {
+        try {
+            return UploadCache.hashFile(inputFile);
+        } catch (final IOException e) {
+            logger.warn("Hashing input file {} failed; uploading it without the upload cache.",
+                        inputFile.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Upload an input file to a history.
+     *
+     * @param historyId the ID of the history to upload to.
+     * @param inputFile the input file to upload.
+     * @param fileType  the Galaxy file type of the input file.
+     * @return the uploaded input.
+     */
+    private UploadedInput sendUploadRequest(final String historyId, final File inputFile, final String fileType) {
+        final ToolsClient.FileUploadRequest fileUploadRequest = new ToolsClient.FileUploadRequest(historyId, inputFile);
+        fileUploadRequest.setFileType(fileType);
+        final Stopwatch stopwatch = Stopwatch.createStarted();
+        final ClientResponse clientResponse = toolsClient.uploadRequest(fileUploadRequest);
+        final TransferStatistics statistics = new TransferStatistics(inputFile.getName(), inputFile.length(),
+                                                                     stopwatch.elapsed(TimeUnit.NANOSECONDS));
+        try {
+            final int uploadStatus = clientResponse.getStatus();
+            final boolean accepted = uploadStatus == HttpStatus.SC_OK;
+            String datasetId = null;
+            if (accepted) {
+                datasetId = getDatasetId(clientResponse);
+                logger.info("Uploaded {}.", statistics);
+            } else
+                logger.error("Uploading file {} failed with status {}.", inputFile.getAbsolutePath(), uploadStatus);
+            return new UploadedInput(inputFile, datasetId, accepted, statistics);
+        } finally {
+            // Release the pooled connection, also when the response entity was not read.
+            clientResponse.close();
+        }
+    }
+
+    /**
+     * Get the ID of the dataset that Galaxy created for an upload.
+     *
+     * @param clientResponse the response to the upload request.
+     * @return the dataset ID or null if it could not be determined.
+     */
+    private String getDatasetId(final ClientResponse clientResponse) {
+        final ToolExecution toolExecution = clientResponse.getEntity(ToolExecution.class);
+        final List<OutputDataset> outputs = toolExecution != null ? toolExecution.getOutputs() : null;
+        return outputs != null && !outputs.isEmpty() ? outputs.get(0).getId() : null;
+    }
+}
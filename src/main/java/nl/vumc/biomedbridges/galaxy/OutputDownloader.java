@@ -0,0 +1,258 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.galaxy;
+
+import com.github.jmchilton.blend4j.galaxy.GalaxyInstance;
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.UniformInterfaceException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nl.vumc.biomedbridges.core.concurrent.SharedExecutors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Download stage that streams datasets from a Galaxy history to local files in parallel, with a bounded number of
+ * concurrent downloads. A download that is interrupted is resumed from the bytes that were already written.
+ *
+ * Datasets can be downloaded as a group (downloadDatasets) or one at a time as soon as each of them is ready
+ * (startDownload); the downloads that are started one at a time share a queue with at most maxConcurrentDownloads
+ * downloads in progress.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class OutputDownloader {
+    /**
+     * The default maximum number of concurrent downloads.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_DOWNLOADS = 4;
+
+    /**
+     * The maximum number of attempts for downloading a single dataset.
+     */
+    protected static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(OutputDownloader.class);
+
+    /**
+     * The Galaxy server to download from.
+     */
+    private final GalaxyInstance galaxyInstance;
+
+    /**
+     * The history utils object that does the actual transfers.
+     */
+    private final HistoryUtils historyUtils;
+
+    /**
+     * The maximum number of concurrent downloads.
+     */
+    private final int maxConcurrentDownloads;
+
+    /**
+     * The executor that runs the downloads.
+     */
+    private final ListeningExecutorService executor;
+
+    /**
+     * The downloads that were started one at a time and are waiting for a worker.
+     */
+    private final Queue<Runnable> queuedDownloads = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The number of workers that are handling queued downloads.
+     */
+    private final AtomicInteger activeWorkerCount = new AtomicInteger();
+
+    /**
+     * Create an output downloader that uses the shared executor for blocking tasks.
+     *
+     * @param galaxyInstance         the Galaxy server to download from.
+     * @param historyUtils           the history utils object that does the actual transfers.
+     * @param maxConcurrentDownloads the maximum number of concurrent downloads.
+     */
+    public OutputDownloader(final GalaxyInstance galaxyInstance, final HistoryUtils historyUtils,
+                            final int maxConcurrentDownloads) {
+        this(galaxyInstance, historyUtils, maxConcurrentDownloads, SharedExecutors.getBlockingExecutor());
+    }
+
+    /**
+     * Create an output downloader.
+     *
+     * @param galaxyInstance         the Galaxy server to download from.
+     * @param historyUtils           the history utils object that does the actual transfers.
+     * @param maxConcurrentDownloads the maximum number of concurrent downloads.
+     * @param executor               the executor that runs the downloads.
+     */
+    public OutputDownloader(final GalaxyInstance galaxyInstance, final HistoryUtils historyUtils,
+                            final int maxConcurrentDownloads, final ListeningExecutorService executor) {
+        Preconditions.checkArgument(maxConcurrentDownloads > 0, "At least one concurrent download should be allowed.");
+        this.galaxyInstance = galaxyInstance;
+        this.historyUtils = historyUtils;
+        this.maxConcurrentDownloads = maxConcurrentDownloads;
+        this.executor = executor;
+    }
+
+    /**
+     * Start downloading datasets from a history. Each download worker takes the next pending dataset until all
+     * datasets are downloaded, so at most maxConcurrentDownloads downloads are running at the same time.
+     *
+     * @param historyId        the ID of the history that contains the datasets.
+     * @param destinationFiles the destination file for each dataset ID.
+     * @return the future that is completed with the transfer statistics for each dataset that was downloaded
+     *         successfully (failed downloads are not in the map).
+     */
+    public ListenableFuture<Map<String, TransferStatistics>> downloadDatasets(final String historyId,
+                                                                            final Map<String, File> destinationFiles) {
+        final Queue<Map.Entry<String, File>> pendingDownloads = new ConcurrentLinkedQueue<>(destinationFiles.entrySet());
+        final List<ListenableFuture<Map<String, TransferStatistics>>> workerFutures = new ArrayList<>();
+        for (int workerIndex = 0; workerIndex < Math.min(maxConcurrentDownloads, destinationFiles.size()); workerIndex++)
+            workerFutures.add(executor.submit(new Callable<Map<String, TransferStatistics>>() {
+                @Override
+                public Map<String, TransferStatistics> call() {
+                    return downloadPendingDatasets(historyId, pendingDownloads);
+                }
+            }));
+        final Function<List<Map<String, TransferStatistics>>, Map<String, TransferStatistics>> mergeResults
+                = new Function<List<Map<String, TransferStatistics>>, Map<String, TransferStatistics>>() {
+                    @Override
+                    public Map<String, TransferStatistics> apply(final List<Map<String, TransferStatistics>> results) {
+                        final Map<String, TransferStatistics> statistics = new HashMap<>();
+                        for (final Map<String, TransferStatistics> workerResult : results)
+                            statistics.putAll(workerResult);
+                        return statistics;
+                    }
+                };
+        return Futures.transform(Futures.allAsList(workerFutures), mergeResults, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Start downloading a single dataset, for example as soon as it is ready while other datasets are still being
+     * created. The download is queued if the maximum number of queued downloads is already in progress.
+     *
+     * @param historyId       the ID of the history that contains the dataset.
+     * @param datasetId       the ID of the dataset.
+     * @param destinationFile the file to write the dataset to.
+     * @return the future that is completed with the transfer statistics (or null if the download failed).
+     */
+    public ListenableFuture<TransferStatistics> startDownload(final String historyId, final String datasetId,
+                                                              final File destinationFile) {
+        final ListenableFutureTask<TransferStatistics> downloadTask = ListenableFutureTask.create(
+                new Callable<TransferStatistics>() {
+                    @Override
+                    public TransferStatistics call() {
+                        return downloadDataset(historyId, datasetId, destinationFile);
+                    }
+                });
+        queuedDownloads.add(downloadTask);
+        startWorkers();
+        return downloadTask;
+    }
+
+    /**
+     * Start workers for the queued downloads, as long as there are queued downloads and fewer than the maximum number
+     * of workers are active.
+     */
+    private void startWorkers() {
+        int workerCount = activeWorkerCount.get();
+        while (!queuedDownloads.isEmpty() && workerCount < maxConcurrentDownloads) {
+            if (activeWorkerCount.compareAndSet(workerCount, workerCount + 1))
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        runQueuedDownloads();
+                    }
+                });
+            workerCount = activeWorkerCount.get();
+        }
+    }
+
+    /**
+     * Run queued downloads until the queue is empty. A download that is queued while this worker stops is picked up by
+     * a new worker.
+     */
+    private void runQueuedDownloads() {
+        try {
+            Runnable downloadTask = queuedDownloads.poll();
+            while (downloadTask != null) {
+                downloadTask.run();
+                downloadTask = queuedDownloads.poll();
+            }
+        } finally {
+            activeWorkerCount.decrementAndGet();
+        }
+        startWorkers();
+    }
+
+    /**
+     * Download pending datasets until there are no pending datasets left.
+     *
+     * @param historyId        the ID of the history that contains the datasets.
+     * @param pendingDownloads the queue of datasets that still have to be downloaded.
+     * @return the transfer statistics for each dataset that was downloaded successfully.
+     */
+    private Map<String, TransferStatistics> downloadPendingDatasets(final String historyId,
+                                                                   final Queue<Map.Entry<String, File>> pendingDownloads) {
+        final Map<String, TransferStatistics> statistics = new HashMap<>();
+        Map.Entry<String, File> download = pendingDownloads.poll();
+        while (download != null) {
+            final TransferStatistics datasetStatistics = downloadDataset(historyId, download.getKey(), download.getValue());
+            if (datasetStatistics != null)
+                statistics.put(download.getKey(), datasetStatistics);
+            download = pendingDownloads.poll();
+        }
+        return statistics;
+    }
+
+    /**
+     * Download a dataset, resuming the download when an attempt is interrupted. Network errors of the (pooled) Jersey
+     * client are runtime exceptions, so they are retried like I/O errors.
+     *
+     * @param historyId       the ID of the history that contains the dataset.
+     * @param datasetId       the ID of the dataset.
+     * @param destinationFile the file to write the dataset to.
+     * @return the transfer statistics or null if the download failed.
+     */
+    private TransferStatistics downloadDataset(final String historyId, final String datasetId,
+                                               final File destinationFile) {
+        TransferStatistics statistics = null;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS && statistics == null; attempt++) {
+            try {
+                statistics = historyUtils.streamDataset(galaxyInstance, historyId, datasetId, destinationFile);
+            } catch (final IOException | ClientHandlerException | UniformInterfaceException e) {
+                logger.warn("Attempt {} of {} to download dataset {} to local file {} failed.", attempt, MAX_ATTEMPTS,
+                            datasetId, destinationFile.getAbsolutePath(), e);
+            }
+        }
+        if (statistics != null)
+            logger.info("Downloaded {}.", statistics);
+        else
+            logger.error("Downloading dataset {} from history {} to local file {} failed.", datasetId, historyId,
+                         destinationFile.getAbsolutePath());
+        return statistics;
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.galaxy;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput statistics of transferring a single file to or from a Galaxy server.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class TransferStatistics {
+    /**
+     * The name of the transferred file or dataset.
+     */
+    private final String name;
+
+    /**
+     * The number of transferred bytes.
+     */
+    private final long byteCount;
+
+    /**
+     * The duration of the transfer in nanoseconds.
+     */
+    private final long elapsedNanos;
+
+    /**
+     * Create transfer statistics.
+     *
+     * @param name         the name of the transferred file or dataset.
+     * @param byteCount    the number of transferred bytes.
+     * @param elapsedNanos the duration of the transfer in nanoseconds.
+     */
+    public TransferStatistics(final String name, final long byteCount, final long elapsedNanos) {
+        this.name = name;
+        this.byteCount = byteCount;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Get the name of the transferred file or dataset.
+     *
+     * @return the name of the transferred file or dataset.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the number of transferred bytes.
+     *
+     * @return the number of transferred bytes.
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * Get the duration of the transfer in milliseconds.
+     *
+     * @return the duration of the transfer in milliseconds.
+     */
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    /**
+     * Get the throughput in bytes per second.
+     *
+     * @return the throughput in bytes per second.
+     */
+    public long getBytesPerSecond() {
+        return elapsedNanos > 0 ? byteCount * TimeUnit.SECONDS.toNanos(1) / elapsedNanos : byteCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d bytes in %d ms (%d bytes/s)", name, byteCount, getElapsedMillis(),
+                             getBytesPerSecond());
+    }
+}
@@ -0,0 +1,301 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.galaxy;
+
+import com.github.jmchilton.blend4j.galaxy.GalaxyInstance;
+import com.github.jmchilton.blend4j.galaxy.HistoriesClient;
+import com.github.jmchilton.blend4j.galaxy.beans.Dataset;
+import com.github.jmchilton.blend4j.galaxy.beans.History;
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import com.google.common.hash.Hashing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import nl.vumc.biomedbridges.core.FileUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Content-addressed cache of uploaded input files. Each input file is identified by the SHA-256 hash of its content,
+ * so a file that was uploaded before (under any name) is not uploaded again: the dataset that already holds the same
+ * content on the Galaxy server is used instead. Cached datasets are kept in a dedicated history on each server, which
+ * is never pooled or purged by the workflow runs. Since histories belong to a user, the cache entries and the cache
+ * histories are kept per Galaxy server and user (identified by a hash of the API key). The mapping from content to
+ * dataset is stored in a properties file, so it survives restarts of the application.
+ *
+ * A cached dataset is checked before it is reused: if it was deleted, purged or failed on the server, its entry is
+ * dropped and the file is uploaded again.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class UploadCache {
+    /**
+     * The file name of the default upload cache file (in the user's home directory).
+     */
+    public static final String UPLOAD_CACHE_FILE_NAME = ".workflow-runner-upload-cache.properties";
+
+    /**
+     * The name of the history on each Galaxy server that holds the cached datasets.
+     */
+    public static final String UPLOAD_CACHE_HISTORY_NAME = "Workflow Runner Upload Cache";
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(UploadCache.class);
+
+    /**
+     * The joiner for the parts of a cache key: Galaxy server URL, user hash, Galaxy file type and content hash.
+     */
+    private static final Joiner KEY_JOINER = Joiner.on(' ');
+
+    /**
+     * The number of hexadecimal characters of the API key hash that identifies a user in the cache keys.
+     */
+    private static final int USER_HASH_LENGTH = 16;
+
+    /**
+     * The file in which the cache entries are stored.
+     */
+    private final File cacheFile;
+
+    /**
+     * The cache entries: mappings from cache key to dataset ID.
+     */
+    private final Properties entries = new Properties();
+
+    /**
+     * The IDs of the histories that hold the cached datasets, by Galaxy server URL and user hash.
+     */
+    private final Map<String, String> cacheHistoryIds = new HashMap<>();
+
+    /**
+     * Create an upload cache that is stored in a file. Existing entries are read from the file if it exists.
+     *
+     * @param cacheFile the file in which the cache entries are stored.
+     */
+    public UploadCache(final File cacheFile) {
+        this.cacheFile = cacheFile;
+        if (cacheFile.exists())
+            load();
+    }
+
+    /**
+     * Get the default upload cache, which is stored in the user's home directory.
+     *
+     * @return the default upload cache.
+     */
+    public static UploadCache getDefault() {
+        return DefaultHolder.DEFAULT;
+    }
+
+    /**
+     * Determine the SHA-256 hash of the content of a file (see FileUtils.hashFile).
+     *
+     * @param file the file to hash.
+     * @return the content hash as a hexadecimal string.
+     * @throws IOException if reading the file fails.
+     */
+    public static String hashFile(final File file) throws IOException {
+        return FileUtils.hashFile(file);
+    }
+
+    /**
+     * Find a reusable dataset on a Galaxy server that holds content with a specific hash and file type.
+     *
+     * @param galaxyInstance the Galaxy server.
+     * @param contentHash    the content hash.
+     * @param fileType       the Galaxy file type.
+     * @return the ID of the dataset or null if no reusable dataset is known.
+     */
+    public String findDatasetId(final GalaxyInstance galaxyInstance, final String contentHash, final String fileType) {
+        final String key = createKey(galaxyInstance, contentHash, fileType);
+        final String datasetId = getEntry(key);
+        if (datasetId == null || isReusable(galaxyInstance, datasetId))
+            return datasetId;
+        logger.info("Cached dataset {} can no longer be used; removing it from the upload cache.", datasetId);
+        removeEntry(key);
+        return null;
+    }
+
+    /**
+     * Record that a dataset in the upload cache history holds content with a specific hash and file type.
+     *
+     * @param galaxyInstance the Galaxy server.
+     * @param contentHash    the content hash.
+     * @param fileType       the Galaxy file type.
+     * @param datasetId      the ID of the dataset.
+     */
+    public synchronized void recordUpload(final GalaxyInstance galaxyInstance, final String contentHash,
+                                          final String fileType, final String datasetId) {
+        entries.setProperty(createKey(galaxyInstance, contentHash, fileType), datasetId);
+        save();
+    }
+
+    /**
+     * Get the ID of the history on a Galaxy server that holds the cached datasets. The history is looked up by name and
+     * created if it does not exist yet.
+     *
+     * @param galaxyInstance the Galaxy server.
+     * @return the ID of the upload cache history.
+     */
+    public synchronized String getCacheHistoryId(final GalaxyInstance galaxyInstance) {
+        final String serverUserKey = createServerUserKey(galaxyInstance);
+        if (!cacheHistoryIds.containsKey(serverUserKey)) {
+            final HistoriesClient historiesClient = galaxyInstance.getHistoriesClient();
+            String historyId = null;
+            for (final History history : historiesClient.getHistories())
+                if (UPLOAD_CACHE_HISTORY_NAME.equals(history.getName()))
+                    historyId = history.getId();
+            if (historyId == null)
+                historyId = historiesClient.create(new History(UPLOAD_CACHE_HISTORY_NAME)).getId();
+            cacheHistoryIds.put(serverUserKey, historyId);
+        }
+        return cacheHistoryIds.get(serverUserKey);
+    }
+
+    /**
+     * Get the number of cache entries.
+     *
+     * @return the number of cache entries.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Check whether a cached dataset can still be used as a workflow input: it should exist in the upload cache history
+     * and should not be deleted, purged or failed. Datasets that are still being processed can be used, since the
+     * workflow engine waits for them to be ready.
+     *
+     * @param galaxyInstance the Galaxy server.
+     * @param datasetId      the ID of the dataset.
+     * @return whether the dataset can be reused.
+     */
+    private boolean isReusable(final GalaxyInstance galaxyInstance, final String datasetId) {
+        try {
+            final Dataset dataset = galaxyInstance.getHistoriesClient().showDataset(getCacheHistoryId(galaxyInstance),
+                                                                                    datasetId);
+            return dataset != null && !dataset.isDeleted() && !dataset.isPurged()
+                   && !DatasetStates.ERROR.equals(dataset.getState());
+            // CHECKSTYLE_OFF: IllegalCatchCheck
+        } catch (final RuntimeException e) {
+            // CHECKSTYLE_ON: IllegalCatchCheck
+            logger.warn("Checking cached dataset {} failed.", datasetId, e);
+            return false;
+        }
+    }
+
+    /**
+     * Create the cache key for content on a Galaxy server for a user.
+     *
+     * @param galaxyInstance the Galaxy server.
+     * @param contentHash    the content hash.
+     * @param fileType       the Galaxy file type.
+     * @return the cache key.
+     */
+    private String createKey(final GalaxyInstance galaxyInstance, final String contentHash, final String fileType) {
+        return KEY_JOINER.join(createServerUserKey(galaxyInstance), fileType, contentHash);
+    }
+
+    /**
+     * Create the key for a user on a Galaxy server: the Galaxy server URL and the start of the hash of the API key (the
+     * API key itself is not stored in the cache file).
+     *
+     * @param galaxyInstance the Galaxy server.
+     * @return the key for the Galaxy server and user.
+     */
+    private String createServerUserKey(final GalaxyInstance galaxyInstance) {
+        final String apiKeyHash = Hashing.sha256().hashString(Strings.nullToEmpty(galaxyInstance.getApiKey()),
+                                                              StandardCharsets.UTF_8).toString();
+        return KEY_JOINER.join(galaxyInstance.getGalaxyUrl(), apiKeyHash.substring(0, USER_HASH_LENGTH));
+    }
+
+    /**
+     * Get a cache entry.
+     *
+     * @param key the cache key.
+     * @return the dataset ID or null if there is no entry for this key.
+     */
+    private synchronized String getEntry(final String key) {
+        return entries.getProperty(key);
+    }
+
+    /**
+     * Remove a cache entry.
+     *
+     * @param key the cache key.
+     */
+    private synchronized void removeEntry(final String key) {
+        entries.remove(key);
+        save();
+    }
+
+    /**
+     * Read the cache entries from the cache file. If reading fails, the cache starts empty.
+     */
+    private void load() {
+        try (final InputStream inputStream = Files.newInputStream(cacheFile.toPath())) {
+            entries.load(inputStream);
+        } catch (final IOException e) {
+            logger.warn("Reading upload cache file {} failed; starting with an empty cache.", cacheFile, e);
+        }
+    }
+
+    /**
+     * Write the cache entries to the cache file. The entries are written to a temporary file first, which then
+     * replaces the cache file, so a crash while writing does not leave a corrupt cache file behind. If writing fails,
+     * the temporary file is removed and the cache keeps working in memory.
+     */
+    private void save() {
+        final Path cachePath = cacheFile.getAbsoluteFile().toPath();
+        try {
+            Files.createDirectories(cachePath.getParent());
+            final Path temporaryPath = Files.createTempFile(cachePath.getParent(), cacheFile.getName(), ".tmp");
+            try {
+                try (final OutputStream outputStream = Files.newOutputStream(temporaryPath)) {
+                    entries.store(outputStream, "Workflow Runner upload cache");
+                }
+                Files.move(temporaryPath, cachePath, StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporaryPath);
+            }
+        } catch (final IOException e) {
+            logger.warn("Writing upload cache file {} failed.", cacheFile, e);
+        }
+    }
+
+    /**
+     * Holder of the default upload cache, which is created when it is first used.
+     */
+    private static final class DefaultHolder {
+        /**
+         * The default upload cache.
+         */
+        private static final UploadCache DEFAULT = new UploadCache(
+                Paths.get(System.getProperty("user.home"), UPLOAD_CACHE_FILE_NAME).toFile());
+
+        /**
+         * Hidden constructor. Only the static field of this class is meant to be used.
+         */
+        private DefaultHolder() {
+        }
+    }
+}
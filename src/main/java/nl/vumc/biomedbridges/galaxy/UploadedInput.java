@@ -0,0 +1,116 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.galaxy;
+
+import java.io.File;
+
+/**
+ * The outcome of uploading a single input file to a Galaxy history.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class UploadedInput {
+    /**
+     * The input file.
+     */
+    private final File inputFile;
+
+    /**
+     * The ID of the dataset that was created for the input file (or null if it is unknown).
+     */
+    private final String datasetId;
+
+    /**
+     * Whether the upload request was accepted by the Galaxy server.
+     */
+    private final boolean accepted;
+
+    /**
+     * Whether an existing dataset with the same content was reused instead of uploading the input file.
+     */
+    private final boolean reused;
+
+    /**
+     * The throughput statistics of the upload.
+     */
+    private final TransferStatistics statistics;
+
+    /**
+     * Create an uploaded input.
+     *
+     * @param inputFile  the input file.
+     * @param datasetId  the ID of the dataset that was created for the input file (or null if it is unknown).
+     * @param accepted   whether the upload request was accepted by the Galaxy server.
+     * @param statistics the throughput statistics of the upload.
+     */
+    public UploadedInput(final File inputFile, final String datasetId, final boolean accepted,
+                         final TransferStatistics statistics) {
+        this(inputFile, datasetId, accepted, false, statistics);
+    }
+
+    /**
+     * Create an uploaded input.
+     *
+     * @param inputFile  the input file.
+     * @param datasetId  the ID of the dataset that was created for the input file (or null if it is unknown).
+     * @param accepted   whether the upload request was accepted by the Galaxy server.
+     * @param reused     whether an existing dataset with the same content was reused.
+     * @param statistics the throughput statistics of the upload.
+     */
+    public UploadedInput(final File inputFile, final String datasetId, final boolean accepted, final boolean reused,
+                         final TransferStatistics statistics) {
+        this.inputFile = inputFile;
+        this.datasetId = datasetId;
+        this.accepted = accepted;
+        this.reused = reused;
+        this.statistics = statistics;
+    }
+
+    /**
+     * Get the input file.
+     *
+     * @return the input file.
+     */
+    public File getInputFile() {
+        return inputFile;
+    }
+
+    /**
+     * Get the ID of the dataset that was created for the input file.
+     *
+     * @return the ID of the dataset that was created for the input file (or null if it is unknown).
+     */
+    public String getDatasetId() {
+        return datasetId;
+    }
+
+    /**
+     * Whether the upload request was accepted by the Galaxy server.
+     *
+     * @return whether the upload request was accepted by the Galaxy server.
+     */
+    public boolean isAccepted() {
+        return accepted;
+    }
+
+    /**
+     * Whether an existing dataset with the same content was reused instead of uploading the input file.
+     *
+     * @return whether an existing dataset was reused.
+     */
+    public boolean isReused() {
+        return reused;
+    }
+
+    /**
+     * Get the throughput statistics of the upload.
+     *
+     * @return the throughput statistics of the upload.
+     */
+    public TransferStatistics getStatistics() {
+        return statistics;
+    }
+}
@@ -0,0 +1,202 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.galaxy;
+
+import com.github.jmchilton.blend4j.galaxy.GalaxyInstance;
+import com.github.jmchilton.blend4j.galaxy.WorkflowsClient;
+import com.github.jmchilton.blend4j.galaxy.beans.Workflow;
+import com.github.jmchilton.blend4j.galaxy.beans.WorkflowDetails;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of the workflows that are available on a Galaxy server. The list of workflows and the workflow details are
+ * cached for a limited time, so repeated runs of the same workflow do not have to list all workflows on the server
+ * again. Importing a workflow via the registry invalidates the cached list of workflows.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class WorkflowRegistry {
+    /**
+     * The default number of seconds that cached workflow information is used.
+     */
+    public static final long DEFAULT_TIME_TO_LIVE_SECONDS = 300;
+
+    /**
+     * The suffix Galaxy adds to the name of a workflow that is imported via the API.
+     */
+    protected static final String IMPORTED_SUFFIX = " (imported from API)";
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(WorkflowRegistry.class);
+
+    /**
+     * The registries for the Galaxy instances (with weak keys, so the registry of an instance that is no longer used
+     * can be garbage collected).
+     */
+    private static final LoadingCache<GalaxyInstance, WorkflowRegistry> REGISTRIES = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build(new CacheLoader<GalaxyInstance, WorkflowRegistry>() {
+                @Override
+                public WorkflowRegistry load(final GalaxyInstance galaxyInstance) {
+                    return new WorkflowRegistry(galaxyInstance.getWorkflowsClient(), DEFAULT_TIME_TO_LIVE_SECONDS,
+                                                Ticker.systemTicker());
+                }
+            });
+
+    /**
+     * The workflows client to interact with the workflows.
+     */
+    private final WorkflowsClient workflowsClient;
+
+    /**
+     * The number of nanoseconds that a cached list of workflows is used.
+     */
+    private final long timeToLiveNanos;
+
+    /**
+     * The ticker that provides the time for expiring the cached list of workflows.
+     */
+    private final Ticker ticker;
+
+    /**
+     * The cached workflow details by workflow ID.
+     */
+    private final Cache<String, WorkflowDetails> workflowDetailsCache;
+
+    /**
+     * The cached list of workflows on the server or null if it should be retrieved again.
+     */
+    private List<Workflow> workflows;
+
+    /**
+     * The ticker value when the cached list of workflows expires.
+     */
+    private long workflowsExpiration;
+
+    /**
+     * Create a workflow registry.
+     *
+     * @param workflowsClient   the workflows client to interact with the workflows.
+     * @param timeToLiveSeconds the number of seconds that cached workflow information is used.
+     * @param ticker            the ticker that provides the time for expiring cached information.
+     */
+    public WorkflowRegistry(final WorkflowsClient workflowsClient, final long timeToLiveSeconds, final Ticker ticker) {
+        this.workflowsClient = workflowsClient;
+        this.timeToLiveNanos = TimeUnit.SECONDS.toNanos(timeToLiveSeconds);
+        this.ticker = ticker;
+        this.workflowDetailsCache = CacheBuilder.newBuilder()
+                .expireAfterWrite(timeToLiveSeconds, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .build();
+    }
+
+    /**
+     * Get the shared workflow registry for a Galaxy instance.
+     *
+     * @param galaxyInstance the Galaxy instance.
+     * @return the workflow registry for this Galaxy instance.
+     */
+    public static WorkflowRegistry forInstance(final GalaxyInstance galaxyInstance) {
+        return REGISTRIES.getUnchecked(galaxyInstance);
+    }
+
+    /**
+     * Check whether a workflow is present on the Galaxy server, either with its own name or with the name Galaxy
+     * gives to workflows imported via the API.
+     *
+     * @param workflowName the name of the workflow.
+     * @return whether the workflow is present on the Galaxy server.
+     */
+    public boolean containsWorkflow(final String workflowName) {
+        boolean found = false;
+        for (final Workflow workflow : getWorkflows())
+            if (workflow.getName().equals(workflowName) || workflow.getName().equals(workflowName + IMPORTED_SUFFIX)) {
+                found = true;
+                break;
+            }
+        return found;
+    }
+
+    /**
+     * Get the ID of a workflow on the Galaxy server. If several workflow names start with the workflow name, the last
+     * one in the list is used.
+     *
+     * @param workflowName the name of the workflow.
+     * @return the ID of the Galaxy workflow or null otherwise.
+     */
+    public String getWorkflowId(final String workflowName) {
+        Workflow matchingWorkflow = null;
+        for (final Workflow workflow : getWorkflows())
+            if (workflow.getName().startsWith(workflowName))
+                matchingWorkflow = workflow;
+        return (matchingWorkflow != null) ? matchingWorkflow.getId() : null;
+    }
+
+    /**
+     * Get the details of a workflow.
+     *
+     * @param workflowId the ID of the workflow.
+     * @return the workflow details.
+     */
+    public WorkflowDetails getWorkflowDetails(final String workflowId) {
+        WorkflowDetails workflowDetails = workflowDetailsCache.getIfPresent(workflowId);
+        if (workflowDetails == null) {
+            workflowDetails = workflowsClient.showWorkflow(workflowId);
+            if (workflowDetails != null)
+                workflowDetailsCache.put(workflowId, workflowDetails);
+        }
+        return workflowDetails;
+    }
+
+    /**
+     * Import a workflow into the Galaxy server and invalidate the cached list of workflows.
+     *
+     * @param workflowJson the JSON content of the workflow.
+     */
+    public void importWorkflow(final String workflowJson) {
+        try {
+            workflowsClient.importWorkflow(workflowJson);
+        } finally {
+            invalidate();
+        }
+    }
+
+    /**
+     * Invalidate all cached workflow information.
+     */
+    public synchronized void invalidate() {
+        workflows = null;
+        workflowDetailsCache.invalidateAll();
+    }
+
+    /**
+     * Get the list of workflows on the server, retrieving it if the cached list is missing or expired.
+     *
+     * @return the list of workflows on the server.
+     */
+    private synchronized List<Workflow> getWorkflows() {
+        if (workflows == null || ticker.read() - workflowsExpiration >= 0) {
+            logger.trace("Retrieving the list of workflows from the Galaxy server.");
+            final List<Workflow> serverWorkflows = workflowsClient.getWorkflows();
+            workflows = serverWorkflows != null ? ImmutableList.copyOf(serverWorkflows) : ImmutableList.<Workflow>of();
+            workflowsExpiration = ticker.read() + timeToLiveNanos;
+        }
+        return workflows;
+    }
+}
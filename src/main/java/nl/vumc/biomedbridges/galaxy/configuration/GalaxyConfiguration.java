@@ -6,7 +6,6 @@
 package nl.vumc.biomedbridges.galaxy.configuration;
 
 import com.github.jmchilton.blend4j.galaxy.GalaxyInstance;
-import com.github.jmchilton.blend4j.galaxy.GalaxyInstanceFactory;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -102,6 +101,11 @@ public class GalaxyConfiguration {
      */
     private boolean debug;
 
+    /**
+     * The connection manager that provides the (shared) Galaxy instance objects.
+     */
+    private GalaxyConnectionManager connectionManager = GalaxyConnectionManager.getDefault();
+
     /**
      * Construct a Galaxy configuration object, using the default properties file.
      */
@@ -168,9 +172,21 @@ public class GalaxyConfiguration {
     }
 
     /**
-     * Create and configure a Galaxy instance object.
+     * Set the connection manager that provides the (shared) Galaxy instance objects.
+     *
+     * @param connectionManager the connection manager.
+     * @return this Galaxy configuration (to make initialization easy).
+     */
+    public GalaxyConfiguration setConnectionManager(final GalaxyConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+        return this;
+    }
+
+    /**
+     * Determine the Galaxy instance object. The object is shared with other configurations for the same Galaxy server
+     * URL and API key, so they also share the HTTP connections to the server.
      *
-     * todo: create a getGalaxyInstance method that handles the configurationData == null case? And cache the object?
+     * todo: create a getGalaxyInstance method that handles the configurationData == null case?
      *
      * @param configurationData the configuration string or null to use the settings from the properties file.
      * @return a Galaxy instance object or null.
@@ -192,7 +208,7 @@ public class GalaxyConfiguration {
                                          PROPERTY_SEPARATOR, apiKeyPrefix);
         }
         final boolean validConfiguration = checkConfiguration(configurationData, message);
-        return validConfiguration ? GalaxyInstanceFactory.get(galaxyInstanceUrl, apiKey, debug) : null;
+        return validConfiguration ? connectionManager.getGalaxyInstance(galaxyInstanceUrl, apiKey, debug) : null;
     }
 
     /**
@@ -0,0 +1,274 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.galaxy.configuration;
+
+import com.github.jmchilton.blend4j.galaxy.DefaultWebResourceFactoryImpl;
+import com.github.jmchilton.blend4j.galaxy.GalaxyInstance;
+import com.github.jmchilton.blend4j.galaxy.GalaxyInstanceFactory;
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.config.ClientConfig;
+import com.sun.jersey.api.client.config.DefaultClientConfig;
+import com.sun.jersey.api.client.filter.LoggingFilter;
+import com.sun.jersey.api.json.JSONConfiguration;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import nl.vumc.biomedbridges.core.BatchWorkflowRunner;
+import nl.vumc.biomedbridges.galaxy.InputUploader;
+import nl.vumc.biomedbridges.galaxy.OutputDownloader;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Connection manager that shares one Galaxy instance object for each combination of Galaxy server URL and API key.
+ * Each shared Galaxy instance sends its requests through a pooling HTTP connection manager, so connections to the
+ * Galaxy server are kept alive and reused by all workflows that run on that server. Connections that are idle for
+ * longer than the idle timeout are closed.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class GalaxyConnectionManager implements Closeable {
+    /**
+     * The default maximum number of connections to a single Galaxy server. Each of the concurrent workflow runs in a
+     * batch can keep a connection for every concurrent upload or streaming download (for as long as the socket timeout
+     * allows), plus one connection for its other requests (like polling the history). With fewer connections, requests
+     * have to wait for a connection from the pool and fail after the connection request timeout.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = BatchWorkflowRunner.DEFAULT_MAX_CONCURRENT_RUNS
+            * (Math.max(InputUploader.DEFAULT_MAX_CONCURRENT_UPLOADS, OutputDownloader.DEFAULT_MAX_CONCURRENT_DOWNLOADS)
+               + 1);
+
+    /**
+     * The default maximum number of connections for each Galaxy instance.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_TOTAL = 2 * DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+
+    /**
+     * The default number of seconds after which idle connections are closed.
+     */
+    public static final int DEFAULT_IDLE_TIMEOUT_SECONDS = 30;
+
+    /**
+     * The default number of seconds to wait for a connection from the pool.
+     */
+    public static final int DEFAULT_CONNECTION_REQUEST_TIMEOUT_SECONDS = 60;
+
+    /**
+     * The default number of seconds to wait for data from the Galaxy server before a request fails.
+     */
+    public static final int DEFAULT_SOCKET_TIMEOUT_SECONDS = 300;
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(GalaxyConnectionManager.class);
+
+    /**
+     * The maximum number of connections to a single Galaxy server.
+     */
+    private final int maxConnectionsPerRoute;
+
+    /**
+     * The maximum number of connections for each Galaxy instance.
+     */
+    private final int maxConnectionsTotal;
+
+    /**
+     * The number of seconds after which idle connections are closed.
+     */
+    private final int idleTimeoutSeconds;
+
+    /**
+     * The number of seconds to wait for a connection from the pool.
+     */
+    private final int connectionRequestTimeoutSeconds;
+
+    /**
+     * The number of seconds to wait for data from the Galaxy server before a request fails.
+     */
+    private final int socketTimeoutSeconds;
+
+    /**
+     * The shared Galaxy instances by Galaxy server URL, API key and debug flag.
+     */
+    private final Map<String, GalaxyInstance> galaxyInstances = new HashMap<>();
+
+    /**
+     * The HTTP clients of the shared Galaxy instances.
+     */
+    private final List<CloseableHttpClient> httpClients = new ArrayList<>();
+
+    /**
+     * Create a connection manager with the default timeouts for requests.
+     *
+     * @param maxConnectionsPerRoute the maximum number of connections to a single Galaxy server.
+     * @param maxConnectionsTotal    the maximum number of connections for each Galaxy instance.
+     * @param idleTimeoutSeconds     the number of seconds after which idle connections are closed.
+     */
+    public GalaxyConnectionManager(final int maxConnectionsPerRoute, final int maxConnectionsTotal,
+                                   final int idleTimeoutSeconds) {
+        this(maxConnectionsPerRoute, maxConnectionsTotal, idleTimeoutSeconds,
+             DEFAULT_CONNECTION_REQUEST_TIMEOUT_SECONDS, DEFAULT_SOCKET_TIMEOUT_SECONDS);
+    }
+
+    /**
+     * Create a connection manager. The timeouts make sure that a request fails instead of blocking forever when all
+     * connections are in use (for example because a response was not closed) or when the server stops responding.
+     *
+     * @param maxConnectionsPerRoute          the maximum number of connections to a single Galaxy server.
+     * @param maxConnectionsTotal             the maximum number of connections for each Galaxy instance.
+     * @param idleTimeoutSeconds              the number of seconds after which idle connections are closed.
+     * @param connectionRequestTimeoutSeconds the number of seconds to wait for a connection from the pool.
+     * @param socketTimeoutSeconds            the number of seconds to wait for data from the Galaxy server.
+     */
+    public GalaxyConnectionManager(final int maxConnectionsPerRoute, final int maxConnectionsTotal,
+                                   final int idleTimeoutSeconds, final int connectionRequestTimeoutSeconds,
+                                   final int socketTimeoutSeconds) {
+        Preconditions.checkArgument(maxConnectionsPerRoute > 0 && maxConnectionsTotal >= maxConnectionsPerRoute,
+                                    "The maximum numbers of connections should be positive and consistent.");
+        Preconditions.checkArgument(idleTimeoutSeconds > 0 && connectionRequestTimeoutSeconds > 0
+                                    && socketTimeoutSeconds > 0, "The timeouts should be positive.");
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        this.maxConnectionsTotal = maxConnectionsTotal;
+        this.idleTimeoutSeconds = idleTimeoutSeconds;
+        this.connectionRequestTimeoutSeconds = connectionRequestTimeoutSeconds;
+        this.socketTimeoutSeconds = socketTimeoutSeconds;
+    }
+
+    /**
+     * Get the connection manager that is shared by all Galaxy configurations (unless they are given another one).
+     *
+     * @return the default connection manager.
+     */
+    public static GalaxyConnectionManager getDefault() {
+        return DefaultHolder.DEFAULT;
+    }
+
+    /**
+     * Get the shared Galaxy instance for a Galaxy server URL and API key, creating it on first use.
+     *
+     * @param galaxyInstanceUrl the Galaxy server URL.
+     * @param apiKey            the Galaxy API key.
+     * @param debug             whether requests and responses should be printed.
+     * @return the shared Galaxy instance.
+     */
+    public synchronized GalaxyInstance getGalaxyInstance(final String galaxyInstanceUrl, final String apiKey,
+                                                         final boolean debug) {
+        final String key = Joiner.on('|').useForNull("").join(galaxyInstanceUrl, apiKey, debug);
+        GalaxyInstance galaxyInstance = galaxyInstances.get(key);
+        if (galaxyInstance == null) {
+            logger.debug("Creating a pooled connection to Galaxy server {}.", galaxyInstanceUrl);
+            galaxyInstance = GalaxyInstanceFactory.get(new SharedClientWebResourceFactory(galaxyInstanceUrl, apiKey,
+                                                                                          createJerseyClient(debug)));
+            galaxyInstances.put(key, galaxyInstance);
+        }
+        return galaxyInstance;
+    }
+
+    /**
+     * Create a Jersey client that sends its requests through a pooling HTTP connection manager. Every response has to
+     * be read completely or closed; otherwise its connection is not returned to the pool.
+     *
+     * @param debug whether requests and responses should be printed.
+     * @return the Jersey client.
+     */
+    private Client createJerseyClient(final boolean debug) {
+        final PoolingHttpClientConnectionManager poolingManager = new PoolingHttpClientConnectionManager();
+        poolingManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        poolingManager.setMaxTotal(maxConnectionsTotal);
+        final RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout((int) TimeUnit.SECONDS.toMillis(connectionRequestTimeoutSeconds))
+                .setSocketTimeout((int) TimeUnit.SECONDS.toMillis(socketTimeoutSeconds))
+                .build();
+        final CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(poolingManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(idleTimeoutSeconds, TimeUnit.SECONDS)
+                .build();
+        httpClients.add(httpClient);
+        final ClientConfig clientConfig = new DefaultClientConfig();
+        clientConfig.getFeatures().put(JSONConfiguration.FEATURE_POJO_MAPPING, Boolean.TRUE);
+        final PooledHttpClientHandler clientHandler = new PooledHttpClientHandler(httpClient);
+        final Client jerseyClient = new Client(clientHandler, clientConfig);
+        clientHandler.setMessageBodyWorkers(jerseyClient.getMessageBodyWorkers());
+        if (debug)
+            jerseyClient.addFilter(new LoggingFilter(System.out));
+        return jerseyClient;
+    }
+
+    /**
+     * Close the connections of all shared Galaxy instances. Galaxy instances that are requested after this method is
+     * called get new connections.
+     *
+     * @throws IOException if closing an HTTP client fails.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        for (final CloseableHttpClient httpClient : httpClients)
+            httpClient.close();
+        httpClients.clear();
+        galaxyInstances.clear();
+    }
+
+    /**
+     * Holder class that creates the default connection manager when it is first used.
+     */
+    private static final class DefaultHolder {
+        /**
+         * The default connection manager.
+         */
+        private static final GalaxyConnectionManager DEFAULT = new GalaxyConnectionManager(
+                DEFAULT_MAX_CONNECTIONS_PER_ROUTE, DEFAULT_MAX_CONNECTIONS_TOTAL, DEFAULT_IDLE_TIMEOUT_SECONDS);
+
+        /**
+         * Hidden constructor. Only the static field of this class is meant to be used.
+         */
+        private DefaultHolder() {
+        }
+    }
+
+    /**
+     * Web resource factory that creates all web resources with the same Jersey client, instead of creating a new
+     * client (and new connections) for every web resource.
+     */
+    private static class SharedClientWebResourceFactory extends DefaultWebResourceFactoryImpl {
+        /**
+         * The shared Jersey client.
+         */
+        private final Client jerseyClient;
+
+        /**
+         * Create a web resource factory.
+         *
+         * @param galaxyInstanceUrl the Galaxy server URL.
+         * @param apiKey            the Galaxy API key.
+         * @param jerseyClient      the shared Jersey client.
+         */
+        SharedClientWebResourceFactory(final String galaxyInstanceUrl, final String apiKey, final Client jerseyClient) {
+            super(galaxyInstanceUrl, apiKey);
+            this.jerseyClient = jerseyClient;
+        }
+
+        @Override
+        protected Client getJerseyClient() {
+            return jerseyClient;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.galaxy.configuration;
+
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.TerminatingClientHandler;
+import com.sun.jersey.core.header.InBoundHeaders;
+import com.sun.jersey.multipart.Boundary;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.core.MediaType;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * Jersey client handler that sends requests with an Apache HTTP client. When the HTTP client uses a pooling connection
+ * manager, connections (including their TLS sessions) are kept alive and reused for subsequent requests to the same
+ * Galaxy server. A connection is returned to the pool when the response is closed or its entity is read completely.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class PooledHttpClientHandler extends TerminatingClientHandler {
+    /**
+     * The type of multipart media types, which need a boundary parameter in the Content-Type header.
+     */
+    private static final String MULTIPART_TYPE = "multipart";
+
+    /**
+     * The HTTP client that sends the requests.
+     */
+    private final HttpClient httpClient;
+
+    /**
+     * Create a client handler.
+     *
+     * @param httpClient the HTTP client that sends the requests.
+     */
+    public PooledHttpClientHandler(final HttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    @Override
+    public ClientResponse handle(final ClientRequest clientRequest) {
+        try {
+            return createClientResponse(httpClient.execute(createHttpRequest(clientRequest)));
+        } catch (final IOException e) {
+            throw new ClientHandlerException(e);
+        }
+    }
+
+    /**
+     * Create an Apache HTTP request from a Jersey client request.
+     *
+     * @param clientRequest the Jersey client request.
+     * @return the Apache HTTP request.
+     */
+    private HttpUriRequest createHttpRequest(final ClientRequest clientRequest) {
+        final RequestBuilder requestBuilder = RequestBuilder.create(clientRequest.getMethod())
+                .setUri(clientRequest.getURI());
+        for (final Map.Entry<String, List<Object>> header : clientRequest.getHeaders().entrySet())
+            if (!HttpHeaders.CONTENT_TYPE.equalsIgnoreCase(header.getKey())
+                && !HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(header.getKey()))
+                for (final Object value : header.getValue())
+                    requestBuilder.addHeader(header.getKey(), ClientRequest.getHeaderValue(value));
+        if (clientRequest.getEntity() != null)
+            requestBuilder.setEntity(new RequestEntity(getEntityWriter(clientRequest)));
+        return requestBuilder.build();
+    }
+
+    /**
+     * Get the Jersey writer for a request entity. The multipart writer only adds a boundary to the Content-Type header
+     * while it writes the entity, which is too late for a header that is sent before the entity. Therefore the
+     * boundary is added to the request headers first, so the writer and the Content-Type header use the same one.
+     *
+     * @param clientRequest the Jersey client request.
+     * @return the Jersey writer for the request entity.
+     */
+    private RequestEntityWriter getEntityWriter(final ClientRequest clientRequest) {
+        RequestEntityWriter entityWriter = getRequestEntityWriter(clientRequest);
+        final MediaType mediaType = entityWriter.getMediaType();
+        if (MULTIPART_TYPE.equalsIgnoreCase(mediaType.getType())) {
+            final MediaType boundaryMediaType = Boundary.addBoundary(mediaType);
+            if (boundaryMediaType != mediaType) {
+                clientRequest.getHeaders().putSingle(HttpHeaders.CONTENT_TYPE, boundaryMediaType);
+                entityWriter = getRequestEntityWriter(clientRequest);
+            }
+        }
+        return entityWriter;
+    }
+
+    /**
+     * Create a Jersey client response from an Apache HTTP response. The response entity is streamed; closing the
+     * client response returns the connection to the pool.
+     *
+     * @param response the Apache HTTP response.
+     * @return the Jersey client response.
+     * @throws IOException if the response entity cannot be opened.
+     */
+    private ClientResponse createClientResponse(final HttpResponse response) throws IOException {
+        final InBoundHeaders headers = new InBoundHeaders();
+        for (final Header header : response.getAllHeaders())
+            headers.add(header.getName(), header.getValue());
+        final HttpEntity responseEntity = response.getEntity();
+        final InputStream entityStream = responseEntity != null ? responseEntity.getContent()
+                                                                : new ByteArrayInputStream(new byte[0]);
+        return new ClientResponse(response.getStatusLine().getStatusCode(), headers, entityStream,
+                                  getMessageBodyWorkers());
+    }
+
+    /**
+     * HTTP entity that lets Jersey write the request entity directly to the connection.
+     */
+    private static class RequestEntity extends AbstractHttpEntity {
+        /**
+         * The Jersey writer for the request entity.
+         */
+        private final RequestEntityWriter entityWriter;
+
+        /**
+         * Create a request entity.
+         *
+         * @param entityWriter the Jersey writer for the request entity.
+         */
+        RequestEntity(final RequestEntityWriter entityWriter) {
+            this.entityWriter = entityWriter;
+            setContentType(entityWriter.getMediaType().toString());
+            setChunked(entityWriter.getSize() < 0);
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public long getContentLength() {
+            return entityWriter.getSize();
+        }
+
+        @Override
+        public InputStream getContent() {
+            throw new UnsupportedOperationException("The request entity can only be written.");
+        }
+
+        @Override
+        public void writeTo(final OutputStream outputStream) throws IOException {
+            entityWriter.writeRequestEntity(outputStream);
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+}
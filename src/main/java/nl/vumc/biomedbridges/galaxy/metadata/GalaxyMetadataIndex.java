@@ -0,0 +1,262 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.galaxy.metadata;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent index of parsed workflow and tool metadata, to avoid parsing all definition files again each time the
+ * metadata is loaded. For each definition file, the index stores the parsed metadata together with the last modified
+ * time and the length of the file; an entry is only used while the file has not changed. The index is stored as a
+ * (binary) serialized object. When an index is read, only the metadata classes and the few JDK and JSON classes they
+ * contain can be deserialized; an index file with any other class is ignored.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class GalaxyMetadataIndex implements Serializable {
+    /**
+     * The version of the serialized form. An index with another version is ignored.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(GalaxyMetadataIndex.class);
+
+    /**
+     * The package of the metadata classes, which can all be deserialized.
+     */
+    private static final String METADATA_PACKAGE_PREFIX = GalaxyMetadataIndex.class.getPackage().getName() + ".";
+
+    /**
+     * The names of the other classes that can be deserialized: the classes that are used in the metadata fields.
+     */
+    private static final Set<String> ALLOWED_CLASS_NAMES = ImmutableSet.of(
+            "java.lang.Boolean", "java.lang.Double", "java.lang.Integer", "java.lang.Long", "java.lang.Number",
+            "java.lang.String", "java.io.File", "java.util.ArrayList", "java.util.Arrays$ArrayList",
+            "java.util.Collections$EmptyList", "java.util.Collections$EmptyMap", "java.util.Collections$SingletonList",
+            "java.util.Collections$UnmodifiableCollection", "java.util.Collections$UnmodifiableList",
+            "java.util.Collections$UnmodifiableRandomAccessList", "java.util.Collections$UnmodifiableMap",
+            "java.util.HashMap", "java.util.LinkedHashMap", "java.util.TreeMap", "java.util.HashSet",
+            "java.util.concurrent.ConcurrentHashMap", "java.util.concurrent.ConcurrentHashMap$Segment",
+            "[Ljava.util.concurrent.ConcurrentHashMap$Segment;",
+            "java.util.concurrent.locks.ReentrantLock", "java.util.concurrent.locks.ReentrantLock$Sync",
+            "java.util.concurrent.locks.ReentrantLock$NonfairSync",
+            "java.util.concurrent.locks.AbstractQueuedSynchronizer",
+            "java.util.concurrent.locks.AbstractOwnableSynchronizer", "org.json.simple.JSONArray",
+            "org.json.simple.JSONObject");
+
+    /**
+     * The index entries by absolute file path.
+     */
+    private final Map<String, FileEntry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Read an index from a file. If the file does not exist or cannot be read (for example because it was written by
+     * an incompatible version), an empty index is returned.
+     *
+     * @param indexFile the index file.
+     * @return the index.
+     */
+    public static GalaxyMetadataIndex read(final File indexFile) {
+        GalaxyMetadataIndex index = new GalaxyMetadataIndex();
+        if (indexFile != null && indexFile.exists()) {
+            try (final ObjectInputStream inputStream = new MetadataObjectInputStream(new BufferedInputStream(
+                    new FileInputStream(indexFile)))) {
+                index = (GalaxyMetadataIndex) inputStream.readObject();
+                logger.debug("Read metadata index {} with {} entries.", indexFile.getAbsolutePath(),
+                             index.entries.size());
+            } catch (final IOException | ClassNotFoundException | ClassCastException e) {
+                logger.warn("Ignoring metadata index {} that could not be read.", indexFile.getAbsolutePath(), e);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Write this index to a file. The index is written to a temporary file first, which then replaces the index file,
+     * so readers never see a partially written index.
+     *
+     * @param indexFile the index file.
+     */
+    public void write(final File indexFile) {
+        final File temporaryFile = new File(indexFile.getAbsolutePath() + ".tmp");
+        try {
+            try (final ObjectOutputStream outputStream = new ObjectOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(temporaryFile)))) {
+                outputStream.writeObject(this);
+            }
+            Files.move(temporaryFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            logger.debug("Wrote metadata index {} with {} entries.", indexFile.getAbsolutePath(), entries.size());
+        } catch (final IOException e) {
+            logger.warn("Writing metadata index {} failed.", indexFile.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Get the entry for a file, if the file has not changed since the entry was added.
+     *
+     * @param file the definition file.
+     * @return the entry or null if there is no entry or the file has changed.
+     */
+    public FileEntry getUnchangedEntry(final File file) {
+        final FileEntry entry = entries.get(file.getAbsolutePath());
+        return entry != null && entry.matches(file) ? entry : null;
+    }
+
+    /**
+     * Add an entry for a file (replacing an existing entry for this file).
+     *
+     * @param file          the definition file.
+     * @param metadata      the parsed metadata (or null if the file was not parsed completely).
+     * @param toolReference the id and version of the tool (for tool definition files) or null.
+     * @return the new entry.
+     */
+    public FileEntry putEntry(final File file, final Serializable metadata, final GalaxyToolReference toolReference) {
+        final FileEntry entry = new FileEntry(file.lastModified(), file.length(), metadata, toolReference);
+        entries.put(file.getAbsolutePath(), entry);
+        return entry;
+    }
+
+    /**
+     * Remove the entry for a file (for example because the file was deleted).
+     *
+     * @param file the definition file.
+     */
+    public void removeEntry(final File file) {
+        entries.remove(file.getAbsolutePath());
+    }
+
+    /**
+     * Get the number of entries.
+     *
+     * @return the number of entries.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Object input stream that only resolves the classes that can be part of a metadata index, so an index file that
+     * was replaced by another serialized object cannot instantiate arbitrary classes.
+     */
+    private static class MetadataObjectInputStream extends ObjectInputStream {
+        /**
+         * Create a metadata object input stream.
+         *
+         * @param inputStream the input stream to read from.
+         * @throws IOException if the stream header cannot be read.
+         */
+        private MetadataObjectInputStream(final InputStream inputStream) throws IOException {
+            super(inputStream);
+        }
+
+        @Override
+        protected Class<?> resolveClass(final ObjectStreamClass streamClass)
+                throws IOException, ClassNotFoundException {
+            final String className = streamClass.getName();
+            if (!className.startsWith(METADATA_PACKAGE_PREFIX) && !ALLOWED_CLASS_NAMES.contains(className))
+                throw new InvalidClassException(className, "Class is not allowed in a metadata index.");
+            return super.resolveClass(streamClass);
+        }
+    }
+
+    /**
+     * An index entry with the parsed metadata of a definition file.
+     */
+    public static class FileEntry implements Serializable {
+        /**
+         * The version of the serialized form.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The last modified time of the file when it was parsed.
+         */
+        private final long lastModified;
+
+        /**
+         * The length of the file when it was parsed.
+         */
+        private final long length;
+
+        /**
+         * The parsed metadata (or null if the file was not parsed completely).
+         */
+        private final Serializable metadata;
+
+        /**
+         * The id and version of the tool (for tool definition files) or null.
+         */
+        private final GalaxyToolReference toolReference;
+
+        /**
+         * Create an index entry.
+         *
+         * @param lastModified  the last modified time of the file when it was parsed.
+         * @param length        the length of the file when it was parsed.
+         * @param metadata      the parsed metadata (or null if the file was not parsed completely).
+         * @param toolReference the id and version of the tool (for tool definition files) or null.
+         */
+        private FileEntry(final long lastModified, final long length, final Serializable metadata,
+                          final GalaxyToolReference toolReference) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.metadata = metadata;
+            this.toolReference = toolReference;
+        }
+
+        /**
+         * Check whether a file still has the last modified time and length that were recorded in this entry.
+         *
+         * @param file the definition file.
+         * @return whether the file appears to be unchanged.
+         */
+        private boolean matches(final File file) {
+            return file.lastModified() == lastModified && file.length() == length;
+        }
+
+        /**
+         * Get the parsed metadata.
+         *
+         * @return the parsed metadata (or null if the file was not parsed completely).
+         */
+        public Serializable getMetadata() {
+            return metadata;
+        }
+
+        /**
+         * Get the id and version of the tool.
+         *
+         * @return the id and version of the tool (for tool definition files) or null.
+         */
+        public GalaxyToolReference getToolReference() {
+            return toolReference;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.galaxy.metadata;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watcher that reloads the metadata of workflow and tool definition files when they are added, modified or deleted.
+ * The directories are watched (including their subdirectories) with a WatchService on a daemon thread; changes that
+ * arrive close together are collected and reloaded in one call to GalaxyWorkflowEngineMetadata.reload.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class GalaxyMetadataWatcher implements Closeable {
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(GalaxyMetadataWatcher.class);
+
+    /**
+     * The time (in milliseconds) to wait for more changes before the changed files are reloaded, so a file that is
+     * written in several steps is only parsed once.
+     */
+    private static final long SETTLE_TIME_MS = 200;
+
+    /**
+     * The metadata to reload.
+     */
+    private final GalaxyWorkflowEngineMetadata metadata;
+
+    /**
+     * The watch service.
+     */
+    private final WatchService watchService;
+
+    /**
+     * The watched directories by watch key.
+     */
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+
+    /**
+     * The thread that waits for changes.
+     */
+    private final Thread watchThread;
+
+    /**
+     * Whether this watcher has been closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Create a watcher for directories (and their subdirectories).
+     *
+     * @param metadata    the metadata to reload.
+     * @param directories the directories to watch.
+     * @throws IOException if the directories cannot be watched.
+     */
+    GalaxyMetadataWatcher(final GalaxyWorkflowEngineMetadata metadata, final List<Path> directories)
+            throws IOException {
+        this.metadata = metadata;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        for (final Path directory : directories)
+            registerDirectories(directory.toAbsolutePath());
+        this.watchThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watchForChanges();
+            }
+        }, "workflow-runner-metadata-watcher");
+        this.watchThread.setDaemon(true);
+    }
+
+    /**
+     * Start watching.
+     */
+    void start() {
+        watchThread.start();
+    }
+
+    /**
+     * Stop watching.
+     *
+     * @throws IOException if the watch service cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        watchService.close();
+    }
+
+    /**
+     * Wait for changes and reload the changed files, until this watcher is closed.
+     */
+    private void watchForChanges() {
+        try {
+            while (!closed) {
+                final Set<File> changedFiles = new HashSet<>();
+                WatchKey watchKey = watchService.take();
+                while (watchKey != null) {
+                    processEvents(watchKey, changedFiles);
+                    watchKey = watchService.poll(SETTLE_TIME_MS, TimeUnit.MILLISECONDS);
+                }
+                reload(changedFiles);
+            }
+        } catch (final ClosedWatchServiceException e) {
+            logger.debug("Stopped watching the metadata directories.");
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Collect the files that have changed according to the events of a watch key. New directories are watched as
+     * well; the files they already contain are treated as changed.
+     *
+     * @param watchKey     the watch key.
+     * @param changedFiles the set to add the changed files to.
+     */
+    private void processEvents(final WatchKey watchKey, final Set<File> changedFiles) {
+        final Path directory = watchedDirectories.get(watchKey);
+        for (final WatchEvent<?> event : watchKey.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+                changedFiles.addAll(listFiles(directory));
+            else if (directory != null) {
+                final Path path = directory.resolve((Path) event.context());
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path))
+                    changedFiles.addAll(registerDirectoriesSafely(path));
+                else
+                    changedFiles.add(path.toFile());
+            }
+        }
+        if (!watchKey.reset())
+            watchedDirectories.remove(watchKey);
+    }
+
+    /**
+     * Reload the changed files. Exceptions are logged, so the watcher keeps running.
+     *
+     * @param changedFiles the changed files.
+     */
+    private void reload(final Set<File> changedFiles) {
+        if (!changedFiles.isEmpty() && !closed) {
+            logger.debug("Changed metadata files: {}", changedFiles);
+            // CHECKSTYLE_OFF: IllegalCatchCheck
+            try {
+                metadata.reload(changedFiles);
+            } catch (final RuntimeException e) {
+                logger.error("Reloading the changed metadata files failed.", e);
+            }
+            // CHECKSTYLE_ON: IllegalCatchCheck
+        }
+    }
+
+    /**
+     * Watch a new directory and its subdirectories, logging (instead of throwing) an exception.
+     *
+     * @param directory the new directory.
+     * @return the files that are in the directory and its subdirectories.
+     */
+    private List<File> registerDirectoriesSafely(final Path directory) {
+        try {
+            return registerDirectories(directory);
+        } catch (final IOException e) {
+            logger.warn("Cannot watch directory {}.", directory, e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Watch a directory and its subdirectories.
+     *
+     * @param directory the directory.
+     * @return the files that are in the directory and its subdirectories.
+     * @throws IOException if a directory cannot be watched.
+     */
+    private List<File> registerDirectories(final Path directory) throws IOException {
+        final List<File> files = new ArrayList<>();
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path subdirectory, final BasicFileAttributes attributes)
+                    throws IOException {
+                final WatchKey watchKey = subdirectory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                                                                StandardWatchEventKinds.ENTRY_MODIFY,
+                                                                StandardWatchEventKinds.ENTRY_DELETE);
+                watchedDirectories.put(watchKey, subdirectory);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) {
+                files.add(file.toFile());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
+    /**
+     * List the files in a directory, after events for this directory were lost.
+     *
+     * @param directory the directory (or null if the directory is not known).
+     * @return the files in the directory.
+     */
+    private static List<File> listFiles(final Path directory) {
+        final List<File> files = new ArrayList<>();
+        final File[] directoryFiles = directory != null ? directory.toFile().listFiles() : null;
+        if (directoryFiles != null)
+            for (final File file : directoryFiles)
+                if (file.isFile())
+                    files.add(file);
+        return files;
+    }
+}
@@ -5,6 +5,8 @@
 
 package nl.vumc.biomedbridges.galaxy.metadata;
 
+import java.io.Serializable;
+
 import org.json.simple.JSONObject;
 
 /**
@@ -13,7 +15,12 @@ import org.json.simple.JSONObject;
  * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
  * @author <a href="mailto:y.hoogstrate@erasmusmc.nl">Youri Hoogstrate</a>
  */
-public class GalaxyStepPosition {
+public class GalaxyStepPosition implements Serializable {
+    /**
+     * The version of the serialized form (used by the metadata index).
+     */
+    private static final long serialVersionUID = 1L;
+
     /**
      * The left coordinate of a Galaxy workflow step.
      */
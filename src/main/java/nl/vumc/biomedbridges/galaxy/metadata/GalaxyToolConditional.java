@@ -5,6 +5,7 @@
 
 package nl.vumc.biomedbridges.galaxy.metadata;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -16,7 +17,12 @@ import org.w3c.dom.NodeList;
  *
  * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
  */
-public class GalaxyToolConditional {
+public class GalaxyToolConditional implements Serializable {
+    /**
+     * The version of the serialized form (used by the metadata index).
+     */
+    private static final long serialVersionUID = 1L;
+
     /**
      * The selector parameter (which contains the available options).
      */
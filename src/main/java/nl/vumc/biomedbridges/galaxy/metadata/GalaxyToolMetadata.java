@@ -5,6 +5,8 @@
 
 package nl.vumc.biomedbridges.galaxy.metadata;
 
+import java.io.File;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -22,7 +24,12 @@ import org.w3c.dom.NodeList;
  * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
  * @author <a href="mailto:y.hoogstrate@erasmusmc.nl">Youri Hoogstrate</a>
  */
-public class GalaxyToolMetadata {
+public class GalaxyToolMetadata implements Serializable {
+    /**
+     * The version of the serialized form (used by the metadata index).
+     */
+    private static final long serialVersionUID = 2L;
+
     /**
      * The logger for this class.
      */
@@ -48,6 +55,21 @@ public class GalaxyToolMetadata {
      */
     private final String description;
 
+    /**
+     * The command template (or null if the tool has no command).
+     */
+    private final String command;
+
+    /**
+     * The interpreter of the command (an empty string if the command is executed directly).
+     */
+    private final String commandInterpreter;
+
+    /**
+     * The directory with the tool definition and the tool scripts (or null if it is not known).
+     */
+    private final File toolDirectory;
+
     /**
      * The parameters.
      */
@@ -64,12 +86,27 @@ public class GalaxyToolMetadata {
      * @param toolElement the tool element.
      */
     public GalaxyToolMetadata(final Element toolElement) {
+        this(toolElement, null);
+    }
+
+    /**
+     * Create a Galaxy tool metadata object.
+     *
+     * @param toolElement   the tool element.
+     * @param toolDirectory the directory with the tool definition and the tool scripts (or null if it is not known).
+     */
+    public GalaxyToolMetadata(final Element toolElement, final File toolDirectory) {
         this.id = toolElement.getAttribute("id");
         this.name = toolElement.getAttribute("name");
         this.version = toolElement.getAttribute("version");
+        this.toolDirectory = toolDirectory;
 
-        final NodeList descriptionElements = toolElement.getElementsByTagName("description");
-        this.description = descriptionElements.getLength() >= 1 ? descriptionElements.item(0).getTextContent() : null;
+        final Element descriptionElement = getFirstElement(toolElement, "description");
+        this.description = descriptionElement != null ? descriptionElement.getTextContent() : null;
+
+        final Element commandElement = getFirstElement(toolElement, "command");
+        this.command = commandElement != null ? commandElement.getTextContent().trim() : null;
+        this.commandInterpreter = getAttribute(commandElement, "interpreter");
 
         logger.info("tool id: " + id);
         logger.trace("tool name: " + name);
@@ -96,6 +133,29 @@ public class GalaxyToolMetadata {
         }
     }
 
+    /**
+     * Get the first child element (at any depth) of a tool with a specific tag name.
+     *
+     * @param toolElement the tool element.
+     * @param tagName     the tag name.
+     * @return the first element (or null if the tool has no element with this tag name).
+     */
+    private static Element getFirstElement(final Element toolElement, final String tagName) {
+        final NodeList elements = toolElement.getElementsByTagName(tagName);
+        return elements.getLength() >= 1 ? (Element) elements.item(0) : null;
+    }
+
+    /**
+     * Get an attribute of an element that may be missing.
+     *
+     * @param element the element (or null).
+     * @param name    the attribute name.
+     * @return the attribute value (or an empty string if the element or the attribute is missing).
+     */
+    private static String getAttribute(final Element element, final String name) {
+        return element != null ? element.getAttribute(name) : "";
+    }
+
     /**
      * Get the id.
      *
@@ -132,6 +192,34 @@ public class GalaxyToolMetadata {
         return description;
     }
 
+    /**
+     * Get the command template, which uses the Cheetah template syntax of Galaxy.
+     *
+     * @return the command template (or null if the tool has no command).
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * Get the interpreter of the command (like python or perl). The first word of the command is then the script,
+     * which is located in the tool directory.
+     *
+     * @return the interpreter of the command (an empty string if the command is executed directly).
+     */
+    public String getCommandInterpreter() {
+        return commandInterpreter;
+    }
+
+    /**
+     * Get the directory with the tool definition and the tool scripts.
+     *
+     * @return the tool directory (or null if it is not known).
+     */
+    public File getToolDirectory() {
+        return toolDirectory;
+    }
+
     /**
      * Get the parameters.
      *
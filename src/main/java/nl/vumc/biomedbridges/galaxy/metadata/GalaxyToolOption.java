@@ -5,6 +5,8 @@
 
 package nl.vumc.biomedbridges.galaxy.metadata;
 
+import java.io.Serializable;
+
 import org.w3c.dom.Element;
 
 /**
@@ -12,7 +14,12 @@ import org.w3c.dom.Element;
  *
  * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
  */
-public class GalaxyToolOption {
+public class GalaxyToolOption implements Serializable {
+    /**
+     * The version of the serialized form (used by the metadata index).
+     */
+    private static final long serialVersionUID = 1L;
+
     /**
      * The text.
      */
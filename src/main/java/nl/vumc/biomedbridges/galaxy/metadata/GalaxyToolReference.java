@@ -7,13 +7,20 @@ package nl.vumc.biomedbridges.galaxy.metadata;
 
 import com.google.common.base.Objects;
 
+import java.io.Serializable;
+
 /**
  * The combination of a Galaxy tool id and version provides a unique tool reference.
  *
  * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
  * @author <a href="mailto:y.hoogstrate@erasmusmc.nl">Youri Hoogstrate</a>
  */
-public class GalaxyToolReference {
+public class GalaxyToolReference implements Serializable {
+    /**
+     * The version of the serialized form (used by the metadata index).
+     */
+    private static final long serialVersionUID = 1L;
+
     /**
      * The id.
      */
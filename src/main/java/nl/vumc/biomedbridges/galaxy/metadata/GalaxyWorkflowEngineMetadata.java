@@ -5,13 +5,25 @@
 
 package nl.vumc.biomedbridges.galaxy.metadata;
 
+import com.google.common.base.Function;
+
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import nl.vumc.biomedbridges.core.concurrent.ParallelLists;
 import nl.vumc.biomedbridges.galaxy.metadata.parsers.GalaxyToolMetadataParser;
 import nl.vumc.biomedbridges.galaxy.metadata.parsers.GalaxyWorkflowMetadataParser;
 
@@ -21,6 +33,10 @@ import org.slf4j.LoggerFactory;
 /**
  * The access point for Galaxy workflow and tool metadata.
  *
+ * The metadata is loaded when it is first used. Readers get an unmodifiable snapshot of the workflows map, which is
+ * replaced as a whole when definition files change (see the reload and watchForChanges methods), so reading never
+ * needs a lock.
+ *
  * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
  * @author <a href="mailto:y.hoogstrate@erasmusmc.nl">Youri Hoogstrate</a>
  */
@@ -36,9 +52,98 @@ public class GalaxyWorkflowEngineMetadata {
     private static final String DATA_DIRECTORY = Paths.get("data", "galaxy-configuration") + File.separator;
 
     /**
-     * Mapping of workflow names to workflow metadata objects.
+     * The name of the directory (below the data directory) with the workflow definitions.
+     */
+    private static final String WORKFLOWS_DIRECTORY_NAME = "workflows";
+
+    /**
+     * The name of the directory (below the data directory) with the tools configuration and tool definitions.
+     */
+    private static final String TOOLS_DIRECTORY_NAME = "tools";
+
+    /**
+     * The workflow definition parser.
+     */
+    private final GalaxyWorkflowMetadataParser workflowParser = new GalaxyWorkflowMetadataParser();
+
+    /**
+     * The tool definition parser.
+     */
+    private final GalaxyToolMetadataParser toolParser = new GalaxyToolMetadataParser();
+
+    /**
+     * The directory with the workflow definitions (ending with a file separator).
+     */
+    private final String workflowsDirectory;
+
+    /**
+     * The directory with the tools configuration and tool definitions (ending with a file separator).
+     */
+    private final String toolsDirectory;
+
+    /**
+     * The file where the index of parsed metadata is stored (or null to parse all definition files each time, which
+     * is the default).
+     */
+    private File indexFile;
+
+    /**
+     * Mapping of workflow names to workflow metadata objects: an unmodifiable snapshot that is replaced when the
+     * metadata changes (or null if the metadata has not been loaded yet).
+     */
+    private volatile Map<String, GalaxyWorkflowMetadata> workflowsMap;
+
+    /**
+     * The index of parsed metadata of all definition files. The fields below are only modified while holding the lock
+     * of this object (the concurrent maps are filled in parallel during the initial load).
+     */
+    private GalaxyMetadataIndex index;
+
+    /**
+     * The names of the loaded workflows by (absolute) workflow definition file.
+     */
+    private final Map<File, String> workflowNames = new ConcurrentHashMap<>();
+
+    /**
+     * The ids and versions of the configured tools by (absolute) tool definition file.
+     */
+    private final Map<File, GalaxyToolReference> toolReferences = new ConcurrentHashMap<>();
+
+    /**
+     * The parsed tool metadata by (absolute) tool definition file.
+     */
+    private final Map<File, GalaxyToolMetadata> toolsMetadata = new ConcurrentHashMap<>();
+
+    /**
+     * Create a workflow engine metadata object for the default Galaxy configuration data directory.
      */
-    private Map<String, GalaxyWorkflowMetadata> workflowsMap;
+    public GalaxyWorkflowEngineMetadata() {
+        this(DATA_DIRECTORY);
+    }
+
+    /**
+     * Create a workflow engine metadata object for a Galaxy configuration data directory, which contains a workflows
+     * directory (with a subdirectory for each workflow) and a tools directory (with the tool_conf.xml file).
+     *
+     * @param dataDirectory the Galaxy configuration data directory.
+     */
+    public GalaxyWorkflowEngineMetadata(final String dataDirectory) {
+        final String directory = dataDirectory.endsWith(File.separator) ? dataDirectory : dataDirectory + File.separator;
+        this.workflowsDirectory = directory + WORKFLOWS_DIRECTORY_NAME + File.separator;
+        this.toolsDirectory = directory + TOOLS_DIRECTORY_NAME + File.separator;
+    }
+
+    /**
+     * Set the file where the index of parsed metadata is stored. When the metadata is loaded, only the definition
+     * files that changed since the index was written are parsed. No index is used by default; the index file should
+     * be in a directory that only the current user can write to (not a shared temporary directory), since the
+     * metadata in the index is trusted. This setting should be changed before the metadata is used.
+     *
+     * @param indexFile the index file or null to parse all definition files each time.
+     */
+    public void setIndexFile(final File indexFile) {
+        this.indexFile = indexFile;
+    }
 
     /**
      * Get the metadata of all available Galaxy workflows.
@@ -46,9 +151,7 @@ public class GalaxyWorkflowEngineMetadata {
      * @return the metadata of all available Galaxy workflows.
      */
     public Collection<GalaxyWorkflowMetadata> getWorkflows() {
-        if (workflowsMap == null)
-            initializeWorkflowMetadata();
-        return workflowsMap != null ? workflowsMap.values() : null;
+        return getWorkflowsMap().values();
     }
 
     /**
@@ -58,37 +161,393 @@ public class GalaxyWorkflowEngineMetadata {
      * @return the metadata of the Galaxy workflow.
      */
     public GalaxyWorkflowMetadata getWorkflow(final String name) {
+        return getWorkflowsMap().get(name);
+    }
+
+    /**
+     * Start watching the workflows and tools directories, so the metadata of definition files is reloaded as soon as
+     * they are added, modified or deleted. The metadata is loaded first if this has not happened yet.
+     *
+     * @return the watcher, which should be closed to stop watching.
+     * @throws IOException if the directories cannot be watched.
+     */
+    public GalaxyMetadataWatcher watchForChanges() throws IOException {
+        getWorkflowsMap();
+        final List<Path> directories = Arrays.asList(Paths.get(workflowsDirectory), Paths.get(toolsDirectory));
+        final GalaxyMetadataWatcher watcher = new GalaxyMetadataWatcher(this, directories);
+        watcher.start();
+        return watcher;
+    }
+
+    /**
+     * Reload the metadata of definition files that have been added, modified or deleted. Only these files are parsed
+     * again (together with the workflows that use a changed tool and the tools that are used by a changed workflow).
+     * The workflows map is replaced in one step, so readers see either the old or the new metadata. Changes to the
+     * tools configuration file are handled by checking the tool definition files that were added or removed.
+     *
+     * @param changedFiles the changed workflow definition, tool definition and tools configuration files.
+     */
+    public synchronized void reload(final Collection<File> changedFiles) {
+        final Map<String, GalaxyWorkflowMetadata> workflows = new HashMap<>(getWorkflowsMap());
+        final Set<File> workflowFiles = new HashSet<>();
+        final Set<File> toolFiles = new HashSet<>();
+        classifyChangedFiles(changedFiles, workflowFiles, toolFiles);
+        if (workflowFiles.isEmpty() && toolFiles.isEmpty())
+            return;
+        final Set<GalaxyToolReference> changedTools = new HashSet<>();
+        for (final File toolFile : toolFiles)
+            changedTools.addAll(reloadToolReference(toolFile));
+        workflowFiles.addAll(getWorkflowFilesUsingTools(workflows, changedTools));
+        final List<GalaxyWorkflowMetadata> reloadedWorkflows = new ArrayList<>();
+        for (final File workflowFile : workflowFiles)
+            reloadWorkflow(workflowFile, workflows, reloadedWorkflows);
+        loadReferencedTools(getReferencedTools(workflows.values()));
+        final List<GalaxyToolMetadata> tools = new ArrayList<>(toolsMetadata.values());
+        for (final GalaxyWorkflowMetadata workflowMetadata : reloadedWorkflows)
+            workflowMetadata.addToolsMetadata(tools);
+        logger.info("Reloaded {} workflow(s) after changes to {} definition file(s).", reloadedWorkflows.size(),
+                    changedFiles.size());
+        workflowsMap = Collections.unmodifiableMap(workflows);
+        writeIndex();
+    }
+
+    /**
+     * Get the workflows map, loading the metadata if this has not happened yet.
+     *
+     * @return the workflows map.
+     */
+    private Map<String, GalaxyWorkflowMetadata> getWorkflowsMap() {
+        final Map<String, GalaxyWorkflowMetadata> workflows = workflowsMap;
+        return workflows != null ? workflows : initializeWorkflowMetadata();
+    }
+
+    /**
+     * Initialize the workflow metadata, unless another thread did this already.
+     *
+     * @return the workflows map.
+     */
+    private synchronized Map<String, GalaxyWorkflowMetadata> initializeWorkflowMetadata() {
         if (workflowsMap == null)
-            initializeWorkflowMetadata();
-        return workflowsMap != null ? workflowsMap.get(name) : null;
+            workflowsMap = loadAllMetadata();
+        return workflowsMap;
     }
 
     /**
-     * Initialize the workflow metadata by parsing the available workflow definitions, the tools configuration file, and
-     * the tool definitions.
+     * Load the workflow metadata by parsing the available workflow definitions, the tools configuration file, and the
+     * tool definitions. Definitions that have not changed since the metadata index was written are taken from the
+     * index instead of being parsed again.
+     *
+     * @return the unmodifiable workflows map.
      */
-    private void initializeWorkflowMetadata() {
-        final String workflowsDirectoryPath = DATA_DIRECTORY + "workflows" + File.separator;
-        workflowsMap = new GalaxyWorkflowMetadataParser().readWorkflowsFromDirectories(workflowsDirectoryPath);
-        logger.trace("");
-        logger.info("workflowsMap: " + workflowsMap);
+    private Map<String, GalaxyWorkflowMetadata> loadAllMetadata() {
+        final GalaxyMetadataIndex previousIndex = GalaxyMetadataIndex.read(indexFile);
+        index = new GalaxyMetadataIndex();
+        final AtomicInteger parsedFileCount = new AtomicInteger();
+        final Map<String, GalaxyWorkflowMetadata> workflows = new HashMap<>();
+        for (final GalaxyWorkflowMetadata workflowMetadata : loadWorkflows(previousIndex, parsedFileCount))
+            workflows.put(workflowMetadata.getName(), workflowMetadata);
         logger.trace("");
-        final List<GalaxyToolReference> toolReferences = new ArrayList<>();
-        for (final GalaxyWorkflowMetadata workflowMetadata : workflowsMap.values())
-            toolReferences.addAll(workflowMetadata.getToolReferences());
-        logger.info("toolReferences: " + toolReferences);
+        logger.info("workflowsMap: " + workflows);
         logger.trace("");
-        logger.trace("");
-        final String toolsDirectory = DATA_DIRECTORY + "tools" + File.separator;
-        final String configurationFilePath = toolsDirectory + "tool_conf.xml";
-        final GalaxyToolMetadataParser toolMetadataParser = new GalaxyToolMetadataParser();
-        final List<String> toolDefinitionPaths = toolMetadataParser.parseToolsConfiguration(configurationFilePath,
-                                                                                            toolsDirectory);
+        final Set<GalaxyToolReference> referencedTools = getReferencedTools(workflows.values());
+        logger.info("toolReferences: " + referencedTools);
+        loadTools(previousIndex, referencedTools, parsedFileCount);
+        final List<GalaxyToolMetadata> tools = new ArrayList<>(toolsMetadata.values());
+        logger.info("toolsMetadata: " + tools);
+        for (final GalaxyWorkflowMetadata workflowMetadata : workflows.values())
+            workflowMetadata.addToolsMetadata(tools);
+        logger.debug("Parsed {} definition file(s); {} file(s) were unchanged.", parsedFileCount.get(),
+                     index.size() - parsedFileCount.get());
+        if (parsedFileCount.get() > 0 || index.size() != previousIndex.size())
+            writeIndex();
+        return Collections.unmodifiableMap(workflows);
+    }
+
+    /**
+     * Load the metadata of all workflow definition files, from the previous index if a file has not changed.
+     *
+     * @param previousIndex   the previous metadata index.
+     * @param parsedFileCount the counter of the files that are parsed.
+     * @return the workflow metadata objects of the files that could be parsed.
+     */
+    private List<GalaxyWorkflowMetadata> loadWorkflows(final GalaxyMetadataIndex previousIndex,
+                                                       final AtomicInteger parsedFileCount) {
+        final Function<File, GalaxyWorkflowMetadata> loadWorkflow = new Function<File, GalaxyWorkflowMetadata>() {
+            @Override
+            public GalaxyWorkflowMetadata apply(final File workflowFile) {
+                final GalaxyMetadataIndex.FileEntry entry = previousIndex.getUnchangedEntry(workflowFile);
+                GalaxyWorkflowMetadata workflowMetadata = entry != null
+                                                          ? (GalaxyWorkflowMetadata) entry.getMetadata()
+                                                          : null;
+                if (workflowMetadata == null) {
+                    workflowMetadata = workflowParser.parseWorkflowFile(workflowFile);
+                    parsedFileCount.incrementAndGet();
+                }
+                index.putEntry(workflowFile, workflowMetadata, null);
+                if (workflowMetadata != null)
+                    workflowNames.put(workflowFile.getAbsoluteFile(), workflowMetadata.getName());
+                return workflowMetadata;
+            }
+        };
+        return withoutNulls(ParallelLists.transform(workflowParser.listWorkflowFiles(workflowsDirectory),
+                                                    loadWorkflow));
+    }
+
+    /**
+     * Load the metadata of the tools that are referenced by the workflows, from the previous index if a tool
+     * definition file has not changed.
+     *
+     * @param previousIndex   the previous metadata index.
+     * @param referencedTools the tools that are referenced by the workflows.
+     * @param parsedFileCount the counter of the files that are parsed.
+     */
+    private void loadTools(final GalaxyMetadataIndex previousIndex, final Set<GalaxyToolReference> referencedTools,
+                           final AtomicInteger parsedFileCount) {
+        final List<String> toolDefinitionPaths = getToolDefinitionPaths();
         logger.trace("toolDefinitionPaths: " + toolDefinitionPaths);
-        final List<GalaxyToolMetadata> toolsMetadata = toolMetadataParser.parseToolsMetadata(toolDefinitionPaths,
-                                                                                             toolReferences);
-        logger.info("toolsMetadata: " + toolsMetadata);
-        for (final GalaxyWorkflowMetadata workflowMetadata : workflowsMap.values())
-            workflowMetadata.addToolsMetadata(toolsMetadata);
+        final Function<String, Void> loadTool = new Function<String, Void>() {
+            @Override
+            public Void apply(final String toolDefinitionPath) {
+                loadTool(new File(toolDefinitionPath), previousIndex, referencedTools, parsedFileCount);
+                return null;
+            }
+        };
+        ParallelLists.transform(toolDefinitionPaths, loadTool);
+    }
+
+    /**
+     * Load the metadata of a tool if it is referenced by the workflows, from the previous index if the tool definition
+     * file has not changed. Only the id and version are read from definition files of tools that are not referenced.
+     *
+     * @param toolFile        the tool definition file.
+     * @param previousIndex   the previous metadata index.
+     * @param referencedTools the tools that are referenced by the workflows.
+     * @param parsedFileCount the counter of the files that are parsed.
+     */
+    private void loadTool(final File toolFile, final GalaxyMetadataIndex previousIndex,
+                          final Set<GalaxyToolReference> referencedTools, final AtomicInteger parsedFileCount) {
+        final GalaxyMetadataIndex.FileEntry entry = previousIndex.getUnchangedEntry(toolFile);
+        final GalaxyToolReference tool = entry != null
+                                         ? entry.getToolReference()
+                                         : toolParser.readToolReference(toolFile.getPath());
+        if (tool != null) {
+            GalaxyToolMetadata toolMetadata = entry != null ? (GalaxyToolMetadata) entry.getMetadata() : null;
+            if (toolMetadata == null && GalaxyToolMetadataParser.isReferenced(referencedTools, tool)) {
+                toolMetadata = toolParser.parseToolDefinition(toolFile.getPath());
+                parsedFileCount.incrementAndGet();
+            }
+            index.putEntry(toolFile, toolMetadata, tool);
+            toolReferences.put(toolFile.getAbsoluteFile(), tool);
+            if (toolMetadata != null)
+                toolsMetadata.put(toolFile.getAbsoluteFile(), toolMetadata);
+        }
+    }
+
+    /**
+     * Sort the changed files into workflow definition files and tool definition files. If the tools configuration file
+     * has changed, the tool definition files that were added to or removed from the configuration are added.
+     *
+     * @param changedFiles  the changed files.
+     * @param workflowFiles the set to add the (absolute) workflow definition files to.
+     * @param toolFiles     the set to add the (absolute) tool definition files to.
+     */
+    private void classifyChangedFiles(final Collection<File> changedFiles, final Set<File> workflowFiles,
+                                      final Set<File> toolFiles) {
+        final File configurationFile = new File(getToolsConfigurationPath()).getAbsoluteFile();
+        final File workflowsDirectoryFile = new File(workflowsDirectory).getAbsoluteFile();
+        for (final File changedFile : changedFiles) {
+            final File file = changedFile.getAbsoluteFile();
+            if (file.equals(configurationFile))
+                addConfigurationChanges(toolFiles);
+            else if (file.getName().endsWith(".ga") && file.getPath().startsWith(workflowsDirectoryFile.getPath()))
+                workflowFiles.add(file);
+            else if (toolReferences.containsKey(file))
+                toolFiles.add(file);
+        }
+    }
+
+    /**
+     * Add the tool definition files that were added to or removed from the tools configuration.
+     *
+     * @param toolFiles the set to add the (absolute) tool definition files to.
+     */
+    private void addConfigurationChanges(final Set<File> toolFiles) {
+        final Set<File> configuredFiles = new HashSet<>();
+        for (final String toolDefinitionPath : getToolDefinitionPaths())
+            configuredFiles.add(new File(toolDefinitionPath).getAbsoluteFile());
+        for (final File configuredFile : configuredFiles)
+            if (!toolReferences.containsKey(configuredFile))
+                toolFiles.add(configuredFile);
+        for (final File knownFile : toolReferences.keySet())
+            if (!configuredFiles.contains(knownFile))
+                toolFiles.add(knownFile);
+    }
+
+    /**
+     * Read the id and version of a changed tool again and remove its metadata, which will be parsed again if the tool
+     * is referenced. A tool that is no longer configured or whose file was deleted is removed.
+     *
+     * @param toolFile the (absolute) tool definition file.
+     * @return the previous and the new id and version of the tool (if any).
+     */
+    private Set<GalaxyToolReference> reloadToolReference(final File toolFile) {
+        final Set<GalaxyToolReference> changedTools = new HashSet<>();
+        final GalaxyToolReference previousTool = toolReferences.remove(toolFile);
+        if (previousTool != null)
+            changedTools.add(previousTool);
+        toolsMetadata.remove(toolFile);
+        index.removeEntry(toolFile);
+        final GalaxyToolReference tool = toolFile.exists() && isConfigured(toolFile)
+                                         ? toolParser.readToolReference(toolFile.getPath())
+                                         : null;
+        if (tool != null) {
+            changedTools.add(tool);
+            toolReferences.put(toolFile, tool);
+            index.putEntry(toolFile, null, tool);
+        }
+        return changedTools;
+    }
+
+    /**
+     * Check whether a tool definition file is in the tools configuration.
+     *
+     * @param toolFile the (absolute) tool definition file.
+     * @return whether the tool definition file is configured.
+     */
+    private boolean isConfigured(final File toolFile) {
+        for (final String toolDefinitionPath : getToolDefinitionPaths())
+            if (new File(toolDefinitionPath).getAbsoluteFile().equals(toolFile))
+                return true;
+        return false;
+    }
+
+    /**
+     * Parse a changed workflow definition file again and update the workflows map. The old metadata of this file is
+     * removed; a deleted file or a file that cannot be parsed is not added again.
+     *
+     * @param workflowFile      the (absolute) workflow definition file.
+     * @param workflows         the workflows map to update.
+     * @param reloadedWorkflows the list to add the new workflow metadata to.
+     */
+    private void reloadWorkflow(final File workflowFile, final Map<String, GalaxyWorkflowMetadata> workflows,
+                                final List<GalaxyWorkflowMetadata> reloadedWorkflows) {
+        final String previousName = workflowNames.remove(workflowFile);
+        if (previousName != null)
+            workflows.remove(previousName);
+        index.removeEntry(workflowFile);
+        final GalaxyWorkflowMetadata workflowMetadata = workflowFile.exists()
+                                                        ? workflowParser.parseWorkflowFile(workflowFile)
+                                                        : null;
+        if (workflowMetadata != null) {
+            workflows.put(workflowMetadata.getName(), workflowMetadata);
+            workflowNames.put(workflowFile, workflowMetadata.getName());
+            index.putEntry(workflowFile, workflowMetadata, null);
+            reloadedWorkflows.add(workflowMetadata);
+        }
+    }
+
+    /**
+     * Parse the configured tools that are referenced by the workflows and have not been parsed yet.
+     *
+     * @param referencedTools the tools that are referenced by the workflows.
+     */
+    private void loadReferencedTools(final Set<GalaxyToolReference> referencedTools) {
+        for (final Map.Entry<File, GalaxyToolReference> toolEntry : toolReferences.entrySet()) {
+            final File toolFile = toolEntry.getKey();
+            if (!toolsMetadata.containsKey(toolFile)
+                && GalaxyToolMetadataParser.isReferenced(referencedTools, toolEntry.getValue())) {
+                final GalaxyToolMetadata toolMetadata = toolParser.parseToolDefinition(toolFile.getPath());
+                if (toolMetadata != null) {
+                    toolsMetadata.put(toolFile, toolMetadata);
+                    index.putEntry(toolFile, toolMetadata, toolEntry.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the workflow definition files of the workflows that use any of a set of tools.
+     *
+     * @param workflows the workflows map.
+     * @param tools     the ids and versions of the tools.
+     * @return the (absolute) workflow definition files.
+     */
+    private Set<File> getWorkflowFilesUsingTools(final Map<String, GalaxyWorkflowMetadata> workflows,
+                                                 final Set<GalaxyToolReference> tools) {
+        final Set<File> workflowFiles = new HashSet<>();
+        for (final Map.Entry<File, String> workflowEntry : workflowNames.entrySet())
+            if (usesAnyTool(workflows.get(workflowEntry.getValue()), tools))
+                workflowFiles.add(workflowEntry.getKey());
+        return workflowFiles;
+    }
+
+    /**
+     * Check whether a workflow uses any of a set of tools.
+     *
+     * @param workflowMetadata the workflow metadata (or null).
+     * @param tools            the ids and versions of the tools.
+     * @return whether the workflow uses any of the tools.
+     */
+    private static boolean usesAnyTool(final GalaxyWorkflowMetadata workflowMetadata,
+                                       final Set<GalaxyToolReference> tools) {
+        if (workflowMetadata != null)
+            for (final GalaxyToolReference tool : tools)
+                if (GalaxyToolMetadataParser.isReferenced(workflowMetadata.getToolReferences(), tool))
+                    return true;
+        return false;
+    }
+
+    /**
+     * Get the tools that are referenced by workflows.
+     *
+     * @param workflows the workflow metadata objects.
+     * @return the ids and versions of the referenced tools.
+     */
+    private static Set<GalaxyToolReference> getReferencedTools(final Collection<GalaxyWorkflowMetadata> workflows) {
+        final Set<GalaxyToolReference> referencedTools = new HashSet<>();
+        for (final GalaxyWorkflowMetadata workflowMetadata : workflows)
+            referencedTools.addAll(workflowMetadata.getToolReferences());
+        return referencedTools;
+    }
+
+    /**
+     * Get the file path of the tools configuration file.
+     *
+     * @return the file path of the tools configuration file.
+     */
+    private String getToolsConfigurationPath() {
+        return toolsDirectory + "tool_conf.xml";
+    }
+
+    /**
+     * Get the file paths of the tool definition files in the tools configuration.
+     *
+     * @return the file paths of the tool definition files.
+     */
+    private List<String> getToolDefinitionPaths() {
+        return toolParser.parseToolsConfiguration(getToolsConfigurationPath(), toolsDirectory);
+    }
+
+    /**
+     * Write the metadata index to the index file (if there is one).
+     */
+    private void writeIndex() {
+        if (indexFile != null)
+            index.write(indexFile);
+    }
+
+    /**
+     * Create a copy of a list without the null elements.
+     *
+     * @param elements the list of elements.
+     * @param <T>      the type of the elements.
+     * @return the list of elements that are not null.
+     */
+    private static <T> List<T> withoutNulls(final List<T> elements) {
+        final List<T> nonNullElements = new ArrayList<>();
+        for (final T element : elements)
+            if (element != null)
+                nonNullElements.add(element);
+        return nonNullElements;
     }
 }
@@ -5,7 +5,9 @@
 
 package nl.vumc.biomedbridges.galaxy.metadata;
 
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -14,6 +16,7 @@ import java.util.SortedMap;
 import java.util.TreeMap;
 
 import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,7 +32,12 @@ import org.slf4j.LoggerFactory;
  * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
  * @author <a href="mailto:y.hoogstrate@erasmusmc.nl">Youri Hoogstrate</a>
  */
-public class GalaxyWorkflowMetadata {
+public class GalaxyWorkflowMetadata implements Serializable {
+    /**
+     * The version of the serialized form (used by the metadata index).
+     */
+    private static final long serialVersionUID = 1L;
+
     /**
      * The logger for this class.
      */
@@ -66,11 +74,20 @@ public class GalaxyWorkflowMetadata {
      * @param workflowJson the workflow json object.
      */
     public GalaxyWorkflowMetadata(final JSONObject workflowJson) {
+        this(workflowJson, new JSONParser());
+    }
+
+    /**
+     * Create a Galaxy workflow metadata object from a json object.
+     *
+     * @param workflowJson the workflow json object.
+     * @param jsonParser   the json parser for the tool states of the steps.
+     */
+    public GalaxyWorkflowMetadata(final JSONObject workflowJson, final JSONParser jsonParser) {
         this.aGalaxyWorkflow = "true".equals(workflowJson.get("a_galaxy_workflow"));
         this.annotation = workflowJson.get("annotation").toString();
         this.formatVersion = workflowJson.get("format-version").toString();
         this.name = workflowJson.get("name").toString();
-        this.steps = new ArrayList<>();
 
         final JSONObject stepsMapJson = (JSONObject) workflowJson.get("steps");
 
@@ -83,8 +100,10 @@ public class GalaxyWorkflowMetadata {
                 sortedStepsMap.put(stepId, (JSONObject) stepEntry.getValue());
             }
 
+        final List<GalaxyWorkflowStep> stepList = new ArrayList<>();
         for (final JSONObject stepJson : sortedStepsMap.values())
-            steps.add(new GalaxyWorkflowStep(stepJson));
+            stepList.add(new GalaxyWorkflowStep(stepJson, jsonParser));
+        this.steps = Collections.unmodifiableList(stepList);
     }
 
     /**
@@ -126,7 +145,7 @@ public class GalaxyWorkflowMetadata {
     /**
      * Get the steps that form this workflow. A tool can be called during a step.
      *
-     * @return the steps that form this workflow.
+     * @return the (unmodifiable) steps that form this workflow.
      */
     public List<GalaxyWorkflowStep> getSteps() {
         return steps;
@@ -146,7 +165,7 @@ public class GalaxyWorkflowMetadata {
     }
 
     /**
-     * Add tool metadata objects to the workflow steps.
+     * Attach the matching tool metadata objects to the workflow steps, replacing tool metadata attached earlier.
      *
      * @param toolsMetadata the tool metadata objects.
      */
@@ -7,11 +7,14 @@ package nl.vumc.biomedbridges.galaxy.metadata;
 
 import com.google.common.base.Preconditions;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 import javax.annotation.Nonnull;
 
@@ -30,7 +33,12 @@ import org.slf4j.LoggerFactory;
  * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
  * @author <a href="mailto:y.hoogstrate@erasmusmc.nl">Youri Hoogstrate</a>
  */
-public class GalaxyWorkflowStep {
+public class GalaxyWorkflowStep implements Serializable {
+    /**
+     * The version of the serialized form (used by the metadata index).
+     */
+    private static final long serialVersionUID = 1L;
+
     /**
      * The logger for this class.
      */
@@ -61,6 +69,21 @@ public class GalaxyWorkflowStep {
      */
     private static final String DOUBLE_QUOTE = "\"";
 
+    /**
+     * The strings that represent boolean values in the tool state (in lower case).
+     */
+    private static final List<String> BOOLEAN_STRINGS = Arrays.asList("true", "false");
+
+    /**
+     * The pattern for decimal numbers in the tool state.
+     */
+    private static final Pattern DOUBLE_PATTERN = Pattern.compile("[-+]?\\d+\\.\\d+");
+
+    /**
+     * The pattern for integer numbers in the tool state.
+     */
+    private static final Pattern LONG_PATTERN = Pattern.compile("[-+]?\\d+");
+
     /**
      * The id.
      */
@@ -127,9 +150,10 @@ public class GalaxyWorkflowStep {
     private final List<Object> userOutputs;
 
     /**
-     * The tool metadata (if there is a tool related to this step).
+     * The tool metadata (if there is a tool related to this step). It is not stored in the metadata index, since the
+     * tool may have changed; it is attached again after loading.
      */
-    private GalaxyToolMetadata toolMetadata;
+    private transient GalaxyToolMetadata toolMetadata;
 
     /**
      * Create a Galaxy workflow step from a step json object.
@@ -137,6 +161,17 @@ public class GalaxyWorkflowStep {
      * @param stepJson the json step object that contains the data for this step.
      */
     public GalaxyWorkflowStep(final JSONObject stepJson) {
+        this(stepJson, new JSONParser());
+    }
+
+    /**
+     * Create a Galaxy workflow step from a step json object. The json parser is used to parse the tool state, so a
+     * workflow can use one parser for all its steps.
+     *
+     * @param stepJson   the json step object that contains the data for this step.
+     * @param jsonParser the json parser for the tool state.
+     */
+    public GalaxyWorkflowStep(final JSONObject stepJson, final JSONParser jsonParser) {
         this.id = JsonUtilities.getJsonLong(stepJson, "id");
         this.name = JsonUtilities.getJsonString(stepJson, "name");
         this.type = JsonUtilities.getJsonString(stepJson, "type");
@@ -144,54 +179,65 @@ public class GalaxyWorkflowStep {
         this.toolVersion = JsonUtilities.getJsonString(stepJson, "tool_version");
         this.annotation = JsonUtilities.getJsonString(stepJson, "annotation");
         this.position = new GalaxyStepPosition((JSONObject) stepJson.get("position"));
-        this.toolErrors = new HashMap<>();
-        // Initialize inputConnections.
-        this.inputConnections = new HashMap<>();
+        this.toolErrors = Collections.emptyMap();
+        this.inputConnections = Collections.unmodifiableMap(readInputConnections(stepJson));
+        // Initialize inputs.
+        final List<GalaxyStepInput> inputList = new ArrayList<>();
+        for (final Object input : (JSONArray) stepJson.get("inputs"))
+            inputList.add(new GalaxyStepInput((JSONObject) input));
+        this.inputs = Collections.unmodifiableList(inputList);
+        // Initialize outputs.
+        final List<GalaxyStepOutput> outputList = new ArrayList<>();
+        for (final Object output : (JSONArray) stepJson.get("outputs"))
+            outputList.add(new GalaxyStepOutput((JSONObject) output));
+        this.outputs = Collections.unmodifiableList(outputList);
+        this.toolState = Collections.unmodifiableMap(readToolState(stepJson.get("tool_state"), jsonParser));
+        this.userOutputs = Collections.emptyList();
+    }
+
+    /**
+     * Read the input connections from the step json object.
+     *
+     * @param stepJson the json step object.
+     * @return the input connections.
+     */
+    private Map<String, GalaxyStepInputConnection> readInputConnections(final JSONObject stepJson) {
+        final Map<String, GalaxyStepInputConnection> connections = new HashMap<>();
         final JSONObject inputConnectionsMap = (JSONObject) stepJson.get("input_connections");
         for (final Object inputConnectionObject : inputConnectionsMap.entrySet()) {
             final Map.Entry inputConnectionEntry = (Map.Entry) inputConnectionObject;
             final JSONObject inputConnectionJson = (JSONObject) inputConnectionEntry.getValue();
-            final GalaxyStepInputConnection inputConnection = new GalaxyStepInputConnection(inputConnectionJson);
-            this.inputConnections.put((String) inputConnectionEntry.getKey(), inputConnection);
+            connections.put((String) inputConnectionEntry.getKey(), new GalaxyStepInputConnection(inputConnectionJson));
         }
-        // Initialize inputs.
-        this.inputs = new ArrayList<>();
-        final JSONArray inputsArray = (JSONArray) stepJson.get("inputs");
-        for (final Object input : inputsArray)
-            this.inputs.add(new GalaxyStepInput((JSONObject) input));
-        // Initialize outputs.
-        this.outputs = new ArrayList<>();
-        final JSONArray outputsArray = (JSONArray) stepJson.get("outputs");
-        for (final Object output : outputsArray)
-            this.outputs.add(new GalaxyStepOutput((JSONObject) output));
-        // Initialize toolState.
-        this.toolState = new HashMap<>();
-        fillToolState(stepJson.get("tool_state"));
-        // Initialize userOutputs.
-        this.userOutputs = new ArrayList<>();
+        return connections;
     }
 
     /**
-     * Fill the tool state map based on the values in the tool state json object.
+     * Read the tool state map from the tool state json string.
      *
-     * @param toolStateObject the tool state json object.
+     * @param toolStateObject the tool state json string.
+     * @param jsonParser      the json parser to use.
+     * @return the tool state map.
      */
-    private void fillToolState(final Object toolStateObject) {
+    private Map<String, Object> readToolState(final Object toolStateObject, final JSONParser jsonParser) {
+        final Map<String, Object> toolStateMap = new HashMap<>();
         try {
             if (toolStateObject != null) {
-                final JSONObject toolStateJson = (JSONObject) new JSONParser().parse(toolStateObject.toString());
+                final JSONObject toolStateJson = (JSONObject) jsonParser.parse(toolStateObject.toString());
                 for (final Object parameterObject : toolStateJson.entrySet()) {
                     final Map.Entry parameterEntry = (Map.Entry) parameterObject;
                     final Object parameterValue = parameterEntry.getValue();
                     final Object toolStateValue = parameterValue != null ? getToolStateValue(parameterValue) : null;
-                    logger.trace(parameterEntry.getKey() + " -> " + toolStateValue
-                                 + (toolStateValue != null ? " (" + toolStateValue.getClass().getName() + ")" : ""));
-                    this.toolState.put((String) parameterEntry.getKey(), toolStateValue);
+                    if (logger.isTraceEnabled())
+                        logger.trace(parameterEntry.getKey() + " -> " + toolStateValue
+                                     + (toolStateValue != null ? " (" + toolStateValue.getClass().getName() + ")" : ""));
+                    toolStateMap.put((String) parameterEntry.getKey(), toolStateValue);
                 }
             }
         } catch (final ParseException e) {
             e.printStackTrace();
         }
+        return toolStateMap;
     }
 
     /**
@@ -212,9 +258,9 @@ public class GalaxyWorkflowStep {
             result = readToolStateMap(initialString.substring(2, initialString.length() - 2));
         else if (toolStateType == TOOL_STATE_TYPE_BOOLEAN)
             result = trueString.equalsIgnoreCase(initialString);
-        else if (initialString.matches("[-+]?\\d+\\.\\d+"))
+        else if (DOUBLE_PATTERN.matcher(initialString).matches())
             result = Double.parseDouble(initialString);
-        else if (initialString.matches("[-+]?\\d+"))
+        else if (LONG_PATTERN.matcher(initialString).matches())
             result = Long.parseLong(initialString);
         else if (!"null".equals(initialString))
             result = initialString;
@@ -230,12 +276,11 @@ public class GalaxyWorkflowStep {
     private int getToolStateType(final String jsonValue) {
         final int toolStateType;
         final String doubleQuote = DOUBLE_QUOTE;
-        final List<String> booleanStrings = Arrays.asList("true", "false");
         if (jsonValue.startsWith(doubleQuote) && jsonValue.endsWith(doubleQuote))
             toolStateType = TOOL_STATE_TYPE_STRING;
         else if (jsonValue.startsWith("{\"") && jsonValue.endsWith("\"}"))
             toolStateType = TOOL_STATE_TYPE_MAP;
-        else if (booleanStrings.contains(jsonValue.toLowerCase()))
+        else if (BOOLEAN_STRINGS.contains(jsonValue.toLowerCase()))
             toolStateType = TOOL_STATE_TYPE_BOOLEAN;
         else
             toolStateType = TOOL_STATE_TYPE_OTHER;
@@ -382,19 +427,22 @@ public class GalaxyWorkflowStep {
     }
 
     /**
-     * Add a tool metadata object to this workflow step.
+     * Attach the metadata of the matching tool to this workflow step. Tool metadata that was attached earlier is
+     * replaced, so the step has no tool metadata when its tool is no longer available.
      *
      * @param toolsMetadata the tool metadata objects.
      */
     public void addToolsMetadata(final List<GalaxyToolMetadata> toolsMetadata) {
+        GalaxyToolMetadata matchingToolMetadata = null;
         for (final GalaxyToolMetadata availableToolMetadata : toolsMetadata) {
             final boolean toolIdMatches = toolId != null && toolId.equals(availableToolMetadata.getId());
             final boolean versionMatches = toolVersion != null && toolVersion.equals(availableToolMetadata.getVersion());
             if (toolIdMatches && (versionMatches || "".equals(availableToolMetadata.getVersion()))) {
-                toolMetadata = availableToolMetadata;
+                matchingToolMetadata = availableToolMetadata;
                 break;
             }
         }
+        toolMetadata = matchingToolMetadata;
     }
 
     /**
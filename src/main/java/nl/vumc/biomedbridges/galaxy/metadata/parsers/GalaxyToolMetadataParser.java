@@ -5,15 +5,25 @@
 
 package nl.vumc.biomedbridges.galaxy.metadata.parsers;
 
+import com.google.common.base.Function;
+
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
+import nl.vumc.biomedbridges.core.concurrent.ParallelLists;
 import nl.vumc.biomedbridges.galaxy.metadata.GalaxyToolMetadata;
 import nl.vumc.biomedbridges.galaxy.metadata.GalaxyToolReference;
 
@@ -34,6 +44,33 @@ public class GalaxyToolMetadataParser {
      */
     private static final Logger logger = LoggerFactory.getLogger(GalaxyToolMetadataParser.class);
 
+    /**
+     * The factory for the XML document builders (only used while holding its lock, since factories are not guaranteed
+     * to be thread safe).
+     */
+    private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY = DocumentBuilderFactory.newInstance();
+
+    /**
+     * The XML document builder of each thread, which is reused for all documents parsed by that thread.
+     */
+    private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDERS = new ThreadLocal<>();
+
+    /**
+     * The factory for the streaming XML readers that read the id and version of a tool (only used while holding its
+     * lock, since factories are not guaranteed to be thread safe).
+     */
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    /**
+     * The name of the id attribute of a tool.
+     */
+    private static final String ID_ATTRIBUTE = "id";
+
+    /**
+     * The name of the version attribute of a tool.
+     */
+    private static final String VERSION_ATTRIBUTE = "version";
+
     /**
      * Parse all tool information from the tool configuration file (tool_conf.xml).
      *
@@ -64,7 +101,8 @@ public class GalaxyToolMetadataParser {
     }
 
     /**
-     * Parse the tool definitions that are referenced by the workflows.
+     * Parse the tool definitions that are referenced by the workflows. The tool definitions are parsed in parallel and
+     * only the id and version are read from the definitions of tools that are not referenced.
      *
      * @param toolDefinitionPaths the list of file paths of tool definition files (in xml format).
      * @param toolReferences the tool references as used by the workflows.
@@ -73,29 +111,47 @@ public class GalaxyToolMetadataParser {
     public List<GalaxyToolMetadata> parseToolsMetadata(final List<String> toolDefinitionPaths,
                                                        final List<GalaxyToolReference> toolReferences) {
         final List<GalaxyToolMetadata> toolsMetadata = new ArrayList<>();
-        for (final String toolDefinitionPath : toolDefinitionPaths) {
-            final GalaxyToolMetadata toolMetadata = parseToolDefinition(toolDefinitionPath, toolReferences);
+        if (toolReferences.isEmpty())
+            return toolsMetadata;
+        final Function<String, GalaxyToolMetadata> parseDefinition = new Function<String, GalaxyToolMetadata>() {
+            @Override
+            public GalaxyToolMetadata apply(final String toolDefinitionPath) {
+                return parseToolDefinition(toolDefinitionPath, toolReferences);
+            }
+        };
+        for (final GalaxyToolMetadata toolMetadata : ParallelLists.transform(toolDefinitionPaths, parseDefinition))
             if (toolMetadata != null)
                 toolsMetadata.add(toolMetadata);
-        }
         return toolsMetadata;
     }
 
     /**
-     * Parse the definition of a tool.
+     * Parse the definition of a tool, if the tool is referenced.
      *
      * @param filePath the file path with the xml tool definition.
      * @param toolReferences the references to the tools that should be parsed.
-     * @return the definition of a tool.
+     * @return the definition of a tool (or null if the tool is not referenced or could not be parsed).
      */
     private GalaxyToolMetadata parseToolDefinition(final String filePath,
                                                    final List<GalaxyToolReference> toolReferences) {
+        final GalaxyToolReference toolReference = readToolReference(filePath);
+        return toolReference != null && isReferenced(toolReferences, toolReference)
+               ? parseToolDefinition(filePath)
+               : null;
+    }
+
+    /**
+     * Parse the definition of a tool.
+     *
+     * @param filePath the file path with the xml tool definition.
+     * @return the definition of a tool (or null if the tool could not be parsed).
+     */
+    public GalaxyToolMetadata parseToolDefinition(final String filePath) {
         logger.trace("filePath: " + filePath);
         GalaxyToolMetadata toolMetadata = null;
         try {
-            final Element toolElement = parseXmlDocument(filePath);
-            if (toolToBeParsed(toolReferences, toolElement))
-                toolMetadata = new GalaxyToolMetadata(toolElement);
+            toolMetadata = new GalaxyToolMetadata(parseXmlDocument(filePath),
+                                                  new File(filePath).getAbsoluteFile().getParentFile());
         } catch (final SAXException | IOException | ParserConfigurationException e) {
             e.printStackTrace();
         }
@@ -103,7 +159,46 @@ public class GalaxyToolMetadataParser {
     }
 
     /**
-     * Parse the XML document at the file path and return the document element.
+     * Read the id and version of a tool, by reading only the attributes of the tool element (the root element) with a
+     * streaming XML reader. The version is an empty string if the tool has no version.
+     *
+     * @param filePath the file path with the xml tool definition.
+     * @return the id and version of the tool (or null if the file could not be read).
+     */
+    public GalaxyToolReference readToolReference(final String filePath) {
+        try (final InputStream inputStream = new BufferedInputStream(new FileInputStream(filePath))) {
+            final XMLStreamReader reader;
+            synchronized (XML_INPUT_FACTORY) {
+                reader = XML_INPUT_FACTORY.createXMLStreamReader(inputStream);
+            }
+            try {
+                reader.nextTag();
+                return new GalaxyToolReference(getAttribute(reader, ID_ATTRIBUTE),
+                                               getAttribute(reader, VERSION_ATTRIBUTE));
+            } finally {
+                reader.close();
+            }
+        } catch (final IOException | XMLStreamException e) {
+            logger.warn("Reading the id and version of tool definition file {} failed.", filePath, e);
+            return null;
+        }
+    }
+
+    /**
+     * Get an attribute value of the current element of a streaming XML reader.
+     *
+     * @param reader the streaming XML reader.
+     * @param attributeName the attribute name.
+     * @return the attribute value or an empty string if the attribute is not present (like Element.getAttribute).
+     */
+    private String getAttribute(final XMLStreamReader reader, final String attributeName) {
+        final String value = reader.getAttributeValue(null, attributeName);
+        return value != null ? value : "";
+    }
+
+    /**
+     * Parse the XML document at the file path and return the document element. The document builder of the current
+     * thread is reused.
      *
      * @param filePath the file path where the XML document is located.
      * @return the document element.
@@ -113,25 +208,32 @@ public class GalaxyToolMetadataParser {
      */
     private Element parseXmlDocument(final String filePath)
             throws ParserConfigurationException, SAXException, IOException {
-        final DocumentBuilder documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        DocumentBuilder documentBuilder = DOCUMENT_BUILDERS.get();
+        if (documentBuilder == null) {
+            synchronized (DOCUMENT_BUILDER_FACTORY) {
+                documentBuilder = DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+            }
+            DOCUMENT_BUILDERS.set(documentBuilder);
+        } else
+            documentBuilder.reset();
         return documentBuilder.parse(new File(filePath)).getDocumentElement();
     }
 
     /**
-     * Determine whether the tool specified by the tool element should be parsed: if it is in the list of tools that are
-     * referenced by the workflows.
+     * Determine whether a tool should be parsed: if it is in the list of tools that are referenced by the workflows. A
+     * tool without a version matches references to any version.
      *
      * @param toolReferences the list of tools that are referenced by the workflows.
-     * @param toolElement the tool element specifying the tool that should be parsed or not.
-     * @return whether the tool specified by the tool element should be parsed or not.
+     * @param tool the id and version of the tool (the version is an empty string if the tool has no version).
+     * @return whether the tool should be parsed or not.
      */
-    private boolean toolToBeParsed(final List<GalaxyToolReference> toolReferences, final Element toolElement) {
+    public static boolean isReferenced(final Collection<GalaxyToolReference> toolReferences,
+                                       final GalaxyToolReference tool) {
         boolean toBeParsed = false;
-        final String toolId = toolElement.getAttribute("id");
-        final String toolVersion = toolElement.getAttribute("version");
-        final boolean versionEmpty = "".equals(toolVersion);
+        final boolean versionEmpty = "".equals(tool.getVersion());
         for (final GalaxyToolReference toolReference : toolReferences)
-            if (toolReference.getId().equals(toolId) && (versionEmpty || toolReference.getVersion().equals(toolVersion))) {
+            if (toolReference.getId().equals(tool.getId())
+                && (versionEmpty || toolReference.getVersion().equals(tool.getVersion()))) {
                 toBeParsed = true;
                 break;
             }
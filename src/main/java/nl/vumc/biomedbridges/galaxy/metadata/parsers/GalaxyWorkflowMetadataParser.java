@@ -5,17 +5,22 @@
 
 package nl.vumc.biomedbridges.galaxy.metadata.parsers;
 
-import com.google.common.base.Charsets;
-import com.google.common.base.Joiner;
+import com.google.common.base.Function;
 
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import nl.vumc.biomedbridges.core.concurrent.ParallelLists;
 import nl.vumc.biomedbridges.galaxy.metadata.GalaxyWorkflowMetadata;
 import nl.vumc.biomedbridges.galaxy.metadata.GalaxyWorkflowStep;
 
@@ -28,7 +33,7 @@ import org.slf4j.LoggerFactory;
 /**
  * The Galaxy workflow definition parser that reads the metadata from a .ga json file.
  *
- * todo: combine this class with GalaxyWorkflow.parseJson and GalaxyToolMetadataParser.
+ * todo: combine this class with GalaxyToolMetadataParser.
  *
  * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
  * @author <a href="mailto:y.hoogstrate@erasmusmc.nl">Youri Hoogstrate</a>
@@ -40,43 +45,84 @@ public class GalaxyWorkflowMetadataParser {
     private static final Logger logger = LoggerFactory.getLogger(GalaxyWorkflowMetadataParser.class);
 
     /**
-     * Read all workflow definition (.ga) files that are in subdirectories below the workflows directory.
+     * The function that lists the workflow definition (.ga) files in a directory.
+     */
+    private static final Function<File, List<File>> LIST_WORKFLOW_FILES = new Function<File, List<File>>() {
+        @Override
+        public List<File> apply(final File directory) {
+            final File[] workflowFiles = directory.listFiles(new FilenameFilter() {
+                @Override
+                public boolean accept(final File dir, final String name) {
+                    return name.endsWith(".ga");
+                }
+            });
+            return workflowFiles != null ? Arrays.asList(workflowFiles) : Collections.<File>emptyList();
+        }
+    };
+
+    /**
+     * Read all workflow definition (.ga) files that are in subdirectories below the workflows directory. The
+     * subdirectories are scanned and the workflow definitions are parsed in parallel.
      *
      * @param workflowsDirectoryPath the workflows directory.
      * @return the map with workflow names to workflow metadata objects.
      */
     public Map<String, GalaxyWorkflowMetadata> readWorkflowsFromDirectories(final String workflowsDirectoryPath) {
         final Map<String, GalaxyWorkflowMetadata> workflowsMap = new HashMap<>();
-        final File[] subDirectories = new File(workflowsDirectoryPath).listFiles();
-        if (subDirectories != null)
-            for (final File subDirectory : subDirectories) {
-                final File[] workflowFileNames = subDirectory.listFiles(new FilenameFilter() {
-                    @Override
-                    public boolean accept(final File dir, final String name) {
-                        return name.endsWith(".ga");
-                    }
-                });
-                if (workflowFileNames != null)
-                    for (final File workflowFile : workflowFileNames)
-                        readWorkflow(workflowsMap, workflowFile);
+        final Function<File, GalaxyWorkflowMetadata> parseWorkflowFile = new Function<File, GalaxyWorkflowMetadata>() {
+            @Override
+            public GalaxyWorkflowMetadata apply(final File workflowFile) {
+                return parseWorkflowFile(workflowFile);
             }
+        };
+        for (final GalaxyWorkflowMetadata workflowMetadata
+                : ParallelLists.transform(listWorkflowFiles(workflowsDirectoryPath), parseWorkflowFile))
+            addWorkflow(workflowsMap, workflowMetadata);
         return workflowsMap;
     }
 
     /**
-     * Read a workflow definition (.ga) file.
+     * List the workflow definition (.ga) files that are in subdirectories below the workflows directory. The
+     * subdirectories are scanned in parallel.
+     *
+     * @param workflowsDirectoryPath the workflows directory.
+     * @return the workflow definition files.
+     */
+    public List<File> listWorkflowFiles(final String workflowsDirectoryPath) {
+        final List<File> workflowFiles = new ArrayList<>();
+        final File[] subDirectories = new File(workflowsDirectoryPath).listFiles();
+        if (subDirectories != null)
+            for (final List<File> directoryWorkflowFiles : ParallelLists.transform(Arrays.asList(subDirectories),
+                                                                                   LIST_WORKFLOW_FILES))
+                workflowFiles.addAll(directoryWorkflowFiles);
+        return workflowFiles;
+    }
+
+    /**
+     * Parse a workflow definition (.ga) file.
      *
-     * @param workflowsMap the workflows metadata map to which this workflow will be added.
      * @param workflowFile the workflow definition (.ga) file.
+     * @return the workflow metadata object (or null if the file could not be parsed).
      */
-    private void readWorkflow(final Map<String, GalaxyWorkflowMetadata> workflowsMap, final File workflowFile) {
-        final String filePath = workflowFile.getAbsolutePath();
-        final GalaxyWorkflowMetadata workflowMetadata = parseWorkflowDefinition(filePath);
-        workflowsMap.put(workflowMetadata.getName(), workflowMetadata);
-        logger.trace("workflowMetadata: " + workflowMetadata);
-        for (final GalaxyWorkflowStep step : workflowMetadata.getSteps())
-            if (step.getToolId() != null)
-                logger.trace("step[" + step.getId() + "].getToolId(): " + step.getToolId());
+    public GalaxyWorkflowMetadata parseWorkflowFile(final File workflowFile) {
+        return parseWorkflowDefinition(workflowFile.getAbsolutePath());
+    }
+
+    /**
+     * Add a workflow to the workflows metadata map.
+     *
+     * @param workflowsMap     the workflows metadata map to which this workflow will be added.
+     * @param workflowMetadata the workflow metadata (or null if the workflow could not be parsed).
+     */
+    private void addWorkflow(final Map<String, GalaxyWorkflowMetadata> workflowsMap,
+                             final GalaxyWorkflowMetadata workflowMetadata) {
+        if (workflowMetadata != null) {
+            workflowsMap.put(workflowMetadata.getName(), workflowMetadata);
+            logger.trace("workflowMetadata: " + workflowMetadata);
+            for (final GalaxyWorkflowStep step : workflowMetadata.getSteps())
+                if (step.getToolId() != null)
+                    logger.trace("step[" + step.getId() + "].getToolId(): " + step.getToolId());
+        }
     }
 
     /**
@@ -88,16 +134,29 @@ public class GalaxyWorkflowMetadataParser {
     private GalaxyWorkflowMetadata parseWorkflowDefinition(final String filePath) {
         GalaxyWorkflowMetadata result;
         try {
-            final String jsonContent = Joiner.on("\n").join(Files.readAllLines(Paths.get(filePath), Charsets.UTF_8));
-            final JSONObject workflowJson = (JSONObject) new JSONParser().parse(jsonContent);
-            logger.trace("workflowJson: " + workflowJson);
-            logger.trace("");
-            result = new GalaxyWorkflowMetadata(workflowJson);
-            logger.trace("");
+            final String jsonContent = new String(Files.readAllBytes(Paths.get(filePath)), StandardCharsets.UTF_8);
+            result = parseWorkflowJson(jsonContent, new JSONParser());
         } catch (final IOException | ParseException e) {
             result = null;
             e.printStackTrace();
         }
         return result;
     }
+
+    /**
+     * Parse the json content of a workflow definition. The workflow json and the tool states of all steps are parsed
+     * with the same json parser, in a single pass over the steps.
+     *
+     * @param jsonContent the json content of the workflow definition.
+     * @param jsonParser  the json parser to use.
+     * @return the workflow metadata object.
+     * @throws ParseException if the json content cannot be parsed.
+     */
+    public GalaxyWorkflowMetadata parseWorkflowJson(final String jsonContent, final JSONParser jsonParser)
+            throws ParseException {
+        final JSONObject workflowJson = (JSONObject) jsonParser.parse(jsonContent);
+        if (logger.isTraceEnabled())
+            logger.trace("workflowJson: " + workflowJson);
+        return new GalaxyWorkflowMetadata(workflowJson, jsonParser);
+    }
 }
@@ -0,0 +1,491 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.local;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A Galaxy tool command template. Galaxy uses the Cheetah template engine for commands; this class supports the subset
+ * that tool wrappers commonly use:
+ * - variables: $name, ${name}, $name.field and ${name.field} (a backslash escapes a dollar sign);
+ * - #for $item in $repeat ... #end for loops over repeats;
+ * - #if ... #elif ... #else ... #end if blocks with a variable (true if it is set) or a comparison of a variable (or
+ *   str( $variable )) with a quoted string using == or !=;
+ * - ## comments.
+ * The lines of the rendered command are joined with spaces, like Galaxy does.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class CommandTemplate {
+    /**
+     * The pattern of an escaped dollar sign or a variable in a line of text.
+     */
+    private static final Pattern VARIABLE_PATTERN
+            = Pattern.compile("\\\\\\$|\\$(?:\\{([A-Za-z_][\\w.]*)\\}|([A-Za-z_]\\w*(?:\\.[A-Za-z_]\\w*)*))");
+
+    /**
+     * The pattern of a for directive.
+     */
+    private static final Pattern FOR_PATTERN = Pattern.compile("#for\\s+\\$(\\w+)\\s+in\\s+\\$\\{?([\\w.]+)\\}?\\s*:?");
+
+    /**
+     * The pattern of a condition of an if or elif directive.
+     */
+    private static final Pattern CONDITION_PATTERN
+            = Pattern.compile("(?:str\\(\\s*)?\\$\\{?([\\w.]+)\\}?(?:\\s*\\))?\\s*(?:(==|!=)\\s*([\"'])(.*)\\3)?");
+
+    /**
+     * The pattern of the Cheetah directives that are not supported.
+     */
+    private static final Pattern UNSUPPORTED_DIRECTIVE_PATTERN
+            = Pattern.compile("#(set|import|from|silent|def|while|try|include|raw|echo|block)\\b.*");
+
+    /**
+     * The index of the group with the compared string in the condition pattern.
+     */
+    private static final int COMPARED_TEXT_GROUP = 4;
+
+    /**
+     * The prefix of an if directive.
+     */
+    private static final String IF_DIRECTIVE = "#if";
+
+    /**
+     * The prefix of an end directive.
+     */
+    private static final String END_DIRECTIVE = "#end";
+
+    /**
+     * The prefix of an elif directive.
+     */
+    private static final String ELIF_DIRECTIVE = "#elif";
+
+    /**
+     * The prefix of an else directive.
+     */
+    private static final String ELSE_DIRECTIVE = "#else";
+
+    /**
+     * The text of a variable without a value (like Python's None).
+     */
+    private static final String NONE = "None";
+
+    /**
+     * The text of a false value (like Python's False).
+     */
+    private static final String FALSE = "False";
+
+    /**
+     * The key of the value in a map for a parameter with a value and other fields.
+     */
+    private static final String VALUE_KEY = "value";
+
+    /**
+     * The trimmed lines of the template.
+     */
+    private final List<String> lines = new ArrayList<>();
+
+    /**
+     * The parsed template.
+     */
+    private final List<Node> nodes = new ArrayList<>();
+
+    /**
+     * Create and parse a command template.
+     *
+     * @param template the command template.
+     * @throws IllegalArgumentException if the template uses unsupported syntax or has unbalanced directives.
+     */
+    public CommandTemplate(final String template) {
+        for (final String line : template.split("\\r?\\n"))
+            lines.add(line.trim());
+        final int endIndex = parseBlock(0, nodes);
+        if (endIndex < lines.size())
+            throw new IllegalArgumentException("Unexpected directive in command template: " + lines.get(endIndex));
+    }
+
+    /**
+     * Render the command.
+     *
+     * @param context the values of the variables. The value of a variable is a string (or another object that is
+     *                converted to a string), a map for a conditional or section, or a list of maps for a repeat.
+     * @return the rendered command.
+     * @throws IllegalArgumentException if the template uses a variable that is not in the context.
+     */
+    public String render(final Map<String, Object> context) {
+        final StringBuilder command = new StringBuilder();
+        renderNodes(nodes, context, command);
+        return command.toString().trim();
+    }
+
+    /**
+     * Parse lines of the template until the end of the template or a directive that ends the block.
+     *
+     * @param startIndex the index of the first line.
+     * @param blockNodes the list to add the parsed nodes to.
+     * @return the index of the line with the directive that ends the block (or the number of lines).
+     */
+    private int parseBlock(final int startIndex, final List<Node> blockNodes) {
+        int lineIndex = startIndex;
+        while (lineIndex < lines.size() && !endsBlock(lines.get(lineIndex)))
+            lineIndex = parseLine(lineIndex, blockNodes);
+        return lineIndex;
+    }
+
+    /**
+     * Parse a line of the template, which can start a for loop or an if block.
+     *
+     * @param lineIndex  the index of the line.
+     * @param blockNodes the list to add the parsed nodes to.
+     * @return the index of the next line to parse.
+     */
+    private int parseLine(final int lineIndex, final List<Node> blockNodes) {
+        final String line = lines.get(lineIndex);
+        final int nextIndex;
+        if (line.startsWith("#for"))
+            nextIndex = parseFor(lineIndex, blockNodes);
+        else if (line.startsWith(IF_DIRECTIVE))
+            nextIndex = parseIf(lineIndex, blockNodes);
+        else if (UNSUPPORTED_DIRECTIVE_PATTERN.matcher(line).matches())
+            throw new IllegalArgumentException("Unsupported directive in command template: " + line);
+        else {
+            if (!line.isEmpty() && !line.startsWith("##"))
+                blockNodes.add(new TextNode(line));
+            nextIndex = lineIndex + 1;
+        }
+        return nextIndex;
+    }
+
+    /**
+     * Check whether a line has a directive that ends a block.
+     *
+     * @param line the line.
+     * @return whether the line ends a block.
+     */
+    private static boolean endsBlock(final String line) {
+        return line.startsWith(END_DIRECTIVE) || line.startsWith(ELIF_DIRECTIVE) || line.startsWith(ELSE_DIRECTIVE);
+    }
+
+    /**
+     * Parse a for loop.
+     *
+     * @param forIndex   the index of the line with the for directive.
+     * @param blockNodes the list to add the parsed loop to.
+     * @return the index of the line after the loop.
+     */
+    private int parseFor(final int forIndex, final List<Node> blockNodes) {
+        final Matcher forMatcher = FOR_PATTERN.matcher(lines.get(forIndex));
+        if (!forMatcher.matches())
+            throw new IllegalArgumentException("Unsupported for directive in command template: " + lines.get(forIndex));
+        final List<Node> body = new ArrayList<>();
+        final int endIndex = checkEnd(parseBlock(forIndex + 1, body), "#end for");
+        blockNodes.add(new ForNode(forMatcher.group(1), forMatcher.group(2), body));
+        return endIndex + 1;
+    }
+
+    /**
+     * Parse an if block with its elif and else parts.
+     *
+     * @param ifIndex    the index of the line with the if directive.
+     * @param blockNodes the list to add the parsed block to.
+     * @return the index of the line after the block.
+     */
+    private int parseIf(final int ifIndex, final List<Node> blockNodes) {
+        final IfNode ifNode = new IfNode();
+        String directive = lines.get(ifIndex);
+        String condition = directive.substring(IF_DIRECTIVE.length());
+        int lineIndex = ifIndex;
+        while (condition != null) {
+            final List<Node> body = new ArrayList<>();
+            lineIndex = parseBlock(lineIndex + 1, body);
+            ifNode.addBranch(parseCondition(condition), body);
+            directive = lineIndex < lines.size() ? lines.get(lineIndex) : "";
+            condition = directive.startsWith(ELIF_DIRECTIVE) ? directive.substring(ELIF_DIRECTIVE.length()) : null;
+        }
+        if (directive.startsWith(ELSE_DIRECTIVE))
+            lineIndex = parseBlock(lineIndex + 1, ifNode.getElseBody());
+        blockNodes.add(ifNode);
+        return checkEnd(lineIndex, "#end if") + 1;
+    }
+
+    /**
+     * Check that a block is ended by the expected end directive.
+     *
+     * @param endIndex     the index of the line that ended the block.
+     * @param endDirective the expected end directive.
+     * @return the index of the line with the end directive.
+     */
+    private int checkEnd(final int endIndex, final String endDirective) {
+        if (endIndex >= lines.size() || !lines.get(endIndex).startsWith(endDirective))
+            throw new IllegalArgumentException("Missing " + endDirective + " in command template.");
+        return endIndex;
+    }
+
+    /**
+     * Parse the condition of an if or elif directive.
+     *
+     * @param conditionText the condition text (after the directive).
+     * @return the condition.
+     */
+    private static Condition parseCondition(final String conditionText) {
+        String condition = conditionText.trim();
+        if (condition.endsWith(":"))
+            condition = condition.substring(0, condition.length() - 1).trim();
+        final Matcher conditionMatcher = CONDITION_PATTERN.matcher(condition);
+        if (!conditionMatcher.matches())
+            throw new IllegalArgumentException("Unsupported condition in command template: " + condition);
+        return new Condition(conditionMatcher.group(1), conditionMatcher.group(2), conditionMatcher.group(COMPARED_TEXT_GROUP));
+    }
+
+    /**
+     * Render a list of nodes.
+     *
+     * @param nodesToRender the nodes.
+     * @param context       the values of the variables.
+     * @param command       the command to append the rendered text to.
+     */
+    private static void renderNodes(final List<Node> nodesToRender, final Map<String, Object> context,
+                                    final StringBuilder command) {
+        for (final Node node : nodesToRender)
+            node.render(context, command);
+    }
+
+    /**
+     * Get the value of a variable, which can be a field of a conditional or repeat (like seed_source.seed).
+     *
+     * @param context  the values of the variables.
+     * @param variable the variable name without the dollar sign.
+     * @return the value of the variable (or null if a field is not set).
+     */
+    private static Object getValue(final Map<String, Object> context, final String variable) {
+        final String[] names = variable.split("\\.");
+        if (!context.containsKey(names[0]))
+            throw new IllegalArgumentException("Unknown variable in command template: $" + variable);
+        Object value = context.get(names[0]);
+        for (int nameIndex = 1; nameIndex < names.length; nameIndex++)
+            value = value instanceof Map ? ((Map) value).get(names[nameIndex]) : null;
+        return value;
+    }
+
+    /**
+     * Convert the value of a variable to text, like Galaxy does.
+     *
+     * @param value the value.
+     * @return the value as text.
+     */
+    private static String toText(final Object value) {
+        final String text;
+        if (value == null)
+            text = NONE;
+        else if (value instanceof Map && ((Map) value).containsKey(VALUE_KEY))
+            text = toText(((Map) value).get(VALUE_KEY));
+        else if (value instanceof Boolean)
+            text = (Boolean) value ? "True" : FALSE;
+        else
+            text = String.valueOf(value);
+        return text;
+    }
+
+    /**
+     * A part of a parsed template.
+     */
+    private interface Node {
+        /**
+         * Render this node.
+         *
+         * @param context the values of the variables.
+         * @param command the command to append the rendered text to.
+         */
+        void render(final Map<String, Object> context, final StringBuilder command);
+    }
+
+    /**
+     * A line of text with variables.
+     */
+    private static class TextNode implements Node {
+        /**
+         * The line of text.
+         */
+        private final String text;
+
+        /**
+         * Create a text node.
+         *
+         * @param text the line of text.
+         */
+        TextNode(final String text) {
+            this.text = text;
+        }
+
+        @Override
+        public void render(final Map<String, Object> context, final StringBuilder command) {
+            final Matcher variableMatcher = VARIABLE_PATTERN.matcher(text);
+            final StringBuffer line = new StringBuffer();
+            while (variableMatcher.find()) {
+                final String replacement;
+                if (variableMatcher.group().startsWith("\\"))
+                    replacement = "$";
+                else {
+                    final String variable = variableMatcher.group(1) != null
+                                            ? variableMatcher.group(1)
+                                            : variableMatcher.group(2);
+                    replacement = toText(getValue(context, variable));
+                }
+                variableMatcher.appendReplacement(line, Matcher.quoteReplacement(replacement));
+            }
+            variableMatcher.appendTail(line);
+            command.append(line).append(' ');
+        }
+    }
+
+    /**
+     * A for loop over the elements of a repeat.
+     */
+    private static class ForNode implements Node {
+        /**
+         * The name of the loop variable.
+         */
+        private final String loopVariable;
+
+        /**
+         * The name of the repeat variable.
+         */
+        private final String repeatVariable;
+
+        /**
+         * The body of the loop.
+         */
+        private final List<Node> body;
+
+        /**
+         * Create a for loop node.
+         *
+         * @param loopVariable   the name of the loop variable.
+         * @param repeatVariable the name of the repeat variable.
+         * @param body           the body of the loop.
+         */
+        ForNode(final String loopVariable, final String repeatVariable, final List<Node> body) {
+            this.loopVariable = loopVariable;
+            this.repeatVariable = repeatVariable;
+            this.body = body;
+        }
+
+        @Override
+        public void render(final Map<String, Object> context, final StringBuilder command) {
+            final Object repeatValue = getValue(context, repeatVariable);
+            if (repeatValue instanceof List)
+                for (final Object element : (List) repeatValue) {
+                    final Map<String, Object> loopContext = new HashMap<>(context);
+                    loopContext.put(loopVariable, element);
+                    renderNodes(body, loopContext, command);
+                }
+        }
+    }
+
+    /**
+     * An if block with optional elif and else parts.
+     */
+    private static class IfNode implements Node {
+        /**
+         * The conditions of the if and elif parts.
+         */
+        private final List<Condition> conditions = new ArrayList<>();
+
+        /**
+         * The bodies of the if and elif parts.
+         */
+        private final List<List<Node>> bodies = new ArrayList<>();
+
+        /**
+         * The body of the else part (empty if there is no else part).
+         */
+        private final List<Node> elseBody = new ArrayList<>();
+
+        /**
+         * Add an if or elif part.
+         *
+         * @param condition the condition.
+         * @param body      the body.
+         */
+        void addBranch(final Condition condition, final List<Node> body) {
+            conditions.add(condition);
+            bodies.add(body);
+        }
+
+        /**
+         * Get the body of the else part.
+         *
+         * @return the body of the else part.
+         */
+        List<Node> getElseBody() {
+            return elseBody;
+        }
+
+        @Override
+        public void render(final Map<String, Object> context, final StringBuilder command) {
+            for (int branchIndex = 0; branchIndex < conditions.size(); branchIndex++)
+                if (conditions.get(branchIndex).isTrue(context)) {
+                    renderNodes(bodies.get(branchIndex), context, command);
+                    return;
+                }
+            renderNodes(elseBody, context, command);
+        }
+    }
+
+    /**
+     * A condition of an if or elif directive: a variable, optionally compared with a string.
+     */
+    private static class Condition {
+        /**
+         * The variable name without the dollar sign.
+         */
+        private final String variable;
+
+        /**
+         * The comparison operator (== or !=) or null if the variable is checked for being set.
+         */
+        private final String operator;
+
+        /**
+         * The string to compare the variable with (or null if there is no comparison).
+         */
+        private final String comparedText;
+
+        /**
+         * Create a condition.
+         *
+         * @param variable     the variable name without the dollar sign.
+         * @param operator     the comparison operator (== or !=) or null if the variable is checked for being set.
+         * @param comparedText the string to compare the variable with (or null if there is no comparison).
+         */
+        Condition(final String variable, final String operator, final String comparedText) {
+            this.variable = variable;
+            this.operator = operator;
+            this.comparedText = comparedText;
+        }
+
+        /**
+         * Evaluate this condition.
+         *
+         * @param context the values of the variables.
+         * @return whether the condition is true.
+         */
+        boolean isTrue(final Map<String, Object> context) {
+            final String value = toText(getValue(context, variable));
+            final boolean result;
+            if (operator == null)
+                result = !NONE.equals(value) && !value.isEmpty() && !FALSE.equals(value);
+            else
+                result = "==".equals(operator) == value.equals(comparedText);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.local;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import nl.vumc.biomedbridges.galaxy.metadata.GalaxyToolMetadata;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runner that executes the command of a Galaxy tool as a local process. The command template is rendered with the
+ * values of the tool parameters and the paths of the input and output files. If the tool has an interpreter (like
+ * python or perl), the first word of the command is a script in the tool directory; otherwise the command is run by
+ * the shell, so it can use pipes and redirection like in Galaxy.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class LocalToolRunner {
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(LocalToolRunner.class);
+
+    /**
+     * The name of the file in the job directory where the standard output of the tool is written.
+     */
+    private static final String STANDARD_OUTPUT_FILE_NAME = "stdout.txt";
+
+    /**
+     * The name of the file in the job directory where the standard error of the tool is written.
+     */
+    private static final String STANDARD_ERROR_FILE_NAME = "stderr.txt";
+
+    /**
+     * The maximum number of parsed command templates that are cached.
+     */
+    private static final int MAXIMUM_TEMPLATE_COUNT = 1000;
+
+    /**
+     * The parsed command templates, by template text (templates are parsed once and can be shared).
+     */
+    private static final LoadingCache<String, CommandTemplate> TEMPLATES = CacheBuilder.newBuilder()
+            .maximumSize(MAXIMUM_TEMPLATE_COUNT)
+            .build(new CacheLoader<String, CommandTemplate>() {
+                @Override
+                public CommandTemplate load(final String template) {
+                    return new CommandTemplate(template);
+                }
+            });
+
+    /**
+     * The commands that are used for interpreters, by interpreter name (for example python2 for python).
+     */
+    private final Map<String, String> interpreterCommands = new ConcurrentHashMap<>();
+
+    /**
+     * Set the command that is used for an interpreter, for example to run python tools with python2. By default the
+     * interpreter name of the tool definition is used as the command.
+     *
+     * @param interpreter the interpreter name in the tool definitions.
+     * @param command     the command to run the interpreter.
+     */
+    public void setInterpreterCommand(final String interpreter, final String command) {
+        interpreterCommands.put(interpreter, command);
+    }
+
+    /**
+     * Run a tool. The standard output and standard error of the tool are written to files in the job directory.
+     *
+     * @param toolMetadata the tool metadata.
+     * @param context      the values of the variables in the command template.
+     * @param jobDirectory the job directory, which is used as the working directory of the process.
+     * @return whether the tool ran successfully (exit code 0).
+     * @throws IOException          if the process cannot be started.
+     * @throws InterruptedException if the thread is interrupted while waiting for the process.
+     */
+    public boolean runTool(final GalaxyToolMetadata toolMetadata, final Map<String, Object> context,
+                           final File jobDirectory) throws IOException, InterruptedException {
+        return waitForTool(toolMetadata, startTool(toolMetadata, context, jobDirectory, false, false), jobDirectory);
+    }
+
+    /**
+     * Start a tool. The standard error of the tool is written to a file in the job directory; the standard input and
+     * standard output can be kept as pipes for streaming (see StreamingPipeline).
+     *
+     * @param toolMetadata the tool metadata.
+     * @param context      the values of the variables in the command template.
+     * @param jobDirectory the job directory, which is used as the working directory of the process.
+     * @param pipeInput    whether the standard input is a pipe that the caller writes to (otherwise it is closed).
+     * @param pipeOutput   whether the standard output is a pipe that the caller reads from (otherwise it is written
+     *                     to a file in the job directory).
+     * @return the process.
+     * @throws IOException if the process cannot be started.
+     */
+    Process startTool(final GalaxyToolMetadata toolMetadata, final Map<String, Object> context, final File jobDirectory,
+                      final boolean pipeInput, final boolean pipeOutput) throws IOException {
+        final List<String> commandLine = createCommandLine(toolMetadata, context);
+        logger.debug("Running tool {} in {}: {}", toolMetadata.getId(), jobDirectory, commandLine);
+        final ProcessBuilder processBuilder = new ProcessBuilder(commandLine)
+                .directory(jobDirectory)
+                .redirectError(new File(jobDirectory, STANDARD_ERROR_FILE_NAME));
+        if (!pipeOutput)
+            processBuilder.redirectOutput(new File(jobDirectory, STANDARD_OUTPUT_FILE_NAME));
+        final Process process = processBuilder.start();
+        if (!pipeInput)
+            process.getOutputStream().close();
+        return process;
+    }
+
+    /**
+     * Wait for a tool process to finish and log the standard error if it failed.
+     *
+     * @param toolMetadata the tool metadata.
+     * @param process      the tool process.
+     * @param jobDirectory the job directory.
+     * @return whether the tool ran successfully (exit code 0).
+     * @throws IOException          if the standard error file cannot be read.
+     * @throws InterruptedException if the thread is interrupted while waiting for the process.
+     */
+    boolean waitForTool(final GalaxyToolMetadata toolMetadata, final Process process, final File jobDirectory)
+            throws IOException, InterruptedException {
+        final int exitCode = process.waitFor();
+        if (exitCode != 0)
+            logger.error("Tool {} failed with exit code {}: {}", toolMetadata.getId(), exitCode,
+                         Joiner.on(' ').join(Files.readLines(new File(jobDirectory, STANDARD_ERROR_FILE_NAME),
+                                                             Charsets.UTF_8)));
+        return exitCode == 0;
+    }
+
+    /**
+     * Create the command line of a tool. The values in the context are inserted in the command as they are, so the
+     * values of tool parameters should be sanitized first (see ParameterSanitizer).
+     *
+     * @param toolMetadata the tool metadata.
+     * @param context      the values of the variables in the command template.
+     * @return the command line.
+     */
+    List<String> createCommandLine(final GalaxyToolMetadata toolMetadata, final Map<String, Object> context) {
+        final String command = TEMPLATES.getUnchecked(toolMetadata.getCommand()).render(context);
+        final List<String> commandLine = new ArrayList<>();
+        final String interpreter = toolMetadata.getCommandInterpreter();
+        if (interpreter != null && !interpreter.isEmpty()) {
+            final List<String> arguments = splitArguments(command);
+            final String interpreterCommand = interpreterCommands.get(interpreter);
+            commandLine.add(interpreterCommand != null ? interpreterCommand : interpreter);
+            if (!arguments.isEmpty())
+                commandLine.add(new File(toolMetadata.getToolDirectory(), arguments.get(0)).getAbsolutePath());
+            commandLine.addAll(arguments.subList(Math.min(1, arguments.size()), arguments.size()));
+        } else
+            commandLine.addAll(Arrays.asList("sh", "-c", command));
+        return commandLine;
+    }
+
+    /**
+     * Split a command into arguments, at white space that is not inside single or double quotes. The quotes are
+     * removed.
+     *
+     * @param command the command.
+     * @return the arguments.
+     */
+    static List<String> splitArguments(final String command) {
+        final List<String> arguments = new ArrayList<>();
+        final StringBuilder argument = new StringBuilder();
+        boolean inArgument = false;
+        char quote = 0;
+        for (final char character : command.toCharArray()) {
+            if (quote != 0)
+                quote = appendQuoted(argument, character, quote);
+            else if (character == '"' || character == '\'') {
+                quote = character;
+                inArgument = true;
+            } else if (Character.isWhitespace(character))
+                inArgument = addArgument(arguments, argument, inArgument);
+            else {
+                argument.append(character);
+                inArgument = true;
+            }
+        }
+        addArgument(arguments, argument, inArgument);
+        return arguments;
+    }
+
+    /**
+     * Append a character inside quotes to an argument, unless it is the closing quote.
+     *
+     * @param argument  the argument.
+     * @param character the character.
+     * @param quote     the opening quote.
+     * @return the opening quote or 0 if the character is the closing quote.
+     */
+    private static char appendQuoted(final StringBuilder argument, final char character, final char quote) {
+        if (character == quote)
+            return 0;
+        argument.append(character);
+        return quote;
+    }
+
+    /**
+     * Add an argument to the list of arguments (if an argument was started) and clear the argument.
+     *
+     * @param arguments  the list of arguments.
+     * @param argument   the argument.
+     * @param inArgument whether an argument was started.
+     * @return false (no argument is started after this one).
+     */
+    private static boolean addArgument(final List<String> arguments, final StringBuilder argument,
+                                       final boolean inArgument) {
+        if (inArgument)
+            arguments.add(argument.toString());
+        argument.setLength(0);
+        return false;
+    }
+}
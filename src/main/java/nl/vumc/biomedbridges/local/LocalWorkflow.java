@@ -0,0 +1,66 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.local;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import nl.vumc.biomedbridges.core.BaseWorkflow;
+import nl.vumc.biomedbridges.core.Workflow;
+
+/**
+ * A Galaxy workflow that is run by the local workflow engine.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class LocalWorkflow extends BaseWorkflow implements Workflow {
+    /**
+     * The local workflow engine that runs this workflow.
+     */
+    private final LocalWorkflowEngine workflowEngine;
+
+    /**
+     * The timings of the steps of the last run.
+     */
+    private volatile List<StepTiming> stepTimings = new ArrayList<>();
+
+    /**
+     * Create a local workflow.
+     *
+     * @param name           the workflow name.
+     * @param workflowEngine the local workflow engine that runs this workflow.
+     */
+    protected LocalWorkflow(final String name, final LocalWorkflowEngine workflowEngine) {
+        super(name);
+        this.workflowEngine = workflowEngine;
+    }
+
+    @Override
+    public boolean run() throws IOException, InterruptedException {
+        // Store the result so it can be retrieved later as well.
+        result = workflowEngine.runWorkflow(this);
+        return result;
+    }
+
+    /**
+     * Get the timings of the steps of the last run.
+     *
+     * @return the step timings, in the order in which the steps were started.
+     */
+    public List<StepTiming> getStepTimings() {
+        return stepTimings;
+    }
+
+    /**
+     * Set the timings of the steps of the last run.
+     *
+     * @param stepTimings the step timings.
+     */
+    protected void setStepTimings(final List<StepTiming> stepTimings) {
+        this.stepTimings = stepTimings;
+    }
+}
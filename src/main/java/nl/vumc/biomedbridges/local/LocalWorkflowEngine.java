@@ -0,0 +1,148 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.local;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import nl.vumc.biomedbridges.core.Workflow;
+import nl.vumc.biomedbridges.core.WorkflowEngine;
+import nl.vumc.biomedbridges.core.concurrent.SharedExecutors;
+import nl.vumc.biomedbridges.galaxy.metadata.GalaxyWorkflowEngineMetadata;
+import nl.vumc.biomedbridges.galaxy.metadata.GalaxyWorkflowMetadata;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Workflow engine that runs Galaxy workflows locally. The workflow definitions and tool definitions are taken from the
+ * Galaxy configuration data directory (see GalaxyWorkflowEngineMetadata) and the tool commands are executed as local
+ * processes, so small workflows can run without a Galaxy server. Asynchronous runs use the shared executor for
+ * blocking tasks, which limits the number of workflows that run at the same time.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class LocalWorkflowEngine implements WorkflowEngine {
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(LocalWorkflowEngine.class);
+
+    /**
+     * The workflow and tool metadata.
+     */
+    private final GalaxyWorkflowEngineMetadata metadata;
+
+    /**
+     * The tool runner.
+     */
+    private final LocalToolRunner toolRunner = new LocalToolRunner();
+
+    /**
+     * The ids of the tools that can stream their input and output.
+     */
+    private volatile Set<String> streamingToolIds = new HashSet<>();
+
+    /**
+     * The maximum number of bytes that are kept in memory between two streaming tools (or null for the default).
+     */
+    private Integer streamingMemoryLimit;
+
+    /**
+     * Create a local workflow engine for the default Galaxy configuration data directory.
+     */
+    public LocalWorkflowEngine() {
+        this(new GalaxyWorkflowEngineMetadata());
+    }
+
+    /**
+     * Create a local workflow engine.
+     *
+     * @param metadata the workflow and tool metadata.
+     */
+    public LocalWorkflowEngine(final GalaxyWorkflowEngineMetadata metadata) {
+        this.metadata = metadata;
+    }
+
+    /**
+     * Set the command that is used for an interpreter, for example to run python tools with python2.
+     *
+     * @param interpreter the interpreter name in the tool definitions.
+     * @param command     the command to run the interpreter.
+     */
+    public void setInterpreterCommand(final String interpreter, final String command) {
+        toolRunner.setInterpreterCommand(interpreter, command);
+    }
+
+    /**
+     * Set the ids of the tools that read their input once from start to end and write their output from start to end.
+     * Chains of these tools are run at the same time with their data streamed from tool to tool instead of being
+     * written to intermediate files (see LocalWorkflowRun.setStreamingToolIds).
+     *
+     * @param toolIds the ids of the tools that can stream their input and output.
+     */
+    public void setStreamingToolIds(final Collection<String> toolIds) {
+        streamingToolIds = new HashSet<>(toolIds);
+    }
+
+    /**
+     * Set the maximum number of bytes that are kept in memory between two streaming tools; more data is spilled to
+     * disk.
+     *
+     * @param streamingMemoryLimit the maximum number of bytes in memory per stream.
+     */
+    public void setStreamingMemoryLimit(final int streamingMemoryLimit) {
+        this.streamingMemoryLimit = streamingMemoryLimit;
+    }
+
+    @Override
+    public Workflow getWorkflow(final String workflowName) {
+        return new LocalWorkflow(workflowName, this);
+    }
+
+    @Override
+    public boolean runWorkflow(final Workflow workflow) throws InterruptedException, IOException {
+        final GalaxyWorkflowMetadata workflowMetadata = metadata.getWorkflow(workflow.getName());
+        if (workflowMetadata == null) {
+            logger.error("Workflow {} was not found in the workflow definitions.", workflow.getName());
+            return false;
+        }
+        logger.info("Running workflow {} locally...", workflow.getName());
+        final LocalWorkflowRun workflowRun = new LocalWorkflowRun(workflow, workflowMetadata, toolRunner);
+        workflowRun.setStreamingToolIds(streamingToolIds);
+        if (streamingMemoryLimit != null)
+            workflowRun.setStreamingMemoryLimit(streamingMemoryLimit);
+        final boolean result = workflowRun.run();
+        logger.info("Workflow {} finished {}.", workflow.getName(), result ? "successfully" : "with errors");
+        logger.debug("Step timings: {}", workflowRun.getStepTimings());
+        if (workflow instanceof LocalWorkflow)
+            ((LocalWorkflow) workflow).setStepTimings(workflowRun.getStepTimings());
+        return result;
+    }
+
+    @Override
+    public ListenableFuture<Workflow> runWorkflowAsync(final Workflow workflow) {
+        return SharedExecutors.getBlockingExecutor().submit(new Callable<Workflow>() {
+            @Override
+            public Workflow call() throws IOException, InterruptedException {
+                workflow.setResult(runWorkflow(workflow));
+                return workflow;
+            }
+        });
+    }
+
+    /**
+     * Close the workflow engine. Local workflows run on this machine and hold nothing on a server to release.
+     */
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,608 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import nl.vumc.biomedbridges.core.Workflow;
+import nl.vumc.biomedbridges.core.concurrent.SharedExecutors;
+import nl.vumc.biomedbridges.galaxy.metadata.GalaxyStepInputConnection;
+import nl.vumc.biomedbridges.galaxy.metadata.GalaxyStepOutput;
+import nl.vumc.biomedbridges.galaxy.metadata.GalaxyToolMetadata;
+import nl.vumc.biomedbridges.galaxy.metadata.GalaxyWorkflowMetadata;
+import nl.vumc.biomedbridges.galaxy.metadata.GalaxyWorkflowStep;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The state of one run of a workflow by the local workflow engine. The steps are executed by a StepScheduler, so
+ * independent steps run in parallel: input steps take their file from the workflow inputs and tool steps run their
+ * tool in a job directory of their own. Like in Galaxy, the datasets are numbered (in the order of the steps, before
+ * the steps are executed) and the outputs are named after the tool and the numbers of the input datasets (for
+ * example "Select random lines on data 2").
+ * <p>
+ * In streaming mode, chains of tools that read their input once from start to end (see setStreamingToolIds) run at
+ * the same time as a StreamingPipeline: the intermediate outputs are streamed from tool to tool instead of being
+ * written to files, so they are not added to the workflow outputs.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class LocalWorkflowRun {
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(LocalWorkflowRun.class);
+
+    /**
+     * The step type of input steps.
+     */
+    private static final String DATA_INPUT_STEP_TYPE = "data_input";
+
+    /**
+     * The name of the output of input steps.
+     */
+    private static final String INPUT_STEP_OUTPUT_NAME = "output";
+
+    /**
+     * The prefix of a dataset number in an output name.
+     */
+    private static final String DATA_PREFIX = "data ";
+
+    /**
+     * The extension of the dataset files in the job directories.
+     */
+    private static final String DATASET_FILE_EXTENSION = ".dat";
+
+    /**
+     * The default maximum number of bytes that are kept in memory between two streaming tools.
+     */
+    private static final int DEFAULT_STREAMING_MEMORY_LIMIT = 16 * 1024 * 1024;
+
+    /**
+     * The pattern of a repeat element in an input connection name (like queries_0 in queries_0|input2).
+     */
+    private static final Pattern REPEAT_ELEMENT_PATTERN = Pattern.compile("(.+)_(\\d+)");
+
+    /**
+     * The workflow that is run.
+     */
+    private final Workflow workflow;
+
+    /**
+     * The workflow metadata with the steps.
+     */
+    private final GalaxyWorkflowMetadata workflowMetadata;
+
+    /**
+     * The tool runner.
+     */
+    private final LocalToolRunner toolRunner;
+
+    /**
+     * The executor that runs the steps.
+     */
+    private final Executor executor;
+
+    /**
+     * The output files of the steps, by step id and output name (the outputs of a step are added at once).
+     */
+    private final Map<Long, Map<String, File>> stepOutputs = new ConcurrentHashMap<>();
+
+    /**
+     * The dataset numbers (like the history item ids in Galaxy) by step id and output name.
+     */
+    private final Map<Long, Map<String, Integer>> datasetNumbers = new HashMap<>();
+
+    /**
+     * The ids of the steps that read the streamed output of a step, by step id.
+     */
+    private final Map<Long, Long> streamConsumers = new HashMap<>();
+
+    /**
+     * The results of the steps that were executed as part of a streaming pipeline, by step id.
+     */
+    private final Map<Long, Boolean> pipelineResults = new ConcurrentHashMap<>();
+
+    /**
+     * The ids of the tools that can stream their input and output.
+     */
+    private Set<String> streamingToolIds = new HashSet<>();
+
+    /**
+     * The maximum number of bytes that are kept in memory between two streaming tools.
+     */
+    private int streamingMemoryLimit = DEFAULT_STREAMING_MEMORY_LIMIT;
+
+    /**
+     * The step graph (or null if the run has not started).
+     */
+    private StepGraph stepGraph;
+
+    /**
+     * The timings of the executed steps.
+     */
+    private List<StepTiming> stepTimings = new ArrayList<>();
+
+    /**
+     * The directory with the job directories of the steps (or null if the run has not started).
+     */
+    private File runDirectory;
+
+    /**
+     * Create the state of a run of a workflow.
+     *
+     * @param workflow         the workflow that is run.
+     * @param workflowMetadata the workflow metadata with the steps.
+     * @param toolRunner       the tool runner.
+     */
+    public LocalWorkflowRun(final Workflow workflow, final GalaxyWorkflowMetadata workflowMetadata,
+                            final LocalToolRunner toolRunner) {
+        this(workflow, workflowMetadata, toolRunner, SharedExecutors.getStepPool());
+    }
+
+    /**
+     * Create the state of a run of a workflow.
+     *
+     * @param workflow         the workflow that is run.
+     * @param workflowMetadata the workflow metadata with the steps.
+     * @param toolRunner       the tool runner.
+     * @param executor         the executor that runs the steps.
+     */
+    public LocalWorkflowRun(final Workflow workflow, final GalaxyWorkflowMetadata workflowMetadata,
+                            final LocalToolRunner toolRunner, final Executor executor) {
+        this.workflow = workflow;
+        this.workflowMetadata = workflowMetadata;
+        this.toolRunner = toolRunner;
+        this.executor = executor;
+    }
+
+    /**
+     * Run the workflow: execute all steps and add the outputs of the tool steps to the workflow.
+     *
+     * @return whether all steps were executed successfully.
+     * @throws IOException          if a job directory cannot be created or a tool cannot be started.
+     * @throws InterruptedException if the thread is interrupted while waiting for a tool.
+     */
+    public boolean run() throws IOException, InterruptedException {
+        stepGraph = new StepGraph(workflowMetadata);
+        numberDatasets(stepGraph);
+        findStreams();
+        runDirectory = Files.createTempDirectory("workflow-runner-local-").toFile();
+        final StepScheduler scheduler = new StepScheduler(stepGraph, new StepScheduler.StepTask() {
+            @Override
+            public boolean executeStep(final GalaxyWorkflowStep step) throws IOException, InterruptedException {
+                return executeWorkflowStep(step);
+            }
+        }, executor);
+        final boolean result = scheduler.run();
+        stepTimings = scheduler.getStepTimings();
+        return result;
+    }
+
+    /**
+     * Set the ids of the tools that read their input once from start to end and write their output from start to end,
+     * so they can be streamed (the tools get /dev/stdin and /dev/stdout as file paths). A tool step is streamed to
+     * the next tool step if both tools can stream, the first step has one output that is only used by the next step
+     * and the next step has only this input. By default no tools are streamed.
+     *
+     * @param streamingToolIds the ids of the tools that can stream their input and output.
+     */
+    public void setStreamingToolIds(final Collection<String> streamingToolIds) {
+        this.streamingToolIds = new HashSet<>(streamingToolIds);
+    }
+
+    /**
+     * Set the maximum number of bytes that are kept in memory between two streaming tools; more data is spilled to
+     * disk until the next tool has read it.
+     *
+     * @param streamingMemoryLimit the maximum number of bytes in memory per stream.
+     */
+    public void setStreamingMemoryLimit(final int streamingMemoryLimit) {
+        this.streamingMemoryLimit = streamingMemoryLimit;
+    }
+
+    /**
+     * Get the timings of the executed steps.
+     *
+     * @return the step timings, in the order in which the steps were started.
+     */
+    public List<StepTiming> getStepTimings() {
+        return stepTimings;
+    }
+
+    /**
+     * Get the directory with the job directories of the steps.
+     *
+     * @return the run directory (or null if the run has not started).
+     */
+    public File getRunDirectory() {
+        return runDirectory;
+    }
+
+    /**
+     * Add the input file of an input step.
+     *
+     * @param step the input step.
+     * @return whether the input file was found.
+     */
+    private boolean addInputStep(final GalaxyWorkflowStep step) {
+        final String inputName = !step.getInputs().isEmpty() ? step.getInputs().get(0).getName() : step.getName();
+        final Object input = workflow.getInput(inputName);
+        if (input instanceof File) {
+            stepOutputs.put(step.getId(), Collections.singletonMap(INPUT_STEP_OUTPUT_NAME, (File) input));
+            return true;
+        } else {
+            logger.error("Input {} of workflow {} is not a file: {}.", inputName, workflow.getName(), input);
+            return false;
+        }
+    }
+
+    /**
+     * Execute a step: add an input, run a tool or a streaming pipeline, or return the result of a step that was
+     * already executed as part of a streaming pipeline.
+     *
+     * @param step the step.
+     * @return whether the step was executed successfully.
+     * @throws IOException          if a job directory cannot be created or a tool cannot be started.
+     * @throws InterruptedException if the thread is interrupted while waiting for a tool.
+     */
+    private boolean executeWorkflowStep(final GalaxyWorkflowStep step) throws IOException, InterruptedException {
+        final boolean result;
+        if (DATA_INPUT_STEP_TYPE.equals(step.getType()))
+            result = addInputStep(step);
+        else if (pipelineResults.containsKey(step.getId()))
+            result = pipelineResults.get(step.getId());
+        else if (streamConsumers.containsKey(step.getId()))
+            result = runPipeline(step);
+        else
+            result = runToolStep(step);
+        return result;
+    }
+
+    /**
+     * Run the tool of a tool step and add its outputs to the workflow.
+     *
+     * @param step the tool step.
+     * @return whether the tool ran successfully.
+     * @throws IOException          if the job directory cannot be created or the tool cannot be started.
+     * @throws InterruptedException if the thread is interrupted while waiting for the tool.
+     */
+    private boolean runToolStep(final GalaxyWorkflowStep step) throws IOException, InterruptedException {
+        final Map<String, File> outputFiles = prepareToolStep(step);
+        if (outputFiles == null)
+            return false;
+        final boolean result = toolRunner.runTool(step.getToolMetadata(), createContext(step, outputFiles),
+                                                  getJobDirectory(step));
+        if (result)
+            addToolOutputs(step, outputFiles);
+        return result;
+    }
+
+    /**
+     * Run a chain of streamed tool steps as a streaming pipeline and add the outputs of the last step to the workflow.
+     * The results of the other steps are stored, so they are available when the scheduler executes these steps.
+     *
+     * @param firstStep the first step of the chain.
+     * @return whether the tool of the first step ran successfully.
+     * @throws IOException          if a job directory cannot be created or a tool cannot be started.
+     * @throws InterruptedException if the thread is interrupted while waiting for the tools.
+     */
+    private boolean runPipeline(final GalaxyWorkflowStep firstStep) throws IOException, InterruptedException {
+        final StreamingPipeline pipeline = new StreamingPipeline(toolRunner, streamingMemoryLimit,
+                                                                 SharedExecutors.getPumpExecutor());
+        final List<GalaxyWorkflowStep> steps = new ArrayList<>();
+        final List<Map<String, File>> stepOutputFiles = new ArrayList<>();
+        GalaxyWorkflowStep step = firstStep;
+        while (step != null) {
+            final Map<String, File> outputFiles = prepareToolStep(step);
+            if (outputFiles == null)
+                return false;
+            steps.add(step);
+            stepOutputFiles.add(outputFiles);
+            pipeline.addTool(step.getToolMetadata(), createContext(step, outputFiles), getJobDirectory(step));
+            final Long consumerId = streamConsumers.get(step.getId());
+            // The next step reads the streamed output from its standard input.
+            if (consumerId != null)
+                stepOutputs.put(step.getId(), Collections.singletonMap(step.getOutputs().get(0).getName(),
+                                                                       StreamingPipeline.STANDARD_INPUT));
+            step = consumerId != null ? stepGraph.getStep(consumerId) : null;
+        }
+        final List<Boolean> results = pipeline.run();
+        for (int stepIndex = 0; stepIndex < steps.size(); stepIndex++) {
+            pipelineResults.put(steps.get(stepIndex).getId(), results.get(stepIndex));
+            if (results.get(stepIndex))
+                addToolOutputs(steps.get(stepIndex), stepOutputFiles.get(stepIndex));
+        }
+        return results.get(0);
+    }
+
+    /**
+     * Prepare a tool step: check that the tool is available, create the job directory and determine the output files.
+     *
+     * @param step the tool step.
+     * @return the output files by output name (or null if the tool is not available).
+     * @throws IOException if the job directory cannot be created.
+     */
+    private Map<String, File> prepareToolStep(final GalaxyWorkflowStep step) throws IOException {
+        final GalaxyToolMetadata toolMetadata = step.getToolMetadata();
+        if (toolMetadata == null || toolMetadata.getCommand() == null) {
+            logger.error("Tool {} of step {} is not available locally.", step.getToolId(), step.getId());
+            return null;
+        }
+        final File jobDirectory = getJobDirectory(step);
+        Files.createDirectories(jobDirectory.toPath());
+        final boolean streamed = streamConsumers.containsKey(step.getId());
+        final Map<String, File> outputFiles = new HashMap<>();
+        for (final GalaxyStepOutput output : step.getOutputs())
+            outputFiles.put(output.getName(), streamed
+                                              ? StreamingPipeline.STANDARD_OUTPUT
+                                              : new File(jobDirectory, output.getName() + DATASET_FILE_EXTENSION));
+        return outputFiles;
+    }
+
+    /**
+     * Get the job directory of a tool step.
+     *
+     * @param step the tool step.
+     * @return the job directory.
+     */
+    private File getJobDirectory(final GalaxyWorkflowStep step) {
+        return new File(runDirectory, "step" + step.getId());
+    }
+
+    /**
+     * Create the values of the variables in the command template of a tool step: the tool state from the workflow
+     * definition, the parameters that were set for this step, and the paths of the input and output files. The values
+     * of the tool state and the parameters are sanitized, since the command may be run by the shell. Like in Galaxy,
+     * the input files are staged in the job directory as dataset_N.dat, so the paths in the command do not contain the
+     * (unsanitized) names of the workflow input files.
+     *
+     * @param step        the tool step.
+     * @param outputFiles the output files by output name.
+     * @return the values of the variables.
+     * @throws IOException if an input file cannot be staged in the job directory.
+     */
+    private Map<String, Object> createContext(final GalaxyWorkflowStep step, final Map<String, File> outputFiles)
+            throws IOException {
+        final Map<String, Object> context = new HashMap<>();
+        for (final Map.Entry<String, Object> stateEntry : step.getToolState().entrySet())
+            if (!stateEntry.getKey().startsWith("__"))
+                context.put(stateEntry.getKey(), ParameterSanitizer.sanitize(copyStateValue(stateEntry.getValue())));
+        final Map<String, Object> stepParameters = workflow.getParameters().get((int) (step.getId() + 1));
+        if (stepParameters != null)
+            for (final Map.Entry<String, Object> parameterEntry : stepParameters.entrySet())
+                context.put(parameterEntry.getKey(), ParameterSanitizer.sanitize(parameterEntry.getValue()));
+        int datasetIndex = 0;
+        for (final Map.Entry<String, GalaxyStepInputConnection> connection : step.getInputConnections().entrySet()) {
+            datasetIndex++;
+            final File inputFile = stageInputFile(getInputFile(connection.getValue()), getJobDirectory(step),
+                                                  datasetIndex);
+            putValue(context, connection.getKey().split("\\|"), 0, inputFile.getAbsolutePath());
+        }
+        for (final Map.Entry<String, File> outputEntry : outputFiles.entrySet())
+            context.put(outputEntry.getKey(), outputEntry.getValue().getAbsolutePath());
+        return context;
+    }
+
+    /**
+     * Stage an input file in the job directory as dataset_N.dat: a symbolic link to the input file is created, or a
+     * copy if the file system does not support symbolic links. A streamed input is read from the standard input and is
+     * not staged.
+     *
+     * @param inputFile    the input file.
+     * @param jobDirectory the job directory.
+     * @param datasetIndex the number of the input dataset in this step (starting at one).
+     * @return the staged input file.
+     * @throws IOException if the input file cannot be linked or copied.
+     */
+    private static File stageInputFile(final File inputFile, final File jobDirectory, final int datasetIndex)
+            throws IOException {
+        if (StreamingPipeline.STANDARD_INPUT.equals(inputFile))
+            return inputFile;
+        final File stagedFile = new File(jobDirectory, "dataset_" + datasetIndex + DATASET_FILE_EXTENSION);
+        Files.deleteIfExists(stagedFile.toPath());
+        try {
+            Files.createSymbolicLink(stagedFile.toPath(), inputFile.getAbsoluteFile().toPath());
+        } catch (final UnsupportedOperationException | IOException e) {
+            logger.trace("Linking input file {} failed; copying it instead.", inputFile, e);
+            Files.copy(inputFile.toPath(), stagedFile.toPath());
+        }
+        return stagedFile;
+    }
+
+    /**
+     * Copy a value of the tool state, so it can be changed without changing the workflow metadata. Repeats are stored
+     * as json text in the tool state; they are filled from the input connections instead.
+     *
+     * @param stateValue the value of the tool state.
+     * @return the copied value.
+     */
+    private static Object copyStateValue(final Object stateValue) {
+        final Object value;
+        if (stateValue instanceof Map)
+            value = new HashMap<>((Map<?, ?>) stateValue);
+        else if (stateValue instanceof String && ((String) stateValue).startsWith("["))
+            value = new ArrayList<>();
+        else
+            value = stateValue;
+        return value;
+    }
+
+    /**
+     * Put a value in the context, using a Galaxy input name that may refer to a repeat element or a conditional (like
+     * queries_0|input2 or seed_source|seed).
+     *
+     * @param container the map to put the value in.
+     * @param names     the parts of the input name.
+     * @param nameIndex the index of the current part.
+     * @param value     the value.
+     */
+    @SuppressWarnings("unchecked")
+    private static void putValue(final Map<String, Object> container, final String[] names, final int nameIndex,
+                                 final Object value) {
+        if (nameIndex == names.length - 1)
+            container.put(names[nameIndex], value);
+        else {
+            final Matcher repeatMatcher = REPEAT_ELEMENT_PATTERN.matcher(names[nameIndex]);
+            final Map<String, Object> child;
+            if (repeatMatcher.matches())
+                child = getRepeatElement(container, repeatMatcher.group(1), Integer.parseInt(repeatMatcher.group(2)));
+            else {
+                final Object existing = container.get(names[nameIndex]);
+                child = existing instanceof Map ? (Map<String, Object>) existing : new HashMap<String, Object>();
+                container.put(names[nameIndex], child);
+            }
+            putValue(child, names, nameIndex + 1, value);
+        }
+    }
+
+    /**
+     * Get an element of a repeat, adding the repeat and elements as needed.
+     *
+     * @param container    the map with the repeat.
+     * @param repeatName   the name of the repeat.
+     * @param elementIndex the index of the element.
+     * @return the element.
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> getRepeatElement(final Map<String, Object> container, final String repeatName,
+                                                        final int elementIndex) {
+        final Object existing = container.get(repeatName);
+        final List<Object> repeat = existing instanceof List ? (List<Object>) existing : new ArrayList<>();
+        container.put(repeatName, repeat);
+        while (repeat.size() <= elementIndex)
+            repeat.add(new HashMap<String, Object>());
+        return (Map<String, Object>) repeat.get(elementIndex);
+    }
+
+    /**
+     * Get the file that is connected to an input of a step.
+     *
+     * @param connection the input connection.
+     * @return the output file of an earlier step.
+     */
+    private File getInputFile(final GalaxyStepInputConnection connection) {
+        final Map<String, File> outputs = stepOutputs.get(connection.getId());
+        final File inputFile = outputs != null ? outputs.get(connection.getOutputName()) : null;
+        if (inputFile == null)
+            throw new IllegalStateException("Output " + connection.getOutputName() + " of step " + connection.getId()
+                                            + " is not available.");
+        return inputFile;
+    }
+
+    /**
+     * Add the outputs of a tool step to the workflow, named after the tool and the numbers of the input datasets.
+     * Streamed outputs are not stored, so they are not added.
+     *
+     * @param step        the tool step.
+     * @param outputFiles the output files by output name.
+     */
+    private void addToolOutputs(final GalaxyWorkflowStep step, final Map<String, File> outputFiles) {
+        final List<Integer> inputNumbers = new ArrayList<>();
+        for (final GalaxyStepInputConnection connection : step.getInputConnections().values())
+            inputNumbers.add(datasetNumbers.get(connection.getId()).get(connection.getOutputName()));
+        Collections.sort(inputNumbers);
+        final String label = step.getToolMetadata().getName() + " on " + getInputsText(inputNumbers);
+        stepOutputs.put(step.getId(), outputFiles);
+        for (final GalaxyStepOutput output : step.getOutputs()) {
+            final File outputFile = outputFiles.get(output.getName());
+            if (!StreamingPipeline.STANDARD_OUTPUT.equals(outputFile))
+                workflow.addOutput(step.getOutputs().size() == 1 ? label : label + " (" + output.getName() + ")",
+                                   outputFile);
+        }
+    }
+
+    /**
+     * Describe the input datasets of a step like Galaxy does: "data 1", "data 1 and data 2" or "data 1, data 2, and
+     * others".
+     *
+     * @param inputNumbers the (sorted) numbers of the input datasets.
+     * @return the description of the input datasets.
+     */
+    private static String getInputsText(final List<Integer> inputNumbers) {
+        final String inputsText;
+        if (inputNumbers.size() == 1)
+            inputsText = DATA_PREFIX + inputNumbers.get(0);
+        else if (inputNumbers.size() == 2)
+            inputsText = DATA_PREFIX + inputNumbers.get(0) + " and " + DATA_PREFIX + inputNumbers.get(1);
+        else if (inputNumbers.size() > 2)
+            inputsText = DATA_PREFIX + inputNumbers.get(0) + ", " + DATA_PREFIX + inputNumbers.get(1) + ", and others";
+        else
+            inputsText = "no data";
+        return inputsText;
+    }
+
+    /**
+     * Number the outputs of the steps in topological order (which is the order of the workflow definition for the
+     * usual workflows), so the numbers do not depend on the order in which parallel steps finish.
+     *
+     * @param stepGraph the step graph.
+     */
+    private void numberDatasets(final StepGraph stepGraph) {
+        int datasetNumber = 1;
+        for (final GalaxyWorkflowStep step : stepGraph.getTopologicalOrder()) {
+            final Map<String, Integer> stepNumbers = new HashMap<>();
+            if (DATA_INPUT_STEP_TYPE.equals(step.getType()))
+                stepNumbers.put(INPUT_STEP_OUTPUT_NAME, datasetNumber++);
+            else
+                for (final GalaxyStepOutput output : step.getOutputs())
+                    stepNumbers.put(output.getName(), datasetNumber++);
+            datasetNumbers.put(step.getId(), stepNumbers);
+        }
+    }
+
+    /**
+     * Find the tool steps whose output is streamed to the next step.
+     */
+    private void findStreams() {
+        for (final GalaxyWorkflowStep step : stepGraph.getTopologicalOrder()) {
+            final GalaxyWorkflowStep producer = getStreamingProducer(step);
+            if (producer != null)
+                streamConsumers.put(producer.getId(), step.getId());
+        }
+    }
+
+    /**
+     * Get the step whose output can be streamed to a step.
+     *
+     * @param consumer the step that would read the streamed output.
+     * @return the step that would write the streamed output (or null if the input of the step cannot be streamed).
+     */
+    private GalaxyWorkflowStep getStreamingProducer(final GalaxyWorkflowStep consumer) {
+        final Set<Long> dependencies = stepGraph.getDependencies(consumer.getId());
+        if (!isStreamingTool(consumer) || consumer.getInputConnections().size() != 1 || dependencies.size() != 1)
+            return null;
+        final GalaxyWorkflowStep producer = stepGraph.getStep(dependencies.iterator().next());
+        final boolean streaming = isStreamingTool(producer) && producer.getOutputs().size() == 1
+                                  && stepGraph.getDependents(producer.getId()).size() == 1;
+        return streaming ? producer : null;
+    }
+
+    /**
+     * Check whether a step runs a tool that can stream its input and output.
+     *
+     * @param step the step.
+     * @return whether the tool of the step can stream.
+     */
+    private boolean isStreamingTool(final GalaxyWorkflowStep step) {
+        return !DATA_INPUT_STEP_TYPE.equals(step.getType()) && streamingToolIds.contains(step.getToolId());
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.local;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sanitizer for the values of tool parameters, which are inserted in a command that may be run by the shell. It uses
+ * the default rules of the Galaxy sanitizer for text parameters: letters, digits and a few punctuation characters are
+ * kept, quotes, brackets and some other characters are replaced by a name (like __sq__ for a single quote), and all
+ * other characters (including shell metacharacters like ; | & $ and `) are replaced by an X.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+class ParameterSanitizer {
+    /**
+     * The characters that are kept.
+     */
+    private static final String VALID_CHARACTERS
+            = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789 -=_.()/+*^,:?!";
+
+    /**
+     * The characters that are replaced by a name.
+     */
+    private static final Map<Character, String> MAPPED_CHARACTERS = ImmutableMap.<Character, String>builder()
+            .put('>', "__gt__").put('<', "__lt__").put('\'', "__sq__").put('"', "__dq__")
+            .put('[', "__ob__").put(']', "__cb__").put('{', "__oc__").put('}', "__cc__")
+            .put('@', "__at__").put('\n', "__cn__").put('\r', "__cr__").put('\t', "__tc__").put('#', "__pd__")
+            .build();
+
+    /**
+     * The replacement of the other characters.
+     */
+    private static final char INVALID_CHARACTER_REPLACEMENT = 'X';
+
+    /**
+     * Hidden constructor. Only the static methods of this class are meant to be used.
+     */
+    private ParameterSanitizer() {
+    }
+
+    /**
+     * Sanitize the value of a tool parameter. Text is sanitized; maps (conditionals and sections) and lists (repeats)
+     * are copied with their values sanitized; other values (like numbers and booleans) are returned unchanged.
+     *
+     * @param value the value of the parameter.
+     * @return the sanitized value.
+     */
+    static Object sanitize(final Object value) {
+        final Object sanitizedValue;
+        if (value instanceof String)
+            sanitizedValue = sanitizeText((String) value);
+        else if (value instanceof Map) {
+            final Map<Object, Object> sanitizedMap = new HashMap<>();
+            for (final Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet())
+                sanitizedMap.put(entry.getKey(), sanitize(entry.getValue()));
+            sanitizedValue = sanitizedMap;
+        } else if (value instanceof List) {
+            final List<Object> sanitizedList = new ArrayList<>();
+            for (final Object element : (List<?>) value)
+                sanitizedList.add(sanitize(element));
+            sanitizedValue = sanitizedList;
+        } else
+            sanitizedValue = value;
+        return sanitizedValue;
+    }
+
+    /**
+     * Sanitize a text value.
+     *
+     * @param text the text.
+     * @return the sanitized text.
+     */
+    static String sanitizeText(final String text) {
+        final StringBuilder sanitizedText = new StringBuilder();
+        for (final char character : text.toCharArray())
+            if (VALID_CHARACTERS.indexOf(character) != -1)
+                sanitizedText.append(character);
+            else if (MAPPED_CHARACTERS.containsKey(character))
+                sanitizedText.append(MAPPED_CHARACTERS.get(character));
+            else
+                sanitizedText.append(INVALID_CHARACTER_REPLACEMENT);
+        return sanitizedText.toString();
+    }
+}
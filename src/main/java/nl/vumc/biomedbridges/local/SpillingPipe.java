@@ -0,0 +1,202 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Pipe between two threads that keeps up to a limit of bytes in memory and spills the rest to a file, so the writer
+ * never waits for a slow reader and the memory use stays bounded. The order of the bytes is kept: once data has been
+ * spilled, new data is appended to the spill file until the reader has caught up with it.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class SpillingPipe {
+    /**
+     * The maximum number of bytes that are read from the spill file at once.
+     */
+    private static final int SPILL_READ_SIZE = 64 * 1024;
+
+    /**
+     * The maximum number of bytes that are kept in memory.
+     */
+    private final int memoryLimit;
+
+    /**
+     * The spill file.
+     */
+    private final File spillFile;
+
+    /**
+     * The chunks of data in memory, oldest first.
+     */
+    private final Deque<byte[]> memoryChunks = new ArrayDeque<>();
+
+    /**
+     * The number of bytes in memory.
+     */
+    private int memoryByteCount;
+
+    /**
+     * The opened spill file (or null if nothing has been spilled).
+     */
+    private RandomAccessFile spill;
+
+    /**
+     * The position in the spill file where the next spilled data is written.
+     */
+    private long spillWritePosition;
+
+    /**
+     * The position in the spill file where the reader continues.
+     */
+    private long spillReadPosition;
+
+    /**
+     * The total number of bytes that have been spilled.
+     */
+    private long spilledByteCount;
+
+    /**
+     * Whether the writer has finished.
+     */
+    private boolean writerClosed;
+
+    /**
+     * Whether the reader has stopped reading (new data is discarded).
+     */
+    private boolean readerClosed;
+
+    /**
+     * Create a spilling pipe.
+     *
+     * @param memoryLimit the maximum number of bytes that are kept in memory.
+     * @param spillFile   the spill file, which is created when it is needed and deleted when the pipe is closed.
+     */
+    public SpillingPipe(final int memoryLimit, final File spillFile) {
+        this.memoryLimit = memoryLimit;
+        this.spillFile = spillFile;
+    }
+
+    /**
+     * Write data to the pipe.
+     *
+     * @param data   the buffer with the data.
+     * @param offset the offset of the data in the buffer.
+     * @param length the number of bytes to write.
+     * @throws IOException if the data cannot be spilled.
+     */
+    public synchronized void write(final byte[] data, final int offset, final int length) throws IOException {
+        if (!readerClosed) {
+            if (spillReadPosition < spillWritePosition || memoryByteCount + length > memoryLimit) {
+                final RandomAccessFile spillAccess = getSpill();
+                spillAccess.seek(spillWritePosition);
+                spillAccess.write(data, offset, length);
+                spillWritePosition += length;
+                spilledByteCount += length;
+            } else {
+                memoryChunks.addLast(Arrays.copyOfRange(data, offset, offset + length));
+                memoryByteCount += length;
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * Signal that the writer has finished; the reader gets the remaining data and then the end of the pipe.
+     */
+    public synchronized void closeWriter() {
+        writerClosed = true;
+        notifyAll();
+    }
+
+    /**
+     * Read the next chunk of data, waiting until data is available.
+     *
+     * @return the next chunk of data or null if the writer has finished and all data has been read.
+     * @throws IOException          if the spilled data cannot be read.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public synchronized byte[] read() throws IOException, InterruptedException {
+        while (memoryChunks.isEmpty() && spillReadPosition == spillWritePosition && !writerClosed && !readerClosed)
+            wait();
+        final byte[] chunk;
+        if (!memoryChunks.isEmpty()) {
+            chunk = memoryChunks.removeFirst();
+            memoryByteCount -= chunk.length;
+        } else if (spillReadPosition < spillWritePosition)
+            chunk = readSpill();
+        else
+            chunk = null;
+        return chunk;
+    }
+
+    /**
+     * Stop reading: the data in the pipe and new data are discarded and the spill file is deleted.
+     *
+     * @throws IOException if the spill file cannot be deleted.
+     */
+    public synchronized void closeReader() throws IOException {
+        readerClosed = true;
+        memoryChunks.clear();
+        memoryByteCount = 0;
+        spillReadPosition = 0;
+        spillWritePosition = 0;
+        if (spill != null) {
+            spill.close();
+            spill = null;
+        }
+        Files.deleteIfExists(spillFile.toPath());
+        notifyAll();
+    }
+
+    /**
+     * Get the total number of bytes that have been spilled to disk.
+     *
+     * @return the number of spilled bytes.
+     */
+    public synchronized long getSpilledByteCount() {
+        return spilledByteCount;
+    }
+
+    /**
+     * Read a chunk of spilled data. When the reader has caught up with the writer, the spill file is emptied, so new
+     * data is kept in memory again.
+     *
+     * @return the chunk of spilled data.
+     * @throws IOException if the spilled data cannot be read.
+     */
+    private byte[] readSpill() throws IOException {
+        final byte[] chunk = new byte[(int) Math.min(SPILL_READ_SIZE, spillWritePosition - spillReadPosition)];
+        spill.seek(spillReadPosition);
+        spill.readFully(chunk);
+        spillReadPosition += chunk.length;
+        if (spillReadPosition == spillWritePosition) {
+            spillReadPosition = 0;
+            spillWritePosition = 0;
+            spill.setLength(0);
+        }
+        return chunk;
+    }
+
+    /**
+     * Get the spill file, which is opened when data is spilled for the first time.
+     *
+     * @return the opened spill file.
+     * @throws IOException if the spill file cannot be opened.
+     */
+    private RandomAccessFile getSpill() throws IOException {
+        if (spill == null)
+            spill = new RandomAccessFile(spillFile, "rw");
+        return spill;
+    }
+}
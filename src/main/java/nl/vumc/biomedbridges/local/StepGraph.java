@@ -0,0 +1,171 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.local;
+
+import com.google.common.collect.MultimapBuilder;
+import com.google.common.collect.SetMultimap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import nl.vumc.biomedbridges.galaxy.metadata.GalaxyStepInputConnection;
+import nl.vumc.biomedbridges.galaxy.metadata.GalaxyWorkflowMetadata;
+import nl.vumc.biomedbridges.galaxy.metadata.GalaxyWorkflowStep;
+
+/**
+ * The graph of the steps of a workflow, built from the input connections of the steps. A step depends on the steps
+ * whose outputs it uses as inputs; steps that do not depend on each other (like the two input steps of the concatenate
+ * workflow) can be executed at the same time.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class StepGraph {
+    /**
+     * The steps by step id, in the order of the workflow definition.
+     */
+    private final Map<Long, GalaxyWorkflowStep> steps = new LinkedHashMap<>();
+
+    /**
+     * The ids of the steps that a step depends on, by step id.
+     */
+    private final SetMultimap<Long, Long> dependencies = MultimapBuilder.hashKeys().linkedHashSetValues().build();
+
+    /**
+     * The ids of the steps that depend on a step, by step id.
+     */
+    private final SetMultimap<Long, Long> dependents = MultimapBuilder.hashKeys().linkedHashSetValues().build();
+
+    /**
+     * The steps in an order where each step comes after the steps it depends on.
+     */
+    private final List<GalaxyWorkflowStep> topologicalOrder;
+
+    /**
+     * Create the step graph of a workflow.
+     *
+     * @param workflowMetadata the workflow metadata.
+     * @throws IllegalArgumentException if a step is connected to an unknown step or the steps have a cycle.
+     */
+    public StepGraph(final GalaxyWorkflowMetadata workflowMetadata) {
+        this(workflowMetadata.getSteps());
+    }
+
+    /**
+     * Create a step graph.
+     *
+     * @param workflowSteps the steps.
+     * @throws IllegalArgumentException if a step is connected to an unknown step or the steps have a cycle.
+     */
+    public StepGraph(final List<GalaxyWorkflowStep> workflowSteps) {
+        for (final GalaxyWorkflowStep step : workflowSteps)
+            steps.put(step.getId(), step);
+        for (final GalaxyWorkflowStep step : workflowSteps)
+            for (final GalaxyStepInputConnection connection : step.getInputConnections().values()) {
+                if (!steps.containsKey(connection.getId()))
+                    throw new IllegalArgumentException("Step " + step.getId() + " is connected to unknown step "
+                                                       + connection.getId() + ".");
+                dependencies.put(step.getId(), connection.getId());
+                dependents.put(connection.getId(), step.getId());
+            }
+        this.topologicalOrder = Collections.unmodifiableList(sortTopologically());
+    }
+
+    /**
+     * Get a step.
+     *
+     * @param stepId the step id.
+     * @return the step (or null if there is no step with this id).
+     */
+    public GalaxyWorkflowStep getStep(final Long stepId) {
+        return steps.get(stepId);
+    }
+
+    /**
+     * Get the number of steps.
+     *
+     * @return the number of steps.
+     */
+    public int getStepCount() {
+        return steps.size();
+    }
+
+    /**
+     * Get the ids of the steps that a step depends on.
+     *
+     * @param stepId the step id.
+     * @return the ids of the steps whose outputs are inputs of this step.
+     */
+    public Set<Long> getDependencies(final Long stepId) {
+        return Collections.unmodifiableSet(dependencies.get(stepId));
+    }
+
+    /**
+     * Get the ids of the steps that depend on a step.
+     *
+     * @param stepId the step id.
+     * @return the ids of the steps that use outputs of this step as inputs.
+     */
+    public Set<Long> getDependents(final Long stepId) {
+        return Collections.unmodifiableSet(dependents.get(stepId));
+    }
+
+    /**
+     * Get the steps that do not depend on other steps.
+     *
+     * @return the root steps.
+     */
+    public List<GalaxyWorkflowStep> getRootSteps() {
+        final List<GalaxyWorkflowStep> rootSteps = new ArrayList<>();
+        for (final GalaxyWorkflowStep step : steps.values())
+            if (!dependencies.containsKey(step.getId()))
+                rootSteps.add(step);
+        return rootSteps;
+    }
+
+    /**
+     * Get the steps in an order where each step comes after the steps it depends on. Steps that do not depend on each
+     * other keep the order of the workflow definition.
+     *
+     * @return the steps in topological order.
+     */
+    public List<GalaxyWorkflowStep> getTopologicalOrder() {
+        return topologicalOrder;
+    }
+
+    /**
+     * Sort the steps topologically (Kahn's algorithm).
+     *
+     * @return the steps in topological order.
+     * @throws IllegalArgumentException if the steps have a cycle.
+     */
+    private List<GalaxyWorkflowStep> sortTopologically() {
+        final Map<Long, Integer> remainingDependencyCounts = new HashMap<>();
+        for (final Long stepId : steps.keySet())
+            remainingDependencyCounts.put(stepId, dependencies.get(stepId).size());
+        final Deque<GalaxyWorkflowStep> readySteps = new ArrayDeque<>(getRootSteps());
+        final List<GalaxyWorkflowStep> sortedSteps = new ArrayList<>();
+        while (!readySteps.isEmpty()) {
+            final GalaxyWorkflowStep step = readySteps.removeFirst();
+            sortedSteps.add(step);
+            for (final Long dependentId : dependents.get(step.getId())) {
+                final int remainingDependencyCount = remainingDependencyCounts.get(dependentId) - 1;
+                remainingDependencyCounts.put(dependentId, remainingDependencyCount);
+                if (remainingDependencyCount == 0)
+                    readySteps.addLast(steps.get(dependentId));
+            }
+        }
+        if (sortedSteps.size() < steps.size())
+            throw new IllegalArgumentException("The workflow steps have a cycle.");
+        return sortedSteps;
+    }
+}
@@ -0,0 +1,244 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.local;
+
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nl.vumc.biomedbridges.galaxy.metadata.GalaxyWorkflowStep;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Scheduler that executes the steps of a step graph as soon as the steps they depend on have finished, so independent
+ * steps run at the same time. A step is submitted to the executor by the thread that finished its last dependency;
+ * with a fork-join pool (see SharedExecutors.getStepPool) idle workers steal these steps from busy workers. When a
+ * step fails, the steps that are running are finished, but no new steps are started. An instance of this class
+ * runs the steps once.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class StepScheduler {
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(StepScheduler.class);
+
+    /**
+     * The step graph.
+     */
+    private final StepGraph stepGraph;
+
+    /**
+     * The task that executes a step.
+     */
+    private final StepTask stepTask;
+
+    /**
+     * The executor that runs the steps.
+     */
+    private final Executor executor;
+
+    /**
+     * The number of dependencies that have not finished yet, by step id.
+     */
+    private final Map<Long, AtomicInteger> remainingDependencyCounts = new ConcurrentHashMap<>();
+
+    /**
+     * The number of steps that have been submitted and have not finished yet.
+     */
+    private final AtomicInteger activeStepCount = new AtomicInteger();
+
+    /**
+     * Whether a step has failed.
+     */
+    private final AtomicBoolean failed = new AtomicBoolean();
+
+    /**
+     * The result of the run, which is set when the last active step has finished.
+     */
+    private final SettableFuture<Boolean> completion = SettableFuture.create();
+
+    /**
+     * The timings of the steps that were executed, by step id.
+     */
+    private final Map<Long, StepTiming> stepTimings = new ConcurrentHashMap<>();
+
+    /**
+     * The start time of the run (from System.nanoTime).
+     */
+    private long startNanos;
+
+    /**
+     * Create a step scheduler.
+     *
+     * @param stepGraph the step graph.
+     * @param stepTask  the task that executes a step.
+     * @param executor  the executor that runs the steps.
+     */
+    public StepScheduler(final StepGraph stepGraph, final StepTask stepTask, final Executor executor) {
+        this.stepGraph = stepGraph;
+        this.stepTask = stepTask;
+        this.executor = executor;
+    }
+
+    /**
+     * Execute all steps and wait until they have finished.
+     *
+     * @return whether all steps were executed successfully.
+     * @throws IOException          if a step threw an IOException.
+     * @throws InterruptedException if the thread is interrupted while waiting for the steps (no new steps are started
+     *                              after this).
+     */
+    public boolean run() throws IOException, InterruptedException {
+        startNanos = System.nanoTime();
+        for (final GalaxyWorkflowStep step : stepGraph.getTopologicalOrder())
+            remainingDependencyCounts.put(step.getId(),
+                                          new AtomicInteger(stepGraph.getDependencies(step.getId()).size()));
+        final List<GalaxyWorkflowStep> rootSteps = stepGraph.getRootSteps();
+        if (rootSteps.isEmpty())
+            return true;
+        activeStepCount.set(rootSteps.size());
+        for (final GalaxyWorkflowStep rootStep : rootSteps)
+            submitStep(rootStep);
+        return waitForCompletion();
+    }
+
+    /**
+     * Get the timings of the steps that were executed, in the order in which the steps were started.
+     *
+     * @return the step timings.
+     */
+    public List<StepTiming> getStepTimings() {
+        final List<StepTiming> timings = new ArrayList<>(stepTimings.values());
+        Collections.sort(timings, new Comparator<StepTiming>() {
+            @Override
+            public int compare(final StepTiming timing1, final StepTiming timing2) {
+                return Long.compare(timing1.getStartMillis(), timing2.getStartMillis());
+            }
+        });
+        return timings;
+    }
+
+    /**
+     * Wait until the last active step has finished.
+     *
+     * @return whether all steps were executed successfully.
+     * @throws IOException          if a step threw an IOException.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    private boolean waitForCompletion() throws IOException, InterruptedException {
+        try {
+            return completion.get();
+        } catch (final InterruptedException e) {
+            failed.set(true);
+            throw e;
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if (e.getCause() instanceof InterruptedException)
+                throw (InterruptedException) e.getCause();
+            throw new IllegalStateException("Executing a workflow step failed.", e.getCause());
+        }
+    }
+
+    /**
+     * Submit a step to the executor.
+     *
+     * @param step the step.
+     */
+    private void submitStep(final GalaxyWorkflowStep step) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                executeStep(step);
+            }
+        });
+    }
+
+    /**
+     * Execute a step (unless another step has failed) and schedule the steps that depend on it.
+     *
+     * @param step the step.
+     */
+    private void executeStep(final GalaxyWorkflowStep step) {
+        boolean successful = false;
+        if (!failed.get()) {
+            final long stepStartNanos = System.nanoTime();
+            // CHECKSTYLE_OFF: IllegalCatchCheck
+            try {
+                successful = stepTask.executeStep(step);
+            } catch (final IOException | InterruptedException | RuntimeException e) {
+                logger.error("Step {} threw an exception.", step.getId(), e);
+                completion.setException(e);
+            }
+            // CHECKSTYLE_ON: IllegalCatchCheck
+            final long endNanos = System.nanoTime();
+            stepTimings.put(step.getId(), new StepTiming(step.getId(), toMillis(stepStartNanos - startNanos),
+                                                         toMillis(endNanos - stepStartNanos), successful));
+        }
+        stepFinished(step, successful);
+    }
+
+    /**
+     * Schedule the steps that depend on a finished step, or stop scheduling new steps if the step failed. The run is
+     * complete when the last active step has finished.
+     *
+     * @param step       the finished step.
+     * @param successful whether the step was executed successfully.
+     */
+    private void stepFinished(final GalaxyWorkflowStep step, final boolean successful) {
+        if (!successful)
+            failed.set(true);
+        else
+            for (final Long dependentId : stepGraph.getDependents(step.getId()))
+                if (remainingDependencyCounts.get(dependentId).decrementAndGet() == 0 && !failed.get()) {
+                    activeStepCount.incrementAndGet();
+                    submitStep(stepGraph.getStep(dependentId));
+                }
+        if (activeStepCount.decrementAndGet() == 0)
+            completion.set(!failed.get());
+    }
+
+    /**
+     * Convert a duration in nanoseconds to milliseconds.
+     *
+     * @param nanos the duration in nanoseconds.
+     * @return the duration in milliseconds.
+     */
+    private static long toMillis(final long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * The task that executes a workflow step. It can be called by several threads at the same time (for different
+     * steps).
+     */
+    public interface StepTask {
+        /**
+         * Execute a step. The outputs of the steps that this step depends on are available.
+         *
+         * @param step the step.
+         * @return whether the step was executed successfully.
+         * @throws IOException          if executing the step fails.
+         * @throws InterruptedException if the thread is interrupted while executing the step.
+         */
+        boolean executeStep(final GalaxyWorkflowStep step) throws IOException, InterruptedException;
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.local;
+
+/**
+ * The timing of the execution of a workflow step.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class StepTiming {
+    /**
+     * The step id.
+     */
+    private final Long stepId;
+
+    /**
+     * The start time of the step in milliseconds after the start of the workflow run.
+     */
+    private final long startMillis;
+
+    /**
+     * The duration of the step in milliseconds.
+     */
+    private final long durationMillis;
+
+    /**
+     * Whether the step was executed successfully.
+     */
+    private final boolean successful;
+
+    /**
+     * Create a step timing.
+     *
+     * @param stepId         the step id.
+     * @param startMillis    the start time of the step in milliseconds after the start of the workflow run.
+     * @param durationMillis the duration of the step in milliseconds.
+     * @param successful     whether the step was executed successfully.
+     */
+    public StepTiming(final Long stepId, final long startMillis, final long durationMillis, final boolean successful) {
+        this.stepId = stepId;
+        this.startMillis = startMillis;
+        this.durationMillis = durationMillis;
+        this.successful = successful;
+    }
+
+    /**
+     * Get the step id.
+     *
+     * @return the step id.
+     */
+    public Long getStepId() {
+        return stepId;
+    }
+
+    /**
+     * Get the start time of the step.
+     *
+     * @return the start time of the step in milliseconds after the start of the workflow run.
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * Get the duration of the step.
+     *
+     * @return the duration of the step in milliseconds.
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * Get whether the step was executed successfully.
+     *
+     * @return whether the step was executed successfully.
+     */
+    public boolean isSuccessful() {
+        return successful;
+    }
+
+    @Override
+    public String toString() {
+        return "StepTiming{stepId=" + stepId + ", startMillis=" + startMillis + ", durationMillis=" + durationMillis
+               + ", successful=" + successful + "}";
+    }
+}
@@ -0,0 +1,248 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.local;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import nl.vumc.biomedbridges.galaxy.metadata.GalaxyToolMetadata;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A chain of tools that run at the same time, where the standard output of each tool is streamed to the standard
+ * input of the next tool (the tools are given /dev/stdout and /dev/stdin as file paths). The operating system pipes
+ * give backpressure to the tools; between two tools, a SpillingPipe keeps up to a memory limit of data and spills the
+ * rest to disk, so a fast tool is not stalled by a slow one and intermediate data is never stored completely.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class StreamingPipeline {
+    /**
+     * The path that a tool uses to read its streamed input.
+     */
+    public static final File STANDARD_INPUT = new File("/dev/stdin");
+
+    /**
+     * The path that a tool uses to write its streamed output.
+     */
+    public static final File STANDARD_OUTPUT = new File("/dev/stdout");
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(StreamingPipeline.class);
+
+    /**
+     * The size of the buffer that is used to read the output of a tool.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The name of the spill file in the job directory of the tool that reads the streamed data.
+     */
+    private static final String SPILL_FILE_NAME = "stdin.spill";
+
+    /**
+     * The tool runner.
+     */
+    private final LocalToolRunner toolRunner;
+
+    /**
+     * The maximum number of bytes that are kept in memory between two tools.
+     */
+    private final int memoryLimit;
+
+    /**
+     * The executor for the threads that copy the data between the tools.
+     */
+    private final ListeningExecutorService pumpExecutor;
+
+    /**
+     * The metadata of the tools.
+     */
+    private final List<GalaxyToolMetadata> toolsMetadata = new ArrayList<>();
+
+    /**
+     * The values of the variables in the command templates of the tools.
+     */
+    private final List<Map<String, Object>> contexts = new ArrayList<>();
+
+    /**
+     * The job directories of the tools.
+     */
+    private final List<File> jobDirectories = new ArrayList<>();
+
+    /**
+     * Create a streaming pipeline.
+     *
+     * @param toolRunner   the tool runner.
+     * @param memoryLimit  the maximum number of bytes that are kept in memory between two tools.
+     * @param pumpExecutor the executor for the threads that copy the data between the tools (two per stream). It
+     *                     should not be bounded (see SharedExecutors.getPumpExecutor), since the pipeline waits for
+     *                     these threads.
+     */
+    public StreamingPipeline(final LocalToolRunner toolRunner, final int memoryLimit,
+                             final ListeningExecutorService pumpExecutor) {
+        this.toolRunner = toolRunner;
+        this.memoryLimit = memoryLimit;
+        this.pumpExecutor = pumpExecutor;
+    }
+
+    /**
+     * Add a tool to the end of the pipeline.
+     *
+     * @param toolMetadata the tool metadata.
+     * @param context      the values of the variables in the command template.
+     * @param jobDirectory the job directory of the tool.
+     */
+    public void addTool(final GalaxyToolMetadata toolMetadata, final Map<String, Object> context,
+                        final File jobDirectory) {
+        toolsMetadata.add(toolMetadata);
+        contexts.add(context);
+        jobDirectories.add(jobDirectory);
+    }
+
+    /**
+     * Run the tools and wait until they have finished.
+     *
+     * @return whether each tool ran successfully, in the order of the tools.
+     * @throws IOException          if a tool cannot be started or the streamed data cannot be copied.
+     * @throws InterruptedException if the thread is interrupted while waiting for the tools.
+     */
+    public List<Boolean> run() throws IOException, InterruptedException {
+        final List<Process> processes = new ArrayList<>();
+        final List<ListenableFuture<Long>> pumps = new ArrayList<>();
+        try {
+            final int lastIndex = toolsMetadata.size() - 1;
+            for (int toolIndex = 0; toolIndex <= lastIndex; toolIndex++) {
+                processes.add(toolRunner.startTool(toolsMetadata.get(toolIndex), contexts.get(toolIndex),
+                                                   jobDirectories.get(toolIndex), toolIndex > 0, toolIndex < lastIndex));
+                if (toolIndex > 0)
+                    pumps.addAll(startPumps(processes.get(toolIndex - 1), processes.get(toolIndex),
+                                            new File(jobDirectories.get(toolIndex), SPILL_FILE_NAME)));
+            }
+        } catch (final IOException e) {
+            for (final Process process : processes)
+                process.destroy();
+            throw e;
+        }
+        final List<Boolean> results = new ArrayList<>();
+        for (int toolIndex = 0; toolIndex < processes.size(); toolIndex++)
+            results.add(toolRunner.waitForTool(toolsMetadata.get(toolIndex), processes.get(toolIndex),
+                                               jobDirectories.get(toolIndex)));
+        waitForPumps(pumps);
+        return results;
+    }
+
+    /**
+     * Start the threads that copy the standard output of a tool to the standard input of the next tool.
+     *
+     * @param producer  the process of the tool that writes the data.
+     * @param consumer  the process of the tool that reads the data.
+     * @param spillFile the file for data that does not fit in memory.
+     * @return the futures of the threads, which return the number of copied bytes.
+     */
+    private List<ListenableFuture<Long>> startPumps(final Process producer, final Process consumer,
+                                                   final File spillFile) {
+        final SpillingPipe pipe = new SpillingPipe(memoryLimit, spillFile);
+        final List<ListenableFuture<Long>> pumps = new ArrayList<>();
+        pumps.add(pumpExecutor.submit(new Callable<Long>() {
+            @Override
+            public Long call() throws IOException {
+                return copyToPipe(producer.getInputStream(), pipe);
+            }
+        }));
+        pumps.add(pumpExecutor.submit(new Callable<Long>() {
+            @Override
+            public Long call() throws IOException, InterruptedException {
+                final long byteCount = copyFromPipe(pipe, consumer.getOutputStream());
+                logger.debug("Streamed {} bytes ({} bytes spilled to disk).", byteCount, pipe.getSpilledByteCount());
+                return byteCount;
+            }
+        }));
+        return pumps;
+    }
+
+    /**
+     * Copy the output of a tool to a pipe.
+     *
+     * @param toolOutput the output of the tool.
+     * @param pipe       the pipe.
+     * @return the number of copied bytes.
+     * @throws IOException if reading the output fails.
+     */
+    private static long copyToPipe(final InputStream toolOutput, final SpillingPipe pipe) throws IOException {
+        long byteCount = 0;
+        try (final InputStream inputStream = toolOutput) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int readCount = inputStream.read(buffer);
+            while (readCount != -1) {
+                pipe.write(buffer, 0, readCount);
+                byteCount += readCount;
+                readCount = inputStream.read(buffer);
+            }
+        } finally {
+            pipe.closeWriter();
+        }
+        return byteCount;
+    }
+
+    /**
+     * Copy the data in a pipe to the input of a tool. If the tool stops reading, the rest of the data is discarded.
+     *
+     * @param pipe      the pipe.
+     * @param toolInput the input of the tool.
+     * @return the number of copied bytes.
+     * @throws IOException          if the spilled data cannot be read.
+     * @throws InterruptedException if the thread is interrupted while waiting for data.
+     */
+    private static long copyFromPipe(final SpillingPipe pipe, final OutputStream toolInput)
+            throws IOException, InterruptedException {
+        long byteCount = 0;
+        try (final OutputStream outputStream = toolInput) {
+            byte[] chunk = pipe.read();
+            while (chunk != null) {
+                outputStream.write(chunk);
+                byteCount += chunk.length;
+                chunk = pipe.read();
+            }
+        } catch (final IOException e) {
+            logger.warn("A streaming tool stopped reading its input after {} bytes.", byteCount);
+        } finally {
+            pipe.closeReader();
+        }
+        return byteCount;
+    }
+
+    /**
+     * Wait for the threads that copy the data between the tools.
+     *
+     * @param pumps the futures of the threads.
+     * @throws IOException          if copying the data failed.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    private static void waitForPumps(final List<ListenableFuture<Long>> pumps)
+            throws IOException, InterruptedException {
+        try {
+            Futures.allAsList(pumps).get();
+        } catch (final ExecutionException e) {
+            throw new IOException("Streaming data between tools failed.", e.getCause());
+        }
+    }
+}
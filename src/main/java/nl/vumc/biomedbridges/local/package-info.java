@@ -0,0 +1,10 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+/**
+ * Local workflow engine that runs Galaxy workflows by executing the commands of the Galaxy tool definitions as local
+ * processes, without a Galaxy server.
+ */
+package nl.vumc.biomedbridges.local;
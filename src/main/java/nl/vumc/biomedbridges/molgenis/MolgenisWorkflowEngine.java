@@ -5,6 +5,9 @@
 
 package nl.vumc.biomedbridges.molgenis;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
 import nl.vumc.biomedbridges.core.Workflow;
 import nl.vumc.biomedbridges.core.WorkflowEngine;
 
@@ -24,4 +27,17 @@ public class MolgenisWorkflowEngine implements WorkflowEngine {
         //System.out.println("MolgenisWorkflowEngine.runWorkflow...");
         return true;
     }
+
+    @Override
+    public ListenableFuture<Workflow> runWorkflowAsync(final Workflow workflow) {
+        workflow.setResult(runWorkflow(workflow));
+        return Futures.immediateFuture(workflow);
+    }
+
+    /**
+     * Close the workflow engine (nothing to release yet).
+     */
+    @Override
+    public void close() {
+    }
 }
@@ -10,6 +10,8 @@ import java.lang.reflect.Modifier;
 
 import nl.vumc.biomedbridges.core.Constants;
 import nl.vumc.biomedbridges.core.FileUtils;
+import nl.vumc.biomedbridges.core.concurrent.SharedExecutors;
+import nl.vumc.biomedbridges.galaxy.DatasetStates;
 import nl.vumc.biomedbridges.galaxy.WorkflowUtils;
 import nl.vumc.biomedbridges.utilities.JsonUtilities;
 
@@ -30,7 +32,9 @@ public class HiddenConstructorsTest {
     @Test
     public void testHiddenConstructors() {
         testPrivateConstructor(Constants.class);
+        testPrivateConstructor(DatasetStates.class);
         testPrivateConstructor(FileUtils.class);
+        testPrivateConstructor(SharedExecutors.class);
         testPrivateConstructor(JsonUtilities.class);
         testPrivateConstructor(WorkflowUtils.class);
     }
@@ -9,7 +9,9 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 
 import java.io.File;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.junit.Before;
@@ -101,6 +103,29 @@ public class BaseWorkflowTest {
         assertEquals(ImmutableMap.of(outputKey1, outputFile1, outputKey2, outputFile2), baseWorkflow.getOutputMap());
     }
 
+    /**
+     * Test that output listeners are notified when an output is added, until they are removed.
+     */
+    @Test
+    public void testOutputListener() {
+        final Map<String, Object> availableOutputs = new HashMap<>();
+        final OutputListener outputListener = new OutputListener() {
+            @Override
+            public void outputAvailable(final Workflow workflow, final String outputName, final Object outputObject) {
+                assertEquals(baseWorkflow, workflow);
+                availableOutputs.put(outputName, outputObject);
+            }
+        };
+        final Object outputFile1 = new File("output file 1");
+
+        baseWorkflow.addOutputListener(outputListener);
+        baseWorkflow.addOutput("output1", outputFile1);
+        baseWorkflow.removeOutputListener(outputListener);
+        baseWorkflow.addOutput("output2", new File("output file 2"));
+
+        assertEquals(ImmutableMap.of("output1", outputFile1), availableOutputs);
+    }
+
     /**
      * Test the getAutomaticDownload and setAutomaticDownload methods.
      */
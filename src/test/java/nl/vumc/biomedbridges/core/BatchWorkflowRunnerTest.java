@@ -0,0 +1,114 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.core;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nl.vumc.biomedbridges.core.concurrent.SharedExecutors;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for the BatchWorkflowRunner class.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class BatchWorkflowRunnerTest {
+    /**
+     * Test that a batch runs all workflows with a bounded number of runs in flight and aggregates the results.
+     */
+    @Test
+    public void testRunWorkflows() throws Exception {
+        final WorkflowEngine workflowEngineMock = Mockito.mock(WorkflowEngine.class);
+        final AtomicInteger activeRuns = new AtomicInteger();
+        final AtomicInteger maxActiveRuns = new AtomicInteger();
+        Mockito.when(workflowEngineMock.runWorkflowAsync(Mockito.any(Workflow.class))).thenAnswer(new Answer<ListenableFuture<Workflow>>() {
+            @Override
+            public ListenableFuture<Workflow> answer(final InvocationOnMock invocation) {
+                final Workflow workflow = (Workflow) invocation.getArguments()[0];
+                if ("error".equals(workflow.getName()))
+                    return Futures.immediateFailedFuture(new IOException("Workflow failed."));
+                final int active = activeRuns.incrementAndGet();
+                synchronized (maxActiveRuns) {
+                    maxActiveRuns.set(Math.max(maxActiveRuns.get(), active));
+                }
+                return SharedExecutors.getScheduler().schedule(new Callable<Workflow>() {
+                    @Override
+                    public Workflow call() {
+                        activeRuns.decrementAndGet();
+                        workflow.setResult(!"unsuccessful".equals(workflow.getName()));
+                        return workflow;
+                    }
+                }, 10, TimeUnit.MILLISECONDS);
+            }
+        });
+        final List<Workflow> workflows = new ArrayList<>();
+        for (final String name : Arrays.asList("a", "b", "unsuccessful", "c", "error", "d", "e"))
+            workflows.add(new DummyWorkflow(name));
+
+        final BatchResult batchResult = new BatchWorkflowRunner(workflowEngineMock, 2).runWorkflows(workflows).get();
+
+        assertTrue(maxActiveRuns.get() <= 2);
+        assertEquals(workflows.size(), batchResult.getRunCount());
+        assertEquals(5, batchResult.getSuccessfulWorkflows().size());
+        assertEquals(2, batchResult.getFailedWorkflows().size());
+        assertEquals(1, batchResult.getErrors().size());
+        assertFalse(batchResult.isSuccessful());
+    }
+
+    /**
+     * Test creating a workflow for each input set.
+     */
+    @Test
+    public void testCreateWorkflows() {
+        final WorkflowEngine workflowEngineMock = Mockito.mock(WorkflowEngine.class);
+        Mockito.when(workflowEngineMock.getWorkflow(Mockito.anyString())).thenAnswer(new Answer<Workflow>() {
+            @Override
+            public Workflow answer(final InvocationOnMock invocation) {
+                return new DummyWorkflow((String) invocation.getArguments()[0]);
+            }
+        });
+        final List<Map<String, Object>> inputSets = Arrays.<Map<String, Object>>asList(
+                ImmutableMap.<String, Object>of("input", "sample-1"), ImmutableMap.<String, Object>of("input", "sample-2"));
+
+        final List<Workflow> workflows = new BatchWorkflowRunner(workflowEngineMock, 4).createWorkflows("workflow",
+                                                                                                       inputSets);
+
+        assertEquals(2, workflows.size());
+        assertEquals("sample-1", workflows.get(0).getInput("input"));
+        assertEquals("sample-2", workflows.get(1).getInput("input"));
+    }
+
+    /**
+     * Test that an empty batch results in an empty batch result.
+     */
+    @Test
+    public void testEmptyBatch() throws Exception {
+        final BatchWorkflowRunner batchRunner = new BatchWorkflowRunner(Mockito.mock(WorkflowEngine.class), 4);
+        final BatchResult batchResult = batchRunner.runWorkflows(Collections.<Workflow>emptyList()).get();
+        assertEquals(0, batchResult.getRunCount());
+        assertTrue(batchResult.isSuccessful());
+    }
+}
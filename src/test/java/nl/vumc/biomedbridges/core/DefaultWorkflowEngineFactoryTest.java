@@ -13,6 +13,7 @@ import nl.vumc.biomedbridges.demonstration.DemonstrationWorkflowEngine;
 import nl.vumc.biomedbridges.galaxy.GalaxyWorkflowEngine;
 import nl.vumc.biomedbridges.galaxy.HistoryUtils;
 import nl.vumc.biomedbridges.galaxy.configuration.GalaxyConfiguration;
+import nl.vumc.biomedbridges.local.LocalWorkflowEngine;
 import nl.vumc.biomedbridges.molgenis.MolgenisWorkflowEngine;
 
 import org.junit.Test;
@@ -46,6 +47,7 @@ public class DefaultWorkflowEngineFactoryTest {
         checkEngineReturnType(WorkflowType.GALAXY, galaxyConfigurationMock, GalaxyWorkflowEngine.class);
         checkEngineReturnType(WorkflowType.GALAXY, null, null);
         checkEngineReturnType(WorkflowType.MOLGENIS, null, MolgenisWorkflowEngine.class);
+        checkEngineReturnType(WorkflowType.LOCAL, null, LocalWorkflowEngine.class);
         checkEngineReturnType(WorkflowType.UNKNOWN, null, null);
     }
 
@@ -12,6 +12,7 @@ import com.github.jmchilton.blend4j.galaxy.beans.History;
 import nl.vumc.biomedbridges.demonstration.DemonstrationWorkflow;
 import nl.vumc.biomedbridges.galaxy.GalaxyWorkflow;
 import nl.vumc.biomedbridges.galaxy.configuration.GalaxyConfiguration;
+import nl.vumc.biomedbridges.local.LocalWorkflow;
 import nl.vumc.biomedbridges.molgenis.MolgenisWorkflow;
 
 import org.junit.Test;
@@ -45,6 +46,7 @@ public class DefaultWorkflowFactoryTest {
         checkWorkflowReturnType(WorkflowType.GALAXY, galaxyConfigurationMock, GalaxyWorkflow.class);
         checkWorkflowReturnType(WorkflowType.GALAXY, null, null);
         checkWorkflowReturnType(WorkflowType.MOLGENIS, null, MolgenisWorkflow.class);
+        checkWorkflowReturnType(WorkflowType.LOCAL, null, LocalWorkflow.class);
         checkWorkflowReturnType(WorkflowType.UNKNOWN, null, null);
     }
 
@@ -5,6 +5,9 @@
 
 package nl.vumc.biomedbridges.core;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
 import java.io.IOException;
 
 /**
@@ -32,4 +35,21 @@ public class DummyWorkflowEngine implements WorkflowEngine {
                 workflow.addOutput("dummy-output-" + (outputIndex + 1), "dummy");
         return true;
     }
+
+    @Override
+    public ListenableFuture<Workflow> runWorkflowAsync(final Workflow workflow) {
+        try {
+            workflow.setResult(runWorkflow(workflow));
+            return Futures.immediateFuture(workflow);
+        } catch (final InterruptedException | IOException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    /**
+     * Close the dummy workflow engine.
+     */
+    @Override
+    public void close() {
+    }
 }
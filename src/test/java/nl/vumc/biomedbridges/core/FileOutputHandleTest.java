@@ -0,0 +1,58 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.core;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for the FileOutputHandle class (and the AbstractOutputHandle class).
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class FileOutputHandleTest {
+    /**
+     * Test the size, ranged reads and reading a limited number of lines.
+     */
+    @Test
+    public void testReadOutput() throws Exception {
+        final File outputFile = FileUtils.createTemporaryFile("first", "second", "third");
+        final FileOutputHandle outputHandle = new FileOutputHandle("output", outputFile);
+
+        assertEquals("output", outputHandle.getName());
+        assertEquals(outputFile.length(), outputHandle.getSize());
+        assertEquals(Arrays.asList("first", "second"), outputHandle.readLines(2));
+        assertEquals(Arrays.asList("first", "second", "third"), outputHandle.readLines(10));
+        try (final InputStream inputStream = outputHandle.openStream(6, 3)) {
+            assertEquals("sec", new String(ByteStreams.toByteArray(inputStream), StandardCharsets.UTF_8));
+        }
+        assertTrue(outputFile.delete());
+    }
+
+    /**
+     * Test that the getOutputHandle method of a workflow wraps output files in file output handles.
+     */
+    @Test
+    public void testWorkflowOutputHandle() throws Exception {
+        final BaseWorkflow workflow = new BaseWorkflow("workflow");
+        final File outputFile = new File("output.txt");
+        workflow.addOutput("output", outputFile);
+
+        assertEquals(outputFile, ((FileOutputHandle) workflow.getOutputHandle("output")).getFile());
+        assertEquals("txt", workflow.getOutputHandle("output").getDataType());
+        assertNull(workflow.getOutputHandle("missing"));
+    }
+}
@@ -5,11 +5,24 @@
 
 package nl.vumc.biomedbridges.core;
 
+import com.google.common.io.LineProcessor;
+
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
 
+import org.junit.Assume;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
@@ -102,4 +115,133 @@ public class FileUtilsTest {
             assertTrue(onWindows);
         }
     }
+
+    /**
+     * Test the writeLines method: the file is replaced and no temporary file is left behind.
+     *
+     * @throws IOException if writing the file fails.
+     */
+    @Test
+    public void testWriteLines() throws IOException {
+        final File directory = Files.createTempDirectory("file-utils").toFile();
+        final File file = new File(directory, "lines.txt");
+        FileUtils.writeLines(file, Arrays.asList("old line"));
+        FileUtils.writeLines(file, Arrays.asList("line 1", "line 2"));
+        assertEquals(Arrays.asList("line 1", "line 2"), Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+        assertEquals(1, directory.list().length);
+        deleteDirectory(directory);
+    }
+
+    /**
+     * Test the copyFile, concatenateFiles and copyStream methods.
+     *
+     * @throws IOException if copying fails.
+     */
+    @Test
+    public void testCopyAndConcatenate() throws IOException {
+        final File directory = Files.createTempDirectory("file-utils").toFile();
+        final File file1 = FileUtils.createTemporaryFile("line 1", "line 2");
+        final File file2 = FileUtils.createTemporaryFile("line 3");
+        final File copy = new File(directory, "copy.txt");
+        FileUtils.copyFile(file1, copy);
+        assertEquals(Arrays.asList("line 1", "line 2"), Files.readAllLines(copy.toPath(), StandardCharsets.UTF_8));
+        final File concatenation = new File(directory, "concatenation.txt");
+        FileUtils.concatenateFiles(Arrays.asList(file1, file2, file1), concatenation);
+        assertEquals(Arrays.asList("line 1", "line 2", "line 3", "line 1", "line 2"),
+                     Files.readAllLines(concatenation.toPath(), StandardCharsets.UTF_8));
+        final File streamCopy = new File(directory, "stream.txt");
+        FileUtils.copyStream(new ByteArrayInputStream("line 4\n".getBytes(StandardCharsets.UTF_8)), streamCopy);
+        assertEquals(Arrays.asList("line 4"), Files.readAllLines(streamCopy.toPath(), StandardCharsets.UTF_8));
+        assertEquals(3, directory.list().length);
+        assertTrue(file1.delete());
+        assertTrue(file2.delete());
+        deleteDirectory(directory);
+    }
+
+    /**
+     * Test that files that are written atomically get the default permissions for new files, and that replaced files
+     * keep their permissions.
+     *
+     * @throws IOException if writing a file fails.
+     */
+    @Test
+    public void testPermissions() throws IOException {
+        final File directory = Files.createTempDirectory("file-utils").toFile();
+        Assume.assumeTrue(Files.getFileStore(directory.toPath()).supportsFileAttributeView(PosixFileAttributeView.class));
+        final File referenceFile = Files.createFile(new File(directory, "reference.txt").toPath()).toFile();
+        final File newFile = new File(directory, "new.txt");
+        FileUtils.writeLines(newFile, Arrays.asList("line 1"));
+        assertEquals(Files.getPosixFilePermissions(referenceFile.toPath()),
+                     Files.getPosixFilePermissions(newFile.toPath()));
+        final Set<PosixFilePermission> executablePermissions = PosixFilePermissions.fromString("rwxr-x---");
+        Files.setPosixFilePermissions(newFile.toPath(), executablePermissions);
+        FileUtils.copyFile(referenceFile, newFile);
+        assertEquals(executablePermissions, Files.getPosixFilePermissions(newFile.toPath()));
+        deleteDirectory(directory);
+    }
+
+    /**
+     * Test the readLines method with lines that cross the boundaries of the memory-mapped regions, multi-byte
+     * characters, carriage returns and a last line without a line feed.
+     *
+     * @throws IOException if reading the file fails.
+     */
+    @Test
+    public void testReadLines() throws IOException {
+        final File file = File.createTempFile("file-utils", ".txt");
+        Files.write(file.toPath(), "first line\r\n\nd\u00e9j\u00e0 vu\nlast".getBytes(StandardCharsets.UTF_8));
+        final List<String> expectedLines = Arrays.asList("first line", "", "d\u00e9j\u00e0 vu", "last");
+        for (final int regionSize : new int[]{3, 5, 1024})
+            assertEquals(expectedLines, FileUtils.readLines(file, new LineCollector(-1), regionSize));
+        assertEquals(expectedLines.subList(0, 2), FileUtils.readLines(file, new LineCollector(2)));
+        assertTrue(file.delete());
+    }
+
+    /**
+     * Delete a directory with its files.
+     *
+     * @param directory the directory.
+     */
+    private static void deleteDirectory(final File directory) {
+        final File[] files = directory.listFiles();
+        if (files != null)
+            for (final File file : files)
+                assertTrue(file.delete());
+        assertTrue(directory.delete());
+    }
+
+    /**
+     * Line processor that collects lines, optionally up to a maximum number.
+     */
+    private static class LineCollector implements LineProcessor<List<String>> {
+        /**
+         * The maximum number of lines to collect (or -1 to collect all lines).
+         */
+        private final int maximumLineCount;
+
+        /**
+         * The collected lines.
+         */
+        private final List<String> lines = new ArrayList<>();
+
+        /**
+         * Create a line collector.
+         *
+         * @param maximumLineCount the maximum number of lines to collect (or -1 to collect all lines).
+         */
+        LineCollector(final int maximumLineCount) {
+            this.maximumLineCount = maximumLineCount;
+        }
+
+        @Override
+        public boolean processLine(final String line) {
+            lines.add(line);
+            return lines.size() != maximumLineCount;
+        }
+
+        @Override
+        public List<String> getResult() {
+            return lines;
+        }
+    }
 }
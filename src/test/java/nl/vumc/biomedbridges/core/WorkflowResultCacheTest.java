@@ -0,0 +1,165 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for the WorkflowResultCache class.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class WorkflowResultCacheTest {
+    /**
+     * The name of the output in the test workflows.
+     */
+    private static final String OUTPUT_NAME = "output";
+
+    /**
+     * The directory in which the cache is stored.
+     */
+    private File cacheDirectory;
+
+    /**
+     * Create the cache directory.
+     */
+    @Before
+    public void setUp() throws IOException {
+        cacheDirectory = Files.createTempDirectory("workflow-result-cache").toFile();
+        cacheDirectory.deleteOnExit();
+    }
+
+    /**
+     * Test that the key depends on the input content and the parameters, but not on the input file names.
+     */
+    @Test
+    public void testCreateKey() throws IOException {
+        final WorkflowResultCache resultCache = new WorkflowResultCache(cacheDirectory, 1024);
+        final String key = resultCache.createKey(createWorkflow("content", "a.txt", 1));
+
+        assertNotNull(key);
+        assertEquals(key, resultCache.createKey(createWorkflow("content", "b.txt", 1)));
+        assertNotEquals(key, resultCache.createKey(createWorkflow("other content", "a.txt", 1)));
+        assertNotEquals(key, resultCache.createKey(createWorkflow("content", "a.txt", 2)));
+    }
+
+    /**
+     * Test storing and restoring outputs, also by a new cache that uses the same directory.
+     */
+    @Test
+    public void testStoreAndRestore() throws IOException {
+        final Workflow workflow = createWorkflow("content", "a.txt", 1);
+        workflow.addOutput(OUTPUT_NAME, createFile("output.tabular", "result"));
+        final String key = new WorkflowResultCache(cacheDirectory, 1024).createKey(workflow);
+        assertTrue(new WorkflowResultCache(cacheDirectory, 1024).storeOutputs(workflow, key));
+
+        final Workflow identicalWorkflow = createWorkflow("content", "b.txt", 1);
+        final WorkflowResultCache reopenedCache = new WorkflowResultCache(cacheDirectory, 1024);
+        assertTrue(reopenedCache.restoreOutputs(identicalWorkflow, reopenedCache.createKey(identicalWorkflow)));
+        final File restoredFile = (File) identicalWorkflow.getOutput(OUTPUT_NAME);
+        assertTrue(restoredFile.getName().endsWith(".tabular"));
+        assertEquals(Collections.singletonList("result"), Files.readAllLines(restoredFile.toPath(), StandardCharsets.UTF_8));
+        assertFalse(reopenedCache.restoreOutputs(createWorkflow("content", "a.txt", 2), "unknown-key"));
+    }
+
+    /**
+     * Test that the least recently used output files are evicted when the cache exceeds its maximum size.
+     */
+    @Test
+    public void testEviction() throws IOException {
+        final WorkflowResultCache resultCache = new WorkflowResultCache(cacheDirectory, 10);
+        final Workflow workflow1 = createWorkflow("first", "a.txt", 1);
+        workflow1.addOutput(OUTPUT_NAME, createFile("output.txt", "12345"));
+        final String key1 = resultCache.createKey(workflow1);
+        final Workflow workflow2 = createWorkflow("second", "a.txt", 1);
+        workflow2.addOutput(OUTPUT_NAME, createFile("output.txt", "abcde"));
+        final String key2 = resultCache.createKey(workflow2);
+
+        assertTrue(resultCache.storeOutputs(workflow1, key1));
+        assertTrue(resultCache.storeOutputs(workflow2, key2));
+        assertTrue(resultCache.getTotalSizeBytes() <= 10);
+        assertFalse(resultCache.restoreOutputs(createWorkflow("first", "a.txt", 1), key1));
+        assertTrue(resultCache.restoreOutputs(createWorkflow("second", "a.txt", 1), key2));
+    }
+
+    /**
+     * Test that no outputs are added to the workflow when one of the stored output files cannot be restored.
+     */
+    @Test
+    public void testFailedRestoreAddsNoOutputs() throws IOException {
+        final Workflow workflow = createWorkflow("content", "a.txt", 1);
+        workflow.addOutput("first", createFile("first.txt", "first result"));
+        workflow.addOutput("second", createFile("second.txt", "second result"));
+        final WorkflowResultCache resultCache = new WorkflowResultCache(cacheDirectory, 1024);
+        final String key = resultCache.createKey(workflow);
+        assertTrue(resultCache.storeOutputs(workflow, key));
+        final File objectFile = new File(new File(cacheDirectory, "objects"),
+                                         FileUtils.hashFile((File) workflow.getOutput("second")));
+        assertTrue(objectFile.delete());
+
+        final Workflow identicalWorkflow = createWorkflow("content", "a.txt", 1);
+        assertFalse(resultCache.restoreOutputs(identicalWorkflow, key));
+        assertTrue(identicalWorkflow.getOutputMap().isEmpty());
+    }
+
+    /**
+     * Test that workflows with outputs that are not files are not stored.
+     */
+    @Test
+    public void testNonFileOutput() throws IOException {
+        final Workflow workflow = createWorkflow("content", "a.txt", 1);
+        workflow.addOutput(OUTPUT_NAME, "not a file");
+        final WorkflowResultCache resultCache = new WorkflowResultCache(cacheDirectory, 1024);
+        assertFalse(resultCache.storeOutputs(workflow, resultCache.createKey(workflow)));
+    }
+
+    /**
+     * Create a workflow with one input file and one parameter.
+     *
+     * @param inputContent   the content of the input file.
+     * @param inputFileName  the name of the input file.
+     * @param parameterValue the value of the parameter.
+     * @return the workflow.
+     * @throws IOException if writing the input file fails.
+     */
+    private static Workflow createWorkflow(final String inputContent, final String inputFileName,
+                                           final int parameterValue) throws IOException {
+        final Workflow workflow = new DummyWorkflow("dummy");
+        workflow.addInput("input", createFile(inputFileName, inputContent));
+        workflow.setParameter(1, "lines", parameterValue);
+        return workflow;
+    }
+
+    /**
+     * Create a file with one line in a new temporary directory.
+     *
+     * @param name    the name of the file.
+     * @param content the line to write to the file.
+     * @return the file.
+     * @throws IOException if writing the file fails.
+     */
+    private static File createFile(final String name, final String content) throws IOException {
+        final File directory = Files.createTempDirectory("workflow-result-cache-test").toFile();
+        directory.deleteOnExit();
+        final File file = new File(directory, name);
+        file.deleteOnExit();
+        Files.write(file.toPath(), Collections.singletonList(content), StandardCharsets.UTF_8);
+        return file;
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.core.concurrent;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for the BackoffCompletionWaiter and BackoffPolicy classes.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class BackoffCompletionWaiterTest {
+    /**
+     * Test that the waiter completes with true directly after the probe that detects completion.
+     */
+    @Test
+    public void testCompletionAfterSomeProbes() throws Exception {
+        final AtomicInteger probeCount = new AtomicInteger();
+        final CompletionCheck check = new CompletionCheck() {
+            @Override
+            public boolean isComplete() {
+                return probeCount.incrementAndGet() == 3;
+            }
+        };
+        final BackoffPolicy policy = new BackoffPolicy(1, 4, 2.0, 0.1, 10000);
+        assertTrue(new BackoffCompletionWaiter().waitForCompletion(check, policy).get());
+        assertEquals(3, probeCount.get());
+    }
+
+    /**
+     * Test that the waiter completes with false when the deadline passes, after probing at least once.
+     */
+    @Test
+    public void testDeadline() throws Exception {
+        final AtomicInteger probeCount = new AtomicInteger();
+        final CompletionCheck check = new CompletionCheck() {
+            @Override
+            public boolean isComplete() {
+                probeCount.incrementAndGet();
+                return false;
+            }
+        };
+        assertFalse(new BackoffCompletionWaiter().waitForCompletion(check, new BackoffPolicy(0, 0, 1, 0, 0)).get());
+        assertEquals(1, probeCount.get());
+        assertFalse(new BackoffCompletionWaiter().waitForCompletion(check, new BackoffPolicy(5, 10, 2, 0, 50)).get());
+        assertTrue(probeCount.get() > 2);
+    }
+
+    /**
+     * Test that an exception thrown by the check fails the future.
+     */
+    @Test
+    public void testFailingCheck() throws InterruptedException {
+        final CompletionCheck check = new CompletionCheck() {
+            @Override
+            public boolean isComplete() {
+                throw new IllegalStateException("Server not available.");
+            }
+        };
+        final ListenableFuture<Boolean> future = new BackoffCompletionWaiter().waitForCompletion(
+                check, BackoffPolicy.fromWaitSettings(1, 1)
+        );
+        try {
+            future.get();
+            fail("An execution exception was expected.");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    /**
+     * Test the growth, limits, and jitter of the backoff policy.
+     */
+    @Test
+    public void testBackoffPolicy() {
+        final BackoffPolicy policy = BackoffPolicy.fromWaitSettings(20, 3);
+        assertEquals(BackoffPolicy.DEFAULT_INITIAL_DELAY_MILLIS, policy.getInitialDelayMillis());
+        assertEquals(3000, policy.getMaximumDelayMillis());
+        assertEquals(60000, policy.getTimeoutMillis());
+        assertEquals(500, policy.getNextDelayMillis(250));
+        assertEquals(3000, policy.getNextDelayMillis(2000));
+        final Random randomGenerator = new Random(123456);
+        for (int index = 0; index < 100; index++) {
+            final long jitteredDelay = policy.applyJitter(1000, randomGenerator);
+            assertTrue(jitteredDelay >= 900 && jitteredDelay <= 1100);
+        }
+        assertEquals(0, BackoffPolicy.fromWaitSettings(0, 0).getInitialDelayMillis());
+    }
+
+    /**
+     * Test that invalid backoff policy settings are rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBackoffPolicy() {
+        new BackoffPolicy(1, 1, 0.5, 0, 1);
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.core.concurrent;
+
+import com.google.common.base.Function;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for the ParallelLists class.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class ParallelListsTest {
+    /**
+     * Test that the transform method applies the function to all elements and keeps the order of the elements.
+     */
+    @Test
+    public void testTransform() {
+        final List<Integer> numbers = new ArrayList<>();
+        for (int number = 0; number < 1000; number++)
+            numbers.add(number);
+        final Function<Integer, String> toText = new Function<Integer, String>() {
+            @Override
+            public String apply(final Integer number) {
+                return "number " + number;
+            }
+        };
+
+        final List<String> texts = ParallelLists.transform(numbers, toText);
+
+        assertEquals(numbers.size(), texts.size());
+        for (int index = 0; index < numbers.size(); index++)
+            assertEquals("number " + index, texts.get(index));
+        assertTrue(ParallelLists.transform(Collections.<Integer>emptyList(), toText).isEmpty());
+    }
+}
@@ -5,17 +5,28 @@
 
 package nl.vumc.biomedbridges.demonstration;
 
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ListenableFuture;
+
 import java.io.File;
+import java.io.IOException;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import nl.vumc.biomedbridges.core.Constants;
 import nl.vumc.biomedbridges.core.FileUtils;
 import nl.vumc.biomedbridges.core.Workflow;
+import nl.vumc.biomedbridges.examples.RandomLinesExample;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -87,6 +98,60 @@ public class DemonstrationWorkflowEngineTest {
         assertTrue(demonstrationWorkflowEngine.runWorkflow(randomLinesWorkflow));
     }
 
+    /**
+     * Test that the concatenate workflow copies the input files completely.
+     *
+     * @throws IOException if reading the output fails.
+     */
+    @Test
+    public void testConcatenateOutput() throws IOException {
+        concatenateWorkflow.addInput("WorkflowInput1", FileUtils.createTemporaryFile("line 1", "line 2"));
+        concatenateWorkflow.addInput("WorkflowInput2", FileUtils.createTemporaryFile("line 3"));
+        assertTrue(demonstrationWorkflowEngine.runWorkflow(concatenateWorkflow));
+        assertEquals(Arrays.asList("line 1", "line 2", "line 3"),
+                     Files.readLines((File) concatenateWorkflow.getOutput("output"), Charsets.UTF_8));
+    }
+
+    /**
+     * Test that the random lines workflow selects the same lines when it is run with the same seed.
+     *
+     * @throws IOException if reading the output fails.
+     */
+    @Test
+    public void testRandomLinesSeed() throws IOException {
+        final File inputFile = FileUtils.createTemporaryFile("line a", "line b", "line c", "line d", "line e",
+                                                             "line f", "line g", "line h", "line i");
+        final List<List<String>> outputs = new ArrayList<>();
+        for (int run = 0; run < 2; run++) {
+            final Workflow workflow = demonstrationWorkflowEngine.getWorkflow(Constants.WORKFLOW_RANDOM_LINES_TWICE);
+            ((DemonstrationWorkflow) workflow).setRandomSeed(7);
+            workflow.addInput("Input Dataset", inputFile);
+            workflow.setParameter(2, "num_lines", 5);
+            workflow.setParameter(3, "num_lines", 3);
+            assertTrue(demonstrationWorkflowEngine.runWorkflow(workflow));
+            outputs.add(Files.readLines((File) workflow.getOutput(RandomLinesExample.OUTPUT_NAME), Charsets.UTF_8));
+        }
+        assertEquals(3, outputs.get(0).size());
+        assertEquals(outputs.get(0), outputs.get(1));
+    }
+
+    /**
+     * Test the runWorkflowAsync method with correct and incorrect parameters.
+     */
+    @Test
+    public void testRunWorkflowAsync() throws Exception {
+        concatenateWorkflow.addInput("WorkflowInput1", FileUtils.createTemporaryFile("line 1"));
+        concatenateWorkflow.addInput("WorkflowInput2", FileUtils.createTemporaryFile("line 2"));
+        final ListenableFuture<Workflow> concatenateFuture = demonstrationWorkflowEngine.runWorkflowAsync(concatenateWorkflow);
+
+        randomLinesWorkflow.addInput("Input Dataset", new BigInteger("654321"));
+        final ListenableFuture<Workflow> randomLinesFuture = demonstrationWorkflowEngine.runWorkflowAsync(randomLinesWorkflow);
+
+        assertTrue(concatenateFuture.get().getResult());
+        assertNotNull(concatenateWorkflow.getOutput("output"));
+        assertFalse(randomLinesFuture.get().getResult());
+    }
+
     /**
      * Set the input file and the parameters of the "random lines twice" workflow.
      *
@@ -0,0 +1,85 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.demonstration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the ReservoirSampler class.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class ReservoirSamplerTest {
+    /**
+     * The number of lines of the larger input.
+     */
+    private static final int LINE_COUNT = 100000;
+
+    /**
+     * The number of lines to select from the larger input.
+     */
+    private static final int SAMPLE_SIZE = 10;
+
+    /**
+     * The seed of the random generator.
+     */
+    private static final long SEED = 42;
+
+    /**
+     * Test selecting lines from a larger input: the selected lines are distinct, in input order and reproducible with
+     * the same seed.
+     */
+    @Test
+    public void testSample() {
+        final List<String> lines = new ArrayList<>();
+        for (int lineIndex = 0; lineIndex < LINE_COUNT; lineIndex++)
+            lines.add(String.format("line %06d", lineIndex));
+        final List<String> selectedLines = ReservoirSampler.sample(lines, SAMPLE_SIZE, new Random(SEED));
+        assertEquals(SAMPLE_SIZE, selectedLines.size());
+        assertEquals(SAMPLE_SIZE, new HashSet<>(selectedLines).size());
+        final List<String> sortedLines = new ArrayList<>(selectedLines);
+        Collections.sort(sortedLines);
+        assertEquals(sortedLines, selectedLines);
+        assertTrue(lines.containsAll(selectedLines));
+        assertEquals(selectedLines, ReservoirSampler.sample(lines, SAMPLE_SIZE, new Random(SEED)));
+    }
+
+    /**
+     * Test selecting more lines than the input has: all lines are returned.
+     */
+    @Test
+    public void testSampleAllLines() {
+        final List<String> lines = Arrays.asList("line a", "line b", "line c");
+        assertEquals(lines, ReservoirSampler.sample(lines, 6, new Random(SEED)));
+    }
+
+    /**
+     * Test that each line has about the same chance to be selected.
+     */
+    @Test
+    public void testUniformSelection() {
+        final List<String> lines = Arrays.asList("0", "1", "2", "3");
+        final int[] selectionCounts = new int[lines.size()];
+        final Random randomGenerator = new Random(SEED);
+        final int runCount = 20000;
+        for (int run = 0; run < runCount; run++)
+            for (final String line : ReservoirSampler.sample(lines, 2, randomGenerator))
+                selectionCounts[Integer.parseInt(line)]++;
+        // Each line is expected to be selected in half of the runs.
+        for (final int selectionCount : selectionCounts)
+            assertTrue(Math.abs(selectionCount - runCount / 2) < runCount / 20);
+    }
+}
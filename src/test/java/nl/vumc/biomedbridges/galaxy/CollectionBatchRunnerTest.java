@@ -0,0 +1,398 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.galaxy;
+
+import com.github.jmchilton.blend4j.galaxy.GalaxyInstance;
+import com.github.jmchilton.blend4j.galaxy.HistoriesClient;
+import com.github.jmchilton.blend4j.galaxy.ToolsClient;
+import com.github.jmchilton.blend4j.galaxy.WorkflowsClient;
+import com.github.jmchilton.blend4j.galaxy.beans.Dataset;
+import com.github.jmchilton.blend4j.galaxy.beans.History;
+import com.github.jmchilton.blend4j.galaxy.beans.HistoryContents;
+import com.github.jmchilton.blend4j.galaxy.beans.HistoryDetails;
+import com.github.jmchilton.blend4j.galaxy.beans.WorkflowDetails;
+import com.github.jmchilton.blend4j.galaxy.beans.WorkflowInputDefinition;
+import com.github.jmchilton.blend4j.galaxy.beans.WorkflowInputs;
+import com.github.jmchilton.blend4j.galaxy.beans.WorkflowOutputs;
+import com.github.jmchilton.blend4j.galaxy.beans.collection.request.AbstractElement;
+import com.github.jmchilton.blend4j.galaxy.beans.collection.request.CollectionDescription;
+import com.github.jmchilton.blend4j.galaxy.beans.collection.request.HistoryDatasetElement;
+import com.github.jmchilton.blend4j.galaxy.beans.collection.response.CollectionElementResponse;
+import com.github.jmchilton.blend4j.galaxy.beans.collection.response.CollectionResponse;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.sun.jersey.api.client.ClientResponse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import nl.vumc.biomedbridges.core.BatchResult;
+import nl.vumc.biomedbridges.core.Constants;
+
+import org.apache.http.HttpStatus;
+import org.json.simple.parser.JSONParser;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for the CollectionBatchRunner class.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class CollectionBatchRunnerTest {
+    /**
+     * The ID of the batch history.
+     */
+    private static final String HISTORY_ID = "batch-history-id";
+
+    /**
+     * The name of the workflow input.
+     */
+    private static final String INPUT_NAME = "input";
+
+    /**
+     * The name of the workflow output.
+     */
+    private static final String OUTPUT_NAME = "output";
+
+    /**
+     * The ID of the input collection.
+     */
+    private static final String INPUT_COLLECTION_ID = "input-collection-id";
+
+    /**
+     * The ID of the output collection.
+     */
+    private static final String OUTPUT_COLLECTION_ID = "output-collection-id";
+
+    /**
+     * The history content type of dataset collections.
+     */
+    private static final String COLLECTION_CONTENT_TYPE = "dataset_collection";
+
+    /**
+     * The temporary folder for the input files and the download directories, which is removed after each test.
+     */
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * The Galaxy instance mock.
+     */
+    private GalaxyInstance galaxyInstanceMock;
+
+    /**
+     * The histories client mock.
+     */
+    private HistoriesClient historiesClientMock;
+
+    /**
+     * The workflows client mock.
+     */
+    private WorkflowsClient workflowsClientMock;
+
+    /**
+     * The tools client mock.
+     */
+    private ToolsClient toolsClientMock;
+
+    /**
+     * The history utils mock.
+     */
+    private HistoryUtils historyUtilsMock;
+
+    /**
+     * Set up the mocks for a batch of two samples: the uploads, the collections, the workflow invocation and the
+     * downloads.
+     */
+    @Before
+    public void setUp() throws IOException {
+        galaxyInstanceMock = Mockito.mock(GalaxyInstance.class);
+        historiesClientMock = Mockito.mock(HistoriesClient.class);
+        workflowsClientMock = Mockito.mock(WorkflowsClient.class);
+        toolsClientMock = Mockito.mock(ToolsClient.class);
+        historyUtilsMock = Mockito.mock(HistoryUtils.class);
+        Mockito.when(galaxyInstanceMock.getHistoriesClient()).thenReturn(historiesClientMock);
+        Mockito.when(galaxyInstanceMock.getWorkflowsClient()).thenReturn(workflowsClientMock);
+        Mockito.when(galaxyInstanceMock.getToolsClient()).thenReturn(toolsClientMock);
+        HistoryPool.forInstance(galaxyInstanceMock).setCapacity(0);
+
+        final History batchHistory = new History("batch");
+        batchHistory.setId(HISTORY_ID);
+        Mockito.when(historiesClientMock.create(Mockito.any(History.class))).thenReturn(batchHistory);
+        final ClientResponse uploadResponse1 = InputUploaderTest.createResponse(HttpStatus.SC_OK, "input-1");
+        final ClientResponse uploadResponse2 = InputUploaderTest.createResponse(HttpStatus.SC_OK, "input-2");
+        Mockito.when(toolsClientMock.uploadRequest(Mockito.any(ToolsClient.FileUploadRequest.class)))
+                .thenReturn(uploadResponse1, uploadResponse2);
+        Mockito.when(historiesClientMock.showHistoryContents(HISTORY_ID)).thenReturn(createHistoryContents());
+        final HistoryDetails historyDetails = new HistoryDetails();
+        historyDetails.setStateIds(ImmutableMap.of(DatasetStates.OK, Collections.<String>emptyList()));
+        Mockito.when(historiesClientMock.showHistory(HISTORY_ID)).thenReturn(historyDetails);
+        mockWorkflowRegistry(workflowsClientMock);
+        final CollectionResponse inputCollection = new CollectionResponse();
+        inputCollection.setId(INPUT_COLLECTION_ID);
+        Mockito.when(historiesClientMock.createDatasetCollection(Mockito.eq(HISTORY_ID),
+                                                                 Mockito.any(CollectionDescription.class)))
+                .thenReturn(inputCollection);
+        final WorkflowOutputs workflowOutputs = new WorkflowOutputs();
+        workflowOutputs.setOutputIds(ImmutableList.of("output-1", "output-2"));
+        Mockito.when(workflowsClientMock.runWorkflow(Mockito.any(WorkflowInputs.class))).thenReturn(workflowOutputs);
+        final CollectionResponse outputCollection = new CollectionResponse();
+        outputCollection.setElements(ImmutableList.of(createElement(1, "output-2"), createElement(0, "output-1")));
+        Mockito.when(historiesClientMock.showDatasetCollection(HISTORY_ID, OUTPUT_COLLECTION_ID))
+                .thenReturn(outputCollection);
+        for (final String datasetId : ImmutableList.of("input-1", "input-2", "output-1", "output-2")) {
+            final Dataset dataset = createDataset(datasetId);
+            Mockito.when(historiesClientMock.showDataset(HISTORY_ID, datasetId)).thenReturn(dataset);
+        }
+        Mockito.when(historyUtilsMock.showDatasets(Mockito.eq(galaxyInstanceMock), Mockito.eq(HISTORY_ID),
+                                                   Mockito.anyCollectionOf(String.class)))
+                .thenAnswer(new Answer<List<HistoryContents>>() {
+                    @Override
+                    public List<HistoryContents> answer(final InvocationOnMock invocation) {
+                        final List<HistoryContents> datasets = new ArrayList<>();
+                        for (final Object datasetId : (Collection<?>) invocation.getArguments()[2])
+                            datasets.add(createDataset((String) datasetId));
+                        return datasets;
+                    }
+                });
+        Mockito.when(historyUtilsMock.streamDataset(Mockito.eq(galaxyInstanceMock), Mockito.eq(HISTORY_ID),
+                                                    Mockito.anyString(), Mockito.any(File.class)))
+                .thenReturn(new TransferStatistics(OUTPUT_NAME, 1, 1));
+    }
+
+    /**
+     * Test running two samples with one workflow invocation and mapping the output elements back to the samples.
+     */
+    @Test
+    public void testRunWorkflows() throws Exception {
+        final GalaxyWorkflowEngine workflowEngine = createWorkflowEngine();
+        final List<GalaxyWorkflow> workflows = createWorkflows(workflowEngine, createInputFile("sample 0"),
+                                                               createInputFile("sample 1"));
+
+        final BatchResult batchResult = workflowEngine.runWorkflowsAsCollection(workflows).get(10, TimeUnit.SECONDS);
+
+        assertTrue(batchResult.isSuccessful());
+        assertEquals(2, batchResult.getRunCount());
+        final List<AbstractElement> elements = getInputCollectionElements();
+        assertEquals(CollectionBatchRunner.getElementIdentifier(0), elements.get(0).getName());
+        // The inputs are uploaded concurrently, so the upload responses can be assigned to the inputs in any order.
+        assertEquals(ImmutableSet.of("input-1", "input-2"),
+                     ImmutableSet.of(((HistoryDatasetElement) elements.get(0)).getId(),
+                                     ((HistoryDatasetElement) elements.get(1)).getId()));
+        Mockito.verify(workflowsClientMock, Mockito.times(1)).runWorkflow(Mockito.any(WorkflowInputs.class));
+        for (final GalaxyWorkflow workflow : workflows)
+            assertTrue(workflow.getResult() && workflow.getOutput(OUTPUT_NAME) instanceof File);
+        Mockito.verify(historyUtilsMock).streamDataset(Mockito.eq(galaxyInstanceMock), Mockito.eq(HISTORY_ID),
+                                                       Mockito.eq("output-1"),
+                                                       Mockito.eq((File) workflows.get(0).getOutput(OUTPUT_NAME)));
+    }
+
+    /**
+     * Test that an input file that is shared by the samples is uploaded once and used for both collection elements.
+     */
+    @Test
+    public void testSharedInputUploadedOnce() throws Exception {
+        final GalaxyWorkflowEngine workflowEngine = createWorkflowEngine();
+        final File sharedInputFile = createInputFile("shared sample");
+        final List<GalaxyWorkflow> workflows = createWorkflows(workflowEngine, sharedInputFile, sharedInputFile);
+
+        assertTrue(workflowEngine.runWorkflowsAsCollection(workflows).get(10, TimeUnit.SECONDS).isSuccessful());
+        Mockito.verify(toolsClientMock, Mockito.times(1))
+                .uploadRequest(Mockito.any(ToolsClient.FileUploadRequest.class));
+        final List<AbstractElement> elements = getInputCollectionElements();
+        assertEquals("input-1", ((HistoryDatasetElement) elements.get(0)).getId());
+        assertEquals("input-1", ((HistoryDatasetElement) elements.get(1)).getId());
+        // The upload of the input file is tracked by dataset ID instead of waiting for the whole history.
+        Mockito.verify(historiesClientMock, Mockito.never()).showHistory(Mockito.anyString());
+    }
+
+    /**
+     * Test that the batch history is released when preparing the batch fails.
+     */
+    @Test
+    public void testPreparationFailureReleasesHistory() throws Exception {
+        Mockito.when(workflowsClientMock.getWorkflows())
+                .thenReturn(Collections.<com.github.jmchilton.blend4j.galaxy.beans.Workflow>emptyList());
+        Mockito.when(workflowsClientMock.importWorkflow(Mockito.anyString()))
+                .thenThrow(new IllegalStateException("The Galaxy server is not available."));
+        final GalaxyWorkflowEngine workflowEngine = createWorkflowEngine();
+        final List<GalaxyWorkflow> workflows = createWorkflows(workflowEngine, createInputFile("sample 0"),
+                                                               createInputFile("sample 1"));
+
+        try {
+            workflowEngine.runWorkflowsAsCollection(workflows).get(10, TimeUnit.SECONDS);
+            fail("Running the batch should fail.");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        Mockito.verify(historiesClientMock, Mockito.timeout(10000)).deleteHistory(HISTORY_ID);
+        Mockito.verify(toolsClientMock, Mockito.never())
+                .uploadRequest(Mockito.any(ToolsClient.FileUploadRequest.class));
+    }
+
+    /**
+     * Test that workflows with different names cannot be run as one batch.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testIncompatibleWorkflows() {
+        final GalaxyInstance galaxyInstanceMock = Mockito.mock(GalaxyInstance.class);
+        final GalaxyWorkflowEngine workflowEngine = new GalaxyWorkflowEngine(galaxyInstanceMock, HISTORY_ID, null);
+        final List<GalaxyWorkflow> workflows = ImmutableList.of(
+                new GalaxyWorkflow(Constants.CONCATENATE_WORKFLOW, workflowEngine, new JSONParser()),
+                new GalaxyWorkflow(Constants.WORKFLOW_REMOVE_TOP_AND_LEFT, workflowEngine, new JSONParser()));
+        new CollectionBatchRunner(workflowEngine).runWorkflows(workflows);
+    }
+
+    /**
+     * Create a workflow engine that uses the mocks and does not wait between checks.
+     *
+     * @return the workflow engine.
+     */
+    private GalaxyWorkflowEngine createWorkflowEngine() {
+        final GalaxyWorkflowEngine workflowEngine = new GalaxyWorkflowEngine(galaxyInstanceMock, "engine-history-id",
+                                                                             historyUtilsMock);
+        workflowEngine.setWaitTimers(0, 0, 0);
+        return workflowEngine;
+    }
+
+    /**
+     * Create a workflow for each sample input file.
+     *
+     * @param workflowEngine the workflow engine.
+     * @param inputFiles     the input file of each sample.
+     * @return the workflows.
+     * @throws IOException if creating a download directory fails.
+     */
+    private List<GalaxyWorkflow> createWorkflows(final GalaxyWorkflowEngine workflowEngine, final File... inputFiles)
+            throws IOException {
+        final List<GalaxyWorkflow> workflows = new ArrayList<>();
+        for (final File inputFile : inputFiles) {
+            final GalaxyWorkflow workflow = new GalaxyWorkflow(Constants.CONCATENATE_WORKFLOW, workflowEngine,
+                                                               new JSONParser());
+            workflow.addInput(INPUT_NAME, inputFile);
+            workflow.setDownloadDirectory(temporaryFolder.newFolder().getPath());
+            workflows.add(workflow);
+        }
+        return workflows;
+    }
+
+    /**
+     * Get the elements of the input collection that was created.
+     *
+     * @return the elements of the input collection.
+     */
+    private List<AbstractElement> getInputCollectionElements() {
+        final ArgumentCaptor<CollectionDescription> descriptionCaptor
+                = ArgumentCaptor.forClass(CollectionDescription.class);
+        Mockito.verify(historiesClientMock).createDatasetCollection(Mockito.eq(HISTORY_ID),
+                                                                    descriptionCaptor.capture());
+        return descriptionCaptor.getValue().getDatasetElements();
+    }
+
+    /**
+     * Mock the workflows client, so the workflow registry finds the workflow with one input.
+     *
+     * @param workflowsClientMock the workflows client mock.
+     */
+    private void mockWorkflowRegistry(final WorkflowsClient workflowsClientMock) {
+        final com.github.jmchilton.blend4j.galaxy.beans.Workflow blend4jWorkflow
+                = new com.github.jmchilton.blend4j.galaxy.beans.Workflow();
+        blend4jWorkflow.setName(Constants.CONCATENATE_WORKFLOW);
+        blend4jWorkflow.setId("workflow-id");
+        Mockito.when(workflowsClientMock.getWorkflows()).thenReturn(ImmutableList.of(blend4jWorkflow));
+        final WorkflowInputDefinition inputDefinition = new WorkflowInputDefinition();
+        inputDefinition.setLabel(INPUT_NAME);
+        final WorkflowDetails workflowDetailsMock = Mockito.mock(WorkflowDetails.class);
+        Mockito.when(workflowDetailsMock.getInputs()).thenReturn(ImmutableMap.of("0", inputDefinition));
+        Mockito.when(workflowsClientMock.showWorkflow("workflow-id")).thenReturn(workflowDetailsMock);
+    }
+
+    /**
+     * Create the contents of the batch history: the uploaded and output datasets and the input and output collections.
+     *
+     * @return the history contents.
+     */
+    private List<HistoryContents> createHistoryContents() {
+        final List<HistoryContents> historyContentsList = new ArrayList<>();
+        for (final String datasetId : ImmutableList.of("input-1", "input-2", "output-1", "output-2")) {
+            final HistoryContents datasetContents = new HistoryContents();
+            datasetContents.setId(datasetId);
+            datasetContents.setName(datasetId);
+            datasetContents.setState(DatasetStates.OK);
+            historyContentsList.add(datasetContents);
+        }
+        for (final String collectionId : ImmutableList.of(INPUT_COLLECTION_ID, OUTPUT_COLLECTION_ID)) {
+            final HistoryContents collectionContents = new HistoryContents();
+            collectionContents.setId(collectionId);
+            collectionContents.setName(collectionId);
+            collectionContents.setHistoryContentType(COLLECTION_CONTENT_TYPE);
+            historyContentsList.add(collectionContents);
+        }
+        return historyContentsList;
+    }
+
+    /**
+     * Create an element of the output collection.
+     *
+     * @param sampleIndex the zero-based index of the sample.
+     * @param datasetId   the ID of the output dataset.
+     * @return the collection element.
+     */
+    private CollectionElementResponse createElement(final int sampleIndex, final String datasetId) {
+        final CollectionElementResponse element = new CollectionElementResponse();
+        element.setElementIdentifier(CollectionBatchRunner.getElementIdentifier(sampleIndex));
+        element.setResponseObject(createDataset(datasetId));
+        return element;
+    }
+
+    /**
+     * Create a dataset that is ok.
+     *
+     * @param datasetId the dataset ID.
+     * @return the dataset.
+     */
+    private Dataset createDataset(final String datasetId) {
+        final Dataset dataset = new Dataset();
+        dataset.setId(datasetId);
+        dataset.setName(OUTPUT_NAME);
+        dataset.setFileExt(GalaxyWorkflowEngine.FILE_TYPE_TEXT);
+        dataset.setState(DatasetStates.OK);
+        return dataset;
+    }
+
+    /**
+     * Create an input file with one line.
+     *
+     * @param content the line to write to the file.
+     * @return the input file.
+     * @throws IOException if writing the file fails.
+     */
+    private File createInputFile(final String content) throws IOException {
+        final File inputFile = temporaryFolder.newFile();
+        Files.write(inputFile.toPath(), Collections.singletonList(content), StandardCharsets.UTF_8);
+        return inputFile;
+    }
+}
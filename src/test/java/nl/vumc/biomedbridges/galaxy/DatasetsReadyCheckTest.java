@@ -0,0 +1,177 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.galaxy;
+
+import com.github.jmchilton.blend4j.galaxy.GalaxyInstance;
+import com.github.jmchilton.blend4j.galaxy.HistoriesClient;
+import com.github.jmchilton.blend4j.galaxy.beans.HistoryContents;
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for the DatasetsReadyCheck class.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class DatasetsReadyCheckTest {
+    /**
+     * The ID of the history that contains the datasets.
+     */
+    private static final String HISTORY_ID = "history-id";
+
+    /**
+     * The Galaxy instance mock.
+     */
+    private GalaxyInstance galaxyInstanceMock;
+
+    /**
+     * The histories client mock.
+     */
+    private HistoriesClient historiesClientMock;
+
+    /**
+     * The history utils mock, which retrieves the tracked datasets.
+     */
+    private HistoryUtils historyUtilsMock;
+
+    /**
+     * The index of the history that contains the datasets.
+     */
+    private HistoryContentsIndex index;
+
+    /**
+     * Create the mocks and the history index.
+     */
+    @Before
+    public void setUp() {
+        galaxyInstanceMock = Mockito.mock(GalaxyInstance.class);
+        historiesClientMock = Mockito.mock(HistoriesClient.class);
+        historyUtilsMock = Mockito.mock(HistoryUtils.class);
+        Mockito.when(galaxyInstanceMock.getHistoriesClient()).thenReturn(historiesClientMock);
+        index = new HistoryContentsIndex(galaxyInstanceMock, historyUtilsMock, HISTORY_ID);
+    }
+
+    /**
+     * Test that the check is complete when all tracked datasets are in a terminal state, and that only the tracked
+     * datasets that are still pending are retrieved, with one request for each probe.
+     */
+    @Test
+    public void testIsComplete() {
+        final List<String> bothIds = Arrays.asList("id-1", "id-2");
+        final List<String> firstId = Collections.singletonList("id-1");
+        mockDatasets(bothIds, createContents("id-1", "queued"), createContents("id-2", "ok"));
+        Mockito.when(historyUtilsMock.showDatasets(galaxyInstanceMock, HISTORY_ID, firstId))
+                .thenReturn(ImmutableList.of(createContents("id-1", "running")),
+                            ImmutableList.of(createContents("id-1", "error")));
+
+        final DatasetsReadyCheck check = new DatasetsReadyCheck(index, bothIds);
+        assertFalse(check.isComplete());
+        assertFalse(check.isComplete());
+        assertTrue(check.isComplete());
+        assertEquals(firstId, check.getFailedDatasetIds());
+        Mockito.verify(historyUtilsMock, Mockito.times(1)).showDatasets(galaxyInstanceMock, HISTORY_ID, bothIds);
+        Mockito.verify(historyUtilsMock, Mockito.times(2)).showDatasets(galaxyInstanceMock, HISTORY_ID, firstId);
+        Mockito.verify(historiesClientMock, Mockito.never()).showDataset(Mockito.anyString(), Mockito.anyString());
+        Mockito.verify(historiesClientMock, Mockito.never()).showHistoryContents(Mockito.anyString());
+    }
+
+    /**
+     * Test that the ready listener is notified once for each tracked dataset as soon as it is ok.
+     */
+    @Test
+    public void testReadyListener() {
+        final List<String> bothIds = Arrays.asList("id-1", "id-2");
+        mockDatasets(bothIds, createContents("id-1", "ok"), createContents("id-2", "running"));
+        mockDatasets(Collections.singletonList("id-2"), createContents("id-2", "ok"));
+        final List<String> readyDatasetIds = new ArrayList<>();
+        final DatasetReadyListener readyListener = new DatasetReadyListener() {
+            @Override
+            public void datasetReady(final String datasetId) {
+                readyDatasetIds.add(datasetId);
+            }
+        };
+
+        final DatasetsReadyCheck check = new DatasetsReadyCheck(index, bothIds, readyListener);
+        assertFalse(check.isComplete());
+        assertEquals(Collections.singletonList("id-1"), readyDatasetIds);
+        assertTrue(check.isComplete());
+        assertEquals(bothIds, readyDatasetIds);
+    }
+
+    /**
+     * Test that tracked datasets that were deleted, purged or removed from the history have failed, instead of keeping
+     * the check incomplete until the deadline.
+     */
+    @Test
+    public void testDeletedDatasets() {
+        final List<String> datasetIds = Arrays.asList("id-1", "id-2", "id-3", "id-4");
+        final HistoryContents deletedContents = createContents("id-2", "ok");
+        deletedContents.setDeleted(true);
+        final HistoryContents purgedContents = createContents("id-3", "running");
+        purgedContents.setDeleted(true);
+        purgedContents.setPurged(true);
+        mockDatasets(datasetIds, createContents("id-1", "ok"), deletedContents, purgedContents);
+
+        final DatasetsReadyCheck check = new DatasetsReadyCheck(index, datasetIds);
+        assertTrue(check.isComplete());
+        assertEquals(Arrays.asList("id-2", "id-3", "id-4"), check.getFailedDatasetIds());
+    }
+
+    /**
+     * Test that the whole history is refreshed when the index has no Galaxy instance, and that a tracked dataset that
+     * is not in the history yet keeps the check incomplete.
+     */
+    @Test
+    public void testWithoutGalaxyInstance() {
+        Mockito.when(historiesClientMock.showHistoryContents(HISTORY_ID))
+                .thenReturn(Collections.singletonList(createContents("id-1", "ok")));
+
+        final HistoryContentsIndex historyIndex = new HistoryContentsIndex(historiesClientMock, HISTORY_ID);
+        final DatasetsReadyCheck check = new DatasetsReadyCheck(historyIndex, Arrays.asList("id-1", "id-2"));
+        assertFalse(check.isComplete());
+        assertTrue(check.getFailedDatasetIds().isEmpty());
+        Mockito.verify(historiesClientMock, Mockito.times(1)).showHistoryContents(HISTORY_ID);
+    }
+
+    /**
+     * Let the history utils mock return datasets when specific datasets are requested.
+     *
+     * @param datasetIds the IDs of the requested datasets.
+     * @param datasets   the datasets to return.
+     */
+    private void mockDatasets(final Collection<String> datasetIds, final HistoryContents... datasets) {
+        Mockito.when(historyUtilsMock.showDatasets(galaxyInstanceMock, HISTORY_ID, ImmutableList.copyOf(datasetIds)))
+                .thenReturn(Arrays.asList(datasets));
+    }
+
+    /**
+     * Create a history contents object for a dataset.
+     *
+     * @param id    the dataset ID.
+     * @param state the dataset state.
+     * @return the history contents object.
+     */
+    private static HistoryContents createContents(final String id, final String state) {
+        final HistoryContents historyContents = new HistoryContents();
+        historyContents.setId(id);
+        historyContents.setName("name-" + id);
+        historyContents.setState(state);
+        return historyContents;
+    }
+}
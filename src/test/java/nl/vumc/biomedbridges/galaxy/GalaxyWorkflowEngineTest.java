@@ -22,6 +22,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.sun.jersey.api.client.ClientResponse;
 
 import java.io.File;
@@ -34,14 +35,17 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import nl.vumc.biomedbridges.core.Constants;
-import nl.vumc.biomedbridges.core.FileUtils;
 import nl.vumc.biomedbridges.core.Workflow;
 import nl.vumc.biomedbridges.galaxy.configuration.GalaxyConfiguration;
 
 import org.apache.http.HttpStatus;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
@@ -51,6 +55,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Unit tests for the GalaxyWorkflowEngine class.
@@ -215,8 +220,11 @@ public class GalaxyWorkflowEngineTest {
         Mockito.when(workflowDetailsMock.getSteps()).thenReturn(workflowSteps);
         final List<String> workflowOutputIds = getWorkflowOutputIds(outputIdCount, normalOutputIdOrder, outputId1, outputId2);
         Mockito.when(workflowOutputsMock.getOutputIds()).thenReturn(workflowOutputIds);
-        final List<HistoryContents> historyContentsList = getHistoryContentsList(workflowOutputIds);
+        final List<HistoryContents> historyContentsList = getHistoryContentsList(workflowOutputIds, historyReady);
         Mockito.when(historiesClientMock.showHistoryContents(Mockito.eq(historyId))).thenReturn(historyContentsList);
+        Mockito.when(historyUtilsMock.showDatasets(Mockito.eq(galaxyInstanceMock), Mockito.eq(historyId),
+                                                   Mockito.anyCollectionOf(String.class)))
+                .thenReturn(historyContentsList);
         Mockito.when(galaxyWorkflowMock.getAutomaticDownload()).thenReturn(automaticDownload);
         if (automaticDownload) {
             Mockito.when(historiesClientMock.showDataset(Mockito.eq(historyId), Mockito.eq(outputId1)))
@@ -227,38 +235,6 @@ public class GalaxyWorkflowEngineTest {
             Mockito.when(datasetMock2.getDataTypeExt()).thenReturn(GalaxyWorkflowEngine.FILE_TYPE_TEXT);
         }
 
-//        final Answer<Boolean> downloadDatasetAnswer = invocationOnMock -> {
-//            final int datasetIdArgumentIndex = 3;
-//            final File outputFile = new File(GalaxyWorkflowEngine.OUTPUT_FILE_PATH);
-//            if (outputId2.equals(invocationOnMock.getArguments()[datasetIdArgumentIndex])) {
-//                if (outputFile.exists())
-//                    assertTrue(outputFile.delete());
-//            } else {
-//                if (!outputFile.exists())
-//                    FileUtils.createFile(outputFile.getAbsolutePath(), "GalaxyWorkflowEngineTest.testRunWorkflow");
-//            }
-//            return true;
-//        };
-        final Answer<Boolean> downloadDatasetAnswer = new Answer<Boolean>() {
-            @Override
-            public Boolean answer(final InvocationOnMock invocationOnMock) throws Throwable {
-                final int datasetIdArgumentIndex = 3;
-                final File outputFile = new File(GalaxyWorkflowEngine.OUTPUT_FILE_PATH);
-                if (outputId2.equals(invocationOnMock.getArguments()[datasetIdArgumentIndex])) {
-                    if (outputFile.exists())
-                        assertTrue(outputFile.delete());
-                } else {
-                    if (!outputFile.exists())
-                        FileUtils.createFile(outputFile.getAbsolutePath(), "GalaxyWorkflowEngineTest.testRunWorkflow");
-                }
-                return true;
-            }
-        };
-        Mockito.when(historyUtilsMock.downloadDataset(Mockito.eq(galaxyInstanceMock), Mockito.eq(historiesClientMock),
-                                                      Mockito.eq(historyId), Mockito.anyString(),
-                                                      Mockito.eq(GalaxyWorkflowEngine.OUTPUT_FILE_PATH)))
-                .thenAnswer(downloadDatasetAnswer);
-
         final GalaxyWorkflowEngine galaxyWorkflowEngine = new GalaxyWorkflowEngine(galaxyInstanceMock, historyId,
                                                                                    historyUtilsMock);
 
@@ -299,13 +275,16 @@ public class GalaxyWorkflowEngineTest {
      * Get the history contents list that corresponds to the workflow output IDs.
      *
      * @param workflowOutputIds the workflow output IDs.
+     * @param outputsReady      whether the output datasets are ready.
      * @return the history contents list.
      */
-    private List<HistoryContents> getHistoryContentsList(final List<String> workflowOutputIds) {
+    private List<HistoryContents> getHistoryContentsList(final List<String> workflowOutputIds, final boolean outputsReady) {
         final List<HistoryContents> historyContentsList = new ArrayList<>();
         for (final String workflowOutputId : workflowOutputIds) {
             final HistoryContents historyContents = new HistoryContents();
+            historyContents.setId(workflowOutputId);
             historyContents.setHid(workflowOutputId.hashCode());
+            historyContents.setState(outputsReady ? DatasetStates.OK : "running");
             historyContents.setName("name-for-" + workflowOutputId);
             historyContentsList.add(historyContents);
         }
@@ -338,6 +317,111 @@ public class GalaxyWorkflowEngineTest {
                     galaxyWorkflowEngine.downloadOutputFile(workflow, outputId));
     }
 
+    /**
+     * Test that a run that fails while it is being prepared makes the history of the engine available again, so the
+     * next run uses that history instead of leasing one from the history pool.
+     */
+    @Test
+    public void testPreparationFailureReleasesHistory() throws Exception {
+        final GalaxyInstance galaxyInstanceMock = Mockito.mock(GalaxyInstance.class);
+        final HistoriesClient historiesClientMock = Mockito.mock(HistoriesClient.class);
+        final GalaxyWorkflow galaxyWorkflowMock = Mockito.mock(GalaxyWorkflow.class);
+        Mockito.when(galaxyInstanceMock.getHistoriesClient()).thenReturn(historiesClientMock);
+        Mockito.when(galaxyInstanceMock.getWorkflowsClient()).thenReturn(Mockito.mock(WorkflowsClient.class));
+        Mockito.when(galaxyWorkflowMock.getName()).thenReturn("workflow-name");
+        Mockito.when(galaxyWorkflowMock.ensureWorkflowIsOnServer(Mockito.any(WorkflowRegistry.class)))
+                .thenThrow(new IllegalStateException("The Galaxy server is not available."));
+
+        final GalaxyWorkflowEngine galaxyWorkflowEngine = new GalaxyWorkflowEngine(galaxyInstanceMock, "history-id",
+                                                                                   new HistoryUtils());
+        for (int runIndex = 0; runIndex < 2; runIndex++)
+            try {
+                galaxyWorkflowEngine.runWorkflow(galaxyWorkflowMock);
+                fail("Running the workflow should fail.");
+            } catch (final IllegalStateException e) {
+                assertEquals("The Galaxy server is not available.", e.getMessage());
+            }
+        Mockito.verify(historiesClientMock, Mockito.never()).create(Mockito.any(History.class));
+    }
+
+    /**
+     * Test that releasing the histories of the engine is deferred while runs use them: the history of the engine and
+     * the history that was leased (with the configured name) for a concurrent run are released when the runs end.
+     */
+    @Test
+    public void testReleaseHistoryInUse() throws Exception {
+        final GalaxyInstance galaxyInstanceMock = Mockito.mock(GalaxyInstance.class);
+        final HistoriesClient historiesClientMock = Mockito.mock(HistoriesClient.class);
+        final History leasedHistory = new History("configured history");
+        leasedHistory.setId("leased-history-id");
+        Mockito.when(galaxyInstanceMock.getHistoriesClient()).thenReturn(historiesClientMock);
+        Mockito.when(galaxyInstanceMock.getWorkflowsClient()).thenReturn(Mockito.mock(WorkflowsClient.class));
+        Mockito.when(historiesClientMock.create(Mockito.any(History.class))).thenReturn(leasedHistory);
+        final CountDownLatch runsStarted = new CountDownLatch(2);
+        final CountDownLatch serverAvailable = new CountDownLatch(1);
+        final List<GalaxyWorkflow> workflowMocks = new ArrayList<>();
+        for (int runIndex = 0; runIndex < 2; runIndex++) {
+            final GalaxyWorkflow galaxyWorkflowMock = Mockito.mock(GalaxyWorkflow.class);
+            Mockito.when(galaxyWorkflowMock.getName()).thenReturn("workflow-name");
+            Mockito.when(galaxyWorkflowMock.ensureWorkflowIsOnServer(Mockito.any(WorkflowRegistry.class)))
+                    .thenAnswer(new Answer<Boolean>() {
+                        @Override
+                        public Boolean answer(final InvocationOnMock invocation) throws InterruptedException {
+                            runsStarted.countDown();
+                            serverAvailable.await();
+                            throw new IllegalStateException("The Galaxy server is not available.");
+                        }
+                    });
+            workflowMocks.add(galaxyWorkflowMock);
+        }
+
+        final GalaxyWorkflowEngine galaxyWorkflowEngine = new GalaxyWorkflowEngine(galaxyInstanceMock, "history-id",
+                                                                                   new HistoryUtils());
+        galaxyWorkflowEngine.setHistoryName("configured history");
+        final List<ListenableFuture<Workflow>> runFutures = new ArrayList<>();
+        for (final GalaxyWorkflow galaxyWorkflowMock : workflowMocks)
+            runFutures.add(galaxyWorkflowEngine.runWorkflowAsync(galaxyWorkflowMock));
+        assertTrue(runsStarted.await(10, TimeUnit.SECONDS));
+        final ArgumentCaptor<History> historyCaptor = ArgumentCaptor.forClass(History.class);
+        Mockito.verify(historiesClientMock).create(historyCaptor.capture());
+        assertEquals("configured history", historyCaptor.getValue().getName());
+
+        final ListenableFuture<Boolean> releaseFuture = galaxyWorkflowEngine.releaseHistory();
+        galaxyWorkflowEngine.close();
+        assertFalse(releaseFuture.isDone());
+        Mockito.verify(historiesClientMock, Mockito.never()).showHistoryContents(Mockito.anyString());
+        Mockito.verify(historiesClientMock, Mockito.never()).deleteHistory(Mockito.anyString());
+
+        serverAvailable.countDown();
+        for (final ListenableFuture<Workflow> runFuture : runFutures)
+            try {
+                runFuture.get(10, TimeUnit.SECONDS);
+                fail("Running the workflow should fail.");
+            } catch (final ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        assertTrue(releaseFuture.get(10, TimeUnit.SECONDS));
+        Mockito.verify(historiesClientMock, Mockito.timeout(10000)).showHistoryContents("history-id");
+        Mockito.verify(historiesClientMock, Mockito.timeout(10000)).showHistoryContents("leased-history-id");
+    }
+
+    /**
+     * Test that closing a workflow closes the engine (and releases its history) only if the workflow owns the engine.
+     */
+    @Test
+    public void testCloseWorkflow() throws Exception {
+        final GalaxyInstance galaxyInstanceMock = Mockito.mock(GalaxyInstance.class);
+        final HistoriesClient historiesClientMock = Mockito.mock(HistoriesClient.class);
+        Mockito.when(galaxyInstanceMock.getHistoriesClient()).thenReturn(historiesClientMock);
+        final GalaxyWorkflowEngine galaxyWorkflowEngine = new GalaxyWorkflowEngine(galaxyInstanceMock, "history-id",
+                                                                                   new HistoryUtils());
+
+        galaxyWorkflowEngine.getWorkflow("workflow-name").close();
+        galaxyWorkflowEngine.getOwningWorkflow("workflow-name").close();
+        assertTrue(galaxyWorkflowEngine.releaseHistory().get(10, TimeUnit.SECONDS));
+        Mockito.verify(historiesClientMock, Mockito.times(1)).showHistoryContents("history-id");
+    }
+
     /**
      * Test the getOutputIdForOutputName method.
      */
@@ -355,4 +439,15 @@ public class GalaxyWorkflowEngineTest {
         final GalaxyWorkflowEngine galaxyWorkflowEngine = new GalaxyWorkflowEngine(null, null, null);
         assertFalse(galaxyWorkflowEngine.runWorkflow(null));
     }
+
+    /**
+     * Test the runWorkflowAsync method with a null Galaxy instance.
+     */
+    @Test
+    public void testRunWorkflowAsyncGalaxyNull() throws Exception {
+        final GalaxyWorkflowEngine galaxyWorkflowEngine = new GalaxyWorkflowEngine(null, null, null);
+        final Workflow workflow = galaxyWorkflowEngine.getWorkflow("workflow-name");
+        workflow.setResult(true);
+        assertFalse(galaxyWorkflowEngine.runWorkflowAsync(workflow).get().getResult());
+    }
 }
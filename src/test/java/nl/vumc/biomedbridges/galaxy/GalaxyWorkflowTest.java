@@ -29,6 +29,7 @@ import org.mockito.stubbing.Answer;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -129,7 +130,8 @@ public class GalaxyWorkflowTest {
 
         // Test whether downloading is handled correctly.
         workflow.setAutomaticDownload(false);
-        Mockito.when(workflowEngineMock.getOutputIdForOutputName(Mockito.eq(outputName))).thenReturn(outputId);
+        Mockito.when(workflowEngineMock.getOutputIdForOutputName(Mockito.eq(workflow), Mockito.eq(outputName)))
+                .thenReturn(outputId);
 //        final Answer<Boolean> downloadOutputFileAnswer = invocationOnMock -> {
 //            workflow.addOutput(outputName, outputFile);
 //            return true;
@@ -153,13 +155,28 @@ public class GalaxyWorkflowTest {
     }
 
     /**
-     * Test the constructor when the JSONParser.parse method throws a parse exception (which is caught by the parseJson
-     * method).
+     * Test the parseJson method when the JSONParser.parse method throws a parse exception (which is caught by the
+     * parseJson method).
      */
     @Test
-    public void testConstructorWithParseException() throws ParseException {
+    public void testParseJsonWithParseException() throws ParseException {
         final JSONParser jsonParserMock = Mockito.mock(JSONParser.class);
         Mockito.when(jsonParserMock.parse(Mockito.anyString())).thenThrow(new ParseException(6));
-        new GalaxyWorkflow(Constants.CONCATENATE_WORKFLOW, null, jsonParserMock);
+        final GalaxyWorkflow workflow = new GalaxyWorkflow(Constants.CONCATENATE_WORKFLOW, null, jsonParserMock);
+        workflow.parseJson();
+        assertTrue(workflow.getInputsMetadata().isEmpty());
+        assertTrue(workflow.getOutputsMetadata().isEmpty());
+    }
+
+    /**
+     * Test that workflow objects with the same name share the parsed workflow definition.
+     */
+    @Test
+    public void testSharedDefinition() {
+        final GalaxyWorkflow workflow1 = new GalaxyWorkflow(Constants.CONCATENATE_WORKFLOW, null, new JSONParser());
+        final GalaxyWorkflow workflow2 = new GalaxyWorkflow(Constants.CONCATENATE_WORKFLOW, null, new JSONParser());
+        assertSame(workflow1.getInputsMetadata(), workflow2.getInputsMetadata());
+        assertEquals(GalaxyWorkflowDefinition.forName(Constants.CONCATENATE_WORKFLOW).getDefinitionHash(),
+                     workflow1.getDefinitionHash());
     }
 }
@@ -0,0 +1,142 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.galaxy;
+
+import com.github.jmchilton.blend4j.galaxy.GalaxyInstance;
+import com.github.jmchilton.blend4j.galaxy.HistoriesClient;
+import com.github.jmchilton.blend4j.galaxy.beans.HistoryContents;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for the HistoryContentsIndex class.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class HistoryContentsIndexTest {
+    /**
+     * Test the lookups after a refresh.
+     */
+    @Test
+    public void testLookups() {
+        final HistoriesClient historiesClientMock = Mockito.mock(HistoriesClient.class);
+        Mockito.when(historiesClientMock.showHistoryContents("history-id"))
+                .thenReturn(Arrays.asList(createContents("id-1", "input.txt", "ok"),
+                                          createContents("id-2", "output.txt", "running"),
+                                          createContents("id-3", "input.txt", "queued")));
+        final HistoryContentsIndex index = new HistoryContentsIndex(historiesClientMock, "history-id");
+
+        assertNull(index.getDatasetId("input.txt"));
+        index.refresh();
+        assertEquals("id-1", index.getDatasetId("input.txt"));
+        assertEquals(Arrays.asList("id-1", "id-3"), index.getDatasetIds("input.txt"));
+        assertEquals("running", index.getState("id-2"));
+        assertEquals("output.txt", index.getName("id-2"));
+        assertNull(index.getState("unknown-id"));
+        assertEquals(ImmutableMap.of("input.txt", "id-3", "output.txt", "id-2"), index.getNameToIdMap());
+        Mockito.verify(historiesClientMock, Mockito.times(1)).showHistoryContents("history-id");
+    }
+
+    /**
+     * Test that a refresh updates states, renamed datasets and removed datasets.
+     */
+    @Test
+    public void testRefresh() {
+        final HistoriesClient historiesClientMock = Mockito.mock(HistoriesClient.class);
+        Mockito.when(historiesClientMock.showHistoryContents("history-id"))
+                .thenReturn(Arrays.asList(createContents("id-1", "input.txt", "queued"),
+                                          createContents("id-2", "output.txt", "running")))
+                .thenReturn(Collections.singletonList(createContents("id-1", "renamed.txt", "ok")));
+        final HistoryContentsIndex index = new HistoryContentsIndex(historiesClientMock, "history-id").refresh();
+
+        assertEquals("queued", index.getState("id-1"));
+        index.refresh();
+        assertEquals("ok", index.getState("id-1"));
+        assertNull(index.getDatasetId("input.txt"));
+        assertEquals("id-1", index.getDatasetId("renamed.txt"));
+        assertNull(index.getState("id-2"));
+        assertNull(index.getDatasetId("output.txt"));
+    }
+
+    /**
+     * Test that deleted and purged datasets are not indexed.
+     */
+    @Test
+    public void testDeletedDatasets() {
+        final HistoriesClient historiesClientMock = Mockito.mock(HistoriesClient.class);
+        final HistoryContents deletedContents = createContents("id-1", "input.txt", "ok");
+        deletedContents.setDeleted(true);
+        final HistoryContents purgedContents = createContents("id-2", "input.txt", "ok");
+        purgedContents.setPurged(true);
+        Mockito.when(historiesClientMock.showHistoryContents("history-id"))
+                .thenReturn(Arrays.asList(deletedContents, purgedContents, createContents("id-3", "input.txt", "ok")));
+
+        assertEquals(Collections.singletonList("id-3"),
+                     new HistoryContentsIndex(historiesClientMock, "history-id").refresh().getDatasetIds("input.txt"));
+    }
+
+    /**
+     * Test that refreshing specific datasets retrieves only these datasets with one request and removes deleted and
+     * missing datasets.
+     */
+    @Test
+    public void testRefreshDatasets() {
+        final GalaxyInstance galaxyInstanceMock = Mockito.mock(GalaxyInstance.class);
+        final HistoriesClient historiesClientMock = Mockito.mock(HistoriesClient.class);
+        final HistoryUtils historyUtilsMock = Mockito.mock(HistoryUtils.class);
+        Mockito.when(galaxyInstanceMock.getHistoriesClient()).thenReturn(historiesClientMock);
+        Mockito.when(historiesClientMock.showHistoryContents("history-id"))
+                .thenReturn(Arrays.asList(createContents("id-1", "input.txt", "queued"),
+                                          createContents("id-2", "output.txt", "running"),
+                                          createContents("id-3", "log.txt", "running")));
+        final HistoryContents deletedContents = createContents("id-2", "output.txt", "running");
+        deletedContents.setDeleted(true);
+        final List<String> datasetIds = Arrays.asList("id-1", "id-2", "id-3");
+        Mockito.when(historyUtilsMock.showDatasets(galaxyInstanceMock, "history-id", datasetIds))
+                .thenReturn(Arrays.asList(createContents("id-1", "input.txt", "ok"), deletedContents));
+        final HistoryContentsIndex index = new HistoryContentsIndex(galaxyInstanceMock, historyUtilsMock, "history-id")
+                .refresh();
+
+        index.refreshDatasets(datasetIds);
+        assertEquals("ok", index.getState("id-1"));
+        assertFalse(index.isRemoved("id-1"));
+        assertNull(index.getState("id-2"));
+        assertNull(index.getDatasetId("output.txt"));
+        assertTrue(index.isRemoved("id-2"));
+        assertNull(index.getDatasetId("log.txt"));
+        assertTrue(index.isRemoved("id-3"));
+        Mockito.verify(historiesClientMock, Mockito.times(1)).showHistoryContents("history-id");
+        Mockito.verify(historyUtilsMock, Mockito.times(1)).showDatasets(galaxyInstanceMock, "history-id", datasetIds);
+        Mockito.verify(historiesClientMock, Mockito.never()).showDataset(Mockito.anyString(), Mockito.anyString());
+    }
+
+    /**
+     * Create a history contents object.
+     *
+     * @param id    the dataset ID.
+     * @param name  the dataset name.
+     * @param state the dataset state.
+     * @return the history contents object.
+     */
+    private static HistoryContents createContents(final String id, final String name, final String state) {
+        final HistoryContents historyContents = new HistoryContents();
+        historyContents.setId(id);
+        historyContents.setName(name);
+        historyContents.setState(state);
+        return historyContents;
+    }
+}
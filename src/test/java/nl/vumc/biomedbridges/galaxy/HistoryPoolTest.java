@@ -0,0 +1,222 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.galaxy;
+
+import com.github.jmchilton.blend4j.galaxy.GalaxyInstance;
+import com.github.jmchilton.blend4j.galaxy.HistoriesClient;
+import com.github.jmchilton.blend4j.galaxy.beans.History;
+import com.github.jmchilton.blend4j.galaxy.beans.HistoryContents;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for the HistoryPool class.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class HistoryPoolTest {
+    /**
+     * The Galaxy instance mock.
+     */
+    private GalaxyInstance galaxyInstanceMock;
+
+    /**
+     * The histories client mock.
+     */
+    private HistoriesClient historiesClientMock;
+
+    /**
+     * The history utils mock.
+     */
+    private HistoryUtils historyUtilsMock;
+
+    /**
+     * The number of histories that were created.
+     */
+    private int createdCount;
+
+    /**
+     * Set up the mocks; each created history gets a new ID.
+     */
+    @Before
+    public void setUp() {
+        galaxyInstanceMock = Mockito.mock(GalaxyInstance.class);
+        historiesClientMock = Mockito.mock(HistoriesClient.class);
+        historyUtilsMock = Mockito.mock(HistoryUtils.class);
+        Mockito.when(galaxyInstanceMock.getHistoriesClient()).thenReturn(historiesClientMock);
+        Mockito.when(historiesClientMock.create(Mockito.any(History.class))).thenAnswer(new Answer<History>() {
+            @Override
+            public History answer(final InvocationOnMock invocation) throws Throwable {
+                final History history = new History(((History) invocation.getArguments()[0]).getName());
+                history.setId("history-" + ++createdCount);
+                return history;
+            }
+        });
+    }
+
+    /**
+     * Test prefilling the pool and leasing histories.
+     */
+    @Test
+    public void testPrefillAndLease() throws Exception {
+        final HistoryPool historyPool = createPool(2);
+        assertEquals(2, (int) historyPool.prefill(3).get());
+        assertEquals(2, historyPool.getIdleCount());
+        assertEquals("history-1", historyPool.leaseHistory("name"));
+        assertEquals("history-2", historyPool.leaseHistory("name"));
+        assertEquals("history-3", historyPool.leaseHistory("name"));
+        assertEquals(0, historyPool.getIdleCount());
+    }
+
+    /**
+     * Test that a released history is cleaned and reused.
+     */
+    @Test
+    public void testReleaseRecyclesHistory() throws Exception {
+        final HistoryContents activeContents = new HistoryContents();
+        activeContents.setId("dataset-1");
+        final HistoryContents purgedContents = new HistoryContents();
+        purgedContents.setId("dataset-2");
+        purgedContents.setPurged(true);
+        Mockito.when(historiesClientMock.showHistoryContents("history-1"))
+                .thenReturn(Arrays.asList(activeContents, purgedContents));
+        Mockito.when(historyUtilsMock.purgeDataset(galaxyInstanceMock, "history-1", "dataset-1")).thenReturn(true);
+
+        final HistoryPool historyPool = createPool(1);
+        final String historyId = historyPool.leaseHistory("name");
+        assertTrue(historyPool.releaseHistory(historyId).get());
+        Mockito.verify(historyUtilsMock).purgeDataset(galaxyInstanceMock, "history-1", "dataset-1");
+        Mockito.verify(historyUtilsMock, Mockito.never()).purgeDataset(galaxyInstanceMock, "history-1", "dataset-2");
+        assertEquals(historyId, historyPool.leaseHistory("name"));
+        Mockito.verify(historiesClientMock, Mockito.times(1)).create(Mockito.any(History.class));
+    }
+
+    /**
+     * Test that a history is deleted when it is released while the pool is full or when cleaning fails.
+     */
+    @Test
+    public void testReleaseDeletesHistory() throws Exception {
+        final HistoryContents contents = new HistoryContents();
+        contents.setId("dataset-1");
+        Mockito.when(historiesClientMock.showHistoryContents(Mockito.anyString())).thenReturn(Arrays.asList(contents));
+
+        final HistoryPool fullPool = createPool(0);
+        assertFalse(fullPool.releaseHistory(fullPool.leaseHistory("name")).get());
+        Mockito.verify(historiesClientMock).deleteHistory("history-1");
+
+        final HistoryPool historyPool = createPool(1);
+        assertFalse(historyPool.releaseHistory(historyPool.leaseHistory("name")).get());
+        Mockito.verify(historiesClientMock).deleteHistory("history-2");
+        assertEquals(0, historyPool.getIdleCount());
+    }
+
+    /**
+     * Test that concurrent releases cannot push the pool over its capacity: all releases pass the capacity check
+     * before any of them returns its history to the pool.
+     */
+    @Test
+    public void testConcurrentReleasesRespectCapacity() throws Exception {
+        final int releaseCount = 4;
+        final CountDownLatch cleaningLatch = new CountDownLatch(releaseCount);
+        Mockito.when(historiesClientMock.showHistoryContents(Mockito.anyString()))
+                .thenAnswer(new Answer<List<HistoryContents>>() {
+                    @Override
+                    public List<HistoryContents> answer(final InvocationOnMock invocation) throws Throwable {
+                        cleaningLatch.countDown();
+                        cleaningLatch.await();
+                        return Collections.emptyList();
+                    }
+                });
+        final ListeningExecutorService executor
+                = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(releaseCount));
+        try {
+            final HistoryPool historyPool = new HistoryPool(galaxyInstanceMock, historyUtilsMock, 1, executor);
+            final List<ListenableFuture<Boolean>> releases = new ArrayList<>();
+            for (int releaseIndex = 0; releaseIndex < releaseCount; releaseIndex++)
+                releases.add(historyPool.releaseHistory("history-" + releaseIndex));
+
+            assertEquals(1, Collections.frequency(Futures.allAsList(releases).get(10, TimeUnit.SECONDS), true));
+            assertEquals(1, historyPool.getIdleCount());
+            Mockito.verify(historiesClientMock, Mockito.times(releaseCount - 1)).deleteHistory(Mockito.anyString());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Test that the dataset collections in a released history are deleted with the collection endpoint instead of
+     * being purged as datasets.
+     */
+    @Test
+    public void testReleaseDeletesCollections() throws Exception {
+        final HistoryContents datasetContents = new HistoryContents();
+        datasetContents.setId("dataset-1");
+        final HistoryContents collectionContents = new HistoryContents();
+        collectionContents.setId("collection-1");
+        collectionContents.setHistoryContentType(HistoryUtils.COLLECTION_CONTENT_TYPE);
+        Mockito.when(historiesClientMock.showHistoryContents("history-1"))
+                .thenReturn(Arrays.asList(datasetContents, collectionContents));
+        Mockito.when(historyUtilsMock.purgeDataset(galaxyInstanceMock, "history-1", "dataset-1")).thenReturn(true);
+        Mockito.when(historyUtilsMock.deleteDatasetCollection(galaxyInstanceMock, "history-1", "collection-1"))
+                .thenReturn(true);
+
+        assertTrue(createPool(1).releaseHistory("history-1").get());
+        Mockito.verify(historyUtilsMock).deleteDatasetCollection(galaxyInstanceMock, "history-1", "collection-1");
+        Mockito.verify(historyUtilsMock, Mockito.never()).purgeDataset(galaxyInstanceMock, "history-1",
+                                                                       "collection-1");
+    }
+
+    /**
+     * Test that lowering the capacity deletes the idle histories that do not fit anymore.
+     */
+    @Test
+    public void testLowerCapacity() throws Exception {
+        final HistoryPool historyPool = createPool(3);
+        assertEquals(3, (int) historyPool.prefill(3).get());
+        historyPool.setCapacity(1);
+        assertEquals(1, historyPool.getIdleCount());
+        Mockito.verify(historiesClientMock, Mockito.times(2)).deleteHistory(Mockito.anyString());
+    }
+
+    /**
+     * Test that there is one shared pool for each Galaxy instance.
+     */
+    @Test
+    public void testForInstance() {
+        assertSame(HistoryPool.forInstance(galaxyInstanceMock), HistoryPool.forInstance(galaxyInstanceMock));
+    }
+
+    /**
+     * Create a history pool that runs its background tasks directly.
+     *
+     * @param capacity the capacity of the pool.
+     * @return the history pool.
+     */
+    private HistoryPool createPool(final int capacity) {
+        return new HistoryPool(galaxyInstanceMock, historyUtilsMock, capacity, MoreExecutors.newDirectExecutorService());
+    }
+}
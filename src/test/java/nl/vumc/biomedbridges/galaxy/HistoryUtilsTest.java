@@ -9,21 +9,33 @@ import com.github.jmchilton.blend4j.galaxy.GalaxyInstance;
 import com.github.jmchilton.blend4j.galaxy.HistoriesClient;
 import com.github.jmchilton.blend4j.galaxy.beans.Dataset;
 import com.github.jmchilton.blend4j.galaxy.beans.HistoryContents;
+import com.google.common.io.ByteStreams;
+import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.WebResource;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import nl.vumc.biomedbridges.core.FileUtils;
 
+import org.apache.http.HttpStatus;
 import org.junit.Test;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Unit test for the HistoryUtils class.
@@ -35,6 +47,7 @@ public class HistoryUtilsTest {
      * Test the downloadDataset method.
      */
     @Test
+    @SuppressWarnings("deprecation")
     public void testDownloadDataset() throws Exception {
         final HistoryUtils historyUtilsSpy = Mockito.spy(new HistoryUtils());
         final HistoriesClient historiesClient = Mockito.mock(HistoriesClient.class);
@@ -86,4 +99,205 @@ public class HistoryUtilsTest {
 
         assertEquals(datasetId, historyUtils.getDatasetIdByName(datasetName, historiesClientMock, historyId));
     }
+
+    /**
+     * Test the streamDataset method: a complete download followed by a resumed download.
+     */
+    @Test
+    public void testStreamDataset() throws Exception {
+        final String historyId = "history-id";
+        final String datasetId = "dataset-id";
+        final File destinationFile = new File(Paths.get("tmp", "testStreamDataset.txt").toString());
+        assertTrue(destinationFile.getParentFile().exists() || destinationFile.getParentFile().mkdirs());
+        if (destinationFile.exists())
+            assertTrue(destinationFile.delete());
+
+        final GalaxyInstance galaxyInstanceMock = Mockito.mock(GalaxyInstance.class);
+        final WebResource webResourceMock = createDisplayResourceMock(galaxyInstanceMock);
+        final WebResource.Builder builderMock = Mockito.mock(WebResource.Builder.class);
+        final ClientResponse fullResponse = createResponse(HttpStatus.SC_OK, "first part");
+        final ClientResponse partialResponse = createResponse(HttpStatus.SC_PARTIAL_CONTENT, " and second part");
+        Mockito.when(webResourceMock.get(ClientResponse.class)).thenReturn(fullResponse);
+        Mockito.when(webResourceMock.header("Range", "bytes=10-")).thenReturn(builderMock);
+        Mockito.when(builderMock.get(ClientResponse.class)).thenReturn(partialResponse);
+
+        final HistoryUtils historyUtils = new HistoryUtils();
+        assertEquals(10, historyUtils.streamDataset(galaxyInstanceMock, historyId, datasetId, destinationFile)
+                .getByteCount());
+        assertEquals(16, historyUtils.streamDataset(galaxyInstanceMock, historyId, datasetId, destinationFile)
+                .getByteCount());
+        assertEquals("first part and second part",
+                     new String(Files.readAllBytes(destinationFile.toPath()), StandardCharsets.UTF_8));
+        Mockito.verify(fullResponse).close();
+        Mockito.verify(partialResponse).close();
+        assertTrue(destinationFile.delete());
+    }
+
+    /**
+     * Test the streamDataset method with an error response.
+     */
+    @Test
+    public void testStreamDatasetError() throws Exception {
+        final GalaxyInstance galaxyInstanceMock = Mockito.mock(GalaxyInstance.class);
+        final WebResource webResourceMock = createDisplayResourceMock(galaxyInstanceMock);
+        final ClientResponse errorResponse = createResponse(HttpStatus.SC_NOT_FOUND, "");
+        Mockito.when(webResourceMock.get(ClientResponse.class)).thenReturn(errorResponse);
+
+        try {
+            new HistoryUtils().streamDataset(galaxyInstanceMock, "history-id", "dataset-id",
+                                             new File(Paths.get("tmp", "testStreamDatasetError.txt").toString()));
+            fail("An error response should result in an IOException.");
+        } catch (final IOException e) {
+            assertTrue(e.getMessage().contains("404"));
+        }
+        Mockito.verify(errorResponse).close();
+    }
+
+    /**
+     * Test the streamDataset method when the server reports that there are no remaining bytes: the download is only
+     * complete if the local file has the size of the dataset; otherwise the local file is removed.
+     */
+    @Test
+    public void testStreamDatasetRangeNotSatisfiable() throws Exception {
+        final String historyId = "history-id";
+        final String datasetId = "dataset-id";
+        final File destinationFile = new File(Paths.get("tmp", "testStreamDatasetRangeNotSatisfiable.txt").toString());
+        assertTrue(destinationFile.getParentFile().exists() || destinationFile.getParentFile().mkdirs());
+        Files.write(destinationFile.toPath(), "complete".getBytes(StandardCharsets.UTF_8));
+
+        final GalaxyInstance galaxyInstanceMock = Mockito.mock(GalaxyInstance.class);
+        final HistoriesClient historiesClientMock = Mockito.mock(HistoriesClient.class);
+        final WebResource webResourceMock = createDisplayResourceMock(galaxyInstanceMock);
+        final WebResource.Builder builderMock = Mockito.mock(WebResource.Builder.class);
+        final Dataset dataset = new Dataset();
+        dataset.setFileSize(8);
+        Mockito.when(galaxyInstanceMock.getHistoriesClient()).thenReturn(historiesClientMock);
+        Mockito.when(historiesClientMock.showDataset(historyId, datasetId)).thenReturn(dataset);
+        Mockito.when(webResourceMock.header("Range", "bytes=8-")).thenReturn(builderMock);
+        final ClientResponse completeResponse = createResponse(HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE, "");
+        final ClientResponse incompleteResponse = createResponse(HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE, "");
+        Mockito.when(builderMock.get(ClientResponse.class)).thenReturn(completeResponse).thenReturn(incompleteResponse);
+
+        final HistoryUtils historyUtils = new HistoryUtils();
+        assertEquals(0, historyUtils.streamDataset(galaxyInstanceMock, historyId, datasetId, destinationFile)
+                .getByteCount());
+        assertTrue(destinationFile.exists());
+        dataset.setFileSize(12);
+        try {
+            historyUtils.streamDataset(galaxyInstanceMock, historyId, datasetId, destinationFile);
+            fail("A local file with another size than the dataset should result in an IOException.");
+        } catch (final IOException e) {
+            assertTrue(e.getMessage().contains("416"));
+        }
+        assertFalse(destinationFile.exists());
+        Mockito.verify(completeResponse).close();
+        Mockito.verify(incompleteResponse).close();
+    }
+
+    /**
+     * Test the openDatasetStream method: a range request, and a server that ignores the range.
+     */
+    @Test
+    public void testOpenDatasetStream() throws Exception {
+        final GalaxyInstance galaxyInstanceMock = Mockito.mock(GalaxyInstance.class);
+        final WebResource webResourceMock = createDisplayResourceMock(galaxyInstanceMock);
+        final WebResource.Builder builderMock = Mockito.mock(WebResource.Builder.class);
+        final ClientResponse partialResponse = createResponse(HttpStatus.SC_PARTIAL_CONTENT, "second");
+        final ClientResponse fullResponse = createResponse(HttpStatus.SC_OK, "first second third");
+        Mockito.when(webResourceMock.header("Range", "bytes=6-11")).thenReturn(builderMock);
+        Mockito.when(builderMock.get(ClientResponse.class)).thenReturn(partialResponse).thenReturn(fullResponse);
+
+        final HistoryUtils historyUtils = new HistoryUtils();
+        for (final ClientResponse response : Arrays.asList(partialResponse, fullResponse)) {
+            try (final InputStream inputStream = historyUtils.openDatasetStream(galaxyInstanceMock, "history-id",
+                                                                                "dataset-id", 6, 6)) {
+                assertEquals("second", new String(ByteStreams.toByteArray(inputStream), StandardCharsets.UTF_8));
+            }
+            Mockito.verify(response).close();
+        }
+    }
+
+    /**
+     * Test the openDatasetStream method with an offset after the end of the dataset, for a server that ignores the
+     * range and for a server that does not: both return an empty stream and release the connection.
+     */
+    @Test
+    public void testOpenDatasetStreamAfterEnd() throws Exception {
+        final GalaxyInstance galaxyInstanceMock = Mockito.mock(GalaxyInstance.class);
+        final WebResource webResourceMock = createDisplayResourceMock(galaxyInstanceMock);
+        final WebResource.Builder builderMock = Mockito.mock(WebResource.Builder.class);
+        final ClientResponse fullResponse = createResponse(HttpStatus.SC_OK, "short");
+        final ClientResponse rangeResponse = createResponse(HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE, "");
+        Mockito.when(webResourceMock.header("Range", "bytes=10-")).thenReturn(builderMock);
+        Mockito.when(builderMock.get(ClientResponse.class)).thenReturn(fullResponse).thenReturn(rangeResponse);
+
+        final HistoryUtils historyUtils = new HistoryUtils();
+        for (final ClientResponse response : Arrays.asList(fullResponse, rangeResponse)) {
+            try (final InputStream inputStream = historyUtils.openDatasetStream(galaxyInstanceMock, "history-id",
+                                                                                "dataset-id", 10, -1)) {
+                assertEquals(-1, inputStream.read());
+            }
+            Mockito.verify(response).close();
+        }
+    }
+
+    /**
+     * Test the showDatasets method: the datasets are retrieved with one history contents request, deleted and purged
+     * datasets are returned with their flags, and collections are skipped.
+     */
+    @Test
+    public void testShowDatasets() {
+        final GalaxyInstance galaxyInstanceMock = Mockito.mock(GalaxyInstance.class);
+        final WebResource webResourceMock = createDisplayResourceMock(galaxyInstanceMock);
+        Mockito.when(webResourceMock.queryParam(Mockito.anyString(), Mockito.anyString())).thenReturn(webResourceMock);
+        Mockito.when(webResourceMock.get(String.class)).thenReturn(
+                "[{\"id\": \"id-1\", \"name\": \"output.txt\", \"state\": \"ok\", \"deleted\": false, "
+                + "\"purged\": false, \"history_content_type\": \"dataset\"}, "
+                + "{\"id\": \"id-2\", \"name\": \"log.txt\", \"state\": \"ok\", \"deleted\": true, "
+                + "\"purged\": true, \"history_content_type\": \"dataset\"}, "
+                + "{\"id\": \"id-3\", \"name\": \"list\", \"history_content_type\": \"dataset_collection\"}]");
+
+        final HistoryUtils historyUtils = new HistoryUtils();
+        final List<HistoryContents> datasets = historyUtils.showDatasets(galaxyInstanceMock, "history-id",
+                                                                         Arrays.asList("id-1", "id-2", "id-3"));
+        assertEquals(2, datasets.size());
+        assertEquals("id-1", datasets.get(0).getId());
+        assertEquals("output.txt", datasets.get(0).getName());
+        assertEquals("ok", datasets.get(0).getState());
+        assertFalse(datasets.get(0).isDeleted() || datasets.get(0).isPurged());
+        assertEquals("id-2", datasets.get(1).getId());
+        assertTrue(datasets.get(1).isDeleted() && datasets.get(1).isPurged());
+        Mockito.verify(webResourceMock).queryParam("ids", "id-1,id-2,id-3");
+        Mockito.verify(webResourceMock, Mockito.times(1)).get(String.class);
+        assertTrue(historyUtils.showDatasets(galaxyInstanceMock, "history-id", new ArrayList<String>()).isEmpty());
+        Mockito.verify(webResourceMock, Mockito.times(1)).get(String.class);
+    }
+
+    /**
+     * Create a mock for the web resource that displays a dataset.
+     *
+     * @param galaxyInstanceMock the Galaxy instance mock.
+     * @return the web resource mock.
+     */
+    private WebResource createDisplayResourceMock(final GalaxyInstance galaxyInstanceMock) {
+        final WebResource webResourceMock = Mockito.mock(WebResource.class);
+        Mockito.when(galaxyInstanceMock.getWebResource()).thenReturn(webResourceMock);
+        Mockito.when(webResourceMock.path(Mockito.anyString())).thenReturn(webResourceMock);
+        return webResourceMock;
+    }
+
+    /**
+     * Create a client response mock.
+     *
+     * @param status  the HTTP status.
+     * @param content the response content.
+     * @return the client response mock.
+     */
+    private ClientResponse createResponse(final int status, final String content) {
+        final ClientResponse clientResponse = Mockito.mock(ClientResponse.class);
+        Mockito.when(clientResponse.getStatus()).thenReturn(status);
+        Mockito.when(clientResponse.getEntityInputStream())
+                .thenReturn(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+        return clientResponse;
+    }
 }
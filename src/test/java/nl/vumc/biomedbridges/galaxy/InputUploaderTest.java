@@ -0,0 +1,124 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.galaxy;
+
+import com.github.jmchilton.blend4j.galaxy.ToolsClient;
+import com.github.jmchilton.blend4j.galaxy.beans.OutputDataset;
+import com.github.jmchilton.blend4j.galaxy.beans.ToolExecution;
+import com.sun.jersey.api.client.ClientResponse;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for the InputUploader class.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class InputUploaderTest {
+    /**
+     * Test uploading several files with a limited number of concurrent uploads.
+     */
+    @Test
+    public void testUploadFiles() throws Exception {
+        final ToolsClient toolsClientMock = Mockito.mock(ToolsClient.class);
+        final AtomicInteger activeUploads = new AtomicInteger();
+        final AtomicInteger maxActiveUploads = new AtomicInteger();
+        final AtomicInteger uploadCount = new AtomicInteger();
+        Mockito.when(toolsClientMock.uploadRequest(Mockito.any(ToolsClient.FileUploadRequest.class))).thenAnswer(new Answer<ClientResponse>() {
+            @Override
+            public ClientResponse answer(final InvocationOnMock invocation) throws Throwable {
+                final int active = activeUploads.incrementAndGet();
+                synchronized (maxActiveUploads) {
+                    maxActiveUploads.set(Math.max(maxActiveUploads.get(), active));
+                }
+                Thread.sleep(20);
+                activeUploads.decrementAndGet();
+                return createResponse(200, "dataset-" + uploadCount.incrementAndGet());
+            }
+        });
+
+        final List<File> inputFiles = Arrays.asList(new File("a.txt"), new File("b.txt"), new File("c.txt"),
+                                                    new File("d.txt"), new File("e.txt"));
+        final List<UploadedInput> uploadedInputs = new InputUploader(toolsClientMock, 2)
+                .uploadFiles("history-id", inputFiles, GalaxyWorkflowEngine.FILE_TYPE_TABULAR).get();
+
+        assertEquals(inputFiles.size(), uploadedInputs.size());
+        assertTrue(maxActiveUploads.get() <= 2);
+        final Set<String> datasetIds = new HashSet<>();
+        for (final UploadedInput uploadedInput : uploadedInputs) {
+            assertTrue(uploadedInput.isAccepted());
+            datasetIds.add(uploadedInput.getDatasetId());
+        }
+        assertEquals(inputFiles.size(), datasetIds.size());
+    }
+
+    /**
+     * Test that a rejected upload is reported without a dataset ID and that its response is closed (which releases the
+     * pooled connection).
+     */
+    @Test
+    public void testRejectedUpload() throws Exception {
+        final ToolsClient toolsClientMock = Mockito.mock(ToolsClient.class);
+        final ClientResponse clientResponse = createResponse(507, null);
+        Mockito.when(toolsClientMock.uploadRequest(Mockito.any(ToolsClient.FileUploadRequest.class))).thenReturn(clientResponse);
+
+        final List<UploadedInput> uploadedInputs = new InputUploader(toolsClientMock, 4)
+                .uploadFiles("history-id", Collections.singletonList(new File("a.txt")),
+                             GalaxyWorkflowEngine.FILE_TYPE_TEXT).get();
+
+        assertEquals(1, uploadedInputs.size());
+        assertFalse(uploadedInputs.get(0).isAccepted());
+        assertNull(uploadedInputs.get(0).getDatasetId());
+        assertEquals("a.txt", uploadedInputs.get(0).getStatistics().getName());
+        Mockito.verify(clientResponse).close();
+    }
+
+    /**
+     * Test that uploading no files results in an empty list.
+     */
+    @Test
+    public void testNoFiles() throws Exception {
+        final ToolsClient toolsClientMock = Mockito.mock(ToolsClient.class);
+        assertTrue(new InputUploader(toolsClientMock, 4).uploadFiles("history-id", Collections.<File>emptyList(),
+                                                                     GalaxyWorkflowEngine.FILE_TYPE_TEXT).get().isEmpty());
+    }
+
+    /**
+     * Create a client response mock.
+     *
+     * @param status    the HTTP status.
+     * @param datasetId the ID of the created dataset.
+     * @return the client response mock.
+     */
+    static ClientResponse createResponse(final int status, final String datasetId) {
+        final ClientResponse clientResponse = Mockito.mock(ClientResponse.class);
+        Mockito.when(clientResponse.getStatus()).thenReturn(status);
+        if (datasetId != null) {
+            final OutputDataset outputDataset = new OutputDataset();
+            outputDataset.setId(datasetId);
+            final ToolExecution toolExecution = new ToolExecution();
+            toolExecution.setOutputs(Collections.singletonList(outputDataset));
+            Mockito.when(clientResponse.getEntity(ToolExecution.class)).thenReturn(toolExecution);
+        }
+        return clientResponse;
+    }
+}
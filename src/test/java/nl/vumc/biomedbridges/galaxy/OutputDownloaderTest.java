@@ -0,0 +1,132 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.galaxy;
+
+import com.github.jmchilton.blend4j.galaxy.GalaxyInstance;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.UniformInterfaceException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for the OutputDownloader class.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class OutputDownloaderTest {
+    /**
+     * Test downloading datasets in parallel, where one download is resumed after an interruption and one fails.
+     */
+    @Test
+    public void testDownloadDatasets() throws Exception {
+        final String historyId = "history-id";
+        final GalaxyInstance galaxyInstanceMock = Mockito.mock(GalaxyInstance.class);
+        final HistoryUtils historyUtilsMock = Mockito.mock(HistoryUtils.class);
+        final File file1 = new File("output-1.txt");
+        final File file2 = new File("output-2.txt");
+        final File file3 = new File("output-3.txt");
+        Mockito.when(historyUtilsMock.streamDataset(galaxyInstanceMock, historyId, "id-1", file1))
+                .thenReturn(new TransferStatistics(file1.getName(), 100, 1000));
+        Mockito.when(historyUtilsMock.streamDataset(galaxyInstanceMock, historyId, "id-2", file2))
+                .thenThrow(new IOException("Connection reset"))
+                .thenReturn(new TransferStatistics(file2.getName(), 50, 1000));
+        Mockito.when(historyUtilsMock.streamDataset(galaxyInstanceMock, historyId, "id-3", file3))
+                .thenThrow(new IOException("Connection reset"));
+
+        final Map<String, File> destinationFiles = ImmutableMap.of("id-1", file1, "id-2", file2, "id-3", file3);
+        final Map<String, TransferStatistics> statistics
+                = new OutputDownloader(galaxyInstanceMock, historyUtilsMock, 2).downloadDatasets(historyId,
+                                                                                                 destinationFiles).get();
+
+        assertEquals(2, statistics.size());
+        assertEquals(100, statistics.get("id-1").getByteCount());
+        assertEquals(50, statistics.get("id-2").getByteCount());
+        assertFalse(statistics.containsKey("id-3"));
+        Mockito.verify(historyUtilsMock, Mockito.times(2)).streamDataset(galaxyInstanceMock, historyId, "id-2", file2);
+        Mockito.verify(historyUtilsMock, Mockito.times(OutputDownloader.MAX_ATTEMPTS))
+                .streamDataset(galaxyInstanceMock, historyId, "id-3", file3);
+    }
+
+    /**
+     * Test starting downloads one at a time, with a failed download resulting in null statistics.
+     */
+    @Test
+    public void testStartDownload() throws Exception {
+        final String historyId = "history-id";
+        final GalaxyInstance galaxyInstanceMock = Mockito.mock(GalaxyInstance.class);
+        final HistoryUtils historyUtilsMock = Mockito.mock(HistoryUtils.class);
+        final File file1 = new File("output-1.txt");
+        final File file2 = new File("output-2.txt");
+        final File file3 = new File("output-3.txt");
+        Mockito.when(historyUtilsMock.streamDataset(galaxyInstanceMock, historyId, "id-1", file1))
+                .thenReturn(new TransferStatistics(file1.getName(), 100, 1000));
+        Mockito.when(historyUtilsMock.streamDataset(galaxyInstanceMock, historyId, "id-2", file2))
+                .thenReturn(new TransferStatistics(file2.getName(), 50, 1000));
+        Mockito.when(historyUtilsMock.streamDataset(galaxyInstanceMock, historyId, "id-3", file3))
+                .thenThrow(new IOException("Connection reset"));
+
+        final OutputDownloader outputDownloader = new OutputDownloader(galaxyInstanceMock, historyUtilsMock, 1);
+        final ListenableFuture<TransferStatistics> download1 = outputDownloader.startDownload(historyId, "id-1", file1);
+        final ListenableFuture<TransferStatistics> download2 = outputDownloader.startDownload(historyId, "id-2", file2);
+        final ListenableFuture<TransferStatistics> download3 = outputDownloader.startDownload(historyId, "id-3", file3);
+
+        assertEquals(100, download1.get().getByteCount());
+        assertEquals(50, download2.get().getByteCount());
+        assertNull(download3.get());
+    }
+
+    /**
+     * Test that network errors of the Jersey client (which are runtime exceptions) are retried as well.
+     */
+    @Test
+    public void testRetryClientExceptions() throws Exception {
+        final String historyId = "history-id";
+        final GalaxyInstance galaxyInstanceMock = Mockito.mock(GalaxyInstance.class);
+        final HistoryUtils historyUtilsMock = Mockito.mock(HistoryUtils.class);
+        final File file1 = new File("output-1.txt");
+        final File file2 = new File("output-2.txt");
+        Mockito.when(historyUtilsMock.streamDataset(galaxyInstanceMock, historyId, "id-1", file1))
+                .thenThrow(new ClientHandlerException("Connection reset"))
+                .thenThrow(new UniformInterfaceException(Mockito.mock(ClientResponse.class)))
+                .thenReturn(new TransferStatistics(file1.getName(), 100, 1000));
+        Mockito.when(historyUtilsMock.streamDataset(galaxyInstanceMock, historyId, "id-2", file2))
+                .thenThrow(new ClientHandlerException("Connection refused"));
+
+        final OutputDownloader outputDownloader = new OutputDownloader(galaxyInstanceMock, historyUtilsMock, 1);
+        final ListenableFuture<TransferStatistics> download1 = outputDownloader.startDownload(historyId, "id-1", file1);
+        final ListenableFuture<TransferStatistics> download2 = outputDownloader.startDownload(historyId, "id-2", file2);
+
+        assertEquals(100, download1.get().getByteCount());
+        assertNull(download2.get());
+        Mockito.verify(historyUtilsMock, Mockito.times(OutputDownloader.MAX_ATTEMPTS))
+                .streamDataset(galaxyInstanceMock, historyId, "id-1", file1);
+        Mockito.verify(historyUtilsMock, Mockito.times(OutputDownloader.MAX_ATTEMPTS))
+                .streamDataset(galaxyInstanceMock, historyId, "id-2", file2);
+    }
+
+    /**
+     * Test that downloading no datasets results in an empty map.
+     */
+    @Test
+    public void testNoDatasets() throws Exception {
+        final OutputDownloader outputDownloader = new OutputDownloader(Mockito.mock(GalaxyInstance.class),
+                                                                       Mockito.mock(HistoryUtils.class), 4);
+        assertTrue(outputDownloader.downloadDatasets("history-id", ImmutableMap.<String, File>of()).get().isEmpty());
+    }
+}
@@ -0,0 +1,243 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.galaxy;
+
+import com.github.jmchilton.blend4j.galaxy.GalaxyInstance;
+import com.github.jmchilton.blend4j.galaxy.HistoriesClient;
+import com.github.jmchilton.blend4j.galaxy.ToolsClient;
+import com.github.jmchilton.blend4j.galaxy.beans.Dataset;
+import com.github.jmchilton.blend4j.galaxy.beans.History;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.sun.jersey.api.client.ClientResponse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for the UploadCache class.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class UploadCacheTest {
+    /**
+     * The ID of the upload cache history.
+     */
+    private static final String CACHE_HISTORY_ID = "cache-history-id";
+
+    /**
+     * The hash of some content.
+     */
+    private static final String CONTENT_HASH = "0123456789abcdef";
+
+    /**
+     * The Galaxy instance mock.
+     */
+    private GalaxyInstance galaxyInstanceMock;
+
+    /**
+     * The histories client mock.
+     */
+    private HistoriesClient historiesClientMock;
+
+    /**
+     * The file in which the cache is stored.
+     */
+    private File cacheFile;
+
+    /**
+     * Create the mocks and the cache file location.
+     */
+    @Before
+    public void setUp() throws IOException {
+        galaxyInstanceMock = Mockito.mock(GalaxyInstance.class);
+        historiesClientMock = Mockito.mock(HistoriesClient.class);
+        Mockito.when(galaxyInstanceMock.getGalaxyUrl()).thenReturn("http://galaxy.example.org/");
+        Mockito.when(galaxyInstanceMock.getApiKey()).thenReturn("api-key-1");
+        Mockito.when(galaxyInstanceMock.getHistoriesClient()).thenReturn(historiesClientMock);
+        final History cacheHistory = new History(UploadCache.UPLOAD_CACHE_HISTORY_NAME);
+        cacheHistory.setId(CACHE_HISTORY_ID);
+        Mockito.when(historiesClientMock.getHistories()).thenReturn(Collections.singletonList(cacheHistory));
+        cacheFile = File.createTempFile("upload-cache", ".properties");
+        cacheFile.deleteOnExit();
+        Files.delete(cacheFile.toPath());
+    }
+
+    /**
+     * Test that the content hash depends on the content of a file and not on its name.
+     */
+    @Test
+    public void testHashFile() throws IOException {
+        final File file1 = createFile("a.txt", "same content");
+        final File file2 = createFile("b.txt", "same content");
+        final File file3 = createFile("c.txt", "other content");
+
+        assertEquals(64, UploadCache.hashFile(file1).length());
+        assertEquals(UploadCache.hashFile(file1), UploadCache.hashFile(file2));
+        assertNotEquals(UploadCache.hashFile(file1), UploadCache.hashFile(file3));
+    }
+
+    /**
+     * Test that recorded uploads are found again, also by a new cache that reads the same cache file.
+     */
+    @Test
+    public void testPersistence() {
+        mockDataset("dataset-1", DatasetStates.OK, false);
+        new UploadCache(cacheFile).recordUpload(galaxyInstanceMock, CONTENT_HASH, GalaxyWorkflowEngine.FILE_TYPE_TEXT,
+                                                "dataset-1");
+
+        final UploadCache reloadedCache = new UploadCache(cacheFile);
+        assertEquals(1, reloadedCache.size());
+        assertEquals("dataset-1", reloadedCache.findDatasetId(galaxyInstanceMock, CONTENT_HASH,
+                                                             GalaxyWorkflowEngine.FILE_TYPE_TEXT));
+        assertNull(reloadedCache.findDatasetId(galaxyInstanceMock, CONTENT_HASH,
+                                               GalaxyWorkflowEngine.FILE_TYPE_TABULAR));
+    }
+
+    /**
+     * Test that datasets which were deleted on the server are removed from the cache.
+     */
+    @Test
+    public void testDeletedDataset() {
+        mockDataset("dataset-1", DatasetStates.OK, true);
+        final UploadCache uploadCache = new UploadCache(cacheFile);
+        uploadCache.recordUpload(galaxyInstanceMock, CONTENT_HASH, GalaxyWorkflowEngine.FILE_TYPE_TEXT, "dataset-1");
+
+        assertNull(uploadCache.findDatasetId(galaxyInstanceMock, CONTENT_HASH, GalaxyWorkflowEngine.FILE_TYPE_TEXT));
+        assertEquals(0, uploadCache.size());
+        assertEquals(0, new UploadCache(cacheFile).size());
+    }
+
+    /**
+     * Test that the upload cache history is created when it does not exist yet.
+     */
+    @Test
+    public void testCreateCacheHistory() {
+        final History createdHistory = new History(UploadCache.UPLOAD_CACHE_HISTORY_NAME);
+        createdHistory.setId("created-history-id");
+        Mockito.when(historiesClientMock.getHistories()).thenReturn(Collections.<History>emptyList());
+        Mockito.when(historiesClientMock.create(Mockito.any(History.class))).thenReturn(createdHistory);
+
+        final UploadCache uploadCache = new UploadCache(cacheFile);
+        assertEquals("created-history-id", uploadCache.getCacheHistoryId(galaxyInstanceMock));
+        assertEquals("created-history-id", uploadCache.getCacheHistoryId(galaxyInstanceMock));
+        Mockito.verify(historiesClientMock, Mockito.times(1)).create(Mockito.any(History.class));
+    }
+
+    /**
+     * Test that cache entries and cache histories are kept per user: another user on the same Galaxy server cannot
+     * access the datasets in the upload cache history of the first user.
+     */
+    @Test
+    public void testCachePerUser() throws IOException {
+        mockDataset("dataset-1", DatasetStates.OK, false);
+        final GalaxyInstance otherUserInstanceMock = Mockito.mock(GalaxyInstance.class);
+        final HistoriesClient otherHistoriesClientMock = Mockito.mock(HistoriesClient.class);
+        final History otherCacheHistory = new History(UploadCache.UPLOAD_CACHE_HISTORY_NAME);
+        otherCacheHistory.setId("other-cache-history-id");
+        final String galaxyUrl = galaxyInstanceMock.getGalaxyUrl();
+        Mockito.when(otherUserInstanceMock.getGalaxyUrl()).thenReturn(galaxyUrl);
+        Mockito.when(otherUserInstanceMock.getApiKey()).thenReturn("api-key-2");
+        Mockito.when(otherUserInstanceMock.getHistoriesClient()).thenReturn(otherHistoriesClientMock);
+        Mockito.when(otherHistoriesClientMock.getHistories()).thenReturn(Collections.singletonList(otherCacheHistory));
+
+        final UploadCache uploadCache = new UploadCache(cacheFile);
+        uploadCache.recordUpload(galaxyInstanceMock, CONTENT_HASH, GalaxyWorkflowEngine.FILE_TYPE_TEXT, "dataset-1");
+        assertNull(uploadCache.findDatasetId(otherUserInstanceMock, CONTENT_HASH, GalaxyWorkflowEngine.FILE_TYPE_TEXT));
+        assertEquals("dataset-1", uploadCache.findDatasetId(galaxyInstanceMock, CONTENT_HASH,
+                                                           GalaxyWorkflowEngine.FILE_TYPE_TEXT));
+        assertEquals(CACHE_HISTORY_ID, uploadCache.getCacheHistoryId(galaxyInstanceMock));
+        assertEquals("other-cache-history-id", uploadCache.getCacheHistoryId(otherUserInstanceMock));
+        assertFalse(new String(Files.readAllBytes(cacheFile.toPath()), StandardCharsets.UTF_8).contains("api-key"));
+    }
+
+    /**
+     * Test that the temporary file is removed when it cannot replace the cache file.
+     */
+    @Test
+    public void testSaveFailure() throws IOException {
+        final File cacheDirectory = Files.createTempDirectory("upload-cache-test").toFile();
+        final File blockedCacheFile = new File(cacheDirectory, "cache.properties");
+        assertTrue(new File(blockedCacheFile, "file-in-directory").mkdirs());
+
+        final UploadCache uploadCache = new UploadCache(blockedCacheFile);
+        uploadCache.recordUpload(galaxyInstanceMock, CONTENT_HASH, GalaxyWorkflowEngine.FILE_TYPE_TEXT, "dataset-1");
+        assertEquals(1, uploadCache.size());
+        assertEquals(Collections.singletonList(blockedCacheFile.getName()), Arrays.asList(cacheDirectory.list()));
+        for (final File directory : Arrays.asList(new File(blockedCacheFile, "file-in-directory"), blockedCacheFile,
+                                                  cacheDirectory))
+            Files.delete(directory.toPath());
+    }
+
+    /**
+     * Test that the input uploader uploads a file once and reuses the dataset for a file with the same content.
+     */
+    @Test
+    public void testInputUploaderReusesDataset() throws Exception {
+        final ToolsClient toolsClientMock = Mockito.mock(ToolsClient.class);
+        final ClientResponse clientResponse = InputUploaderTest.createResponse(200, "dataset-1");
+        Mockito.when(toolsClientMock.uploadRequest(Mockito.any(ToolsClient.FileUploadRequest.class))).thenReturn(clientResponse);
+        mockDataset("dataset-1", DatasetStates.OK, false);
+        final InputUploader inputUploader = new InputUploader(toolsClientMock, 1, MoreExecutors.newDirectExecutorService(),
+                                                              galaxyInstanceMock, new UploadCache(cacheFile));
+
+        final List<File> inputFiles = Arrays.asList(createFile("first.txt", "content"), createFile("second.txt", "content"));
+        final List<UploadedInput> uploadedInputs = inputUploader.uploadFiles(CACHE_HISTORY_ID, inputFiles,
+                                                                             GalaxyWorkflowEngine.FILE_TYPE_TEXT).get();
+
+        assertEquals(2, uploadedInputs.size());
+        assertFalse(uploadedInputs.get(0).isReused());
+        assertTrue(uploadedInputs.get(1).isReused());
+        assertEquals("dataset-1", uploadedInputs.get(1).getDatasetId());
+        Mockito.verify(toolsClientMock, Mockito.times(1)).uploadRequest(Mockito.any(ToolsClient.FileUploadRequest.class));
+    }
+
+    /**
+     * Let the histories client mock return a dataset in the upload cache history.
+     *
+     * @param datasetId the dataset ID.
+     * @param state     the dataset state.
+     * @param deleted   whether the dataset is deleted.
+     */
+    private void mockDataset(final String datasetId, final String state, final boolean deleted) {
+        final Dataset dataset = new Dataset();
+        dataset.setId(datasetId);
+        dataset.setState(state);
+        dataset.setDeleted(deleted);
+        Mockito.when(historiesClientMock.showDataset(CACHE_HISTORY_ID, datasetId)).thenReturn(dataset);
+    }
+
+    /**
+     * Create a temporary file with some content.
+     *
+     * @param name    the name of the file.
+     * @param content the content of the file.
+     * @return the file.
+     * @throws IOException if writing the file fails.
+     */
+    private static File createFile(final String name, final String content) throws IOException {
+        final File directory = Files.createTempDirectory("upload-cache-test").toFile();
+        directory.deleteOnExit();
+        final File file = new File(directory, name);
+        file.deleteOnExit();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.galaxy;
+
+import com.github.jmchilton.blend4j.galaxy.GalaxyInstance;
+import com.github.jmchilton.blend4j.galaxy.WorkflowsClient;
+import com.github.jmchilton.blend4j.galaxy.beans.Workflow;
+import com.github.jmchilton.blend4j.galaxy.beans.WorkflowDetails;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for the WorkflowRegistry class.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class WorkflowRegistryTest {
+    /**
+     * Test that the list of workflows is retrieved once and reused until it expires.
+     */
+    @Test
+    public void testWorkflowListIsCached() {
+        final WorkflowsClient workflowsClientMock = Mockito.mock(WorkflowsClient.class);
+        Mockito.when(workflowsClientMock.getWorkflows())
+                .thenReturn(ImmutableList.of(createWorkflow("id-1", "Concatenate"),
+                                             createWorkflow("id-2", "Histogram (imported from API)")));
+        final ManualTicker ticker = new ManualTicker();
+        final WorkflowRegistry registry = new WorkflowRegistry(workflowsClientMock, 60, ticker);
+
+        assertTrue(registry.containsWorkflow("Concatenate"));
+        assertTrue(registry.containsWorkflow("Histogram"));
+        assertFalse(registry.containsWorkflow("Unknown"));
+        assertEquals("id-2", registry.getWorkflowId("Histogram"));
+        assertNull(registry.getWorkflowId("Unknown"));
+        Mockito.verify(workflowsClientMock, Mockito.times(1)).getWorkflows();
+
+        ticker.advance(TimeUnit.SECONDS.toNanos(61));
+        assertEquals("id-1", registry.getWorkflowId("Concatenate"));
+        Mockito.verify(workflowsClientMock, Mockito.times(2)).getWorkflows();
+    }
+
+    /**
+     * Test that importing a workflow invalidates the cached list of workflows.
+     */
+    @Test
+    public void testImportInvalidatesWorkflowList() {
+        final WorkflowsClient workflowsClientMock = Mockito.mock(WorkflowsClient.class);
+        Mockito.when(workflowsClientMock.getWorkflows())
+                .thenReturn(ImmutableList.<Workflow>of())
+                .thenReturn(ImmutableList.of(createWorkflow("id-1", "Concatenate (imported from API)")));
+        final WorkflowRegistry registry = new WorkflowRegistry(workflowsClientMock, 60, new ManualTicker());
+
+        assertFalse(registry.containsWorkflow("Concatenate"));
+        registry.importWorkflow("{}");
+        assertTrue(registry.containsWorkflow("Concatenate"));
+        Mockito.verify(workflowsClientMock).importWorkflow("{}");
+        Mockito.verify(workflowsClientMock, Mockito.times(2)).getWorkflows();
+    }
+
+    /**
+     * Test that workflow details are cached.
+     */
+    @Test
+    public void testWorkflowDetailsAreCached() {
+        final WorkflowsClient workflowsClientMock = Mockito.mock(WorkflowsClient.class);
+        final WorkflowDetails workflowDetails = new WorkflowDetails();
+        Mockito.when(workflowsClientMock.showWorkflow("id-1")).thenReturn(workflowDetails);
+        final ManualTicker ticker = new ManualTicker();
+        final WorkflowRegistry registry = new WorkflowRegistry(workflowsClientMock, 60, ticker);
+
+        assertSame(workflowDetails, registry.getWorkflowDetails("id-1"));
+        assertSame(workflowDetails, registry.getWorkflowDetails("id-1"));
+        Mockito.verify(workflowsClientMock, Mockito.times(1)).showWorkflow("id-1");
+
+        ticker.advance(TimeUnit.SECONDS.toNanos(61));
+        assertSame(workflowDetails, registry.getWorkflowDetails("id-1"));
+        Mockito.verify(workflowsClientMock, Mockito.times(2)).showWorkflow("id-1");
+    }
+
+    /**
+     * Test that there is one shared registry for each Galaxy instance.
+     */
+    @Test
+    public void testForInstance() {
+        final GalaxyInstance galaxyInstanceMock1 = Mockito.mock(GalaxyInstance.class);
+        final GalaxyInstance galaxyInstanceMock2 = Mockito.mock(GalaxyInstance.class);
+        assertSame(WorkflowRegistry.forInstance(galaxyInstanceMock1), WorkflowRegistry.forInstance(galaxyInstanceMock1));
+        assertFalse(WorkflowRegistry.forInstance(galaxyInstanceMock1) == WorkflowRegistry.forInstance(galaxyInstanceMock2));
+    }
+
+    /**
+     * Create a blend4j workflow.
+     *
+     * @param id   the workflow ID.
+     * @param name the workflow name.
+     * @return the blend4j workflow.
+     */
+    private static Workflow createWorkflow(final String id, final String name) {
+        final Workflow workflow = new Workflow();
+        workflow.setId(id);
+        workflow.setName(name);
+        return workflow;
+    }
+
+    /**
+     * Ticker that only advances when the test tells it to.
+     */
+    private static class ManualTicker extends Ticker {
+        /**
+         * The current ticker value in nanoseconds.
+         */
+        private final AtomicLong nanos = new AtomicLong();
+
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+
+        /**
+         * Advance the ticker.
+         *
+         * @param deltaNanos the number of nanoseconds to advance.
+         */
+        public void advance(final long deltaNanos) {
+            nanos.addAndGet(deltaNanos);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.galaxy.configuration;
+
+import com.github.jmchilton.blend4j.galaxy.GalaxyInstance;
+import com.google.common.io.ByteStreams;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.multipart.FormDataMultiPart;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.ws.rs.core.MediaType;
+
+import nl.vumc.biomedbridges.core.BatchWorkflowRunner;
+import nl.vumc.biomedbridges.galaxy.OutputDownloader;
+
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for the GalaxyConnectionManager and PooledHttpClientHandler classes, using a local HTTP server.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class GalaxyConnectionManagerTest {
+    /**
+     * The local HTTP server that echoes the method, the API key and the request body.
+     */
+    private HttpServer httpServer;
+
+    /**
+     * The client ports of the connections that were used for the requests.
+     */
+    private final Set<Integer> clientPorts = new HashSet<>();
+
+    /**
+     * The connection manager to test.
+     */
+    private GalaxyConnectionManager connectionManager;
+
+    /**
+     * Start the local HTTP server.
+     */
+    @Before
+    public void setUp() throws IOException {
+        httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        httpServer.createContext("/api/echo", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                synchronized (clientPorts) {
+                    clientPorts.add(exchange.getRemoteAddress().getPort());
+                }
+                final String requestBody = new String(ByteStreams.toByteArray(exchange.getRequestBody()),
+                                                      StandardCharsets.UTF_8);
+                final byte[] response = (exchange.getRequestMethod() + " " + exchange.getRequestURI().getQuery()
+                                         + " " + requestBody).getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, response.length);
+                try (final OutputStream outputStream = exchange.getResponseBody()) {
+                    outputStream.write(response);
+                }
+            }
+        });
+        httpServer.start();
+        connectionManager = new GalaxyConnectionManager(2, 4, 10);
+    }
+
+    /**
+     * Stop the local HTTP server and close the connections.
+     */
+    @After
+    public void tearDown() throws IOException {
+        connectionManager.close();
+        httpServer.stop(0);
+    }
+
+    /**
+     * Test that the default connection pool has room for the streaming downloads of all concurrent runs in a batch.
+     */
+    @Test
+    public void testDefaultMaxConnections() {
+        final int downloadConnections = BatchWorkflowRunner.DEFAULT_MAX_CONCURRENT_RUNS
+                                        * OutputDownloader.DEFAULT_MAX_CONCURRENT_DOWNLOADS;
+        assertTrue(GalaxyConnectionManager.DEFAULT_MAX_CONNECTIONS_PER_ROUTE > downloadConnections);
+        assertTrue(GalaxyConnectionManager.DEFAULT_MAX_CONNECTIONS_TOTAL
+                   >= GalaxyConnectionManager.DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+    }
+
+    /**
+     * Test that Galaxy instances are shared per server URL and API key.
+     */
+    @Test
+    public void testGalaxyInstancesAreShared() {
+        final String url = getServerUrl();
+        final GalaxyInstance galaxyInstance = connectionManager.getGalaxyInstance(url, "key-1", false);
+        assertSame(galaxyInstance, connectionManager.getGalaxyInstance(url, "key-1", false));
+        assertNotSame(galaxyInstance, connectionManager.getGalaxyInstance(url, "key-2", false));
+        assertEquals(url, galaxyInstance.getGalaxyUrl());
+        assertEquals("key-1", galaxyInstance.getApiKey());
+    }
+
+    /**
+     * Test that requests are sent through one kept alive connection.
+     */
+    @Test
+    public void testRequestsReuseConnection() {
+        final GalaxyInstance galaxyInstance = connectionManager.getGalaxyInstance(getServerUrl(), "api-key", false);
+        assertEquals("GET key=api-key ", galaxyInstance.getWebResource().path("echo").get(String.class));
+        assertEquals("POST key=api-key {\"name\":\"value\"}", galaxyInstance.getWebResource().path("echo")
+                .type(MediaType.APPLICATION_JSON_TYPE).post(String.class, "{\"name\":\"value\"}"));
+        final ClientResponse response = galaxyInstance.getWebResource().path("echo").delete(ClientResponse.class);
+        assertEquals(200, response.getStatus());
+        response.close();
+        assertEquals(1, clientPorts.size());
+    }
+
+    /**
+     * Test that a request fails after the connection request timeout (instead of blocking forever) when the only
+     * connection is kept by a response that was not closed.
+     */
+    @Test
+    public void testConnectionRequestTimeout() throws IOException {
+        connectionManager.close();
+        connectionManager = new GalaxyConnectionManager(1, 1, 10, 1, 10);
+        final GalaxyInstance galaxyInstance = connectionManager.getGalaxyInstance(getServerUrl(), "api-key", false);
+        final ClientResponse unclosedResponse = galaxyInstance.getWebResource().path("echo").get(ClientResponse.class);
+        try {
+            galaxyInstance.getWebResource().path("echo").get(String.class);
+            fail("The request should fail when no connection becomes available.");
+        } catch (final ClientHandlerException e) {
+            assertTrue(e.getCause() instanceof ConnectionPoolTimeoutException);
+        } finally {
+            unclosedResponse.close();
+        }
+        assertEquals("GET key=api-key ", galaxyInstance.getWebResource().path("echo").get(String.class));
+    }
+
+    /**
+     * Test that a multipart request is sent with the same boundary in the Content-Type header and in the body.
+     */
+    @Test
+    public void testMultipartRequest() {
+        final AtomicReference<String> contentType = new AtomicReference<>();
+        httpServer.createContext("/api/upload", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                contentType.set(exchange.getRequestHeaders().getFirst("Content-Type"));
+                final byte[] response = ByteStreams.toByteArray(exchange.getRequestBody());
+                exchange.sendResponseHeaders(200, response.length);
+                try (final OutputStream outputStream = exchange.getResponseBody()) {
+                    outputStream.write(response);
+                }
+            }
+        });
+        final GalaxyInstance galaxyInstance = connectionManager.getGalaxyInstance(getServerUrl(), "api-key", false);
+        final FormDataMultiPart multiPart = new FormDataMultiPart().field("history_id", "history-1");
+        final String requestBody = galaxyInstance.getWebResource().path("upload")
+                .type(MediaType.MULTIPART_FORM_DATA_TYPE).post(String.class, multiPart);
+
+        assertNotNull(contentType.get());
+        assertTrue(contentType.get().startsWith(MediaType.MULTIPART_FORM_DATA));
+        final String boundary = MediaType.valueOf(contentType.get()).getParameters().get("boundary");
+        assertNotNull(boundary);
+        assertTrue(requestBody.startsWith("--" + boundary));
+        assertTrue(requestBody.contains("name=\"history_id\""));
+        assertTrue(requestBody.contains("history-1"));
+        assertTrue(requestBody.trim().endsWith("--" + boundary + "--"));
+    }
+
+    /**
+     * Get the URL of the local HTTP server.
+     *
+     * @return the URL of the local HTTP server.
+     */
+    private String getServerUrl() {
+        return "http://localhost:" + httpServer.getAddress().getPort();
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.galaxy.metadata;
+
+import com.google.common.base.Charsets;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Date;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Unit tests for the GalaxyMetadataIndex class.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class GalaxyMetadataIndexTest {
+    /**
+     * Test writing and reading an index and detecting a changed definition file.
+     *
+     * @throws IOException if a temporary file cannot be created or written.
+     */
+    @Test
+    public void testWriteAndRead() throws IOException {
+        final File definitionFile = createTemporaryFile("definition", ".xml");
+        Files.write(definitionFile.toPath(), "<tool id=\"tool\" version=\"1.0\"/>".getBytes(Charsets.UTF_8));
+        final File indexFile = createTemporaryFile("metadata", ".idx");
+        final GalaxyMetadataIndex index = new GalaxyMetadataIndex();
+        index.putEntry(definitionFile, null, new GalaxyToolReference("tool", "1.0"));
+        index.write(indexFile);
+
+        final GalaxyMetadataIndex readIndex = GalaxyMetadataIndex.read(indexFile);
+        assertEquals(1, readIndex.size());
+        final GalaxyMetadataIndex.FileEntry entry = readIndex.getUnchangedEntry(definitionFile);
+        assertNotNull(entry);
+        assertEquals(new GalaxyToolReference("tool", "1.0"), entry.getToolReference());
+        assertNull(entry.getMetadata());
+
+        Files.write(definitionFile.toPath(), "<tool id=\"tool\" version=\"1.0.1\"/>".getBytes(Charsets.UTF_8));
+        assertNull(readIndex.getUnchangedEntry(definitionFile));
+    }
+
+    /**
+     * Test reading an index file that is missing or invalid, which results in an empty index.
+     *
+     * @throws IOException if a temporary file cannot be created or written.
+     */
+    @Test
+    public void testReadMissingOrInvalidIndex() throws IOException {
+        final File indexFile = createTemporaryFile("metadata", ".idx");
+        Files.write(indexFile.toPath(), "not an index".getBytes(Charsets.UTF_8));
+        assertEquals(0, GalaxyMetadataIndex.read(indexFile).size());
+        Files.delete(indexFile.toPath());
+        assertEquals(0, GalaxyMetadataIndex.read(indexFile).size());
+        assertEquals(0, GalaxyMetadataIndex.read(null).size());
+    }
+
+    /**
+     * Test that an index file with a class that does not belong in a metadata index is ignored.
+     *
+     * @throws IOException if a temporary file cannot be created.
+     */
+    @Test
+    public void testReadIndexWithOtherClass() throws IOException {
+        final File definitionFile = createTemporaryFile("definition", ".xml");
+        final File indexFile = createTemporaryFile("metadata", ".idx");
+        final GalaxyMetadataIndex index = new GalaxyMetadataIndex();
+        index.putEntry(definitionFile, new Date(), null);
+        index.write(indexFile);
+
+        assertEquals(0, GalaxyMetadataIndex.read(indexFile).size());
+    }
+
+    /**
+     * Create a temporary file that is deleted when the virtual machine exits.
+     *
+     * @param prefix the prefix of the file name.
+     * @param suffix the suffix of the file name.
+     * @return the temporary file.
+     * @throws IOException if the file cannot be created.
+     */
+    private File createTemporaryFile(final String prefix, final String suffix) throws IOException {
+        final File file = File.createTempFile(prefix, suffix);
+        file.deleteOnExit();
+        return file;
+    }
+}
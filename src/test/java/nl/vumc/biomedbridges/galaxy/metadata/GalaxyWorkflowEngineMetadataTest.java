@@ -5,12 +5,28 @@
 
 package nl.vumc.biomedbridges.galaxy.metadata;
 
+import com.google.common.base.Charsets;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Unit tests for the GalaxyWorkflowEngineMetadata class.
@@ -19,6 +35,26 @@ import static org.junit.Assert.assertEquals;
  * @author <a href="mailto:y.hoogstrate@erasmusmc.nl">Youri Hoogstrate</a>
  */
 public class GalaxyWorkflowEngineMetadataTest {
+    /**
+     * The Galaxy configuration data directory.
+     */
+    private static final Path DATA_DIRECTORY = Paths.get("data", "galaxy-configuration");
+
+    /**
+     * The name of the workflows directory.
+     */
+    private static final String WORKFLOWS = "workflows";
+
+    /**
+     * The name of the random lines twice workflow.
+     */
+    private static final String RANDOM_LINES_TWICE = "RandomLinesTwice";
+
+    /**
+     * The maximum time to wait for the watcher to reload changed files (in milliseconds).
+     */
+    private static final long MAXIMUM_WAIT_TIME_MS = 10000;
+
     /**
      * Test the getWorkflows method.
      */
@@ -47,6 +83,198 @@ public class GalaxyWorkflowEngineMetadataTest {
                                                                         "num_lines", "integer", "input", "data"));
     }
 
+    /**
+     * Test loading the metadata with an index file: the second time, the metadata is read from the index.
+     *
+     * @throws IOException if the temporary index file cannot be created.
+     */
+    @Test
+    public void testGetWorkflowsWithIndex() throws IOException {
+        final File indexFile = File.createTempFile("workflow-runner-metadata", ".idx");
+        indexFile.deleteOnExit();
+        Files.delete(indexFile.toPath());
+        final GalaxyWorkflowEngineMetadata metadata = new GalaxyWorkflowEngineMetadata();
+        metadata.setIndexFile(indexFile);
+        assertEquals(5, metadata.getWorkflows().size());
+        assertTrue(indexFile.exists());
+        assertEquals(10, GalaxyMetadataIndex.read(indexFile).size());
+        final GalaxyWorkflowEngineMetadata indexedMetadata = new GalaxyWorkflowEngineMetadata();
+        indexedMetadata.setIndexFile(indexFile);
+        assertEquals(5, indexedMetadata.getWorkflows().size());
+        final GalaxyWorkflowMetadata workflowMetadata = indexedMetadata.getWorkflow("RandomLinesTwice");
+        assertEquals(3, workflowMetadata.getSteps().size());
+        assertEquals(metadata.getWorkflow("RandomLinesTwice").getParameters().size(),
+                     workflowMetadata.getParameters().size());
+    }
+
+    /**
+     * Test that a workflow that is loaded from the index does not keep the metadata of a tool that was removed from the
+     * tools configuration.
+     *
+     * @throws IOException if the temporary data directory cannot be created or changed.
+     */
+    @Test
+    public void testIndexAfterToolRemoved() throws IOException {
+        final Path dataDirectory = createDataDirectory();
+        try {
+            final File indexFile = dataDirectory.resolve("metadata.idx").toFile();
+            final GalaxyWorkflowEngineMetadata metadata = createMetadata(dataDirectory);
+            metadata.setIndexFile(indexFile);
+            assertNotNull(metadata.getWorkflow(RANDOM_LINES_TWICE).getSteps().get(1).getToolMetadata());
+
+            final Path configurationFile = dataDirectory.resolve(Paths.get("tools", "tool_conf.xml"));
+            final String configuration = new String(Files.readAllBytes(configurationFile), Charsets.UTF_8);
+            Files.write(configurationFile, configuration.replace("<tool file=\"filters/randomlines.xml\" />", "")
+                    .getBytes(Charsets.UTF_8));
+            final GalaxyWorkflowEngineMetadata indexedMetadata = createMetadata(dataDirectory);
+            indexedMetadata.setIndexFile(indexFile);
+            assertNull(indexedMetadata.getWorkflow(RANDOM_LINES_TWICE).getSteps().get(1).getToolMetadata());
+        } finally {
+            deleteDirectory(dataDirectory);
+        }
+    }
+
+    /**
+     * Test the reload method: only the changed workflow gets new metadata.
+     *
+     * @throws IOException if the temporary data directory cannot be created.
+     */
+    @Test
+    public void testReload() throws IOException {
+        final Path dataDirectory = createDataDirectory();
+        try {
+            final GalaxyWorkflowEngineMetadata metadata = createMetadata(dataDirectory);
+            assertEquals(1, metadata.getWorkflows().size());
+            final GalaxyWorkflowMetadata randomLinesTwice = metadata.getWorkflow(RANDOM_LINES_TWICE);
+
+            final File histogramFile = copyWorkflow(dataDirectory, "histogram", "Histogram.ga");
+            metadata.reload(Collections.singletonList(histogramFile));
+            assertEquals(2, metadata.getWorkflows().size());
+            assertSame(randomLinesTwice, metadata.getWorkflow(RANDOM_LINES_TWICE));
+            assertEquals("histogram_rpy", metadata.getWorkflow("Histogram").getSteps().get(1).getToolId());
+            assertNotNull(metadata.getWorkflow("Histogram").getSteps().get(1).getToolMetadata());
+
+            final File randomLinesTool = dataDirectory.resolve(Paths.get("tools", "filters", "randomlines.xml")).toFile();
+            metadata.reload(Collections.singletonList(randomLinesTool));
+            assertNotSame(randomLinesTwice, metadata.getWorkflow(RANDOM_LINES_TWICE));
+            assertNotNull(metadata.getWorkflow(RANDOM_LINES_TWICE).getSteps().get(1).getToolMetadata());
+
+            Files.delete(histogramFile.toPath());
+            metadata.reload(Collections.singletonList(histogramFile));
+            assertEquals(1, metadata.getWorkflows().size());
+            assertNull(metadata.getWorkflow("Histogram"));
+        } finally {
+            deleteDirectory(dataDirectory);
+        }
+    }
+
+    /**
+     * Test the watchForChanges method: a workflow that is added is picked up without reloading everything.
+     *
+     * @throws IOException          if the temporary data directory cannot be created.
+     * @throws InterruptedException if the test is interrupted while waiting.
+     */
+    @Test
+    public void testWatchForChanges() throws IOException, InterruptedException {
+        final Path dataDirectory = createDataDirectory();
+        final GalaxyWorkflowEngineMetadata metadata = createMetadata(dataDirectory);
+        try (final GalaxyMetadataWatcher ignored = metadata.watchForChanges()) {
+            assertEquals(1, metadata.getWorkflows().size());
+            copyWorkflow(dataDirectory, "concatenate", "TestWorkflowConcatenate.ga");
+            final long endTime = System.currentTimeMillis() + MAXIMUM_WAIT_TIME_MS;
+            while (metadata.getWorkflows().size() < 2 && System.currentTimeMillis() < endTime)
+                Thread.sleep(50);
+            assertEquals(2, metadata.getWorkflows().size());
+        } finally {
+            deleteDirectory(dataDirectory);
+        }
+    }
+
+    /**
+     * Create metadata for a data directory (without an index file, which is the default).
+     *
+     * @param dataDirectory the data directory.
+     * @return the metadata.
+     */
+    private GalaxyWorkflowEngineMetadata createMetadata(final Path dataDirectory) {
+        return new GalaxyWorkflowEngineMetadata(dataDirectory.toString());
+    }
+
+    /**
+     * Create a temporary data directory with all tools and the random lines twice workflow.
+     *
+     * @return the temporary data directory.
+     * @throws IOException if the directory cannot be created.
+     */
+    private Path createDataDirectory() throws IOException {
+        final Path dataDirectory = Files.createTempDirectory("galaxy-configuration");
+        copyDirectory(DATA_DIRECTORY.resolve("tools"), dataDirectory.resolve("tools"));
+        copyWorkflow(dataDirectory, "random-lines-twice", RANDOM_LINES_TWICE + ".ga");
+        return dataDirectory;
+    }
+
+    /**
+     * Copy a workflow definition file to the temporary data directory.
+     *
+     * @param dataDirectory the temporary data directory.
+     * @param directoryName the name of the workflow directory.
+     * @param fileName      the name of the workflow definition file.
+     * @return the copied workflow definition file.
+     * @throws IOException if the file cannot be copied.
+     */
+    private File copyWorkflow(final Path dataDirectory, final String directoryName, final String fileName)
+            throws IOException {
+        final Path targetDirectory = Files.createDirectories(dataDirectory.resolve(WORKFLOWS).resolve(directoryName));
+        final Path source = DATA_DIRECTORY.resolve(WORKFLOWS).resolve(directoryName).resolve(fileName);
+        return Files.copy(source, targetDirectory.resolve(fileName)).toFile();
+    }
+
+    /**
+     * Copy a directory with its files and subdirectories.
+     *
+     * @param source the source directory.
+     * @param target the target directory.
+     * @throws IOException if copying fails.
+     */
+    private void copyDirectory(final Path source, final Path target) throws IOException {
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path directory, final BasicFileAttributes attributes)
+                    throws IOException {
+                Files.createDirectories(target.resolve(source.relativize(directory)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) throws IOException {
+                Files.copy(file, target.resolve(source.relativize(file)));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Delete a directory with its files and subdirectories.
+     *
+     * @param directory the directory.
+     * @throws IOException if deleting fails.
+     */
+    private void deleteDirectory(final Path directory) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(final Path subdirectory, final IOException e) throws IOException {
+                Files.delete(subdirectory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
     /**
      * Check the metadata of the workflow parameters.
      *
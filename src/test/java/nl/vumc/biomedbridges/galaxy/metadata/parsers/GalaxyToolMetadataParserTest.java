@@ -0,0 +1,50 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.galaxy.metadata.parsers;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+
+import nl.vumc.biomedbridges.galaxy.metadata.GalaxyToolMetadata;
+import nl.vumc.biomedbridges.galaxy.metadata.GalaxyToolReference;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the GalaxyToolMetadataParser class.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class GalaxyToolMetadataParserTest {
+    /**
+     * The tools directory of the Galaxy configuration data.
+     */
+    private static final String TOOLS_DIRECTORY = Paths.get("data", "galaxy-configuration", "tools") + File.separator;
+
+    /**
+     * Test that only the referenced tools are parsed.
+     */
+    @Test
+    public void testParseReferencedToolsOnly() {
+        final GalaxyToolMetadataParser parser = new GalaxyToolMetadataParser();
+        final List<String> toolDefinitionPaths = parser.parseToolsConfiguration(TOOLS_DIRECTORY + "tool_conf.xml",
+                                                                                TOOLS_DIRECTORY);
+        assertTrue(toolDefinitionPaths.size() > 1);
+
+        final List<GalaxyToolMetadata> toolsMetadata = parser.parseToolsMetadata(
+                toolDefinitionPaths, Collections.singletonList(new GalaxyToolReference("random_lines1", "2.0.1")));
+
+        assertEquals(1, toolsMetadata.size());
+        assertEquals("random_lines1", toolsMetadata.get(0).getId());
+        assertTrue(parser.parseToolsMetadata(toolDefinitionPaths, Collections.<GalaxyToolReference>emptyList())
+                           .isEmpty());
+    }
+}
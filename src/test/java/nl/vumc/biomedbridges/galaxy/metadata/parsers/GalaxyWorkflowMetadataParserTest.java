@@ -0,0 +1,87 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.galaxy.metadata.parsers;
+
+import nl.vumc.biomedbridges.galaxy.metadata.GalaxyWorkflowMetadata;
+import nl.vumc.biomedbridges.galaxy.metadata.GalaxyWorkflowStep;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests for the GalaxyWorkflowMetadataParser class.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class GalaxyWorkflowMetadataParserTest {
+    /**
+     * The number of steps in the generated workflow.
+     */
+    private static final int STEP_COUNT = 300;
+
+    /**
+     * Test the parseWorkflowJson method with a large generated workflow.
+     */
+    @Test
+    public void testParseLargeWorkflow() throws Exception {
+        final GalaxyWorkflowMetadata workflowMetadata = new GalaxyWorkflowMetadataParser()
+                .parseWorkflowJson(createWorkflowJson(STEP_COUNT), new JSONParser());
+
+        assertEquals("Generated", workflowMetadata.getName());
+        assertEquals(STEP_COUNT, workflowMetadata.getSteps().size());
+        for (int stepIndex = 0; stepIndex < STEP_COUNT; stepIndex++) {
+            final GalaxyWorkflowStep step = workflowMetadata.getSteps().get(stepIndex);
+            assertEquals(stepIndex, step.getId().longValue());
+            assertEquals((long) stepIndex, step.getToolState().get("num_lines"));
+            assertEquals(stepIndex % 2 == 0, step.getToolState().get("flag"));
+            assertEquals("line " + stepIndex, step.getToolState().get("title"));
+        }
+    }
+
+    /**
+     * Create the json content of a generated workflow with a chain of steps.
+     *
+     * @param stepCount the number of steps.
+     * @return the json content.
+     */
+    @SuppressWarnings("unchecked")
+    private String createWorkflowJson(final int stepCount) {
+        final JSONObject stepsJson = new JSONObject();
+        for (int stepIndex = 0; stepIndex < stepCount; stepIndex++) {
+            final JSONObject toolStateJson = new JSONObject();
+            toolStateJson.put("num_lines", "\"" + stepIndex + "\"");
+            toolStateJson.put("flag", "\"" + (stepIndex % 2 == 0 ? "True" : "False") + "\"");
+            toolStateJson.put("title", "\"line " + stepIndex + "\"");
+            final JSONObject positionJson = new JSONObject();
+            positionJson.put("left", (long) stepIndex);
+            positionJson.put("top", 0L);
+            final JSONObject stepJson = new JSONObject();
+            stepJson.put("id", (long) stepIndex);
+            stepJson.put("name", "Select random lines");
+            stepJson.put("type", "tool");
+            stepJson.put("tool_id", "random_lines1");
+            stepJson.put("tool_version", "2.0.1");
+            stepJson.put("annotation", "");
+            stepJson.put("position", positionJson);
+            stepJson.put("input_connections", new JSONObject());
+            stepJson.put("inputs", new JSONArray());
+            stepJson.put("outputs", new JSONArray());
+            stepJson.put("tool_state", toolStateJson.toJSONString());
+            stepsJson.put(Integer.toString(stepIndex), stepJson);
+        }
+        final JSONObject workflowJson = new JSONObject();
+        workflowJson.put("a_galaxy_workflow", "true");
+        workflowJson.put("annotation", "");
+        workflowJson.put("format-version", "0.1");
+        workflowJson.put("name", "Generated");
+        workflowJson.put("steps", stepsJson);
+        return workflowJson.toJSONString();
+    }
+}
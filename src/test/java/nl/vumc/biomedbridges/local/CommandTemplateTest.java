@@ -0,0 +1,125 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.local;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import nl.vumc.biomedbridges.galaxy.metadata.GalaxyToolMetadata;
+import nl.vumc.biomedbridges.galaxy.metadata.parsers.GalaxyToolMetadataParser;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests for the CommandTemplate class, using the commands of the bundled tool definitions.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class CommandTemplateTest {
+    /**
+     * The directory with the filter tool definitions.
+     */
+    private static final String FILTERS_DIRECTORY = "data/galaxy-configuration/tools/filters/";
+
+    /**
+     * The name of the output file variable.
+     */
+    private static final String OUTPUT_VARIABLE = "out_file1";
+
+    /**
+     * Test rendering a command with variables and a conditional (the random lines tool).
+     */
+    @Test
+    public void testRenderConditional() {
+        final CommandTemplate template = new CommandTemplate(getCommand("randomlines.xml"));
+        final Map<String, Object> seedSource = new HashMap<>();
+        seedSource.put("seed_source_selector", "no_seed");
+        final Map<String, Object> context = new HashMap<>();
+        context.put("input", "in.txt");
+        context.put(OUTPUT_VARIABLE, "out.txt");
+        context.put("num_lines", 5L);
+        context.put("seed_source", seedSource);
+        assertEquals("random_lines_two_pass.py \"in.txt\" \"out.txt\" \"5\"", template.render(context));
+
+        seedSource.put("seed_source_selector", "set_seed");
+        seedSource.put("seed", "asdf");
+        assertEquals("random_lines_two_pass.py \"in.txt\" \"out.txt\" \"5\" --seed \"asdf\"", template.render(context));
+    }
+
+    /**
+     * Test rendering a command with a loop over a repeat (the concatenate tool).
+     */
+    @Test
+    public void testRenderForLoop() {
+        final CommandTemplate template = new CommandTemplate(getCommand("catWrapper.xml"));
+        final Map<String, Object> query1 = new HashMap<>();
+        query1.put("input2", "in2.txt");
+        final Map<String, Object> query2 = new HashMap<>();
+        query2.put("input2", "in3.txt");
+        final Map<String, Object> context = new HashMap<>();
+        context.put(OUTPUT_VARIABLE, "out.txt");
+        context.put("input1", "in1.txt");
+        context.put("queries", Arrays.asList(query1, query2));
+        assertEquals("catWrapper.py out.txt in1.txt in2.txt in3.txt", template.render(context));
+    }
+
+    /**
+     * Test rendering with elif and else parts, an escaped dollar sign and a comment.
+     */
+    @Test
+    public void testRenderElseAndEscape() {
+        final CommandTemplate template = new CommandTemplate("sort\n## sort options\n#if $order == \"asc\":\n-n\n"
+                                                             + "#elif str( $order ) == 'desc':\n-rn\n#else:\n-R\n"
+                                                             + "#end if\n$input | awk '{print \\$1}'");
+        final Map<String, Object> context = new HashMap<>();
+        context.put("input", "in.txt");
+        context.put("order", "asc");
+        assertEquals("sort -n in.txt | awk '{print $1}'", template.render(context));
+        context.put("order", "desc");
+        assertEquals("sort -rn in.txt | awk '{print $1}'", template.render(context));
+        context.put("order", "random");
+        assertEquals("sort -R in.txt | awk '{print $1}'", template.render(context));
+    }
+
+    /**
+     * Test rendering a command with a variable that has no value.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testRenderUnknownVariable() {
+        new CommandTemplate("cat $input").render(new HashMap<String, Object>());
+    }
+
+    /**
+     * Test parsing a command with an unsupported directive.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedDirective() {
+        new CommandTemplate("#set $x = 1\ncat $x");
+    }
+
+    /**
+     * Test parsing a command with a missing end directive.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingEnd() {
+        new CommandTemplate("#for $q in $queries\n$q.input2");
+    }
+
+    /**
+     * Get the command of a bundled filter tool.
+     *
+     * @param fileName the file name of the tool definition.
+     * @return the command template.
+     */
+    private String getCommand(final String fileName) {
+        final GalaxyToolMetadata toolMetadata = new GalaxyToolMetadataParser().parseToolDefinition(FILTERS_DIRECTORY
+                                                                                                   + fileName);
+        return toolMetadata.getCommand();
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.local;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import nl.vumc.biomedbridges.galaxy.metadata.GalaxyToolMetadata;
+import nl.vumc.biomedbridges.galaxy.metadata.parsers.GalaxyToolMetadataParser;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests for the LocalToolRunner class.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class LocalToolRunnerTest {
+    /**
+     * Test the splitArguments method.
+     */
+    @Test
+    public void testSplitArguments() {
+        assertEquals(Arrays.asList("script.py", "in file.txt", "out.txt", "", "--seed", "a'b"),
+                     LocalToolRunner.splitArguments(" script.py \"in file.txt\"  'out.txt' \"\" --seed \"a'b\" "));
+    }
+
+    /**
+     * Test the createCommandLine method for a tool with an interpreter, which should be replaced by another command.
+     */
+    @Test
+    public void testCreateCommandLine() {
+        final GalaxyToolMetadata toolMetadata = new GalaxyToolMetadataParser().parseToolDefinition(
+                "data/galaxy-configuration/tools/filters/remove_beginning.xml");
+        final Map<String, Object> context = new HashMap<>();
+        context.put("input", "in.txt");
+        context.put("num_lines", 3);
+        context.put("out_file1", "out.txt");
+        final LocalToolRunner toolRunner = new LocalToolRunner();
+        toolRunner.setInterpreterCommand("perl", "/usr/bin/perl");
+        final List<String> commandLine = toolRunner.createCommandLine(toolMetadata, context);
+        final String scriptPath = new File("data/galaxy-configuration/tools/filters/remove_beginning.pl")
+                .getAbsolutePath();
+        assertEquals(Arrays.asList("/usr/bin/perl", scriptPath, "in.txt", "3", "out.txt"), commandLine);
+    }
+}
@@ -0,0 +1,242 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.local;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import nl.vumc.biomedbridges.core.FileUtils;
+import nl.vumc.biomedbridges.core.Workflow;
+import nl.vumc.biomedbridges.core.concurrent.SharedExecutors;
+import nl.vumc.biomedbridges.galaxy.metadata.GalaxyWorkflowEngineMetadata;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the LocalWorkflowEngine class. The test workflow runs the bundled remove beginning tool (a perl
+ * script) twice.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class LocalWorkflowEngineTest {
+    /**
+     * The name of the test workflow.
+     */
+    private static final String WORKFLOW_NAME = "RemoveBeginningTwice";
+
+    /**
+     * The name of the workflow input.
+     */
+    private static final String INPUT_NAME = "Input Dataset";
+
+    /**
+     * The name of the output of the second step.
+     */
+    private static final String OUTPUT_NAME = "Remove beginning on data 2";
+
+    /**
+     * The maximum time to wait for the concurrent workflow runs to finish (in seconds).
+     */
+    private static final long MAXIMUM_RUN_TIME_SECONDS = 120;
+
+    /**
+     * The temporary Galaxy configuration data directory.
+     */
+    private Path dataDirectory;
+
+    /**
+     * The local workflow engine.
+     */
+    private LocalWorkflowEngine workflowEngine;
+
+    /**
+     * Create a temporary data directory with the bundled tools and the test workflow.
+     *
+     * @throws IOException if the data directory cannot be created.
+     */
+    @Before
+    public void setUp() throws IOException {
+        dataDirectory = Files.createTempDirectory("galaxy-configuration");
+        Files.createSymbolicLink(dataDirectory.resolve("tools"),
+                                 Paths.get("data", "galaxy-configuration", "tools").toAbsolutePath());
+        final Path workflowDirectory = Files.createDirectories(dataDirectory.resolve(Paths.get("workflows", "remove")));
+        try (final InputStream inputStream = Resources.getResource(getClass(), WORKFLOW_NAME + ".ga").openStream()) {
+            Files.copy(inputStream, workflowDirectory.resolve(WORKFLOW_NAME + ".ga"));
+        }
+        workflowEngine = new LocalWorkflowEngine(new GalaxyWorkflowEngineMetadata(dataDirectory.toString()));
+    }
+
+    /**
+     * Delete the temporary data directory (the symbolic link to the tools directory is deleted, not the tools).
+     *
+     * @throws IOException if the data directory cannot be deleted.
+     */
+    @After
+    public void tearDown() throws IOException {
+        Files.walkFileTree(dataDirectory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(final Path directory, final IOException e) throws IOException {
+                Files.delete(directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Test running a workflow with two tool steps.
+     *
+     * @throws IOException          if running the workflow or reading the outputs fails.
+     * @throws InterruptedException if the test is interrupted.
+     */
+    @Test
+    public void testRunWorkflow() throws IOException, InterruptedException {
+        final Workflow workflow = createWorkflow();
+        assertTrue(workflow.run());
+        assertEquals(Arrays.asList("2", "3", "4", "5", "6"), readLines(workflow, "Remove beginning on data 1"));
+        assertEquals(Arrays.asList("4", "5", "6"), readLines(workflow, OUTPUT_NAME));
+        assertEquals(3, ((LocalWorkflow) workflow).getStepTimings().size());
+    }
+
+    /**
+     * Test running a workflow with the two tool steps streamed, with a memory limit that makes the stream spill.
+     *
+     * @throws IOException          if running the workflow or reading the outputs fails.
+     * @throws InterruptedException if the test is interrupted.
+     */
+    @Test
+    public void testRunWorkflowStreaming() throws IOException, InterruptedException {
+        workflowEngine.setStreamingToolIds(Collections.singleton("Remove beginning1"));
+        workflowEngine.setStreamingMemoryLimit(2);
+        final Workflow workflow = createWorkflow();
+        assertTrue(workflow.run());
+        assertNull(workflow.getOutput("Remove beginning on data 1"));
+        assertEquals(Arrays.asList("4", "5", "6"), readLines(workflow, OUTPUT_NAME));
+    }
+
+    /**
+     * Test running a workflow asynchronously.
+     *
+     * @throws IOException          if reading the outputs fails.
+     * @throws InterruptedException if the test is interrupted.
+     * @throws ExecutionException   if running the workflow fails.
+     */
+    @Test
+    public void testRunWorkflowAsync() throws IOException, InterruptedException, ExecutionException {
+        final Workflow workflow = workflowEngine.runWorkflowAsync(createWorkflow()).get();
+        assertTrue(workflow.getResult());
+        assertEquals(Arrays.asList("4", "5", "6"), readLines(workflow, OUTPUT_NAME));
+    }
+
+    /**
+     * Test running more streaming workflows at the same time than the shared executor for blocking tasks has threads:
+     * the runs hold all these threads, so the threads that copy the streams between the tools must not need them.
+     *
+     * @throws Exception if running a workflow or reading the outputs fails, or the runs do not finish in time.
+     */
+    @Test
+    public void testConcurrentStreamingRuns() throws Exception {
+        workflowEngine.setStreamingToolIds(Collections.singleton("Remove beginning1"));
+        final List<ListenableFuture<Workflow>> runFutures = new ArrayList<>();
+        for (int runIndex = 0; runIndex <= SharedExecutors.getBlockingThreadCount(); runIndex++)
+            runFutures.add(workflowEngine.runWorkflowAsync(createWorkflow()));
+        for (final Workflow workflow : Futures.allAsList(runFutures).get(MAXIMUM_RUN_TIME_SECONDS, TimeUnit.SECONDS)) {
+            assertTrue(workflow.getResult());
+            assertEquals(Arrays.asList("4", "5", "6"), readLines(workflow, OUTPUT_NAME));
+        }
+    }
+
+    /**
+     * Test running a workflow with an input file whose path contains a space and a semicolon: the input file is
+     * staged in the job directory, so its path is not split or interpreted when the tool command is run.
+     *
+     * @throws IOException          if running the workflow or reading the outputs fails.
+     * @throws InterruptedException if the test is interrupted.
+     */
+    @Test
+    public void testRunWorkflowInputPath() throws IOException, InterruptedException {
+        final Path inputDirectory = Files.createTempDirectory("input dir; touch injected");
+        final Path inputFile = inputDirectory.resolve("sample 1;2.txt");
+        Files.write(inputFile, Arrays.asList("1", "2", "3", "4", "5", "6"), Charsets.UTF_8);
+        try {
+            final Workflow workflow = workflowEngine.getWorkflow(WORKFLOW_NAME);
+            workflow.addInput(INPUT_NAME, inputFile.toFile());
+            workflow.setParameter(3, "num_lines", 2);
+            assertTrue(workflow.run());
+            assertEquals(Arrays.asList("4", "5", "6"), readLines(workflow, OUTPUT_NAME));
+            assertFalse(Files.exists(Paths.get("injected")));
+        } finally {
+            Files.delete(inputFile);
+            Files.delete(inputDirectory);
+        }
+    }
+
+    /**
+     * Test running a workflow without input and a workflow that does not exist.
+     *
+     * @throws IOException          if running the workflow fails.
+     * @throws InterruptedException if the test is interrupted.
+     */
+    @Test
+    public void testRunWorkflowFailures() throws IOException, InterruptedException {
+        assertFalse(workflowEngine.getWorkflow(WORKFLOW_NAME).run());
+        assertFalse(workflowEngine.getWorkflow("UnknownWorkflow").run());
+    }
+
+    /**
+     * Create the test workflow with an input file of six lines.
+     *
+     * @return the test workflow.
+     */
+    private Workflow createWorkflow() {
+        final Workflow workflow = workflowEngine.getWorkflow(WORKFLOW_NAME);
+        workflow.addInput(INPUT_NAME, FileUtils.createTemporaryFile("1", "2", "3", "4", "5", "6"));
+        workflow.setParameter(3, "num_lines", 2);
+        return workflow;
+    }
+
+    /**
+     * Read the lines of a workflow output.
+     *
+     * @param workflow   the workflow.
+     * @param outputName the output name.
+     * @return the lines of the output.
+     * @throws IOException if reading the output fails.
+     */
+    private List<String> readLines(final Workflow workflow, final String outputName) throws IOException {
+        return Files.readAllLines(((File) workflow.getOutput(outputName)).toPath(), Charsets.UTF_8);
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.local;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import nl.vumc.biomedbridges.galaxy.metadata.GalaxyToolMetadata;
+import nl.vumc.biomedbridges.galaxy.metadata.parsers.GalaxyToolMetadataParser;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the ParameterSanitizer class.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class ParameterSanitizerTest {
+    /**
+     * A parameter value that tries to run another command when it is used in a quoted shell argument.
+     */
+    private static final String INJECTED_VALUE = "'; touch x";
+
+    /**
+     * Test sanitizing text: valid characters are kept, mapped characters are replaced by their names and the other
+     * characters are replaced by an X.
+     */
+    @Test
+    public void testSanitizeText() {
+        assertEquals("sample 1.txt, -n=5", ParameterSanitizer.sanitizeText("sample 1.txt, -n=5"));
+        assertEquals("__sq__X touch x", ParameterSanitizer.sanitizeText(INJECTED_VALUE));
+        assertEquals("X(X __gt__ __dq__X__ob__1__cb__", ParameterSanitizer.sanitizeText("$(` > \"|[1]"));
+    }
+
+    /**
+     * Test sanitizing the values of conditionals and repeats, while other values are not changed.
+     */
+    @Test
+    public void testSanitizeContainers() {
+        final Map<String, Object> conditional = ImmutableMap.<String, Object>of("seed", "a;b", "__current_case__", 1);
+        assertEquals(ImmutableMap.of("seed", "aXb", "__current_case__", 1), ParameterSanitizer.sanitize(conditional));
+        assertEquals(ImmutableList.of(Collections.singletonMap("query", "__lt__x")),
+                     ParameterSanitizer.sanitize(ImmutableList.of(Collections.singletonMap("query", "<x"))));
+        assertEquals(5, ParameterSanitizer.sanitize(5));
+        assertEquals(true, ParameterSanitizer.sanitize(true));
+    }
+
+    /**
+     * Test that a sanitized parameter value cannot run another command in a tool that is run by the shell.
+     *
+     * @throws IOException          if the tool definition cannot be written or the tool cannot be started.
+     * @throws InterruptedException if the test is interrupted.
+     */
+    @Test
+    public void testShellInjection() throws IOException, InterruptedException {
+        final Path jobDirectory = Files.createTempDirectory("sanitizer-job");
+        final File toolFile = new File(jobDirectory.toFile(), "echo.xml");
+        Files.write(toolFile.toPath(), ("<tool id=\"echo_text\" name=\"Echo text\" version=\"1.0\">"
+                                        + "<command>echo '$text' &gt; $output</command>"
+                                        + "<inputs><param name=\"text\" type=\"text\" value=\"\"/></inputs>"
+                                        + "<outputs><data format=\"txt\" name=\"output\"/></outputs></tool>")
+                .getBytes(Charsets.UTF_8));
+        final GalaxyToolMetadata toolMetadata = new GalaxyToolMetadataParser().parseToolDefinition(toolFile.getPath());
+        final File outputFile = new File(jobDirectory.toFile(), "output.dat");
+        final Map<String, Object> context = new HashMap<>();
+        context.put("text", ParameterSanitizer.sanitize(INJECTED_VALUE));
+        context.put("output", outputFile.getAbsolutePath());
+
+        assertTrue(new LocalToolRunner().runTool(toolMetadata, context, jobDirectory.toFile()));
+        assertFalse(new File(jobDirectory.toFile(), "x").exists());
+        assertEquals(Collections.singletonList("__sq__X touch x"),
+                     Files.readAllLines(outputFile.toPath(), Charsets.UTF_8));
+        for (final File file : jobDirectory.toFile().listFiles())
+            Files.delete(file.toPath());
+        Files.delete(jobDirectory);
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.local;
+
+import com.google.common.base.Charsets;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Unit tests for the SpillingPipe class.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class SpillingPipeTest {
+    /**
+     * Test that data that does not fit in memory is spilled and read back in the original order.
+     *
+     * @throws IOException          if spilling fails.
+     * @throws InterruptedException if the test is interrupted.
+     */
+    @Test
+    public void testSpill() throws IOException, InterruptedException {
+        final File spillFile = File.createTempFile("spilling-pipe", ".spill");
+        final SpillingPipe pipe = new SpillingPipe(4, spillFile);
+        write(pipe, "abc");
+        write(pipe, "def");
+        write(pipe, "g");
+        assertEquals("abc", new String(pipe.read(), Charsets.UTF_8));
+        write(pipe, "h");
+        pipe.closeWriter();
+        assertEquals("defgh", readAll(pipe));
+        assertEquals(5, pipe.getSpilledByteCount());
+        pipe.closeReader();
+        assertFalse(spillFile.exists());
+    }
+
+    /**
+     * Test that data written after the reader has stopped is discarded.
+     *
+     * @throws IOException          if spilling fails.
+     * @throws InterruptedException if the test is interrupted.
+     */
+    @Test
+    public void testCloseReader() throws IOException, InterruptedException {
+        final SpillingPipe pipe = new SpillingPipe(2, File.createTempFile("spilling-pipe", ".spill"));
+        write(pipe, "abc");
+        pipe.closeReader();
+        write(pipe, "def");
+        pipe.closeWriter();
+        assertNull(pipe.read());
+    }
+
+    /**
+     * Write text to a pipe.
+     *
+     * @param pipe the pipe.
+     * @param text the text.
+     * @throws IOException if spilling fails.
+     */
+    private static void write(final SpillingPipe pipe, final String text) throws IOException {
+        final byte[] data = text.getBytes(Charsets.UTF_8);
+        pipe.write(data, 0, data.length);
+    }
+
+    /**
+     * Read the remaining data of a pipe.
+     *
+     * @param pipe the pipe.
+     * @return the data as text.
+     * @throws IOException          if reading spilled data fails.
+     * @throws InterruptedException if the test is interrupted.
+     */
+    private static String readAll(final SpillingPipe pipe) throws IOException, InterruptedException {
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        byte[] chunk = pipe.read();
+        while (chunk != null) {
+            data.write(chunk);
+            chunk = pipe.read();
+        }
+        return new String(data.toByteArray(), Charsets.UTF_8);
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.local;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import nl.vumc.biomedbridges.galaxy.metadata.GalaxyWorkflowMetadata;
+import nl.vumc.biomedbridges.galaxy.metadata.GalaxyWorkflowStep;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the StepGraph class.
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class StepGraphTest {
+    /**
+     * The path of the concatenate workflow definition.
+     */
+    static final String CONCATENATE_WORKFLOW_PATH = "data/galaxy-configuration/workflows/concatenate/"
+                                                    + "TestWorkflowConcatenate.ga";
+
+    /**
+     * The key of the steps in a workflow definition.
+     */
+    private static final String STEPS_KEY = "steps";
+
+    /**
+     * Test the graph of the concatenate workflow, which has two independent input steps.
+     *
+     * @throws IOException    if reading the workflow definition fails.
+     * @throws ParseException if parsing the workflow definition fails.
+     */
+    @Test
+    public void testConcatenateWorkflow() throws IOException, ParseException {
+        final StepGraph stepGraph = new StepGraph(new GalaxyWorkflowMetadata(readWorkflow(CONCATENATE_WORKFLOW_PATH)));
+        assertEquals(3, stepGraph.getStepCount());
+        assertEquals(Arrays.asList(0L, 1L), getStepIds(stepGraph.getRootSteps()));
+        assertEquals(ImmutableSet.of(0L, 1L), stepGraph.getDependencies(2L));
+        assertEquals(ImmutableSet.of(2L), stepGraph.getDependents(0L));
+        assertTrue(stepGraph.getDependents(2L).isEmpty());
+        assertEquals(Arrays.asList(0L, 1L, 2L), getStepIds(stepGraph.getTopologicalOrder()));
+    }
+
+    /**
+     * Test the topological order of steps that are not sorted in the workflow definition.
+     *
+     * @throws IOException    if reading the workflow definition fails.
+     * @throws ParseException if parsing the workflow definition fails.
+     */
+    @Test
+    public void testTopologicalOrder() throws IOException, ParseException {
+        final List<GalaxyWorkflowStep> steps = new ArrayList<>(
+                new GalaxyWorkflowMetadata(readWorkflow(CONCATENATE_WORKFLOW_PATH)).getSteps());
+        steps.add(steps.remove(0));
+        final StepGraph stepGraph = new StepGraph(steps);
+        assertEquals(Arrays.asList(1L, 0L, 2L), getStepIds(stepGraph.getTopologicalOrder()));
+    }
+
+    /**
+     * Test a workflow with a cycle.
+     *
+     * @throws IOException    if reading the workflow definition fails.
+     * @throws ParseException if parsing the workflow definition fails.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testCycle() throws IOException, ParseException {
+        final JSONObject workflowJson = readWorkflow(CONCATENATE_WORKFLOW_PATH);
+        connectStep(workflowJson, "0", 2L);
+        new StepGraph(new GalaxyWorkflowMetadata(workflowJson));
+    }
+
+    /**
+     * Test a workflow with a connection to an unknown step.
+     *
+     * @throws IOException    if reading the workflow definition fails.
+     * @throws ParseException if parsing the workflow definition fails.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownStep() throws IOException, ParseException {
+        final JSONObject workflowJson = readWorkflow(CONCATENATE_WORKFLOW_PATH);
+        connectStep(workflowJson, "0", 6L);
+        new StepGraph(new GalaxyWorkflowMetadata(workflowJson));
+    }
+
+    /**
+     * Read a workflow definition.
+     *
+     * @param workflowPath the path of the workflow definition.
+     * @return the workflow json object.
+     * @throws IOException    if reading the workflow definition fails.
+     * @throws ParseException if parsing the workflow definition fails.
+     */
+    static JSONObject readWorkflow(final String workflowPath) throws IOException, ParseException {
+        try (final Reader reader = new FileReader(workflowPath)) {
+            return (JSONObject) new JSONParser().parse(reader);
+        }
+    }
+
+    /**
+     * Add an input connection to a step of a workflow definition.
+     *
+     * @param workflowJson  the workflow json object.
+     * @param stepKey       the key of the step that gets the input connection.
+     * @param connectedStep the id of the step that is connected.
+     */
+    @SuppressWarnings("unchecked")
+    private static void connectStep(final JSONObject workflowJson, final String stepKey, final Long connectedStep) {
+        final JSONObject connectionJson = new JSONObject();
+        connectionJson.put("id", connectedStep);
+        connectionJson.put("output_name", "out_file1");
+        final JSONObject connectionsJson = new JSONObject();
+        connectionsJson.put("input", connectionJson);
+        ((JSONObject) ((JSONObject) workflowJson.get(STEPS_KEY)).get(stepKey)).put("input_connections", connectionsJson);
+    }
+
+    /**
+     * Get the ids of steps.
+     *
+     * @param steps the steps.
+     * @return the step ids.
+     */
+    private static List<Long> getStepIds(final List<GalaxyWorkflowStep> steps) {
+        final List<Long> stepIds = new ArrayList<>();
+        for (final GalaxyWorkflowStep step : steps)
+            stepIds.add(step.getId());
+        return stepIds;
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright 2014 VU University Medical Center.
+ * Licensed under the Apache License version 2.0 (see http://www.apache.org/licenses/LICENSE-2.0.html).
+ */
+
+package nl.vumc.biomedbridges.local;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import nl.vumc.biomedbridges.galaxy.metadata.GalaxyWorkflowMetadata;
+import nl.vumc.biomedbridges.galaxy.metadata.GalaxyWorkflowStep;
+
+import org.json.simple.parser.ParseException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the StepScheduler class, using the step graph of the concatenate workflow (two input steps and a
+ * concatenate step that depends on both).
+ *
+ * @author <a href="mailto:f.debruijn@vumc.nl">Freek de Bruijn</a>
+ */
+public class StepSchedulerTest {
+    /**
+     * The number of threads of the test pool (more than one, so the parallel test also works on a single processor).
+     */
+    private static final int THREAD_COUNT = 4;
+
+    /**
+     * The id of the concatenate step.
+     */
+    private static final Long CONCATENATE_STEP_ID = 2L;
+
+    /**
+     * The step graph of the concatenate workflow.
+     */
+    private StepGraph stepGraph;
+
+    /**
+     * The pool that executes the steps.
+     */
+    private ForkJoinPool pool;
+
+    /**
+     * The ids of the executed steps, in the order in which they were started.
+     */
+    private final List<Long> executedStepIds = new CopyOnWriteArrayList<>();
+
+    /**
+     * Create the step graph and the pool.
+     *
+     * @throws IOException    if reading the workflow definition fails.
+     * @throws ParseException if parsing the workflow definition fails.
+     */
+    @Before
+    public void setUp() throws IOException, ParseException {
+        stepGraph = new StepGraph(new GalaxyWorkflowMetadata(
+                StepGraphTest.readWorkflow(StepGraphTest.CONCATENATE_WORKFLOW_PATH)));
+        pool = new ForkJoinPool(THREAD_COUNT);
+    }
+
+    /**
+     * Shut down the pool.
+     */
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Test that the independent input steps run at the same time: each input step waits until the other one has
+     * started. The concatenate step runs after both.
+     *
+     * @throws IOException          if a step fails.
+     * @throws InterruptedException if the test is interrupted.
+     */
+    @Test
+    public void testParallelSteps() throws IOException, InterruptedException {
+        final CountDownLatch inputStepsStarted = new CountDownLatch(2);
+        final StepScheduler scheduler = new StepScheduler(stepGraph, new StepScheduler.StepTask() {
+            @Override
+            public boolean executeStep(final GalaxyWorkflowStep step) throws InterruptedException {
+                executedStepIds.add(step.getId());
+                if (!CONCATENATE_STEP_ID.equals(step.getId())) {
+                    inputStepsStarted.countDown();
+                    return inputStepsStarted.await(10, TimeUnit.SECONDS);
+                }
+                return true;
+            }
+        }, pool);
+        assertTrue(scheduler.run());
+        assertEquals(3, executedStepIds.size());
+        assertEquals(CONCATENATE_STEP_ID, executedStepIds.get(2));
+        final List<StepTiming> stepTimings = scheduler.getStepTimings();
+        assertEquals(3, stepTimings.size());
+        assertEquals(CONCATENATE_STEP_ID, stepTimings.get(2).getStepId());
+        assertTrue(stepTimings.get(2).isSuccessful());
+    }
+
+    /**
+     * Test that the steps that depend on a failed step are not executed.
+     *
+     * @throws IOException          if a step fails.
+     * @throws InterruptedException if the test is interrupted.
+     */
+    @Test
+    public void testFailedStep() throws IOException, InterruptedException {
+        final StepScheduler scheduler = new StepScheduler(stepGraph, new StepScheduler.StepTask() {
+            @Override
+            public boolean executeStep(final GalaxyWorkflowStep step) {
+                executedStepIds.add(step.getId());
+                return step.getId() != 0L;
+            }
+        }, pool);
+        assertFalse(scheduler.run());
+        assertFalse(executedStepIds.contains(CONCATENATE_STEP_ID));
+    }
+
+    /**
+     * Test that an IOException of a step is thrown by the run method.
+     *
+     * @throws IOException          if a step fails (expected).
+     * @throws InterruptedException if the test is interrupted.
+     */
+    @Test(expected = IOException.class)
+    public void testStepException() throws IOException, InterruptedException {
+        new StepScheduler(stepGraph, new StepScheduler.StepTask() {
+            @Override
+            public boolean executeStep(final GalaxyWorkflowStep step) throws IOException {
+                throw new IOException("Step " + step.getId() + " failed.");
+            }
+        }, pool).run();
+    }
+}
@@ -23,4 +23,13 @@ public class MolgenisWorkflowEngineTest {
         final MolgenisWorkflowEngine workflowEngine = new MolgenisWorkflowEngine();
         assertTrue(workflowEngine.runWorkflow(workflowEngine.getWorkflow(null)));
     }
+
+    /**
+     * Test the runWorkflowAsync method.
+     */
+    @Test
+    public void testRunWorkflowAsync() throws Exception {
+        final MolgenisWorkflowEngine workflowEngine = new MolgenisWorkflowEngine();
+        assertTrue(workflowEngine.runWorkflowAsync(workflowEngine.getWorkflow(null)).get().getResult());
+    }
 }